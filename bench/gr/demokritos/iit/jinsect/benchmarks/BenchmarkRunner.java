@@ -0,0 +1,31 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the JInsect benchmarks with the GC profiler, which reports allocation
+ * rates next to the timings.
+ *<p>
+ * Syntax: BenchmarkRunner [regular expression of benchmarks to run]
+ *
+ * @author ggianna
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String sInclude = (args.length > 0) ? args[0] :
+            BenchmarkRunner.class.getPackage().getName() + ".*";
+        Options oOptions = new OptionsBuilder()
+                .include(sInclude)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(oOptions).run();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import java.util.Random;
+
+/** Generates reproducible, word-like texts for the benchmarks, so that no corpus
+ * is required to run them. Words are drawn from a fixed vocabulary with a
+ * Zipf-like frequency, which gives graph sizes close to those of real text.
+ *
+ * @author ggianna
+ */
+public class BenchmarkTexts {
+    protected static final int VOCABULARY_SIZE = 5000;
+
+    /** Creates a text of a given size.
+     *@param iSize The number of characters of the text.
+     *@param lSeed The seed of the generator. Equal seeds give equal texts.
+     *@return The text.
+     */
+    public static String createText(int iSize, long lSeed) {
+        Random rVocabulary = new Random(42);
+        String[] saWords = new String[VOCABULARY_SIZE];
+        for (int iCnt = 0; iCnt < VOCABULARY_SIZE; iCnt++) {
+            int iWordLen = 2 + rVocabulary.nextInt(9);
+            StringBuilder sbWord = new StringBuilder(iWordLen);
+            for (int iChar = 0; iChar < iWordLen; iChar++)
+                sbWord.append((char)('a' + rVocabulary.nextInt(26)));
+            saWords[iCnt] = sbWord.toString();
+        }
+
+        Random rText = new Random(lSeed);
+        StringBuilder sbRes = new StringBuilder(iSize + 16);
+        while (sbRes.length() < iSize) {
+            // Zipf-like: low ranks are much more frequent
+            int iRank = (int)Math.floor(Math.pow(VOCABULARY_SIZE + 1,
+                    rText.nextDouble())) - 1;
+            sbRes.append(saWords[Math.min(iRank, VOCABULARY_SIZE - 1)]);
+            sbRes.append(rText.nextInt(12) == 0 ? ". " : " ");
+        }
+        sbRes.setLength(iSize);
+        return sbRes.toString();
+    }
+
+    /** Parses an n-gram range of the form "min-max".
+     *@param sRange The range.
+     *@return A two-element array with the minimum and maximum n-gram size.
+     */
+    public static int[] parseRange(String sRange) {
+        String[] saParts = sRange.split("-");
+        return new int[] {Integer.parseInt(saParts[0]),
+            Integer.parseInt(saParts[1])};
+    }
+}
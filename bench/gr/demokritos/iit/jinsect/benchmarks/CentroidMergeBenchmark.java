@@ -0,0 +1,85 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures building a centroid graph out of many document graphs, with the
+ * running average of {@link DocumentNGramGraph#mergeAll(List)} against merging
+ * the graphs one after the other with {@link DocumentNGramGraph#mergeGraph}. The
+ * centroid starts from a graph with compact or with expanded levels
+ * (<code>Target</code>).
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CentroidMergeBenchmark {
+    @Param({"100", "1000"})
+    public int Graphs;
+
+    @Param({"compact", "expanded"})
+    public String Target;
+
+    protected List<DocumentNGramGraph> Documents;
+    protected DocumentNGramGraph First;
+    /** A fresh copy of the first graph for every invocation. */
+    protected DocumentNGramGraph Centroid;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Documents = new ArrayList<DocumentNGramGraph>();
+        for (int iCnt = 0; iCnt < Graphs; iCnt++) {
+            DocumentNGramGraph dgCur = new DocumentNGramSymWinGraph();
+            dgCur.setDataString(BenchmarkTexts.createText(2000, 10 + iCnt));
+            Documents.add(dgCur);
+        }
+        First = new DocumentNGramSymWinGraph();
+        First.setDataString(BenchmarkTexts.createText(2000, 1));
+    }
+
+    @Setup(Level.Invocation)
+    public void copyCentroid() {
+        Centroid = (DocumentNGramGraph)First.clone();
+        if (Target.equals("expanded"))
+            for (int iLevel = 0; iLevel <= Centroid.getMaxSize() - Centroid.getMinSize();
+                    iLevel++)
+                Centroid.getGraphLevel(iLevel);
+    }
+
+    @Benchmark
+    public DocumentNGramGraph mergeSequentially() {
+        for (int iCnt = 0; iCnt < Documents.size(); iCnt++)
+            Centroid.mergeGraph(Documents.get(iCnt), 1.0 / (iCnt + 2));
+        return Centroid;
+    }
+
+    @Benchmark
+    public DocumentNGramGraph mergeAll() {
+        Centroid.mergeAll(Documents);
+        return Centroid;
+    }
+}
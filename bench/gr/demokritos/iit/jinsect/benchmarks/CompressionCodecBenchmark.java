@@ -0,0 +1,83 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.storage.CompressionCodecs;
+import gr.demokritos.iit.jinsect.storage.ICompressionCodec;
+import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures saving and loading a graph with every {@link ICompressionCodec}, the
+ * way {@link INSECTFileDB} saves it to and loads it from files, but in memory, so
+ * that the results show the cost of each codec alone. The compression ratio of
+ * every codec is printed once per trial.
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressionCodecBenchmark {
+    @Param({"10000", "100000"})
+    public int TextSize;
+
+    @Param({"none", "lz", "deflate:1", "deflate"})
+    public String Codec;
+
+    protected ICompressionCodec CompressionCodec;
+    protected DocumentNGramGraph Graph;
+    protected byte[] Saved;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CompressionCodec = CompressionCodecs.forName(Codec);
+        Graph = new DocumentNGramSymWinGraph();
+        Graph.setDataString(BenchmarkTexts.createText(TextSize, 1));
+        Saved = save(Graph, CompressionCodec);
+        System.out.println(String.format("%s: %d bytes, ratio %.3f", Codec,
+                Saved.length, (double)Saved.length /
+                save(Graph, CompressionCodecs.NONE).length));
+    }
+
+    /** Saves an object to memory, as {@link INSECTFileDB} saves it to a file. */
+    protected static byte[] save(Serializable oObj, ICompressionCodec cCodec)
+            throws IOException {
+        ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
+        INSECTFileDB.writeCompressed(baosOut, oObj, cCodec, true);
+        return baosOut.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] saveGraph() throws IOException {
+        return save(Graph, CompressionCodec);
+    }
+
+    @Benchmark
+    public Object loadGraph() throws IOException {
+        return INSECTFileDB.readCompressed(new ByteArrayInputStream(Saved));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator;
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramGraphEuclidianComparator;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
+import gr.demokritos.iit.jinsect.structs.ISimilarity;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the similarity calculation between document n-gram graphs. Graphs
+ * are built with compact levels, which the comparators read directly; the
+ * expanded variants measure the same graphs once their levels are converted to
+ * {@link gr.demokritos.iit.jinsect.structs.UniqueVertexGraph}s.
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphComparisonBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int TextSize;
+
+    @Param({"3-3", "3-5"})
+    public String NGramRange;
+
+    @Param({"3", "5"})
+    public int Window;
+
+    protected String FirstText;
+    protected DocumentNGramGraph First, Second;
+    protected DocumentNGramGraph ExpandedFirst, ExpandedSecond;
+    protected NGramCachedGraphComparator CachedComparator;
+    protected NGramGraphEuclidianComparator EuclidianComparator;
+
+    @Setup
+    public void setUp() {
+        int[] iaRange = BenchmarkTexts.parseRange(NGramRange);
+        FirstText = BenchmarkTexts.createText(TextSize, 1);
+        First = new DocumentNGramSymWinGraph(iaRange[0], iaRange[1], Window);
+        First.setDataString(FirstText);
+        // The second graph is bigger, as a category graph would be
+        Second = new DocumentNGramSymWinGraph(iaRange[0], iaRange[1], Window);
+        Second.setDataString(BenchmarkTexts.createText(TextSize * 4, 2));
+        ExpandedFirst = expand(First);
+        ExpandedSecond = expand(Second);
+        CachedComparator = new NGramCachedGraphComparator();
+        EuclidianComparator = new NGramGraphEuclidianComparator();
+    }
+
+    @Benchmark
+    public GraphSimilarity cachedSimilarity() {
+        return CachedComparator.getSimilarityBetween(First, Second);
+    }
+
+    @Benchmark
+    public GraphSimilarity expandedCachedSimilarity() {
+        return CachedComparator.getSimilarityBetween(ExpandedFirst, ExpandedSecond);
+    }
+
+    /** Builds a graph and compares it once, as the evaluation of a summary does. */
+    @Benchmark
+    public GraphSimilarity buildAndCompare() {
+        DocumentNGramGraph dgNew = new DocumentNGramSymWinGraph(First.getMinSize(),
+                First.getMaxSize(), Window);
+        dgNew.setDataString(FirstText);
+        return CachedComparator.getSimilarityBetween(dgNew, Second);
+    }
+
+    @Benchmark
+    public ISimilarity euclidianSimilarity() {
+        return EuclidianComparator.getEuclidianSimilarityBetween(First, Second,
+                true);
+    }
+
+    /** Returns a copy of a graph, with all its levels expanded. */
+    protected static DocumentNGramGraph expand(DocumentNGramGraph dgGraph) {
+        DocumentNGramGraph dgRes = (DocumentNGramGraph)dgGraph.clone();
+        for (int iLevel = 0; iLevel <= dgRes.getMaxSize() - dgRes.getMinSize(); iLevel++)
+            dgRes.getGraphLevel(iLevel);
+        return dgRes;
+    }
+}
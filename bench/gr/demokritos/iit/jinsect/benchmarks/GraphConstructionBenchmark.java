@@ -0,0 +1,69 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the creation of document n-gram graphs from text, through
+ * <code>setDataString</code> (and thus <code>createGraphs</code>).
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphConstructionBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int TextSize;
+
+    @Param({"3-3", "3-5"})
+    public String NGramRange;
+
+    @Param({"3", "5"})
+    public int Window;
+
+    protected String Text;
+    protected int MinSize, MaxSize;
+
+    @Setup
+    public void setUp() {
+        Text = BenchmarkTexts.createText(TextSize, 1);
+        int[] iaRange = BenchmarkTexts.parseRange(NGramRange);
+        MinSize = iaRange[0];
+        MaxSize = iaRange[1];
+    }
+
+    @Benchmark
+    public DocumentNGramGraph symWinGraph() {
+        DocumentNGramSymWinGraph dgRes = new DocumentNGramSymWinGraph(MinSize,
+                MaxSize, Window);
+        dgRes.setDataString(Text);
+        return dgRes;
+    }
+
+    @Benchmark
+    public DocumentNGramGraph nonSymmetricGraph() {
+        DocumentNGramGraph dgRes = new DocumentNGramGraph(MinSize, MaxSize, Window);
+        dgRes.setDataString(Text);
+        return dgRes;
+    }
+}
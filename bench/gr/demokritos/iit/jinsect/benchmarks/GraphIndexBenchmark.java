@@ -0,0 +1,123 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.indexing.InvertedGraphIndex;
+import gr.demokritos.iit.jinsect.structs.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures top-k queries of an {@link InvertedGraphIndex} against a brute-force
+ * scan, which compares the query to every graph. The documents are random parts
+ * of a few topic texts, so that every query has a few dozen close matches. The
+ * fraction of queries whose top-k similarities match the scan is printed once per
+ * trial.
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphIndexBenchmark {
+    protected static final int TOPICS = 20, QUERIES = 50, K = 5;
+
+    @Param({"600", "3000"})
+    public int Documents;
+
+    protected List<FrozenNGramGraph> Graphs, Queries;
+    protected InvertedGraphIndex Index;
+    protected NGramCachedGraphComparator Comparator;
+    protected int NextQuery = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Graphs = createGraphs(Documents, 1);
+        Queries = createGraphs(QUERIES, 2);
+        Index = new InvertedGraphIndex();
+        for (int iCnt = 0; iCnt < Graphs.size(); iCnt++)
+            Index.addDocument(String.valueOf(iCnt), Graphs.get(iCnt));
+        Comparator = new NGramCachedGraphComparator();
+
+        int iMatching = 0;
+        for (FrozenNGramGraph fgQuery : Queries) {
+            List<Pair<String, Double>> lFound = Index.getTopK(fgQuery, K);
+            double[] daExpected = bruteForceTopK(fgQuery);
+            boolean bMatches = lFound.size() == daExpected.length;
+            for (int iCnt = 0; bMatches && (iCnt < daExpected.length); iCnt++)
+                bMatches = Math.abs(lFound.get(iCnt).getSecond() - daExpected[iCnt]) < 1e-9;
+            if (bMatches)
+                iMatching++;
+        }
+        System.out.println(String.format("%d documents: top %d matched the scan on "
+                + "%d of %d queries", Documents, K, iMatching, Queries.size()));
+    }
+
+    protected static List<FrozenNGramGraph> createGraphs(int iCount, long lSeed) {
+        Random rParts = new Random(lSeed);
+        String[] saTopics = new String[TOPICS];
+        for (int iCnt = 0; iCnt < TOPICS; iCnt++)
+            saTopics[iCnt] = BenchmarkTexts.createText(5000, iCnt);
+        List<FrozenNGramGraph> lRes = new ArrayList<FrozenNGramGraph>();
+        for (int iCnt = 0; iCnt < iCount; iCnt++) {
+            int iStart = rParts.nextInt(3000);
+            DocumentNGramSymWinGraph dgDoc = new DocumentNGramSymWinGraph();
+            dgDoc.setDataString(saTopics[rParts.nextInt(TOPICS)].substring(iStart,
+                    iStart + 1500) + BenchmarkTexts.createText(300,
+                    1000 + lSeed * iCount + iCnt));
+            lRes.add(new FrozenNGramGraph(dgDoc));
+        }
+        return lRes;
+    }
+
+    /** Returns the k best similarities of a query to all graphs, from the best down. */
+    protected double[] bruteForceTopK(FrozenNGramGraph fgQuery) {
+        double[] daScores = new double[Graphs.size()];
+        for (int iCnt = 0; iCnt < Graphs.size(); iCnt++)
+            daScores[iCnt] = -Comparator.getSimilarityBetween(fgQuery,
+                    Graphs.get(iCnt)).getOverallSimilarity();
+        Arrays.sort(daScores);
+        double[] daRes = new double[Math.min(K, daScores.length)];
+        for (int iCnt = 0; iCnt < daRes.length; iCnt++)
+            daRes[iCnt] = -daScores[iCnt];
+        return daRes;
+    }
+
+    protected FrozenNGramGraph nextQuery() {
+        NextQuery = (NextQuery + 1) % Queries.size();
+        return Queries.get(NextQuery);
+    }
+
+    @Benchmark
+    public List<Pair<String, Double>> indexTopK() {
+        return Index.getTopK(nextQuery(), K);
+    }
+
+    @Benchmark
+    public double[] bruteForceTopK() {
+        return bruteForceTopK(nextQuery());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.benchmarks;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the n-gram graph operators: merge (update), intersection and
+ * all-not-in (difference).
+ *
+ * @author ggianna
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphOperatorBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int TextSize;
+
+    @Param({"3-3", "3-5"})
+    public String NGramRange;
+
+    @Param({"3", "5"})
+    public int Window;
+
+    protected DocumentNGramGraph First, Second;
+    /** A fresh copy of the first graph for every merge invocation. */
+    protected DocumentNGramGraph MergeTarget;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] iaRange = BenchmarkTexts.parseRange(NGramRange);
+        First = new DocumentNGramSymWinGraph(iaRange[0], iaRange[1], Window);
+        First.setDataString(BenchmarkTexts.createText(TextSize, 1));
+        Second = new DocumentNGramSymWinGraph(iaRange[0], iaRange[1], Window);
+        Second.setDataString(BenchmarkTexts.createText(TextSize, 2));
+    }
+
+    @Setup(Level.Invocation)
+    public void copyMergeTarget() {
+        MergeTarget = (DocumentNGramGraph)First.clone();
+    }
+
+    @Benchmark
+    public DocumentNGramGraph mergeGraph() {
+        MergeTarget.mergeGraph(Second, 0.5);
+        return MergeTarget;
+    }
+
+    @Benchmark
+    public DocumentNGramGraph intersectGraph() {
+        return First.intersectGraph(Second);
+    }
+
+    @Benchmark
+    public DocumentNGramGraph allNotIn() {
+        return First.allNotIn(Second);
+    }
+}
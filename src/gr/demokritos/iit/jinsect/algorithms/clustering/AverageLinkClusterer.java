@@ -31,7 +31,24 @@ public class AverageLinkClusterer  extends SingleLinkClusterer {
     public AverageLinkClusterer() {
     }
     
-    /** Calculates the similarity between two clusters. In this algorithm the 
+    /** Calculates the similarity between a cluster and the merge of two other
+     * clusters. In this algorithm the average of the two similarities, weighted
+     * by the sizes of the merged clusters, is used, which equals the average
+     * similarity over all pairs of objects.
+     *@param dSimilarityToFirst The similarity to the first merged cluster.
+     *@param iFirstSize The number of objects of the first merged cluster.
+     *@param dSimilarityToSecond The similarity to the second merged cluster.
+     *@param iSecondSize The number of objects of the second merged cluster.
+     *@return The similarity to the merged cluster.
+     */
+    @Override
+    protected double getMergedSimilarity(double dSimilarityToFirst, int iFirstSize,
+            double dSimilarityToSecond, int iSecondSize) {
+        return (dSimilarityToFirst * iFirstSize + dSimilarityToSecond * iSecondSize) /
+                (iFirstSize + iSecondSize);
+    }
+    
+    /** Calculates the similarity between two clusters from scratch. In this algorithm the 
      * average similarity between all pairs of the two clusters is used.
      *@param sClusterOne The first cluster.
      *@param sClusterTwo The second cluster.
@@ -25,7 +25,21 @@ public class CompleteLinkClusterer extends SingleLinkClusterer {
     }
 
     
-    /** Calculates the similarity between two clusters. In this algorithm the 
+    /** Calculates the similarity between a cluster and the merge of two other
+     * clusters. In this algorithm the minimum of the two similarities is used.
+     *@param dSimilarityToFirst The similarity to the first merged cluster.
+     *@param iFirstSize The number of objects of the first merged cluster.
+     *@param dSimilarityToSecond The similarity to the second merged cluster.
+     *@param iSecondSize The number of objects of the second merged cluster.
+     *@return The similarity to the merged cluster.
+     */
+    @Override
+    protected double getMergedSimilarity(double dSimilarityToFirst, int iFirstSize,
+            double dSimilarityToSecond, int iSecondSize) {
+        return Math.min(dSimilarityToFirst, dSimilarityToSecond);
+    }
+    
+    /** Calculates the similarity between two clusters from scratch. In this algorithm the 
      * minimum similarity between all pairs of the two clusters is used.
      *@param sClusterOne The first cluster.
      *@param sClusterTwo The second cluster.
@@ -11,23 +11,30 @@ import gr.demokritos.iit.conceptualIndex.structs.Distribution;
 import gr.demokritos.iit.jinsect.structs.INamed;
 import java.io.InvalidClassException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import gr.demokritos.iit.jinsect.algorithms.statistics.CombinationGenerator;
 import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
+import gr.demokritos.iit.jinsect.structs.SimilarityMatrix;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import gr.demokritos.iit.jinsect.structs.ISimilarity;
-import gr.demokritos.iit.jinsect.structs.IntegerPair;
 import gr.demokritos.iit.jinsect.structs.SimpleSimilarity;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
 import gr.demokritos.iit.jinsect.utils;
 import java.util.Arrays;
 import salvo.jesus.graph.DirectedEdgeImpl;
 import salvo.jesus.graph.Vertex;
 import salvo.jesus.graph.VertexImpl;
 
-/** A single link clustering algorithm implementation class.
+/** A single link clustering algorithm implementation class. The similarities
+ * between all pairs of objects are calculated once, in parallel, into a
+ * triangular matrix. The clusters are then merged following nearest-neighbour
+ * chains, updating the similarities of merged clusters with the Lance-Williams
+ * formula of the linkage (see {@link #getMergedSimilarity(double, int, double, int)}),
+ * so that no object pair is compared twice. Subclasses implement other
+ * linkages by overriding that formula.
  *
  * @author ggianna
  */
@@ -36,6 +43,8 @@ public class SingleLinkClusterer implements IClusterer {
      */
     public static final String CLUSTER_NAME_SEPARATOR = " ";
     
+    /** The clusterings of the last calculation; the first one is the final
+     * clustering. */
     ArrayList<ArrayList<Set>> ClusteringsInTime;
     UniqueVertexGraph Hierarchy;
     
@@ -51,132 +60,239 @@ public class SingleLinkClusterer implements IClusterer {
         ClusteringsInTime.clear();
         Hierarchy = new UniqueVertexGraph();
         // Init clustering to single item clusters
+        Object[] oaObjects = sObjects.toArray();
+        Set[] saClusters = new Set[oaObjects.length];
         ArrayList<Set> R0 = new ArrayList();
-        Iterator iObjects = sObjects.iterator();
-        while (iObjects.hasNext()) {
+        for (int iCnt = 0; iCnt < oaObjects.length; iCnt++) {
             HashSet hsCurCluster = new HashSet();
-            hsCurCluster.add(iObjects.next());
+            hsCurCluster.add(oaObjects[iCnt]);
+            saClusters[iCnt] = hsCurCluster;
             R0.add(hsCurCluster);
         }
         ClusteringsInTime.add(0, R0); // Init current state
-        // Use all processors
-        ThreadList tThreads = new ThreadList(Runtime.getRuntime().availableProcessors());
-        
-        // While more than a single cluster.
-        while (ClusteringsInTime.get(0).size() > 1) {
-            // Get all possible pairs
-            CombinationGenerator cgCur = new CombinationGenerator(ClusteringsInTime.get(0).size(), 2);
-            final Distribution dDistances = new Distribution();
-            
-            while (cgCur.hasMore())
-            {
-                int[] iaCurObjects = cgCur.getNext();
-                /////////////////////////////
-                final Set s1 = ClusteringsInTime.get(0).get(iaCurObjects[0]);
-                final Set s2 = ClusteringsInTime.get(0).get(iaCurObjects[1]);
-                final int[] iaCurObjectsArg = new int[2];
-                iaCurObjectsArg[0] = iaCurObjects[0];
-                iaCurObjectsArg[1] = iaCurObjects[1];
-                final SimilarityComparatorListener fc = clDistanceCalculator;
-                // Multi-threading
-                while (!tThreads.addThreadFor(new Runnable() {
-                    public void run() {
-                        double dSimil = getSimilarityBetweenClusters(s1, s2, fc);
-                        IntegerPair p = new IntegerPair(iaCurObjectsArg);
-                        synchronized (dDistances) {
-                            dDistances.setValue(p, dSimil);
-                        }
-                    }
-                }))
-                    Thread.yield();
-                
-                /////////////////////////////
-            }
-            
-            try {
-                tThreads.waitUntilCompletion();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace(System.err);
-                return;
+        if (oaObjects.length < 2)
+            return;
+
+        SimilarityMatrix smSimilarities;
+        try {
+            smSimilarities = getObjectSimilarities(oaObjects, clDistanceCalculator);
+        } catch (InterruptedException ex) {
+            ex.printStackTrace(System.err);
+            return;
+        }
+        List<Merge> lMerges = getMerges(smSimilarities);
+        // Replay the merges from the closest to the most distant clusters, with
+        // the merges of clusters that could not be compared last. The sort is
+        // stable, so merges of equal similarity keep the order they were found
+        // in, which follows their sub-merges. Every cluster is kept at the
+        // position of one of its objects.
+        Collections.sort(lMerges, new Comparator<Merge>() {
+            @Override
+            public int compare(Merge mFirst, Merge mSecond) {
+                return Double.compare(comparable(mSecond.Similarity),
+                        comparable(mFirst.Similarity));
             }
-            
-            // Init new Clustering
-            ArrayList<Set> RCur = new ArrayList(ClusteringsInTime.get(0));
-            // Get closest clusters
-            int[] iaClosestObjects = ((IntegerPair)dDistances.getKeyOfMaxValue()).toArray();
+        });
+        int[] iaParents = new int[oaObjects.length];
+        for (int iCnt = 0; iCnt < iaParents.length; iCnt++)
+            iaParents[iCnt] = iCnt;
+        for (Merge mCur : lMerges) {
+            int iFirst = findRoot(iaParents, mCur.First);
+            int iSecond = findRoot(iaParents, mCur.Second);
             // Merge closest
             HashSet hsMerged = new HashSet();
-            hsMerged.addAll(ClusteringsInTime.get(0).get(iaClosestObjects[0]));
-            hsMerged.addAll(ClusteringsInTime.get(0).get(iaClosestObjects[1]));
-            
-            RCur.remove(ClusteringsInTime.get(0).get(iaClosestObjects[0]));
-            RCur.remove(ClusteringsInTime.get(0).get(iaClosestObjects[1]));
-            RCur.add(hsMerged);
-            // Show merging in hierarchy
-            try {
-                Vertex v1 = new VertexImpl(ClusteringsInTime.get(0).get(iaClosestObjects[0]));
-                
-                String sName1 = utils.printSortIterable(ClusteringsInTime.get(0).get(iaClosestObjects[0]), 
-                        CLUSTER_NAME_SEPARATOR);
-                v1.setLabel(sName1);
-                Vertex v2 = new VertexImpl(ClusteringsInTime.get(0).get(iaClosestObjects[1]));
-                String sName2 = utils.printSortIterable(ClusteringsInTime.get(0).get(iaClosestObjects[1]), 
-                        CLUSTER_NAME_SEPARATOR);
-                v2.setLabel(sName2);
-                Vertex vPar = new VertexImpl(hsMerged);
-                
-                // Extract names from clusters, back into their parts
-                // and add all into a single set
-                Set<String> sNames = new HashSet<String>();
-                sNames.addAll(Arrays.asList(sName1.split(CLUSTER_NAME_SEPARATOR)));
-                sNames.addAll(Arrays.asList(sName2.split(CLUSTER_NAME_SEPARATOR)));
-                
-                // Create name of new cluster, based on all parts
-                String sNameParent = utils.printSortIterable(sNames, 
-                        CLUSTER_NAME_SEPARATOR);
-                vPar.setLabel(sNameParent);
-                // DEBUG LINES
-                // System.err.println("Added cluster " + sNameParent);
-                //////////////
-                
-                try {
-                    if (Hierarchy.contains(v1))
-                        v1 = Hierarchy.locateVertex(v1);
-                    if (Hierarchy.contains(vPar))
-                        vPar = Hierarchy.locateVertex(vPar);
-                    
-                    Hierarchy.addEdge(new DirectedEdgeImpl(v1, vPar));
-                }
-                catch (Exception e) {
-                    // Ignore. Edge already exists.
-                }
-                
-                try {
-                    if (Hierarchy.contains(v2))
-                        v2 = Hierarchy.locateVertex(v2);
-                    if (Hierarchy.contains(vPar))
-                        vPar = Hierarchy.locateVertex(vPar);
-                    Hierarchy.addEdge(new DirectedEdgeImpl(v2, vPar));
-                }
-                catch (Exception e) {
-                    // Ignore. Edge already exists.
+            hsMerged.addAll(saClusters[iFirst]);
+            hsMerged.addAll(saClusters[iSecond]);
+            addMergeToHierarchy(saClusters[iFirst], saClusters[iSecond], hsMerged);
+            iaParents[iSecond] = iFirst;
+            saClusters[iFirst] = hsMerged;
+            saClusters[iSecond] = null;
+        }
+        ArrayList<Set> RCur = new ArrayList<Set>();
+        for (Set sCur : saClusters)
+            if (sCur != null)
+                RCur.add(sCur);
+        // Add last time to ClusteringsInTime
+        ClusteringsInTime.add(0, RCur);
+    }
+
+    /** Calculates the similarities between all pairs of objects, in parallel.
+     * Pairs that cannot be compared have a similarity of {@link Double#NaN}.
+     *@param oaObjects The objects to compare.
+     *@param clDistanceCalculator The calculator of similarity between objects.
+     *@return The similarities, indexed by the positions of the objects.
+     *@throws InterruptedException If the calculation was interrupted.
+     */
+    protected SimilarityMatrix getObjectSimilarities(Object[] oaObjects,
+            SimilarityComparatorListener clDistanceCalculator)
+            throws InterruptedException {
+        SimilarityMatrix smSimilarities = new SimilarityMatrix(Arrays.asList(oaObjects));
+        smSimilarities.compute(clDistanceCalculator);
+        return smSimilarities;
+    }
+
+    /** Calculates the similarity between a cluster and the merge of two other
+     * clusters, given its similarities to the two clusters (the Lance-Williams
+     * update). In this algorithm the maximum of the two similarities is used.
+     *@param dSimilarityToFirst The similarity to the first merged cluster.
+     *@param iFirstSize The number of objects of the first merged cluster.
+     *@param dSimilarityToSecond The similarity to the second merged cluster.
+     *@param iSecondSize The number of objects of the second merged cluster.
+     *@return The similarity to the merged cluster.
+     */
+    protected double getMergedSimilarity(double dSimilarityToFirst, int iFirstSize,
+            double dSimilarityToSecond, int iSecondSize) {
+        return Math.max(dSimilarityToFirst, dSimilarityToSecond);
+    }
+
+    /** Calculates the merges of the clusters, using nearest-neighbour chains. The
+     * similarity matrix is updated in place.
+     *@param smSimilarities The similarities between objects, as returned by
+     * {@link #getObjectSimilarities(Object[], SimilarityComparatorListener)}.
+     *@return The merges, in the order they were found. Every merge refers to
+     * its clusters by the smallest index of their objects.
+     */
+    protected List<Merge> getMerges(SimilarityMatrix smSimilarities) {
+        int iCount = smSimilarities.size();
+        List<Merge> lRes = new ArrayList<Merge>(iCount - 1);
+        boolean[] baActive = new boolean[iCount];
+        Arrays.fill(baActive, true);
+        int[] iaSizes = new int[iCount];
+        Arrays.fill(iaSizes, 1);
+        int[] iaChain = new int[iCount];
+        int iChainLength = 0;
+        int iFirstActive = 0;
+
+        while (lRes.size() < iCount - 1) {
+            if (iChainLength == 0) {
+                while (!baActive[iFirstActive])
+                    iFirstActive++;
+                iaChain[iChainLength++] = iFirstActive;
+            }
+            int iCur = iaChain[iChainLength - 1];
+            int iPrevious = (iChainLength > 1) ? iaChain[iChainLength - 2] : -1;
+            // Find the nearest neighbour, preferring the previous chain element on
+            // ties, so that the chain always ends
+            int iNearest = iPrevious;
+            double dNearest = (iPrevious < 0) ? Double.NEGATIVE_INFINITY :
+                    comparable(smSimilarities.getSimilarity(iCur, iPrevious));
+            for (int iCnt = iFirstActive; iCnt < iCount; iCnt++) {
+                if (!baActive[iCnt] || (iCnt == iCur))
+                    continue;
+                double dCur = comparable(smSimilarities.getSimilarity(iCur, iCnt));
+                if ((iNearest < 0) || (dCur > dNearest)) {
+                    iNearest = iCnt;
+                    dNearest = dCur;
                 }
-                    
-            } catch (Exception ex) {
-                ex.printStackTrace(System.err);
             }
-            // Add last time to ClusteringsInTime
-            ClusteringsInTime.add(0, RCur);
+            if (iNearest != iPrevious) {
+                iaChain[iChainLength++] = iNearest;
+                continue;
+            }
+
+            // Reciprocal nearest neighbours: merge them into the lower index
+            iChainLength -= 2;
+            int iKept = Math.min(iCur, iNearest);
+            int iRemoved = Math.max(iCur, iNearest);
+            lRes.add(new Merge(iKept, iRemoved,
+                    smSimilarities.getSimilarity(iKept, iRemoved)));
+            for (int iCnt = iFirstActive; iCnt < iCount; iCnt++) {
+                if (!baActive[iCnt] || (iCnt == iKept) || (iCnt == iRemoved))
+                    continue;
+                double dToKept = smSimilarities.getSimilarity(iKept, iCnt);
+                double dToRemoved = smSimilarities.getSimilarity(iRemoved, iCnt);
+                // Pairs that could not be compared do not affect the result
+                if (Double.isNaN(dToKept))
+                    smSimilarities.setSimilarity(iKept, iCnt, dToRemoved);
+                else if (!Double.isNaN(dToRemoved))
+                    smSimilarities.setSimilarity(iKept, iCnt, getMergedSimilarity(
+                            dToKept, iaSizes[iKept], dToRemoved, iaSizes[iRemoved]));
+            }
+            baActive[iRemoved] = false;
+            iaSizes[iKept] += iaSizes[iRemoved];
+        }
+        return lRes;
+    }
+
+    private static double comparable(double dSimilarity) {
+        return Double.isNaN(dSimilarity) ? Double.NEGATIVE_INFINITY : dSimilarity;
+    }
+
+    private static int findRoot(int[] iaParents, int iCur) {
+        while (iaParents[iCur] != iCur) {
+            iaParents[iCur] = iaParents[iaParents[iCur]];
+            iCur = iaParents[iCur];
+        }
+        return iCur;
+    }
+
+    /** Adds the merge of two clusters to the hierarchy.
+     *@param sFirst The first merged cluster.
+     *@param sSecond The second merged cluster.
+     *@param sMerged The merged cluster.
+     */
+    protected void addMergeToHierarchy(Set sFirst, Set sSecond, Set sMerged) {
+        // Show merging in hierarchy
+        try {
+            Vertex v1 = new VertexImpl(sFirst);
+
+            String sName1 = utils.printSortIterable(sFirst, CLUSTER_NAME_SEPARATOR);
+            v1.setLabel(sName1);
+            Vertex v2 = new VertexImpl(sSecond);
+            String sName2 = utils.printSortIterable(sSecond, CLUSTER_NAME_SEPARATOR);
+            v2.setLabel(sName2);
+            Vertex vPar = new VertexImpl(sMerged);
+
+            // Extract names from clusters, back into their parts
+            // and add all into a single set
+            Set<String> sNames = new HashSet<String>();
+            sNames.addAll(Arrays.asList(sName1.split(CLUSTER_NAME_SEPARATOR)));
+            sNames.addAll(Arrays.asList(sName2.split(CLUSTER_NAME_SEPARATOR)));
+
+            // Create name of new cluster, based on all parts
+            String sNameParent = utils.printSortIterable(sNames, 
+                    CLUSTER_NAME_SEPARATOR);
+            vPar.setLabel(sNameParent);
+            // DEBUG LINES
+            // System.err.println("Added cluster " + sNameParent);
+            //////////////
+
+            try {
+                if (Hierarchy.contains(v1))
+                    v1 = Hierarchy.locateVertex(v1);
+                if (Hierarchy.contains(vPar))
+                    vPar = Hierarchy.locateVertex(vPar);
+
+                Hierarchy.addEdge(new DirectedEdgeImpl(v1, vPar));
+            }
+            catch (Exception e) {
+                // Ignore. Edge already exists.
+            }
+
+            try {
+                if (Hierarchy.contains(v2))
+                    v2 = Hierarchy.locateVertex(v2);
+                if (Hierarchy.contains(vPar))
+                    vPar = Hierarchy.locateVertex(vPar);
+                Hierarchy.addEdge(new DirectedEdgeImpl(v2, vPar));
+            }
+            catch (Exception e) {
+                // Ignore. Edge already exists.
+            }
+
+        } catch (Exception ex) {
+            ex.printStackTrace(System.err);
         }
-        
     }
     
     public UniqueVertexGraph getHierarchy() {
         return Hierarchy;
     }
     
-    /** Calculates the similarity between two clusters. In this algorithm the 
-     * maximum similarity over all pairs of the two clusters is used.
+    /** Calculates the similarity between two clusters from scratch. In this
+     * algorithm the maximum similarity over all pairs of the two clusters is used.
+     * The clustering itself uses the equivalent, incremental
+     * {@link #getMergedSimilarity(double, int, double, int)}.
      *@param sClusterOne The first cluster.
      *@param sClusterTwo The second cluster.
      *@param clDistanceCalculator The calculator of distance between set elements.
@@ -221,6 +337,22 @@ public class SingleLinkClusterer implements IClusterer {
         return dDistances.maxValue();
     }
 
+    /** A merge of two clusters, found by {@link #getMerges(SimilarityMatrix)}. */
+    protected static class Merge {
+        /** The smallest object index of the first cluster. */
+        public final int First;
+        /** The smallest object index of the second cluster. */
+        public final int Second;
+        /** The similarity between the clusters. */
+        public final double Similarity;
+
+        public Merge(int iFirst, int iSecond, double dSimilarity) {
+            First = iFirst;
+            Second = iSecond;
+            Similarity = dSimilarity;
+        }
+    }
+
     // Testing function
     public static void main(String[] args) {
         SingleLinkClusterer s = new SingleLinkClusterer();
@@ -38,12 +38,14 @@ import java.util.TreeSet;
 import gr.demokritos.iit.jinsect.structs.CategorizedFileEntry;
 import gr.demokritos.iit.jinsect.structs.DocumentSet;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
+import gr.demokritos.iit.jinsect.structs.SimilarityMatrix;
+import gr.demokritos.iit.jinsect.structs.SimpleSimilarity;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.NGramDocument;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextDocument;
 import gr.demokritos.iit.jinsect.documentModel.comparators.StandardDocumentComparator;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import gr.demokritos.iit.jinsect.structs.ISimilarity;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import salvo.jesus.graph.Edge;
 import salvo.jesus.graph.Vertex;
 import salvo.jesus.graph.VertexImpl;
@@ -158,7 +160,7 @@ public class casc {
             //System.out.println("Our Implementation Similarity between dummy and default:" + distance);
         }
         
-        ThreadList tRandoms = new ThreadList(4);
+        TaskGroup tRandoms = new TaskGroup(4);
         
         if (bCalcRandom) {
             System.out.println("Calculating average random graph distance...");
@@ -167,7 +169,7 @@ public class casc {
                 try {
                         final CASCGraph gDefaultArg = gDefault;
                         // Multi-threading
-                        while (!tRandoms.addThreadFor(new Runnable() {
+                        tRandoms.execute(new Runnable() {
                             public void run() {
                                 CASCGraph gRandom=getRandomGraph();
 
@@ -180,8 +182,7 @@ public class casc {
                                     System.err.print(".");
                                 }
                             }
-                        }))
-                            Thread.yield();
+                        });
                 }
                 catch (Exception e) {
                     continue;
@@ -332,7 +333,7 @@ public class casc {
         System.err.println("Processing documents.");
         // For all documents
         Iterator iDocIter = dsSrc.getTrainingSet().iterator();
-        ThreadList t = new ThreadList(4);
+        TaskGroup t = new TaskGroup(4);
         
         while (iDocIter.hasNext()) {
             // Get n-gram document
@@ -340,7 +341,7 @@ public class casc {
             System.err.print(".");
            
             // Multi-threading
-            while (!t.addThreadFor(new Runnable() {
+            t.execute(new Runnable() {
                 public void run() {
                     String sCurDoc = gr.demokritos.iit.jinsect.utils.loadFileToString(sFile);
                     // and store
@@ -348,8 +349,7 @@ public class casc {
                         hmDocumentIndex.put(sFile, sCurDoc);
                     }
                 }
-            }))
-                Thread.yield();
+            });
             
         }
         try {
@@ -363,92 +363,20 @@ public class casc {
         
         CASCGraph gTree = new CASCGraph();
         
-        int iTotalSize = dsSrc.getTrainingSet().size();
-        int iCurProgress = 0;
-        
-        
         // First pass
-        // For every document
-        iDocIter = dsSrc.getTrainingSet().iterator();
-        
-        while (iDocIter.hasNext()) {
-            double dMaxSimil = Double.NEGATIVE_INFINITY;
-            String sParentDoc = null;            
-            String sCurDoc = ((CategorizedFileEntry)iDocIter.next()).getFileName();
-            
-            // Compare with every other document
-            Iterator iCompareToIter = dsSrc.getTrainingSet().iterator();
-            // Multi-threading
-            final Distribution dSimils = new Distribution();
-            while (iCompareToIter.hasNext()) {
-                String sCompareToDoc = ((CategorizedFileEntry)iCompareToIter.next()).getFileName();
-                // Ignore self and parent
-                if (sCompareToDoc.equals(sCurDoc)) {
-                    // System.err.println("Ignoring " + sCompareToDoc);
-                    continue;
-                }
-                // and already connected documents
-                if (gr.demokritos.iit.jinsect.utils.locateEdgeInGraph(gTree, getFileNameOnly(sCompareToDoc), 
-                        getFileNameOnly(sCurDoc)) != null)
-                {
-                    // System.err.println("Ignoring " + sCompareToDoc + " as already connected.");
-                    continue;
-                }
-                
-                final String sCurDocArg = sCurDoc;
-                final String sCompareToDocArg = sCompareToDoc;
-                while (!t.addThreadFor(new Runnable() {
-                    public void run() {
-                        // Actually compare
-                        double dSimil = 0.0;
-                        synchronized (hmDocumentIndex) {
-                            dSimil = 
-                                org.apache.commons.lang.StringUtils.getLevenshteinDistance(
-                                    (String)hmDocumentIndex.get(sCurDocArg),
-                                    (String)hmDocumentIndex.get(sCompareToDocArg));
-                        }
-
-                        // Check for max similarity
-                        synchronized (dSimils) {
-                            dSimils.setValue(sCompareToDocArg, dSimil);
-                            //synchronized (System.err) {
-                                //System.err.println(sCurDocArg + "-" + sCompareToDocArg + ":"
-                                        //+ dSimil);
-                            //}
-                        }
-                        
-                        synchronized (dDist) {
-                            // Increase occurence of similarity
-                            dDist.setValue(dSimil, 
-                                    dDist.getValue(dSimil) + 1);
-                        }
-                    }
-                }))
-                    Thread.yield();
-            }
-            
-            try {
-                t.waitUntilCompletion();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace(System.err);
-                return null;
-            }
-            
-            dMaxSimil = dSimils.maxValue();
-            sParentDoc = (String)dSimils.getKeyOfMaxValue();
-            
-            try {
-                // Get maximum similarity document as parent
-                gTree.addEdge(new VertexImpl(getFileNameOnly(sParentDoc)), 
-                        new VertexImpl(getFileNameOnly(sCurDoc)), dMaxSimil);
-            } catch (Exception ex) {
-                System.err.println("Cannot add edge...");
-                ex.printStackTrace(System.err);
+        // Compare every pair of documents once
+        List<String> lFiles = getFileNames(dsSrc);
+        List<Object> lTexts = new ArrayList<Object>();
+        for (String sFile : lFiles)
+            lTexts.add(hmDocumentIndex.get(sFile));
+        if (!linkMostSimilar(gTree, lFiles, lTexts, new SimilarityComparatorListener() {
+            public ISimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
+                return new SimpleSimilarity(
+                        org.apache.commons.lang.StringUtils.getLevenshteinDistance(
+                            (String)oFirst, (String)oSecond));
             }
-            iCurProgress ++;
-            System.err.print(String.format("Progress %2.2f %%\r", 100.0 * 
-                    (double)iCurProgress  / iTotalSize));
-        }
+        }, dDist, false))
+            return null;
         System.err.println("Complete.");
         
         System.err.println("Similarity distribution:" + dDist.average(false) + "," + 
@@ -483,6 +411,76 @@ public class casc {
         return gTree;
     }
     
+    /** Returns the file names of the training documents of a set, in order.
+     *@param dsSrc The document set.
+     *@return The file names.
+     */
+    protected static List<String> getFileNames(DocumentSet dsSrc) {
+        List<String> lRes = new ArrayList<String>();
+        Iterator iDocIter = dsSrc.getTrainingSet().iterator();
+        while (iDocIter.hasNext())
+            lRes.add(((CategorizedFileEntry)iDocIter.next()).getFileName());
+        return lRes;
+    }
+
+    /** Connects every document to the most similar document that is not already
+     * connected to it, in the order of the documents. The similarities of all
+     * pairs are calculated once, in parallel, by a {@link SimilarityMatrix}.
+     *@param gTree The tree to add the edges to.
+     *@param lFiles The file names of the documents.
+     *@param lDocs The compared objects of the documents, in the same order.
+     *@param sclComparator The calculator of similarity between the objects.
+     *@param dDist The distribution of similarities, which counts the similarity
+     * of every pair considered.
+     *@param bSilent If true, no progress is shown.
+     *@return False if the calculation was interrupted.
+     */
+    protected static boolean linkMostSimilar(CASCGraph gTree, List<String> lFiles,
+            List<Object> lDocs, SimilarityComparatorListener sclComparator,
+            Distribution dDist, boolean bSilent) {
+        SimilarityMatrix smSimilarities = new SimilarityMatrix(lDocs);
+        try {
+            smSimilarities.compute(sclComparator);
+        } catch (InterruptedException ex) {
+            ex.printStackTrace(System.err);
+            return false;
+        }
+        
+        int iTotalSize = lFiles.size();
+        for (int iCur = 0; iCur < iTotalSize; iCur++) {
+            String sCurDoc = lFiles.get(iCur);
+            Distribution dSimils = new Distribution();
+            for (int iCompareTo = 0; iCompareTo < iTotalSize; iCompareTo++) {
+                String sCompareToDoc = lFiles.get(iCompareTo);
+                // Ignore self
+                if (sCompareToDoc.equals(sCurDoc))
+                    continue;
+                // and already connected documents
+                if (gr.demokritos.iit.jinsect.utils.locateEdgeInGraph(gTree,
+                        getFileNameOnly(sCompareToDoc), getFileNameOnly(sCurDoc)) != null)
+                    continue;
+                double dSimil = smSimilarities.getSimilarity(iCur, iCompareTo);
+                dSimils.setValue(sCompareToDoc, dSimil);
+                // Increase occurence of similarity
+                dDist.setValue(dSimil, dDist.getValue(dSimil) + 1);
+            }
+            
+            try {
+                // Get maximum similarity document as parent
+                gTree.addEdge(new VertexImpl(getFileNameOnly(
+                        (String)dSimils.getKeyOfMaxValue())),
+                        new VertexImpl(getFileNameOnly(sCurDoc)), dSimils.maxValue());
+            } catch (Exception ex) {
+                System.err.println("Cannot add edge...");
+                ex.printStackTrace(System.err);
+            }
+            if (!bSilent)
+                System.err.print(String.format("Progress %2.2f %%\r", 100.0 * 
+                    (double)(iCur + 1)  / iTotalSize));
+        }
+        return true;
+    }
+    
     /** Returns a list iterator object that runs through the edge set of a given graph
      * in weight ascending order.
      *@param g The given {@link UniqueVertexGraph}.
@@ -529,7 +527,7 @@ public class casc {
             System.err.println("Processing documents.");
         // For all documents
         Iterator iDocIter = dsSrc.getTrainingSet().iterator();
-        ThreadList t = new ThreadList(4);
+        TaskGroup t = new TaskGroup(4);
         
         while (iDocIter.hasNext()) {
             // Get n-gram document
@@ -540,7 +538,7 @@ public class casc {
             final NGramDocument dCurDoc = new NGramDocument(iMinNGram, iMaxNGram, iDist,
                     iMinNGram, iMaxNGram);
             // Multi-threading
-            while (!t.addThreadFor(new Runnable() {
+            t.execute(new Runnable() {
                 public void run() {
                     synchronized (dCurDoc) {
                         dCurDoc.loadDataStringFromFile(sFile);
@@ -550,8 +548,7 @@ public class casc {
                         hmDocumentIndex.put(sFile, dCurDoc);
                     }
                 }
-            }))
-                Thread.yield();
+            });
             
             if (!bSilent)
                 System.err.print(".");
@@ -603,105 +600,27 @@ public class casc {
         
         CASCGraph gTree = new CASCGraph();
         
-        int iTotalSize = dsSrc.getTrainingSet().size();
-        int iCurProgress = 0;
-        
-        
         // First pass
-        // For every document
-        iDocIter = dsSrc.getTrainingSet().iterator();
-        
-        while (iDocIter.hasNext()) {
-            double dMaxSimil = Double.NEGATIVE_INFINITY;
-            String sParentDoc = null;            
-            String sCurDoc = ((CategorizedFileEntry)iDocIter.next()).getFileName();
-            
-            // Compare with every other document
-            Iterator iCompareToIter = dsSrc.getTrainingSet().iterator();
-            // Multi-threading
-            final Distribution dSimils = new Distribution();
-            while (iCompareToIter.hasNext()) {
-                String sCompareToDoc = ((CategorizedFileEntry)iCompareToIter.next()).getFileName();
-                // Ignore self and parent
-                if (sCompareToDoc.equals(sCurDoc)) {
-                    //System.err.println("Ignoring " + sCompareToDoc);
-                    continue;
+        // Compare every pair of documents once
+        List<String> lFiles = getFileNames(dsSrc);
+        List<Object> lDocs = new ArrayList<Object>();
+        for (String sFile : lFiles)
+            lDocs.add(hmDocumentIndex.get(sFile));
+        if (!linkMostSimilar(gTree, lFiles, lDocs, new SimilarityComparatorListener() {
+            public ISimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
+                StandardDocumentComparator sdcComparator = 
+                        new StandardDocumentComparator(dGraphImportance);
+                try {
+                    return sdcComparator.getSimilarityBetween(oFirst, oSecond);
                 }
-                // and already connected documents
-                if (gr.demokritos.iit.jinsect.utils.locateEdgeInGraph(gTree, getFileNameOnly(sCompareToDoc), 
-                        getFileNameOnly(sCurDoc)) != null)
-                {
-                    //System.err.println("Ignoring " + sCompareToDoc + " as already connected.");
-                    continue;
+                catch (InvalidClassException ice) {
+                    System.err.println("Cannot happen...");
+                    ice.printStackTrace(System.err);
+                    return new GraphSimilarity();
                 }
-                
-                final String sCurDocArg = sCurDoc;
-                final String sCompareToDocArg = sCompareToDoc;
-                
-                while (!t.addThreadFor(new Runnable() {
-                    public void run() {
-                        ///////////////////////
-                        StandardDocumentComparator sdcComparator = 
-                                new StandardDocumentComparator(dGraphImportance);
-                        // Actually compare
-                        GraphSimilarity sSimil;
-                        try {                    
-                            synchronized (hmDocumentIndex) {
-                                sSimil = sdcComparator.getSimilarityBetween(
-                                        (NGramDocument)hmDocumentIndex.get(sCurDocArg),
-                                        (NGramDocument)hmDocumentIndex.get(sCompareToDocArg));
-                            }
-                        }
-                        catch (InvalidClassException ice) {
-                            System.err.println("Cannot happen...");
-                            ice.printStackTrace(System.err);
-                            sSimil = new GraphSimilarity();
-                        }
-
-                        // Check for max similarity
-                        synchronized (dSimils) {
-                            dSimils.setValue(sCompareToDocArg, sSimil.getOverallSimilarity());
-                            synchronized (System.err) {
-                                //System.err.println(sCurDocArg + "-" + sCompareToDocArg + ":"
-                                        //+ sSimil.getOverallSimilarity());
-                            }
-                        }
-
-                        synchronized (dDist) {
-                            // Increase occurence of similarity
-                            dDist.setValue(sSimil.getOverallSimilarity(), 
-                                    dDist.getValue(sSimil.getOverallSimilarity()) + 1);
-                        }
-
-                        ///////////////////////
-                    }
-                }))
-                    Thread.yield();
             }
-            
-            try {
-                t.waitUntilCompletion();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace(System.err);
-                return null;
-            }
-            
-            dMaxSimil = dSimils.maxValue();
-            sParentDoc = (String)dSimils.getKeyOfMaxValue();
-            
-            try {
-                // Get maximum similarity document as parent
-                gTree.addEdge(new VertexImpl(getFileNameOnly(sParentDoc)), 
-                        new VertexImpl(getFileNameOnly(sCurDoc)), dMaxSimil);
-            } catch (Exception ex) {
-                System.err.println("Cannot add edge...");
-                ex.printStackTrace(System.err);
-            }
-            iCurProgress ++;
-            if (!bSilent)
-                System.err.print(String.format("Progress %2.2f %%\r", 100.0 * 
-                    (double)iCurProgress  / iTotalSize));
-        }
+        }, dDist, bSilent))
+            return null;
         if (!bSilent)
             System.err.println("Complete.");
         
@@ -759,7 +678,7 @@ public class casc {
         System.err.println("Processing documents.");
         // For all documents
         Iterator iDocIter = dsSrc.getTrainingSet().iterator();
-        ThreadList t = new ThreadList(4);
+        TaskGroup t = new TaskGroup(4);
         
         while (iDocIter.hasNext()) {
             // Get n-gram document
@@ -768,7 +687,7 @@ public class casc {
             System.err.print(".");
            
             // Multi-threading
-            while (!t.addThreadFor(new Runnable() {
+            t.execute(new Runnable() {
                 public void run() {
                     synchronized (dCurDoc) {
                         dCurDoc.loadDataStringFromFile(sFile);
@@ -778,8 +697,7 @@ public class casc {
                         hmDocumentIndex.put(sFile, dCurDoc);
                     }
                 }
-            }))
-                Thread.yield();
+            });
             
         }
         try {
@@ -11,16 +11,27 @@ import gr.demokritos.iit.conceptualIndex.structs.Distribution;
 import gr.demokritos.iit.jinsect.algorithms.statistics.statisticalCalculation;
 import gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 //import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextCategory;
 //import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextDocument;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
-import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
 import gr.demokritos.iit.jinsect.events.CalculatorAdapter;
 import gr.demokritos.iit.jinsect.indexing.NamedDocumentNGramGraph;
 import gr.demokritos.iit.jinsect.storage.INSECTDB;
+import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
 import gr.demokritos.iit.jinsect.structs.Decision;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import java.util.logging.Level;
@@ -37,6 +48,26 @@ public class Decider {
     //protected List Categories;
     /** The {@link INSECTDB} repository of data used. */
     protected INSECTDB Repository;
+    /** If true, categories are compared as resident {@link FrozenNGramGraph}
+     * models, instead of being loaded from the repository for every document. */
+    protected boolean UseCompiledModels = false;
+    /** If true, compiled models are memory mapped graphs, read in place from
+     * files of an {@link INSECTFileDB} repository (see
+     * {@link INSECTFileDB#loadMappedGraph(String, String)}). */
+    protected boolean UseMappedModels = false;
+    /** The compiled models of the categories, by category name. */
+    protected final ConcurrentHashMap<String, FrozenNGramGraph> CompiledModels =
+            new ConcurrentHashMap<String, FrozenNGramGraph>();
+    /** The pool used to classify documents and score categories in parallel. */
+    protected ForkJoinPool Pool = ForkJoinPool.commonPool();
+    /** The maximum number of documents classified concurrently by a batch. */
+    protected int BatchWindow = 2 * Runtime.getRuntime().availableProcessors();
+    /** Increased whenever compiled models are invalidated, so that models compiled
+     * from outdated categories are not kept. Guarded by CompiledModels. */
+    protected long CompiledModelsGeneration = 0;
+    /** A graph with the parameters used for the graphs of the documents. */
+    protected static final NamedDocumentNGramGraph PlainDocumentGraph =
+            new NamedDocumentNGramGraph();
     
     /** Creates a new instance of Decider, given a repository of data.
      *@param dbRepository The repository to use.
@@ -52,6 +83,91 @@ public class Decider {
      **/
     public void setRepository(INSECTDB dbRepository) {
         Repository = dbRepository;
+        invalidateCompiledModels();
+    }
+
+    /** Sets whether categories are compiled into resident, read-only models. A
+     * compiled model is created the first time a category is used and is kept
+     * until the category is changed through this Decider (see
+     * {@link #addEvidence(Decision, String)}). Changes to the repository made
+     * by other means require a call to {@link #invalidateCompiledModels()}.
+     *@param bUseCompiledModels If true, compiled models are used.
+     */
+    public void setUseCompiledModels(boolean bUseCompiledModels) {
+        UseCompiledModels = bUseCompiledModels;
+        if (!bUseCompiledModels)
+            invalidateCompiledModels();
+    }
+
+    public boolean isUsingCompiledModels() {
+        return UseCompiledModels;
+    }
+
+    /** Sets whether compiled models are memory mapped from the files of the
+     * repository, instead of being created in the heap. Mapped models take no
+     * time to load and are shared among processes using the same repository.
+     * Only applies to compiled models (see {@link #setUseCompiledModels(boolean)})
+     * and {@link INSECTFileDB} repositories.
+     *@param bUseMappedModels If true, mapped models are used.
+     */
+    public void setUseMappedModels(boolean bUseMappedModels) {
+        UseMappedModels = bUseMappedModels;
+        invalidateCompiledModels();
+    }
+
+    public boolean isUsingMappedModels() {
+        return UseMappedModels;
+    }
+
+    /** Discards the compiled model of a given category, if any.
+     *@param sCategory The name of the category.
+     */
+    public void invalidateCompiledModel(String sCategory) {
+        synchronized (CompiledModels) {
+            CompiledModelsGeneration++;
+            CompiledModels.remove(sCategory);
+        }
+    }
+
+    /** Discards the compiled models of all categories. */
+    public void invalidateCompiledModels() {
+        synchronized (CompiledModels) {
+            CompiledModelsGeneration++;
+            CompiledModels.clear();
+        }
+    }
+
+    /** Returns the compiled model of a category, loading the category from the
+     * repository and compiling it if needed.
+     *@param sCategory The name of the category.
+     *@return The compiled model, or null if the category could not be loaded.
+     */
+    protected FrozenNGramGraph getCompiledModel(String sCategory) {
+        FrozenNGramGraph fgRes = CompiledModels.get(sCategory);
+        if (fgRes != null)
+            return fgRes;
+
+        long lGeneration;
+        synchronized (CompiledModels) {
+            lGeneration = CompiledModelsGeneration;
+        }
+        if (UseMappedModels && (Repository instanceof INSECTFileDB))
+            fgRes = ((INSECTFileDB)Repository).loadMappedGraph(sCategory,
+                    INSECTDB.CATEGORY_TYPE);
+        else {
+            NamedDocumentNGramGraph ic = (NamedDocumentNGramGraph)Repository.loadObject(
+                    sCategory, INSECTDB.CATEGORY_TYPE);
+            if (ic != null)
+                fgRes = new FrozenNGramGraph(ic);
+        }
+        if (fgRes == null)
+            return null;
+        synchronized (CompiledModels) {
+            // Only keep the model if the category has not changed meanwhile
+            if (lGeneration == CompiledModelsGeneration)
+                CompiledModels.put(sCategory, fgRes);
+        }
+        return fgRes;
     }
     
     /*
@@ -70,7 +186,7 @@ public class Decider {
      **/
     public Decision suggestCategory(String sFilename) {
         // Load file
-        DocumentNGramGraph dDoc = new DocumentNGramSymWinGraph();
+        DocumentNGramGraph dDoc = new NamedDocumentNGramGraph();
         try {
             dDoc.loadDataStringFromFile(sFilename);
         } catch (IOException ex) {
@@ -87,6 +203,9 @@ public class Decider {
      *@return A {@link Decision} indicating the suggestion of category for the given file.
      **/
     protected Decision suggestCategory(DocumentNGramGraph dDoc) {
+        if (UseCompiledModels)
+            return suggestCategoryCompiled(dDoc);
+        
         HashMap hResults = new HashMap();
         // For each category
         Iterator iIter = Arrays.asList(getAvailableCategories()).iterator();
@@ -132,6 +251,187 @@ public class Decider {
                     hResults);
     }
     
+    /** Suggests a category for the given document, using the compiled models of
+     * the categories.
+     *@param dDoc The document the category of which is to be determined.
+     *@return A {@link Decision} indicating the suggestion of category for the given file.
+     **/
+    protected Decision suggestCategoryCompiled(DocumentNGramGraph dDoc) {
+        return suggestCategory(dDoc, getCategoryModels());
+    }
+
+    /** Suggests categories for a number of files. The graph of every document is
+     * created once and compared to all the categories in parallel, while up to
+     * {@link #getBatchWindow()} documents are classified concurrently. The
+     * categories are read once, when iteration starts; later changes to the
+     * categories do not affect an ongoing iteration.
+     *@param iFilenames The paths to the files under review.
+     *@return The decisions for the files, in the order of the files, calculated
+     * as the results are iterated. The decision for a file that cannot be read
+     * is null.
+     **/
+    public Iterable<Decision> suggestCategories(final Iterable<String> iFilenames) {
+        return new Iterable<Decision>() {
+            @Override
+            public Iterator<Decision> iterator() {
+                return new BatchIterator<String>(iFilenames.iterator()) {
+                    @Override
+                    protected DocumentNGramGraph createDocument(String sFilename) {
+                        DocumentNGramGraph dDoc = new NamedDocumentNGramGraph();
+                        try {
+                            dDoc.loadDataStringFromFile(sFilename);
+                        } catch (IOException ex) {
+                            Logger.getLogger(Decider.class.getName()).log(Level.SEVERE, null, ex);
+                            return null;
+                        }
+                        return dDoc;
+                    }
+                };
+            }
+        };
+    }
+
+    /** Returns the categories prepared for scoring: the compiled models, if
+     * compiled models are used, or else newly loaded and frozen categories.
+     *@return The available categories that could be loaded.
+     */
+    protected List<CategoryModel> getCategoryModels() {
+        List<CategoryModel> lRes = new ArrayList<CategoryModel>();
+        for (String sCategory : getAvailableCategories()) {
+            if (UseCompiledModels) {
+                FrozenNGramGraph fgCategory = getCompiledModel(sCategory);
+                if (fgCategory != null)
+                    lRes.add(new CategoryModel(sCategory, null, fgCategory));
+            }
+            else {
+                NamedDocumentNGramGraph ic = (NamedDocumentNGramGraph)Repository.loadObject(
+                        sCategory, INSECTDB.CATEGORY_TYPE);
+                if (ic != null)
+                    lRes.add(new CategoryModel(ic.getName(), ic, new FrozenNGramGraph(ic)));
+            }
+        }
+        return lRes;
+    }
+
+    /** Suggests a category for the given document among a set of prepared
+     * categories. The document graph is created once for every distinct filtered
+     * text and the categories are scored in parallel.
+     *@param dDoc The document the category of which is to be determined.
+     *@param lCategories The categories to choose from.
+     *@return A {@link Decision} indicating the suggestion of category for the given file.
+     **/
+    protected Decision suggestCategory(DocumentNGramGraph dDoc,
+            List<CategoryModel> lCategories) {
+        // Create the document graphs, sharing them among categories
+        Map<String, FrozenNGramGraph> mDocs = new HashMap<String, FrozenNGramGraph>();
+        final FrozenNGramGraph[] faDocs = new FrozenNGramGraph[lCategories.size()];
+        for (int iCnt = 0; iCnt < faDocs.length; iCnt++) {
+            CategoryModel cmCur = lCategories.get(iCnt);
+            String sDataString = (cmCur.Graph == null) ?
+                filterDataString(dDoc.getDataString(), cmCur.Name) :
+                filterDataString(dDoc.getDataString(), cmCur.Graph);
+            faDocs[iCnt] = mDocs.get(sDataString);
+            if (faDocs[iCnt] == null) {
+                if (sDataString.equals(dDoc.getDataString()) &&
+                        isPlainDocumentGraph(dDoc))
+                    // Unfiltered text: reuse the graph of the document
+                    faDocs[iCnt] = new FrozenNGramGraph(dDoc);
+                else {
+                    NamedDocumentNGramGraph stdTemp = new NamedDocumentNGramGraph();
+                    stdTemp.setDataString(sDataString);
+                    faDocs[iCnt] = new FrozenNGramGraph(stdTemp);
+                }
+                mDocs.put(sDataString, faDocs[iCnt]);
+            }
+        }
+        
+        // Score categories
+        final List<ForkJoinTask<Double>> lScores = new ArrayList<ForkJoinTask<Double>>();
+        for (int iCnt = 0; iCnt < faDocs.length; iCnt++) {
+            final FrozenNGramGraph fgCategory = lCategories.get(iCnt).Model;
+            final FrozenNGramGraph fgDoc = faDocs[iCnt];
+            lScores.add(ForkJoinTask.adapt(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return finalSimilarity(new NGramCachedGraphComparator(true).getSimilarityBetween(
+                            fgCategory, fgDoc));
+                }
+            }));
+        }
+        if (ForkJoinTask.inForkJoinPool())
+            ForkJoinTask.invokeAll(lScores);
+        else
+            Pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(lScores);
+                }
+            });
+        
+        // Gather results in category order
+        HashMap hResults = new HashMap();
+        String sSelectedCategory = null;
+        double dMaxSimilarity = -1.0;
+        Distribution<String> dEvidence = new Distribution<String>();
+        for (int iCnt = 0; iCnt < faDocs.length; iCnt++) {
+            String sCategory = lCategories.get(iCnt).Name;
+            double dCurSimilarity = lScores.get(iCnt).join();
+            // Store in hash
+            hResults.put(sCategory, dCurSimilarity); // FIRST put the numeric value to sort
+            if (dCurSimilarity > dMaxSimilarity) {
+                sSelectedCategory = sCategory;
+                dMaxSimilarity = dCurSimilarity;
+            }
+            dEvidence.setValue(sCategory, dCurSimilarity);
+        }
+        // Returns results if necessary
+        double dEntropy = statisticalCalculation.entropy(
+                dEvidence.getProbabilityDistribution());
+        return new Decision(dDoc, sSelectedCategory,
+                dEntropy == 0 ? 1.0 : Math.min(1.0, 1.0 / (Math.pow(2, dEntropy))),
+                    hResults);
+    }
+
+    /** Sets the maximum number of documents classified concurrently by
+     * {@link #suggestCategories(Iterable)}, which bounds the memory used by a batch.
+     *@param iBatchWindow The number of documents, which must be positive.
+     */
+    public void setBatchWindow(int iBatchWindow) {
+        if (iBatchWindow <= 0)
+            throw new IllegalArgumentException("Batch window must be positive.");
+        BatchWindow = iBatchWindow;
+    }
+
+    public int getBatchWindow() {
+        return BatchWindow;
+    }
+
+    /** Sets the pool used to classify documents and score categories in parallel.
+     *@param fjpPool The pool to use.
+     */
+    public void setForkJoinPool(ForkJoinPool fjpPool) {
+        Pool = fjpPool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return Pool;
+    }
+
+    /** Indicates whether a document graph is built exactly as the graphs the
+     * filtered texts are compared with, i.e. as a {@link NamedDocumentNGramGraph}
+     * with the default parameters and no listeners.
+     *@param dDoc The document graph to check.
+     *@return True if the levels of the graph can be used as-is, otherwise false.
+     */
+    protected static boolean isPlainDocumentGraph(DocumentNGramGraph dDoc) {
+        return (dDoc.getClass() == NamedDocumentNGramGraph.class) &&
+                (dDoc.getMinSize() == PlainDocumentGraph.getMinSize()) &&
+                (dDoc.getMaxSize() == PlainDocumentGraph.getMaxSize()) &&
+                (dDoc.getWindowSize() == PlainDocumentGraph.getWindowSize()) &&
+                (dDoc.Normalizer == null) && (dDoc.TextPreprocessor == null) &&
+                (dDoc.WordEvaluator == null);
+    }
+
     /** Filters a data string to keep only words concerning a single category.
      *@param sStr The string to filter.
      *@param cCat The category to use for filtering.
@@ -142,6 +442,18 @@ public class Decider {
         return sStr;
     }
 
+    /** Filters a data string to keep only words concerning a single category,
+     * when the category is only available as a compiled model. Used instead of
+     * {@link #filterDataString(String, NamedDocumentNGramGraph)} when compiled
+     * models are used.
+     *@param sStr The string to filter.
+     *@param sCategory The name of the category to use for filtering.
+     *@return A string including only appropriate words from the original string.
+     **/
+    protected String filterDataString(String sStr, String sCategory) {
+        return sStr;
+    }
+
     /**Calculates similarity of a document to a selected category.
      *@param dDoc The document.
      *@param cCat The category to use.
@@ -153,7 +465,15 @@ public class Decider {
         NGramCachedGraphComparator dcComp = new NGramCachedGraphComparator();
         GraphSimilarity sSimil = null;
         sSimil = dcComp.getSimilarityBetween(cCat, dDoc);
+        return finalSimilarity(sSimil);
+    }
 
+    /**Calculates the final similarity of a document to a category, given their
+     * graph similarity.
+     *@param sSimil The graph similarity of the category to the document.
+     *@return A measure of similarity of a given text to a given category, as a double number.
+     **/
+    private double finalSimilarity(GraphSimilarity sSimil) {
          // DEFAULT
 //        if (sSimil != null) 
 //            return sSimil.getOverallSimilarity();
@@ -183,6 +503,42 @@ public class Decider {
     public void addEvidence(DocumentNGramGraph dDoc, String sFinalCategory) {
         addEvidence(new Decision(dDoc, sFinalCategory, 1.0, new HashMap(0)), sFinalCategory);
     }
+
+    /** Updates the evidence of the determiner with a number of documents of the
+     * same category, with the same result as adding them one after the other with
+     * {@link #addEvidence(DocumentNGramGraph, String)}. The category is loaded and
+     * saved once, and the documents are merged into it at once (see
+     * {@link DocumentNGramGraph#mergeAll(List, double[])}).
+     *@param lDocs The documents, in the order they would be added.
+     *@param sFinalCategory The category of the documents.
+     **/
+    public void addEvidence(List<? extends DocumentNGramGraph> lDocs,
+            String sFinalCategory) {
+        if (lDocs.isEmpty())
+            return;
+        NamedDocumentNGramGraph cCat;
+        int iFirst = 0;
+        if (Repository.existsObject(sFinalCategory, INSECTDB.CATEGORY_TYPE))
+            cCat = (NamedDocumentNGramGraph)Repository.loadObject(sFinalCategory,
+                    INSECTDB.CATEGORY_TYPE);
+        else {
+            // The first document creates the category
+            cCat = new NamedDocumentNGramGraph();
+            cCat.setName(sFinalCategory);
+            cCat.setDataString(lDocs.get(0).getDataString());
+            iFirst = 1;
+        }
+        double dCatDocs = CategoryEvidenceCount.getValue(cCat.getName());
+        double[] daWeightPercents = new double[lDocs.size() - iFirst];
+        for (int iCnt = 0; iCnt < daWeightPercents.length; iCnt++) {
+            daWeightPercents[iCnt] = dCatDocs == 0 ? 1.0 : (dCatDocs / (dCatDocs + 1));
+            dCatDocs++;
+        }
+        cCat.mergeAll(lDocs.subList(iFirst, lDocs.size()), daWeightPercents);
+        CategoryEvidenceCount.increaseValue(cCat.getName(), daWeightPercents.length);
+        Repository.saveObject(cCat, sFinalCategory, INSECTDB.CATEGORY_TYPE);
+        invalidateCompiledModel(sFinalCategory);
+    }
     
     /** Updates the evidence of the determiner with new data, with respect to a previous
      * decision.
@@ -236,6 +592,7 @@ public class Decider {
                 cCat.setDataString(dDoc.getDataString());
                 Repository.saveObject(cCat, sFinalCategory, INSECTDB.CATEGORY_TYPE);
             }                    
+            invalidateCompiledModel(sFinalCategory);
 
             
             if (!sFinalCategory.equals(sSuggestedCategory))
@@ -247,6 +604,7 @@ public class Decider {
                     cCat.degrade(dDoc);
                     // Save object
                     Repository.saveObject(cCat, sSuggestedCategory, INSECTDB.CATEGORY_TYPE);
+                    invalidateCompiledModel(sSuggestedCategory);
                 }
             }
             
@@ -267,5 +625,78 @@ public class Decider {
         Iterator iIter = Arrays.asList(getAvailableCategories()).iterator();
         while (iIter.hasNext())
             Repository.deleteObject((String)iIter.next(), INSECTDB.CATEGORY_TYPE);
+        invalidateCompiledModels();
+    }
+
+    /** A category prepared for scoring. */
+    protected static class CategoryModel {
+        public final String Name;
+        /** The category graph, used for filtering, or null if the category is
+         * only available as a compiled model. */
+        public final NamedDocumentNGramGraph Graph;
+        public final FrozenNGramGraph Model;
+
+        public CategoryModel(String sName, NamedDocumentNGramGraph ngGraph,
+                FrozenNGramGraph fgModel) {
+            Name = sName;
+            Graph = ngGraph;
+            Model = fgModel;
+        }
+    }
+
+    /** Classifies a sequence of documents, keeping at most a window of documents in
+     * progress and returning the decisions in the order of the documents.
+     */
+    protected abstract class BatchIterator<T> implements Iterator<Decision> {
+        protected final Iterator<T> Source;
+        protected final List<CategoryModel> Categories;
+        protected final LinkedList<ForkJoinTask<Decision>> Pending =
+                new LinkedList<ForkJoinTask<Decision>>();
+
+        public BatchIterator(Iterator<T> iSource) {
+            Source = iSource;
+            Categories = getCategoryModels();
+            fill();
+        }
+
+        /** Creates the document graph of a source item.
+         *@param tItem The source item.
+         *@return The document graph, or null if it cannot be created.
+         */
+        protected abstract DocumentNGramGraph createDocument(T tItem);
+
+        /** Starts classifying source items, until the window is full. */
+        protected final void fill() {
+            while ((Pending.size() < BatchWindow) && Source.hasNext()) {
+                final T tItem = Source.next();
+                Pending.add(Pool.submit(new Callable<Decision>() {
+                    @Override
+                    public Decision call() {
+                        DocumentNGramGraph dDoc = createDocument(tItem);
+                        return (dDoc == null) ? null : suggestCategory(dDoc, Categories);
+                    }
+                }));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !Pending.isEmpty();
+        }
+
+        @Override
+        public Decision next() {
+            if (Pending.isEmpty())
+                throw new NoSuchElementException();
+            ForkJoinTask<Decision> fjtNext = Pending.removeFirst();
+            // Keep the window full while waiting
+            fill();
+            return fjtNext.join();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Decisions cannot be removed.");
+        }
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+
+/** A version of the ham and spam models of a {@link SpamFilterServer}, together
+ * with the training counts it reflects. A snapshot is never modified once it is
+ * published: training builds the next version from copies of the graphs, so any
+ * number of messages can be judged against a snapshot while the next one is
+ * being built.
+ *
+ * @author ggianna
+ */
+public final class ModelSnapshot {
+    private final DocumentNGramGraph Ham, Spam;
+    private final int HamCount, SpamCount, TrainedCount;
+    private final long Version;
+    /** The sequence number of the last training message reflected, as numbered
+     * by a {@link TrainingJournal}, or zero if not journaled. */
+    private final long LastSequence;
+
+    /** Creates a snapshot of untrained (empty) models. */
+    public ModelSnapshot() {
+        this(new DocumentNGramGraph(), new DocumentNGramGraph(), 0, 0, 0, 0, 0);
+    }
+
+    /** Creates a snapshot. The graphs must not be modified afterwards.
+     *@param dgHam The ham model.
+     *@param dgSpam The spam model.
+     *@param iHamCount The number of ham messages merged into the ham model.
+     *@param iSpamCount The number of spam messages merged into the spam model.
+     *@param iTrainedCount The number of training messages received.
+     *@param lVersion The version number of the snapshot.
+     *@param lLastSequence The journal sequence number of the last training
+     * message reflected, or zero.
+     */
+    public ModelSnapshot(DocumentNGramGraph dgHam, DocumentNGramGraph dgSpam,
+            int iHamCount, int iSpamCount, int iTrainedCount, long lVersion,
+            long lLastSequence) {
+        Ham = dgHam;
+        Spam = dgSpam;
+        HamCount = iHamCount;
+        SpamCount = iSpamCount;
+        TrainedCount = iTrainedCount;
+        Version = lVersion;
+        LastSequence = lLastSequence;
+    }
+
+    /** Returns the ham model, which must not be modified. */
+    public DocumentNGramGraph getHam() {
+        return Ham;
+    }
+
+    /** Returns the spam model, which must not be modified. */
+    public DocumentNGramGraph getSpam() {
+        return Spam;
+    }
+
+    public int getHamCount() {
+        return HamCount;
+    }
+
+    public int getSpamCount() {
+        return SpamCount;
+    }
+
+    public int getTrainedCount() {
+        return TrainedCount;
+    }
+
+    public long getVersion() {
+        return Version;
+    }
+
+    public long getLastSequence() {
+        return LastSequence;
+    }
+}
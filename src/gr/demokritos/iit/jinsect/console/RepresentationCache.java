@@ -0,0 +1,480 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import gr.demokritos.iit.jinsect.documentModel.ILoadableTextPrint;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.storage.INSECTDB;
+import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
+import gr.demokritos.iit.jinsect.threading.TaskExecutors;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
+import java.io.File;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A cache of the representations of text files, such as the n-gram graph documents
+ * of model summaries. Every representation is identified by the file and a
+ * representation name, which should reflect the document class and all the
+ * parameters of the representation (see {@link #getRepresentationName(Class, int,
+ * int, int)}).
+ * <p>
+ * Each representation is built once, by the first thread that asks for it. Threads
+ * asking for other representations build them in parallel, while threads asking
+ * for a representation being built wait for it. Cached documents are shared, and
+ * must not be modified.
+ * <p>
+ * If a repository is set, representations are also looked up in and saved to it,
+ * so that they are reused across runs. Stored representations are bound to the
+ * modification time and length of their file, so changed files are rebuilt.
+ * <p>
+ * The summary evaluators share the cache returned by {@link #getShared()}, so that
+ * a representation {@link #precompute(Collection, Class, int, int, int) precomputed}
+ * once serves every evaluator and comparison using it.
+ *
+ * @author ggianna
+ */
+public class RepresentationCache {
+    /** The category of the representations in the repository. */
+    public static final String REPRESENTATION_CATEGORY = "representation";
+    /** The prefix of the representations stored by {@link #setRepositoryDir(String)}. */
+    public static final String REPOSITORY_PREFIX = "repr-";
+
+    private static RepresentationCache Shared = null;
+
+    /** A factory of empty documents of a representation. */
+    public interface DocumentFactory<T extends ILoadableTextPrint> {
+        /** Returns a new, empty document. */
+        public T newDocument();
+    }
+
+    /** A builder of the representation of a file. */
+    public interface RepresentationBuilder<T> {
+        /** Returns the representation of a given file.
+         *@param sFile The file to represent.
+         *@return The representation.
+         *@throws Exception If the file cannot be represented.
+         */
+        public T build(String sFile) throws Exception;
+    }
+
+    /** The representations, built or being built, by key. */
+    protected final ConcurrentHashMap<String, FutureTask<Object>> Entries =
+            new ConcurrentHashMap<String, FutureTask<Object>>();
+    /** The repository of stored representations, or null. */
+    protected volatile INSECTDB Repository = null;
+
+    protected final AtomicLong Hits = new AtomicLong(), Builds = new AtomicLong(),
+            Loads = new AtomicLong();
+
+    /** Creates an in-memory cache. */
+    public RepresentationCache() {
+    }
+
+    /** Creates a cache that also stores representations to a repository.
+     *@param dbRepository The repository of the representations, or null.
+     */
+    public RepresentationCache(INSECTDB dbRepository) {
+        Repository = dbRepository;
+    }
+
+    /** Returns the cache shared by the summary evaluators, creating it on first use.
+     *@return The shared cache.
+     */
+    public static synchronized RepresentationCache getShared() {
+        if (Shared == null)
+            Shared = new RepresentationCache();
+        return Shared;
+    }
+
+    /** Returns the name of the representation given by a document class and its
+     * n-gram parameters.
+     *@param cType The document class.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@return The representation name.
+     */
+    public static String getRepresentationName(Class cType, int iMinNGram, int iMaxNGram,
+            int iDist) {
+        return cType.getName() + "(" + iMinNGram + "," + iMaxNGram + "," + iDist + ")";
+    }
+
+    /** Creates an object of a given class, with given n-gram parameters. The class
+     * must have a public constructor of the n-gram ranks and the distance, or one
+     * that also takes the ranks of the histogram.
+     *@param cType The class.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@return The new object.
+     *@throws IllegalArgumentException If the class has no such constructor.
+     */
+    public static <T> T newInstance(Class<T> cType, int iMinNGram, int iMaxNGram,
+            int iDist) {
+        try {
+            try {
+                return cType.getConstructor(int.class, int.class, int.class).newInstance(
+                        iMinNGram, iMaxNGram, iDist);
+            } catch (NoSuchMethodException nsme) {
+                return cType.getConstructor(int.class, int.class, int.class, int.class,
+                        int.class).newInstance(iMinNGram, iMaxNGram, iDist, iMinNGram,
+                        iMaxNGram);
+            }
+        } catch (NoSuchMethodException nsme) {
+            throw new IllegalArgumentException(cType.getName() +
+                    " has no n-gram parameter constructor");
+        } catch (InvocationTargetException ite) {
+            throw new IllegalStateException(ite.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Returns a factory of documents of a given class, with given n-gram
+     * parameters (see {@link #newInstance(Class, int, int, int)}).
+     *@param cType The document class.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@return The factory.
+     */
+    public static <T extends ILoadableTextPrint> DocumentFactory<T> getFactory(
+            final Class<T> cType, final int iMinNGram, final int iMaxNGram,
+            final int iDist) {
+        return new DocumentFactory<T>() {
+            @Override
+            public T newDocument() {
+                return newInstance(cType, iMinNGram, iMaxNGram, iDist);
+            }
+        };
+    }
+
+    /** Returns the representation of a file by a given document or graph class and
+     * n-gram parameters, building it if required.
+     *@param sFile The file to represent.
+     *@param cType The document class, either an {@link ILoadableTextPrint} or a
+     * {@link DocumentNGramGraph}.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@return The (shared) document.
+     */
+    public <T> T getDocument(final String sFile, final Class<T> cType,
+            final int iMinNGram, final int iMaxNGram, final int iDist) {
+        return cType.cast(get(sFile, getRepresentationName(cType, iMinNGram, iMaxNGram,
+                iDist), getBuilder(cType, iMinNGram, iMaxNGram, iDist)));
+    }
+
+    /** Returns the representation of a file, building it if required.
+     *@param sFile The file to represent.
+     *@param sRepresentation The name of the representation, identifying the
+     * document class and all its parameters.
+     *@param dfFactory The factory of empty documents of the representation.
+     *@return The (shared) document.
+     */
+    public <T extends ILoadableTextPrint> T getDocument(String sFile,
+            String sRepresentation, final DocumentFactory<T> dfFactory) {
+        return get(sFile, sRepresentation, new RepresentationBuilder<T>() {
+            @Override
+            public T build(String sFile) {
+                T tpRes = dfFactory.newDocument();
+                tpRes.loadDataStringFromFile(sFile);
+                return tpRes;
+            }
+        });
+    }
+
+    /** Returns the representation of a file, building it if required. All other
+     * lookups end up here.
+     *@param sFile The file to represent.
+     *@param sRepresentation The name of the representation, identifying the
+     * builder and all its parameters.
+     *@param rbBuilder The builder of the representation.
+     *@return The (shared) representation.
+     */
+    public <T> T get(final String sFile, final String sRepresentation,
+            final RepresentationBuilder<T> rbBuilder) {
+        String sKey = getKey(sFile, sRepresentation);
+        FutureTask<Object> ftCur = Entries.get(sKey);
+        if (ftCur == null) {
+            FutureTask<Object> ftNew = new FutureTask<Object>(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return build(sFile, sRepresentation, rbBuilder);
+                }
+            });
+            ftCur = Entries.putIfAbsent(sKey, ftNew);
+            if (ftCur == null) {
+                ftCur = ftNew;
+                ftNew.run();
+            }
+            else
+                Hits.incrementAndGet();
+        }
+        else
+            Hits.incrementAndGet();
+
+        try {
+            return (T)getResult(ftCur);
+        }
+        catch (RuntimeException re) {
+            // Allow a later retry
+            Entries.remove(sKey, ftCur);
+            throw re;
+        }
+    }
+
+    /** Builds the representations of a number of files that are not already in
+     * memory, in parallel on the shared executor, and waits for them. Files that
+     * cannot be represented are reported, and left to fail when looked up.
+     *@param cFiles The files to represent.
+     *@param cType The document class, either an {@link ILoadableTextPrint} or a
+     * {@link DocumentNGramGraph}.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void precompute(Collection<String> cFiles, Class cType, int iMinNGram,
+            int iMaxNGram, int iDist) throws InterruptedException {
+        precompute(cFiles, getRepresentationName(cType, iMinNGram, iMaxNGram, iDist),
+                getBuilder(cType, iMinNGram, iMaxNGram, iDist));
+    }
+
+    /** Builds the representations of a number of files that are not already in
+     * memory, in parallel on the shared executor, and waits for them. Files that
+     * cannot be represented are reported, and left to fail when looked up.
+     *@param cFiles The files to represent.
+     *@param sRepresentation The name of the representation.
+     *@param rbBuilder The builder of the representation.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void precompute(Collection<String> cFiles, final String sRepresentation,
+            final RepresentationBuilder rbBuilder) throws InterruptedException {
+        TaskGroup tgBuild = new TaskGroup(Runtime.getRuntime().availableProcessors(),
+                TaskExecutors.getShared());
+        for (final String sFile : new LinkedHashSet<String>(cFiles)) {
+            if (Entries.containsKey(getKey(sFile, sRepresentation)))
+                continue;
+            tgBuild.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        get(sFile, sRepresentation, rbBuilder);
+                    }
+                    catch (RuntimeException re) {
+                        System.err.println("Could not represent " + sFile + ": " + re);
+                    }
+                }
+            });
+        }
+        try {
+            tgBuild.waitUntilCompletion();
+        }
+        catch (CompletionException ce) {
+            // Errors only; anything else is reported by the tasks
+            throw (Error)ce.getCause();
+        }
+    }
+
+    private static RepresentationBuilder getBuilder(final Class cType,
+            final int iMinNGram, final int iMaxNGram, final int iDist) {
+        if (DocumentNGramGraph.class.isAssignableFrom(cType))
+            return new RepresentationBuilder<DocumentNGramGraph>() {
+                @Override
+                public DocumentNGramGraph build(String sFile) throws Exception {
+                    DocumentNGramGraph dgRes = (DocumentNGramGraph)newInstance(cType,
+                            iMinNGram, iMaxNGram, iDist);
+                    dgRes.loadDataStringFromFile(sFile);
+                    return dgRes;
+                }
+            };
+        if (ILoadableTextPrint.class.isAssignableFrom(cType))
+            return new RepresentationBuilder<ILoadableTextPrint>() {
+                @Override
+                public ILoadableTextPrint build(String sFile) {
+                    ILoadableTextPrint tpRes = (ILoadableTextPrint)newInstance(cType,
+                            iMinNGram, iMaxNGram, iDist);
+                    tpRes.loadDataStringFromFile(sFile);
+                    return tpRes;
+                }
+            };
+        throw new IllegalArgumentException(cType.getName() +
+                " is neither a loadable document nor an n-gram graph");
+    }
+
+    private static Object getResult(FutureTask<Object> ftCur) {
+        boolean bInterrupted = false;
+        try {
+            while (true) {
+                try {
+                    return ftCur.get();
+                } catch (InterruptedException ie) {
+                    // The document is needed either way
+                    bInterrupted = true;
+                }
+            }
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ee.getCause();
+            if (ee.getCause() instanceof Error)
+                throw (Error)ee.getCause();
+            throw new IllegalStateException(ee.getCause());
+        }
+        finally {
+            if (bInterrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Builds a representation, or loads it from the repository if stored there. */
+    protected Object build(String sFile, String sRepresentation,
+            RepresentationBuilder rbBuilder) throws Exception {
+        INSECTDB dbRepository = Repository;
+        String sStoredName = null;
+        if (dbRepository != null) {
+            File fFile = new File(sFile);
+            sStoredName = sRepresentation + "\t" + fFile.getAbsolutePath() + "\t" +
+                    fFile.lastModified() + "\t" + fFile.length();
+            try {
+                if (dbRepository.existsObject(sStoredName, REPRESENTATION_CATEGORY)) {
+                    Object oObj = dbRepository.loadObject(sStoredName,
+                            REPRESENTATION_CATEGORY);
+                    // Names are hashed by some repositories, so check for collisions
+                    if ((oObj instanceof StoredRepresentation) &&
+                            ((StoredRepresentation)oObj).Name.equals(sStoredName)) {
+                        Loads.incrementAndGet();
+                        return ((StoredRepresentation)oObj).Document;
+                    }
+                }
+            }
+            catch (Exception e) {
+                System.err.println("Could not load stored representation of " + sFile +
+                        ". Rebuilding...");
+            }
+        }
+
+        Object oRes = rbBuilder.build(sFile);
+        Builds.incrementAndGet();
+
+        if ((dbRepository != null) && (oRes instanceof Serializable)) {
+            try {
+                dbRepository.saveObject(new StoredRepresentation(sStoredName,
+                        (Serializable)oRes), sStoredName, REPRESENTATION_CATEGORY);
+            }
+            catch (Exception e) {
+                System.err.println("Could not store representation of " + sFile + ": " +
+                        e.getMessage());
+            }
+        }
+        return oRes;
+    }
+
+    private static String getKey(String sFile, String sRepresentation) {
+        return sRepresentation + "\t" + sFile;
+    }
+
+    /** Removes the representations of a file from memory. Stored representations
+     * are kept.
+     *@param sFile The file.
+     */
+    public void remove(String sFile) {
+        String sSuffix = "\t" + sFile;
+        for (String sKey : Entries.keySet())
+            if (sKey.endsWith(sSuffix))
+                Entries.remove(sKey);
+    }
+
+    /** Removes the representations of a number of files from memory. Stored
+     * representations are kept.
+     *@param cFiles The files.
+     */
+    public void removeAll(Collection<String> cFiles) {
+        for (String sFile : cFiles)
+            remove(sFile);
+    }
+
+    /** Removes all representations from memory. Stored representations are kept. */
+    public void clear() {
+        Entries.clear();
+    }
+
+    /** Returns the number of representations in memory, including those being
+     * built. */
+    public int size() {
+        return Entries.size();
+    }
+
+    public INSECTDB getRepository() {
+        return Repository;
+    }
+
+    /** Sets the repository of stored representations.
+     *@param dbRepository The repository, or null to keep representations in memory
+     * only.
+     */
+    public void setRepository(INSECTDB dbRepository) {
+        Repository = dbRepository;
+    }
+
+    /** Stores representations in files of a given directory, creating it if
+     * required. The directory is the local representation store of the
+     * evaluators, and can be reused by any later run.
+     *@param sDir The directory, or null or empty to keep representations in
+     * memory only.
+     */
+    public void setRepositoryDir(String sDir) {
+        if ((sDir == null) || (sDir.length() == 0)) {
+            Repository = null;
+            return;
+        }
+        new File(sDir).mkdirs();
+        Repository = new INSECTFileDB(REPOSITORY_PREFIX, sDir);
+    }
+
+    /** Returns the number of requests served by representations already in memory. */
+    public long getHits() {
+        return Hits.get();
+    }
+
+    /** Returns the number of representations built from their files. */
+    public long getBuilds() {
+        return Builds.get();
+    }
+
+    /** Returns the number of representations loaded from the repository. */
+    public long getLoads() {
+        return Loads.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d representations (%d hits, %d built, %d loaded)",
+                size(), getHits(), getBuilds(), getLoads());
+    }
+}
+
+/** A representation as stored in the repository of a {@link RepresentationCache},
+ * together with its full name. */
+class StoredRepresentation implements Serializable {
+    static final long serialVersionUID = 1L;
+
+    final String Name;
+    final Serializable Document;
+
+    StoredRepresentation(String sName, Serializable sDocument) {
+        Name = sName;
+        Document = sDocument;
+    }
+}
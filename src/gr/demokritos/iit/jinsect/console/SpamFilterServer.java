@@ -10,13 +10,20 @@ import gr.demokritos.iit.jinsect.events.NotificationListener;
 import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
 import gr.demokritos.iit.jinsect.structs.Decision;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
-import gr.demokritos.iit.jinsect.threading.ThreadQueue;
+import gr.demokritos.iit.jinsect.threading.TaskExecutors;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import gr.demokritos.iit.jinsect.utils;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -24,9 +31,31 @@ import java.io.OutputStreamWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
+import java.util.zip.CRC32;
 import java.util.logging.Logger;
 import mail.MimeMessage;
 import mail.MimeMultiPart;
@@ -49,20 +78,59 @@ public class SpamFilterServer {
     
     protected final static String C_HAM = "ham";
     protected final static String C_SPAM = "spam";
+    protected final static String CHECKPOINT_CATEGORY = "Checkpoint";
+    protected final static int CHECKPOINT_MAGIC = 0x4A534643;
+    protected final static int CHECKPOINT_VERSION = 1;
     protected int MAX_ANALYSED_CHARS;
     
-    protected DocumentNGramGraph dgSpam;
-    protected DocumentNGramGraph dgHam;
+    /** The current version of the models. */
+    protected volatile ModelSnapshot Models;
+    /** The training messages not yet reflected in the models. */
+    protected final BlockingQueue<TrainingEvent> PendingUpdates = 
+            new LinkedBlockingQueue<TrainingEvent>();
+    /** The number of training messages to queue before publishing a new version
+     * of the models. */
+    protected int UpdateBatchSize = 1;
+    /** The maximum time a training message is queued before publishing a new
+     * version of the models, in milliseconds, or zero for no limit. */
+    protected long UpdateInterval = 0;
     protected int Port;
     protected int RespondToPort;
     protected String RespondToHost;
     protected double Wareoff;
     protected int MinTrainSamples;
     
-    protected int iSpamCnt, iHamCnt, iOverallCnt;
     protected final int MAX_SEND_ATTEMPTS = 5;
     protected INSECTFileDB<DocumentNGramGraph> repos;
     
+    /** The minimum time between a request and its reply, in the original mode. */
+    protected long ReplyDelay = 50;
+    /** The maximum number of requests of a connection awaiting their replies, in
+     * connected mode. */
+    protected int MaxPipelinedRequests = 64;
+    /** The journal of the training messages, or null if training is not
+     * journaled. */
+    protected TrainingJournal Journal = null;
+    /** Keeps the journal in the order of the queued training messages. */
+    protected final Object JournalLock = new Object();
+    /** The time between checkpoints of the models, in milliseconds, or zero for
+     * checkpoints only on shutdown. */
+    protected long CheckpointInterval = 60000;
+    /** The storage of the checkpointed models, and the file describing the last
+     * checkpoint. */
+    protected INSECTFileDB<DocumentNGramGraph> CheckpointRepository;
+    protected File CheckpointFile;
+    /** The last checkpointed version of the models, and the names its models are
+     * stored under. Guarded by CheckpointLock. */
+    protected ModelSnapshot LastCheckpoint = null;
+    protected String CheckpointHamName, CheckpointSpamName;
+    protected final Object CheckpointLock = new Object();
+    /** The listening socket and the open connections, in connected mode. */
+    protected ServerSocket Listener;
+    protected final Set<Socket> Clients = new HashSet<Socket>();
+    /** The executor of the connection threads, in connected mode. */
+    protected ExecutorService Connections;
+    
     protected boolean bIgnoreFurtherTraining;
     protected boolean bEnableDegrade;
     protected boolean bEnableDelta;
@@ -73,11 +141,7 @@ public class SpamFilterServer {
     
     public SpamFilterServer(int iPortParam, int iRespondToPortParam) {
         Port = iPortParam;
-        dgSpam = new DocumentNGramGraph();
-        dgHam = new DocumentNGramGraph();
-        iSpamCnt = 0;
-        iHamCnt = 0;
-        iOverallCnt = 0;
+        Models = new ModelSnapshot();
         RespondToPort = iRespondToPortParam;
         repos = new INSECTFileDB<DocumentNGramGraph>("ceas", "./models/");
         bLinearWareoff = false; // Exponential by default
@@ -136,23 +200,306 @@ public class SpamFilterServer {
         MAX_ANALYSED_CHARS = iNewMaxAnalysedChars;
     }
     
+    /** Sets the minimum time between a request and its reply, in the original
+     * mode. Slow clients may need time to start listening for the reply.
+     *@param lNewReplyDelay The delay in milliseconds.
+     */
+    public void setReplyDelay(long lNewReplyDelay) {
+        ReplyDelay = lNewReplyDelay;
+    }
+    
+    /** Sets the maximum number of requests of a connection awaiting their
+     * replies, in connected mode. Reading from the connection pauses while the
+     * limit is reached.
+     *@param iNewMaxPipelinedRequests The maximum number of requests.
+     */
+    public void setMaxPipelinedRequests(int iNewMaxPipelinedRequests) {
+        MaxPipelinedRequests = Math.max(1, iNewMaxPipelinedRequests);
+    }
+    
+    /** Sets the number of training messages to queue before publishing a new
+     * version of the models. Messages are judged against the models published
+     * before them, so with more than one message per version a message is not
+     * judged against the messages queued before it. Whether it is misjudged,
+     * and hence merged, may thus differ from sequential training; only the
+     * merge rates follow the sequential ones. The same holds for messages
+     * trained concurrently, even with one message per version.
+     *@param iNewUpdateBatchSize The number of messages per version.
+     */
+    public void setUpdateBatchSize(int iNewUpdateBatchSize) {
+        UpdateBatchSize = Math.max(1, iNewUpdateBatchSize);
+    }
+    
+    /** Sets the maximum time a training message is queued before publishing a
+     * new version of the models. It takes effect when the server is started.
+     *@param lNewUpdateInterval The time in milliseconds, or zero for no limit.
+     */
+    public void setUpdateInterval(long lNewUpdateInterval) {
+        UpdateInterval = lNewUpdateInterval;
+    }
+    
+    /** Returns the current version of the models. */
+    public ModelSnapshot getModels() {
+        return Models;
+    }
+    
     public void loadModels() {
-        dgSpam = repos.loadObject(C_SPAM, "DGFile");
-        dgHam = repos.loadObject(C_HAM, "DGFile");
+        DocumentNGramGraph dgSpam = repos.loadObject(C_SPAM, "DGFile");
+        DocumentNGramGraph dgHam = repos.loadObject(C_HAM, "DGFile");
         if ((dgSpam == null) || (dgHam == null)) {
             System.err.println("Loading failed...Resetting models.");
             dgSpam = new DocumentNGramGraph();
             dgHam = new DocumentNGramGraph();
         }
+        Models = new ModelSnapshot(dgHam, dgSpam, 0, 0, 0, Models.getVersion() + 1,
+                Models.getLastSequence());
+    }
+    
+    /** Sets the time between checkpoints of the models, when training is
+     * journaled. It takes effect when the server is started.
+     *@param lNewCheckpointInterval The time in milliseconds, or zero for
+     * checkpoints only on shutdown.
+     */
+    public void setCheckpointInterval(long lNewCheckpointInterval) {
+        CheckpointInterval = lNewCheckpointInterval;
+    }
+    
+    /** Journals every training message from now on, in a given directory, where
+     * the models are also checkpointed. The models are first recovered from the
+     * last checkpoint in the directory, if any, followed by the messages
+     * journaled after it.
+     *@param sDir The directory of the journal and the checkpoints.
+     *@throws IOException If the journal or the checkpoint cannot be read.
+     */
+    public void enableJournal(String sDir) throws IOException {
+        Journal = new TrainingJournal("training", sDir);
+        CheckpointRepository = new INSECTFileDB<DocumentNGramGraph>("checkpoint-", sDir);
+        CheckpointFile = new File(sDir, "checkpoint.meta");
+        recover();
+    }
+    
+    /** Checkpoints the models, and closes the journal.
+     *@throws IOException If the journal cannot be closed.
+     */
+    public void closeJournal() throws IOException {
+        if (Journal == null)
+            return;
+        publishUpdates();
+        checkpoint();
+        Journal.close();
+        Journal = null;
+    }
+    
+    /** Recovers the models from the last checkpoint, and replays the training
+     * messages journaled after it. The graphs of the messages are built in
+     * parallel, and merged in journal order.
+     */
+    protected void recover() throws IOException {
+        synchronized (CheckpointLock) {
+            if (readCheckpoint()) {
+                Models = LastCheckpoint;
+                System.err.println(String.format("Recovered models of version %d, " +
+                        "trained with %d ham and %d spam.", Models.getVersion(), 
+                        Models.getHamCount(), Models.getSpamCount()));
+            }
+        }
+        Journal.skipTo(Models.getLastSequence());
+        
+        List<TrainingJournal.Entry> lTail = Journal.readAfter(Models.getLastSequence());
+        if (lTail.isEmpty())
+            return;
+        System.err.println("Replaying " + lTail.size() + " journaled messages...");
+        final int iChunkSize = 256;
+        TaskGroup tgGraphs = new TaskGroup();
+        for (int iStart = 0; iStart < lTail.size(); iStart += iChunkSize) {
+            final List<TrainingJournal.Entry> lChunk = lTail.subList(iStart, 
+                    Math.min(lTail.size(), iStart + iChunkSize));
+            final DocumentNGramGraph[] dgaGraphs = new DocumentNGramGraph[lChunk.size()];
+            for (int iCnt = 0; iCnt < dgaGraphs.length; iCnt++) {
+                final int iCntArg = iCnt;
+                tgGraphs.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dgaGraphs[iCntArg] = new DocumentNGramGraph();
+                        dgaGraphs[iCntArg].setDataString(lChunk.get(iCntArg).Text);
+                    }
+                });
+            }
+            try {
+                tgGraphs.waitUntilCompletion();
+            } catch (InterruptedException ex) {
+                throw new IOException("Interrupted while replaying the journal", ex);
+            }
+            for (int iCnt = 0; iCnt < dgaGraphs.length; iCnt++) {
+                TrainingJournal.Entry eCur = lChunk.get(iCnt);
+                if (TrainingJournal.hash(eCur.Text) != eCur.TextHash) {
+                    System.err.println("Skipping corrupt journaled message " + 
+                            eCur.Sequence);
+                    continue;
+                }
+                PendingUpdates.add(new TrainingEvent(dgaGraphs[iCnt], eCur.Class, 
+                        eCur.JudgedClass, eCur.Sequence));
+                if (PendingUpdates.size() >= UpdateBatchSize)
+                    publishUpdates();
+            }
+        }
+        publishUpdates();
+    }
+    
+    /** Checkpoints the current version of the models, if training is journaled.
+     * Only the models changed since the last checkpoint are saved, under names of
+     * their version, so that the last checkpoint stays valid until the next one
+     * is complete. The journal records covered by the checkpoint are then
+     * deleted. The models are immutable, so judging and training go on while
+     * they are saved.
+     *@return True if the checkpoint succeeded or was not needed, otherwise false.
+     */
+    public boolean checkpoint() {
+        TrainingJournal tjJournal = Journal;
+        if (tjJournal == null)
+            return false;
+        synchronized (CheckpointLock) {
+            ModelSnapshot msCur = Models;
+            if ((LastCheckpoint != null) && 
+                    (LastCheckpoint.getVersion() == msCur.getVersion()))
+                return true;
+            HashMap<String, DocumentNGramGraph> hmChanged = 
+                    new HashMap<String, DocumentNGramGraph>();
+            String sHamName = CheckpointHamName;
+            String sSpamName = CheckpointSpamName;
+            if ((LastCheckpoint == null) || (LastCheckpoint.getHam() != msCur.getHam())) {
+                sHamName = C_HAM + msCur.getVersion();
+                hmChanged.put(sHamName, msCur.getHam());
+            }
+            if ((LastCheckpoint == null) || (LastCheckpoint.getSpam() != msCur.getSpam())) {
+                sSpamName = C_SPAM + msCur.getVersion();
+                hmChanged.put(sSpamName, msCur.getSpam());
+            }
+            try {
+                CheckpointRepository.saveAll(hmChanged, CHECKPOINT_CATEGORY).join();
+                writeCheckpoint(msCur, sHamName, sSpamName);
+                tjJournal.truncate(msCur.getLastSequence());
+            }
+            catch (CompletionException ce) {
+                System.err.println("Checkpoint failed.");
+                Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, 
+                        null, ce.getCause());
+                return false;
+            }
+            catch (IOException ex) {
+                System.err.println("Checkpoint failed.");
+                Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, 
+                        null, ex);
+                return false;
+            }
+            // Remove the models of the previous checkpoint
+            if ((CheckpointHamName != null) && !CheckpointHamName.equals(sHamName))
+                CheckpointRepository.deleteObject(CheckpointHamName, CHECKPOINT_CATEGORY);
+            if ((CheckpointSpamName != null) && !CheckpointSpamName.equals(sSpamName))
+                CheckpointRepository.deleteObject(CheckpointSpamName, CHECKPOINT_CATEGORY);
+            LastCheckpoint = msCur;
+            CheckpointHamName = sHamName;
+            CheckpointSpamName = sSpamName;
+            System.err.println("Checkpointed models of version " + msCur.getVersion());
+            return true;
+        }
+    }
+    
+    /** Writes the description of a checkpoint, replacing the previous one
+     * atomically. Must be called while holding CheckpointLock. */
+    private void writeCheckpoint(ModelSnapshot msModels, String sHamName, 
+            String sSpamName) throws IOException {
+        ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
+        DataOutputStream dosOut = new DataOutputStream(baosOut);
+        dosOut.writeInt(CHECKPOINT_MAGIC);
+        dosOut.writeInt(CHECKPOINT_VERSION);
+        dosOut.writeLong(msModels.getVersion());
+        dosOut.writeLong(msModels.getLastSequence());
+        dosOut.writeInt(msModels.getHamCount());
+        dosOut.writeInt(msModels.getSpamCount());
+        dosOut.writeInt(msModels.getTrainedCount());
+        dosOut.writeUTF(sHamName);
+        dosOut.writeUTF(sSpamName);
+        dosOut.flush();
+        CRC32 cCrc = new CRC32();
+        cCrc.update(baosOut.toByteArray());
+        dosOut.writeInt((int)cCrc.getValue());
+        dosOut.close();
+        
+        File fTmp = new File(CheckpointFile.getPath() + ".tmp");
+        FileOutputStream fosOut = new FileOutputStream(fTmp);
+        try {
+            fosOut.write(baosOut.toByteArray());
+            fosOut.getFD().sync();
+        }
+        finally {
+            fosOut.close();
+        }
+        Files.move(fTmp.toPath(), CheckpointFile.toPath(), 
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /** Reads the last checkpoint, if a valid one exists, into LastCheckpoint. Must
+     * be called while holding CheckpointLock.
+     *@return True if the checkpoint was read, otherwise false.
+     */
+    private boolean readCheckpoint() throws IOException {
+        if (!CheckpointFile.exists())
+            return false;
+        byte[] baData = Files.readAllBytes(CheckpointFile.toPath());
+        if (baData.length < 4)
+            return false;
+        CRC32 cCrc = new CRC32();
+        cCrc.update(baData, 0, baData.length - 4);
+        if ((int)cCrc.getValue() != ByteBuffer.wrap(baData, baData.length - 4, 4).getInt())
+            throw new IOException("Corrupt checkpoint " + CheckpointFile);
+        DataInputStream disIn = new DataInputStream(new ByteArrayInputStream(baData));
+        if ((disIn.readInt() != CHECKPOINT_MAGIC) || 
+                (disIn.readInt() != CHECKPOINT_VERSION))
+            throw new IOException("Unknown checkpoint format " + CheckpointFile);
+        long lVersion = disIn.readLong();
+        long lLastSequence = disIn.readLong();
+        int iHamCnt = disIn.readInt();
+        int iSpamCnt = disIn.readInt();
+        int iTrainedCnt = disIn.readInt();
+        String sHamName = disIn.readUTF();
+        String sSpamName = disIn.readUTF();
+        DocumentNGramGraph dgHam = CheckpointRepository.loadObject(sHamName, 
+                CHECKPOINT_CATEGORY);
+        DocumentNGramGraph dgSpam = CheckpointRepository.loadObject(sSpamName, 
+                CHECKPOINT_CATEGORY);
+        if ((dgHam == null) || (dgSpam == null))
+            throw new IOException("Missing checkpointed models in " + 
+                    CheckpointFile.getParent());
+        LastCheckpoint = new ModelSnapshot(dgHam, dgSpam, iHamCnt, iSpamCnt, 
+                iTrainedCnt, lVersion, lLastSequence);
+        CheckpointHamName = sHamName;
+        CheckpointSpamName = sSpamName;
+        return true;
     }
     
     public void saveModels() {
+        publishUpdates();
         System.err.print("Saving models...");
-        repos.saveObject(dgSpam, C_SPAM, "DGFile");
-        repos.saveObject(dgHam, C_HAM, "DGFile");
-        System.err.println("Done.");
+        // Save both models in parallel
+        ModelSnapshot msModels = Models;
+        HashMap<String, DocumentNGramGraph> hmModels = new HashMap<String, DocumentNGramGraph>();
+        hmModels.put(C_SPAM, msModels.getSpam());
+        hmModels.put(C_HAM, msModels.getHam());
+        try {
+            repos.saveAll(hmModels, "DGFile").join();
+            System.err.println("Done.");
+        }
+        catch (CompletionException ce) {
+            System.err.println("Failed.");
+            ce.getCause().printStackTrace();
+        }
     }
     
+    /** Starts the server in its original mode: one request is read per
+     * connection, and the reply is sent to a new connection towards the
+     * requesting host, at the reply port.
+     */
     public void start() {
         ServerSocket sServer = null;
         String sMessage = "";
@@ -163,6 +510,8 @@ public class SpamFilterServer {
             Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
         }
         Date dStarted = null;
+        Timer tUpdates = startUpdateTimer();
+        Timer tCheckpoints = startCheckpointTimer();
         while (sMessage != null) {
             try {
                 System.err.print("Listening...");
@@ -183,202 +532,21 @@ public class SpamFilterServer {
             String sMessageType = sMessageParts[0]; // Type - 1st argument
             // Train
             if (M_TRAIN.contains(sMessageType)) {
-                // Only if further training is allowed
-                if (!bIgnoreFurtherTraining) {
-                    String sFile = sMessageParts[1]; // Filename - 2nd argument
-
-                    Decision dTmp = judge(sFile);
-                    System.err.print("Judged to be " + dTmp.FinalDecision + " with" +
-                            " a score of " + dTmp.DecisionBelief + " with evidence:");
-                    System.err.println(utils.printIterable(
-                            dTmp.DecisionEvidence.values(), ","));
-
-                    // Load file into graph
-                    DocumentNGramGraph gTmp = (DocumentNGramGraph)dTmp.Document;
-                    ThreadQueue tUpdates = new ThreadQueue();
-                    
-                    // Update models, on judgement failure
-                    boolean bUpdated = false;
-                    // Create thread args
-                    final DocumentNGramGraph dgHamArg = dgHam;
-                    final DocumentNGramGraph dgSpamArg = dgSpam;
-                    final DocumentNGramGraph gTmpArg = gTmp;
-                    final int iHamCntArg = iHamCnt;
-                    final int iSpamCntArg = iSpamCnt;
-                    final boolean bLinearWareoffArg = bLinearWareoff;
-                    // For ham
-                    if (sMessageType.equalsIgnoreCase(M_TRAINHAM) &&
-                            (!dTmp.FinalDecision.toString().equalsIgnoreCase(C_HAM) 
-                            || (iHamCnt < MinTrainSamples))) {
-                        while (!tUpdates.addThreadFor(new Runnable() {
-
-                            @Override
-                            public void run() {
-                                if (!bLinearWareoffArg)
-                                    // Exponential
-                                    dgHamArg.merge(gTmpArg, Math.pow(Wareoff, 
-                                            -iHamCntArg));
-                                else
-                                    if (iHamCntArg == 0)
-                                        dgHamArg.merge(gTmpArg, 1.0);
-                                    else
-                                    // Linear
-                                        dgHamArg.merge(gTmpArg, Math.pow(
-                                            (double)iHamCntArg 
-                                            / (iHamCntArg + 1.0), 
-                                            Wareoff));
-                            }
-                        }))
-                            Thread.yield();
-                        
-                        if (bEnableDegrade) {
-                            while (!tUpdates.addThreadFor(new Runnable() {
-
-                                @Override
-                                public void run() {
-                                    dgSpamArg.degrade(gTmpArg);
-                                }
-                            }))
-                                Thread.yield();
-                        }
-                        try {
-                            tUpdates.waitUntilCompletion();
-                        } catch (InterruptedException ex) {
-                            System.err.println("I cannot wait!!! :-)");
-                            Logger.getLogger(SpamFilterServer.class.getName()
-                                    ).log(Level.SEVERE, null, ex);
-                            return;
-                        }
-                        
-                        bUpdated = true;
-                        iHamCnt++;
-                    }
-                    // For spam
-                    if (sMessageType.equalsIgnoreCase(M_TRAINSPAM) &&
-                            (!dTmp.FinalDecision.toString().equalsIgnoreCase(C_SPAM) 
-                            || (iSpamCnt < MinTrainSamples))) {
-                        while (!tUpdates.addThreadFor(new Runnable() {
-
-                            @Override
-                            public void run() {
-                                if (!bLinearWareoffArg)
-                                    dgSpamArg.merge(gTmpArg, Math.pow(Wareoff, 
-                                            -iSpamCntArg));
-                                else
-                                    if (iSpamCntArg == 0)
-                                        dgSpamArg.merge(gTmpArg, 1.0);
-                                    else
-                                        dgSpamArg.merge(gTmpArg, Math.pow(
-                                            (double)iSpamCntArg 
-                                            / (iSpamCntArg + 1.0),
-                                            Wareoff));
-                            }
-                        }))
-                            Thread.yield();
-                        
-                        if (bEnableDegrade) {
-                            while (!tUpdates.addThreadFor(new Runnable() {
-
-                                @Override
-                                public void run() {
-                                    dgHamArg.degrade(gTmpArg);
-                                }
-                            }))
-                                Thread.yield();
-                        }
-                        
-                        try {
-                            tUpdates.waitUntilCompletion();
-                        } catch (InterruptedException ex) {
-                            System.err.println("I cannot wait!!! :-)");
-                            Logger.getLogger(SpamFilterServer.class.getName()
-                                    ).log(Level.SEVERE, null, ex);
-                            return;
-                        }
-                        
-                        iSpamCnt++;
-                        bUpdated = true;
-                    }
-                    
-                    if (bUpdated) {
-                        System.err.print("Update performed.");
-                        NGramGraphEuclidianComparator ngc = new 
-                                NGramGraphEuclidianComparator();
-                        // DEBUG LINES
-                        if (!bEuclidian)
-                            System.err.println("Similarity between ham and spam: " + 
-                                ngc.getSimilarityBetween(dgHam, dgSpam).toString());
-                        else
-                            System.err.println("Similarity between ham and spam: " + 
-                                    ngc.getEuclidianSimilarityBetween(dgHam, dgSpam, 
-                                    bWeightedEuclidian).getOverallSimilarity());
-                        //////////////
-                            
-                        
-                        if (bEnableDelta) {
-                            DeltaPerformer dpHamTmp = new DeltaPerformer(dgHam, 
-                                    dgSpam);
-                            DeltaPerformer dpSpamTmp = new DeltaPerformer(dgSpam, 
-                                    dgHam);
-                            while (!tUpdates.addThreadFor(dpHamTmp)) 
-                                Thread.yield();
-                            while (!tUpdates.addThreadFor(dpSpamTmp)) 
-                                Thread.yield();
-                            try {
-                                tUpdates.waitUntilCompletion();
-                            } catch (InterruptedException ex) {
-                                System.err.println("I can't wait!!! :-)");
-                                Logger.getLogger(SpamFilterServer.class.getName()
-                                        ).log(Level.SEVERE, null, ex);
-                                return;
-                            }
-                            dgHam = dpHamTmp.resultGraph;
-                            dgSpam = dpSpamTmp.resultGraph;
-                            
-                            // DEBUG LINES
-                            if (!bEuclidian)
-                                System.err.println("Delta performed. Similarity " +
-                                    "between ham and spam: " + 
-                                    ngc.getSimilarityBetween(dgHam, dgSpam).toString());
-                            else
-                                System.err.println("Delta performed. Similarity " +
-                                        "between ham and spam: " + 
-                                        ngc.getEuclidianSimilarityBetween(dgHam, dgSpam, 
-                                        bWeightedEuclidian));
-                            //////////////
-                        }
-                        // saveModels();
-                    }
-                    System.err.println(String.format("Trained a total of %d ham and " +
-                            "%d spam after %d messages.", iHamCnt, iSpamCnt, 
-                            ++iOverallCnt));
-                }
-                sendMessage(dStarted, 50, M_DONE);
+                sendMessage(dStarted, ReplyDelay, train(sMessageType, 
+                        sMessageParts[1]) ? M_DONE : "ERROR not trained");
             }
             
             // Classify
             if (M_CLASSIFY.contains(sMessageType)) {
-                System.err.print("Classifying...");
                 // Load file
                 String sFile = sMessageParts[1]; // Filename - 2nd argument
-                Decision dTmp = judge(sFile);
-                
-                // Prepare response
-                StringBuffer sbMsg = new StringBuffer();
-                sbMsg.append("class=" + dTmp.FinalDecision);
-                sbMsg.append(" score=" + String.valueOf(dTmp.DecisionBelief));
-                sbMsg.append(" tfile=dummyFile\n");
                 // Send response
-                sendMessage(dStarted, 50, sbMsg.toString());
-                System.err.println(String.format("%s(%f). Evidence: %s ", 
-                        dTmp.FinalDecision, dTmp.DecisionBelief,
-                        utils.printIterable(dTmp.DecisionEvidence.values(), 
-                        ",")));
+                sendMessage(dStarted, ReplyDelay, classify(sFile));
             }
             
             // Terminate
             if (M_TERMINATE.contains(sMessageType)) {
-                sendMessage(dStarted, 50, M_DONE);
+                sendMessage(dStarted, ReplyDelay, M_DONE);
                 sMessage = null;
             }
         }
@@ -388,9 +556,574 @@ public class SpamFilterServer {
             } catch (IOException ex) {
                 Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
             }
+        stopUpdateTimer(tUpdates);
+        stopCheckpointTimer(tCheckpoints);
         System.err.println("Finalized.");
     }
     
+    /** Starts the server in connected mode. Every client connection is served by
+     * its own thread (virtual, where supported), and may carry any number of
+     * requests, one per line. The replies are written back on the same
+     * connection, one per line, in the order of the requests. Classification
+     * requests are pipelined: they are judged in parallel on the shared executor,
+     * while further requests are read. A training request first waits for the
+     * earlier requests of its connection, and is then queued for the next
+     * version of the models, while judging goes on against the current version
+     * (see {@link ModelSnapshot}). A terminate request stops the server, once the requests
+     * already read from all connections have been answered.
+     */
+    public void startConnected() {
+        final ServerSocket sServer;
+        try {
+            sServer = new ServerSocket(Port);
+        } catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        Listener = sServer;
+        Timer tUpdates = startUpdateTimer();
+        Timer tCheckpoints = startCheckpointTimer();
+        Connections = TaskExecutors.newThreadPerTaskExecutor();
+        TaskGroup tgConnections = new TaskGroup(Integer.MAX_VALUE, Connections);
+        System.err.println("Listening on port " + Port + "...");
+        try {
+            while (!sServer.isClosed()) {
+                final Socket csClient;
+                try {
+                    csClient = sServer.accept();
+                }
+                catch (IOException ex) {
+                    // Closed on termination
+                    if (!sServer.isClosed())
+                        Logger.getLogger(SpamFilterServer.class.getName()).log(
+                                Level.SEVERE, null, ex);
+                    break;
+                }
+                synchronized (Clients) {
+                    Clients.add(csClient);
+                }
+                tgConnections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serveConnection(csClient);
+                        }
+                        finally {
+                            synchronized (Clients) {
+                                Clients.remove(csClient);
+                            }
+                            try {
+                                csClient.close();
+                            } catch (IOException ex) {
+                                Logger.getLogger(SpamFilterServer.class.getName()).log(
+                                        Level.WARNING, null, ex);
+                            }
+                        }
+                    }
+                });
+            }
+            tgConnections.waitUntilCompletion();
+        }
+        catch (InterruptedException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        catch (CompletionException ce) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null,
+                    ce.getCause());
+        }
+        finally {
+            stopListening();
+            Connections.shutdown();
+        }
+        stopUpdateTimer(tUpdates);
+        stopCheckpointTimer(tCheckpoints);
+        System.err.println("Finalized.");
+    }
+    
+    /** Serves the requests of a connection, until the client closes it or asks
+     * for termination. Requests are read by the calling thread, and replies are
+     * written by a separate thread, as soon as they are ready in request order.
+     * Classification requests are judged on threads of {@link #Connections}, at
+     * most {@link #MaxPipelinedRequests} at a time, so that they never occupy
+     * the shared executor while training waits for its merge tasks.
+     *@param csClient The connection to serve.
+     */
+    protected void serveConnection(Socket csClient) {
+        final BlockingQueue<Future<String>> qReplies =
+                new ArrayBlockingQueue<Future<String>>(MaxPipelinedRequests);
+        final BufferedWriter bwOut;
+        BufferedReader brInput;
+        try {
+            brInput = new BufferedReader(new InputStreamReader(
+                csClient.getInputStream()));
+            bwOut = new BufferedWriter(new OutputStreamWriter(
+                    csClient.getOutputStream()));
+        } catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+            return;
+        }
+        
+        TaskGroup tgWriter = new TaskGroup(1, Connections);
+        tgWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeReplies(qReplies, bwOut);
+            }
+        });
+        
+        // The replies of the connection that may not be ready
+        List<Future<String>> lPending = new LinkedList<Future<String>>();
+        boolean bTerminate = false;
+        try {
+            String sMessage;
+            while (!bTerminate && ((sMessage = brInput.readLine()) != null)) {
+                String[] sMessageParts = sMessage.split(" ");
+                String sMessageType = sMessageParts[0]; // Type - 1st argument
+                if (sMessageType.length() == 0)
+                    continue;
+                Future<String> fReply;
+                if (M_TRAIN.contains(sMessageType) && (sMessageParts.length > 1)) {
+                    // Let the earlier requests see the models they were sent for
+                    for (Future<String> fEarlier : lPending)
+                        waitFor(fEarlier);
+                    lPending.clear();
+                    fReply = replyNow(train(sMessageType, sMessageParts[1]) ?
+                            M_DONE : "ERROR not trained");
+                }
+                else if (M_CLASSIFY.contains(sMessageType) && (sMessageParts.length > 1)) {
+                    final String sFile = sMessageParts[1]; // Filename - 2nd argument
+                    // Judge on a thread of the connections, not on the shared
+                    // executor, whose workers the training merges need
+                    fReply = Connections.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return classify(sFile);
+                        }
+                    });
+                }
+                else if (M_TERMINATE.contains(sMessageType)) {
+                    fReply = replyNow(M_DONE);
+                    bTerminate = true;
+                }
+                else
+                    fReply = replyNow("ERROR unknown request: " + sMessage);
+                qReplies.put(fReply);
+                if (!fReply.isDone())
+                    lPending.add(fReply);
+                for (Iterator<Future<String>> iCur = lPending.iterator(); iCur.hasNext();)
+                    if (iCur.next().isDone())
+                        iCur.remove();
+            }
+        }
+        catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        catch (InterruptedException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        try {
+            // Mark the end of the replies, and wait until they are written
+            qReplies.put(replyNow(null));
+            tgWriter.waitUntilCompletion();
+        }
+        catch (InterruptedException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        catch (CompletionException ce) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null,
+                    ce.getCause());
+        }
+        if (bTerminate)
+            stopListening();
+    }
+    
+    /** Writes the replies of a connection, in order, until the end mark (a null
+     * reply) is reached. Replies are flushed whenever no further reply is queued.
+     * If the connection fails, the remaining replies are discarded.
+     */
+    private void writeReplies(BlockingQueue<Future<String>> qReplies,
+            BufferedWriter bwOut) {
+        boolean bFailed = false;
+        try {
+            String sReply;
+            while ((sReply = waitFor(qReplies.take())) != null) {
+                if (bFailed)
+                    continue;
+                try {
+                    bwOut.write(sReply.endsWith("\n") ? sReply : sReply + "\n");
+                    if (qReplies.isEmpty())
+                        bwOut.flush();
+                }
+                catch (IOException ex) {
+                    Logger.getLogger(SpamFilterServer.class.getName()).log(
+                            Level.WARNING, null, ex);
+                    bFailed = true;
+                }
+            }
+            if (!bFailed)
+                bwOut.flush();
+        }
+        catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.WARNING, null, ex);
+        }
+        catch (InterruptedException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /** Starts publishing the queued training messages periodically, if an update
+     * interval is set.
+     *@return The timer of the updates, or null if no interval is set.
+     */
+    protected Timer startUpdateTimer() {
+        if (UpdateInterval <= 0)
+            return null;
+        Timer tRes = new Timer("model-updates", true);
+        tRes.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                publishUpdates();
+            }
+        }, UpdateInterval, UpdateInterval);
+        return tRes;
+    }
+    
+    /** Stops the periodic updates, and publishes any queued training messages.
+     *@param tUpdates The timer of the updates, or null.
+     */
+    protected void stopUpdateTimer(Timer tUpdates) {
+        if (tUpdates != null)
+            tUpdates.cancel();
+        publishUpdates();
+    }
+    
+    /** Starts checkpointing the models periodically, if training is journaled
+     * and a checkpoint interval is set.
+     *@return The timer of the checkpoints, or null if there is none.
+     */
+    protected Timer startCheckpointTimer() {
+        if ((Journal == null) || (CheckpointInterval <= 0))
+            return null;
+        Timer tRes = new Timer("model-checkpoints", true);
+        tRes.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                checkpoint();
+            }
+        }, CheckpointInterval, CheckpointInterval);
+        return tRes;
+    }
+    
+    /** Stops the periodic checkpoints, and checkpoints the current models.
+     *@param tCheckpoints The timer of the checkpoints, or null.
+     */
+    protected void stopCheckpointTimer(Timer tCheckpoints) {
+        if (tCheckpoints != null)
+            tCheckpoints.cancel();
+        checkpoint();
+    }
+    
+    /** Stops accepting connections, and stops reading from the open ones. The
+     * requests already read are still answered.
+     */
+    protected void stopListening() {
+        try {
+            if (Listener != null)
+                Listener.close();
+        } catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.WARNING, null, ex);
+        }
+        synchronized (Clients) {
+            for (Socket sCur : Clients)
+                try {
+                    sCur.shutdownInput();
+                } catch (IOException ex) {
+                    // Already closed
+                }
+        }
+    }
+    
+    private static Future<String> replyNow(String sReply) {
+        FutureTask<String> ftRes = new FutureTask<String>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, sReply);
+        ftRes.run();
+        return ftRes;
+    }
+    
+    /** Waits for a reply, returning an error reply if it failed. */
+    private static String waitFor(Future<String> fReply) throws InterruptedException {
+        try {
+            return fReply.get();
+        }
+        catch (ExecutionException ee) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null,
+                    ee.getCause());
+            return "ERROR " + ee.getCause();
+        }
+    }
+    
+    /** Trains the models with a message, unless further training is ignored. The
+     * message is judged against the current models, and queued for the next
+     * version of the models, which is built and published once
+     * {@link #UpdateBatchSize} messages are queued (see
+     * {@link #publishUpdates()}). The judgement ignores the messages queued
+     * before it, or trained concurrently with it.
+     *@param sMessageType The type of the request, i.e. {@link #M_TRAINHAM} or
+     * {@link #M_TRAINSPAM}.
+     *@param sFile The file of the message.
+     *@return False if the training was interrupted, or the message could not be
+     * journaled, otherwise true.
+     */
+    protected boolean train(String sMessageType, String sFile) {
+        // Only if further training is allowed
+        if (bIgnoreFurtherTraining)
+            return true;
+        Decision dTmp = judge(sFile);
+        if (dTmp == null)
+            return false;
+        System.err.print("Judged to be " + dTmp.FinalDecision + " with" +
+                " a score of " + dTmp.DecisionBelief + " with evidence:");
+        System.err.println(utils.printIterable(
+                dTmp.DecisionEvidence.values(), ","));
+        
+        String sClass = null;
+        if (sMessageType.equalsIgnoreCase(M_TRAINHAM))
+            sClass = C_HAM;
+        else if (sMessageType.equalsIgnoreCase(M_TRAINSPAM))
+            sClass = C_SPAM;
+        DocumentNGramGraph gTmp = (DocumentNGramGraph)dTmp.Document;
+        // Journal and queue in the same order
+        synchronized (JournalLock) {
+            long lSequence = 0;
+            if (Journal != null)
+                try {
+                    lSequence = Journal.append(sClass, dTmp.FinalDecision.toString(), 
+                            gTmp.getDataString());
+                } catch (IOException ex) {
+                    System.err.println("Cannot journal message. Not trained.");
+                    Logger.getLogger(SpamFilterServer.class.getName()).log(
+                            Level.SEVERE, null, ex);
+                    return false;
+                }
+            PendingUpdates.add(new TrainingEvent(gTmp, sClass, 
+                    dTmp.FinalDecision.toString(), lSequence));
+        }
+        if (PendingUpdates.size() >= UpdateBatchSize)
+            return publishUpdates();
+        return true;
+    }
+    
+    /** Builds a new version of the models from the queued training messages,
+     * and publishes it. The models are only updated with messages that were
+     * misjudged, or whose class has fewer than {@link #MinTrainSamples} trained
+     * messages. Misjudgement is decided by the judgement made when the message
+     * was trained, i.e. against the version published before it, not against
+     * the version that would result from the earlier messages of the batch.
+     * The graphs of the current version are copied on their first
+     * update, so the current version can be used for judging throughout.
+     * Successive merges into a model are performed together.
+     * <p>
+     * Only messages synced to the training journal are published. If syncing
+     * fails, the current version is kept and the messages stay queued for a later
+     * update.
+     *@return False if the messages could not be synced, or the update was
+     * interrupted, otherwise true.
+     */
+    public boolean publishUpdates() {
+        synchronized (PendingUpdates) {
+            List<TrainingEvent> lBatch = new ArrayList<TrainingEvent>();
+            PendingUpdates.drainTo(lBatch);
+            if (lBatch.isEmpty())
+                return true;
+            
+            // Only publish what can be recovered
+            if (Journal != null)
+                try {
+                    long lBatchLast = 0;
+                    for (TrainingEvent teCur : lBatch)
+                        lBatchLast = Math.max(lBatchLast, teCur.Sequence);
+                    Journal.sync(lBatchLast);
+                } catch (IOException ex) {
+                    System.err.println("Cannot sync the training journal. Not published.");
+                    Logger.getLogger(SpamFilterServer.class.getName()).log(
+                            Level.SEVERE, null, ex);
+                    requeue(lBatch);
+                    return false;
+                }
+            
+            ModelSnapshot msCur = Models;
+            DocumentNGramGraph[] dgaModels = new DocumentNGramGraph[] {
+                msCur.getHam(), msCur.getSpam() };
+            boolean[] baCopied = new boolean[2];
+            int[] iaCounts = new int[] { msCur.getHamCount(), msCur.getSpamCount() };
+            List<List<DocumentNGramGraph>> lMerges = new ArrayList<List<DocumentNGramGraph>>();
+            List<List<Double>> lRates = new ArrayList<List<Double>>();
+            for (int iModel = 0; iModel < 2; iModel++) {
+                lMerges.add(new ArrayList<DocumentNGramGraph>());
+                lRates.add(new ArrayList<Double>());
+            }
+            int iTrainedCnt = msCur.getTrainedCount();
+            long lLastSequence = msCur.getLastSequence();
+            boolean bUpdated = false;
+            for (TrainingEvent teCur : lBatch) {
+                iTrainedCnt++;
+                lLastSequence = Math.max(lLastSequence, teCur.Sequence);
+                if (teCur.Class == null)
+                    continue;
+                int iModel = teCur.Class.equals(C_HAM) ? 0 : 1;
+                // Update models, on judgement failure
+                if (teCur.Class.equalsIgnoreCase(teCur.JudgedClass) && 
+                        (iaCounts[iModel] >= MinTrainSamples))
+                    continue;
+                lMerges.get(iModel).add(teCur.Graph);
+                lRates.get(iModel).add(getMergeRate(iaCounts[iModel]));
+                iaCounts[iModel]++;
+                if (bEnableDegrade) {
+                    // The other model must include all merges before degrading
+                    int iOther = 1 - iModel;
+                    if (!baCopied[iOther]) {
+                        dgaModels[iOther] = (DocumentNGramGraph)dgaModels[iOther].clone();
+                        baCopied[iOther] = true;
+                    }
+                    mergePending(dgaModels[iOther], lMerges.get(iOther), lRates.get(iOther));
+                    dgaModels[iOther].degrade(teCur.Graph);
+                }
+                bUpdated = true;
+            }
+            for (int iModel = 0; iModel < 2; iModel++)
+                if (!lMerges.get(iModel).isEmpty()) {
+                    if (!baCopied[iModel])
+                        dgaModels[iModel] = (DocumentNGramGraph)dgaModels[iModel].clone();
+                    mergePending(dgaModels[iModel], lMerges.get(iModel), lRates.get(iModel));
+                }
+            DocumentNGramGraph dgHamNext = dgaModels[0];
+            DocumentNGramGraph dgSpamNext = dgaModels[1];
+            
+            if (bUpdated) {
+                System.err.print("Update performed.");
+                NGramGraphEuclidianComparator ngc = new 
+                        NGramGraphEuclidianComparator();
+                // DEBUG LINES
+                if (!bEuclidian)
+                    System.err.println("Similarity between ham and spam: " + 
+                        ngc.getSimilarityBetween(dgHamNext, dgSpamNext).toString());
+                else
+                    System.err.println("Similarity between ham and spam: " + 
+                            ngc.getEuclidianSimilarityBetween(dgHamNext, dgSpamNext, 
+                            bWeightedEuclidian).getOverallSimilarity());
+                //////////////
+                    
+                
+                if (bEnableDelta) {
+                    TaskGroup tUpdates = new TaskGroup();
+                    DeltaPerformer dpHamTmp = new DeltaPerformer(dgHamNext, 
+                            dgSpamNext);
+                    DeltaPerformer dpSpamTmp = new DeltaPerformer(dgSpamNext, 
+                            dgHamNext);
+                    tUpdates.execute(dpHamTmp);
+                    tUpdates.execute(dpSpamTmp);
+                    try {
+                        tUpdates.waitUntilCompletion();
+                    } catch (InterruptedException ex) {
+                        System.err.println("I can't wait!!! :-)");
+                        Logger.getLogger(SpamFilterServer.class.getName()
+                                ).log(Level.SEVERE, null, ex);
+                        requeue(lBatch);
+                        return false;
+                    }
+                    dgHamNext = dpHamTmp.resultGraph;
+                    dgSpamNext = dpSpamTmp.resultGraph;
+                    
+                    // DEBUG LINES
+                    if (!bEuclidian)
+                        System.err.println("Delta performed. Similarity " +
+                            "between ham and spam: " + 
+                            ngc.getSimilarityBetween(dgHamNext, dgSpamNext).toString());
+                    else
+                        System.err.println("Delta performed. Similarity " +
+                                "between ham and spam: " + 
+                                ngc.getEuclidianSimilarityBetween(dgHamNext, dgSpamNext, 
+                                bWeightedEuclidian));
+                    //////////////
+                }
+                // saveModels();
+            }
+            // Publish
+            Models = new ModelSnapshot(dgHamNext, dgSpamNext, iaCounts[0], iaCounts[1],
+                    iTrainedCnt, msCur.getVersion() + 1, lLastSequence);
+            System.err.println(String.format("Trained a total of %d ham and " +
+                    "%d spam after %d messages.", iaCounts[0], iaCounts[1], 
+                    iTrainedCnt));
+            return true;
+        }
+    }
+    
+    /** Puts a batch of training messages back in the queue, before those queued
+     * since it was taken. Must be called while holding the lock of the queue.
+     *@param lBatch The messages, in queue order.
+     */
+    private void requeue(List<TrainingEvent> lBatch) {
+        // Keep trainers from queueing in between
+        synchronized (JournalLock) {
+            List<TrainingEvent> lLater = new ArrayList<TrainingEvent>();
+            PendingUpdates.drainTo(lLater);
+            PendingUpdates.addAll(lBatch);
+            PendingUpdates.addAll(lLater);
+        }
+    }
+    
+    /** Returns the weight percent for merging a message into a model.
+     *@param iCount The number of messages already merged into the model.
+     */
+    protected double getMergeRate(int iCount) {
+        if (!bLinearWareoff)
+            // Exponential
+            return Math.pow(Wareoff, -iCount);
+        if (iCount == 0)
+            return 1.0;
+        // Linear
+        return Math.pow((double)iCount / (iCount + 1.0), Wareoff);
+    }
+    
+    /** Merges the pending graphs into a model, in order, and clears them. */
+    private static void mergePending(DocumentNGramGraph dgModel, 
+            List<DocumentNGramGraph> lGraphs, List<Double> lRates) {
+        if (lGraphs.isEmpty())
+            return;
+        double[] daRates = new double[lRates.size()];
+        for (int iCnt = 0; iCnt < daRates.length; iCnt++)
+            daRates[iCnt] = lRates.get(iCnt);
+        dgModel.mergeAll(lGraphs, daRates);
+        lGraphs.clear();
+        lRates.clear();
+    }
+    
+    /** Classifies a message.
+     *@param sFile The file of the message.
+     *@return The reply to the classification request.
+     */
+    protected String classify(String sFile) {
+        System.err.print("Classifying...");
+        Decision dTmp = judge(sFile);
+        if (dTmp == null)
+            return "ERROR interrupted";
+        
+        // Prepare response
+        StringBuffer sbMsg = new StringBuffer();
+        sbMsg.append("class=" + dTmp.FinalDecision);
+        sbMsg.append(" score=" + String.valueOf(dTmp.DecisionBelief));
+        sbMsg.append(" tfile=dummyFile\n");
+        System.err.println(String.format("%s(%f). Evidence: %s ", 
+                dTmp.FinalDecision, dTmp.DecisionBelief,
+                utils.printIterable(dTmp.DecisionEvidence.values(), 
+                ",")));
+        return sbMsg.toString();
+    }
+    
     protected void sendMessage(Date dStarted, long lDelayMillis, String sMsg) {
         // Wait until necessary delay is inserted
         long lElapsed = new Date().getTime() - dStarted.getTime();
@@ -477,9 +1210,11 @@ public class SpamFilterServer {
         });
         
         // DONE: Multithread
-        ThreadQueue t = new ThreadQueue();
-        final DocumentNGramGraph dgHamArg = dgHam;
-        final DocumentNGramGraph dgSpamArg = dgSpam;
+        TaskGroup t = new TaskGroup();
+        // Judge against a single version of the models
+        final ModelSnapshot msModels = Models;
+        final DocumentNGramGraph dgHamArg = msModels.getHam();
+        final DocumentNGramGraph dgSpamArg = msModels.getSpam();
         final DocumentNGramGraph gTmpArg = gTmp;
         final Hashtable<String, Double> hRes = new Hashtable<String, Double>();
         final NGramGraphEuclidianComparator ngcHArg = ngcH;
@@ -487,7 +1222,7 @@ public class SpamFilterServer {
         final boolean bEuclidianArg = bEuclidian;
         
         // Compare to ham
-        while (!t.addThreadFor(new Runnable() {
+        t.execute(new Runnable() {
             @Override
             public void run() {
                 if (!bEuclidian) {
@@ -512,11 +1247,10 @@ public class SpamFilterServer {
                     }
                     
             }
-        }))
-            Thread.yield();
+        });
         
         // Compare to spam
-        while (!t.addThreadFor(new Runnable() {
+        t.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -541,8 +1275,7 @@ public class SpamFilterServer {
                                 dgSpamArg.length());
                     }
             }
-        }))
-            Thread.yield();
+        });
         
         try {
             t.waitUntilCompletion();
@@ -564,7 +1297,8 @@ public class SpamFilterServer {
             System.err.println("Cannot determine:" + 
                     String.format("Ham: %10.8f\tSpam: %10.8f", dHamScore,
                     dSpamScore));
-            dScore = (iSpamCnt / iHamCnt) / Math.max(iSpamCnt, iHamCnt); // Cannot determine
+            dScore = (msModels.getSpamCount() / msModels.getHamCount()) / 
+                    Math.max(msModels.getSpamCount(), msModels.getHamCount()); // Cannot determine
         }
         if (Double.isNaN(dScore))
             dScore = 0.0;
@@ -685,6 +1419,21 @@ public class SpamFilterServer {
                 "wEuclidian", String.valueOf(false)));
         boolean bEuclidian = Boolean.valueOf(utils.getSwitch(hSwitches, 
                 "euclidian", String.valueOf(false))) || bWeightedEuclidian;
+        boolean bConnected = Boolean.valueOf(utils.getSwitch(hSwitches, 
+                "connected", String.valueOf(false)));
+        int iReplyDelay = Integer.valueOf(utils.getSwitch(hSwitches, 
+                "replyDelay", String.valueOf(50)));
+        boolean bVirtualThreads = Boolean.valueOf(utils.getSwitch(hSwitches, 
+                "virtualThreads", String.valueOf(false)));
+        // Messages of a batch are judged, to decide whether they are merged,
+        // against the models before the batch, not after the earlier messages
+        int iUpdateBatch = Integer.valueOf(utils.getSwitch(hSwitches, 
+                "updateBatch", String.valueOf(1)));
+        int iUpdateInterval = Integer.valueOf(utils.getSwitch(hSwitches, 
+                "updateInterval", String.valueOf(0)));
+        String sJournalDir = utils.getSwitch(hSwitches, "journal", "");
+        int iCheckpointInterval = Integer.valueOf(utils.getSwitch(hSwitches, 
+                "checkpointInterval", String.valueOf(60000)));
         
         SpamFilterServer sServer = new SpamFilterServer(iPort, iRespondToPort);
         if (bLoadModels)
@@ -701,13 +1450,56 @@ public class SpamFilterServer {
         sServer.setWeightedEuclidianOn(bWeightedEuclidian);
         if (dWareoff >= 0.0)
             sServer.setWareoff(dWareoff);
-        sServer.start();
+        sServer.setReplyDelay(iReplyDelay);
+        sServer.setUpdateBatchSize(iUpdateBatch);
+        sServer.setUpdateInterval(iUpdateInterval);
+        sServer.setCheckpointInterval(iCheckpointInterval);
+        if (sJournalDir.length() > 0)
+            try {
+                sServer.enableJournal(sJournalDir);
+            } catch (IOException ex) {
+                System.err.println("Cannot open the training journal. Quitting.");
+                Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, 
+                        null, ex);
+                return;
+            }
+        if (bVirtualThreads)
+            TaskExecutors.setUseVirtualThreads(true);
+        if (bConnected)
+            sServer.startConnected();
+        else
+            sServer.start();
         if (bSaveModels)
             sServer.saveModels();
+        try {
+            sServer.closeJournal();
+        } catch (IOException ex) {
+            Logger.getLogger(SpamFilterServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
     }
 
 }
 
+/** A training message, queued for the next version of the models. */
+class TrainingEvent {
+    /** The graph of the message. */
+    final DocumentNGramGraph Graph;
+    /** The class of the message, or null if it is not to be merged. */
+    final String Class;
+    /** The class the message was judged to belong to. */
+    final String JudgedClass;
+    /** The sequence number of the message in the training journal, or zero. */
+    final long Sequence;
+    
+    TrainingEvent(DocumentNGramGraph dgGraph, String sClass, String sJudgedClass,
+            long lSequence) {
+        Graph = dgGraph;
+        Class = sClass;
+        JudgedClass = sJudgedClass;
+        Sequence = lSequence;
+    }
+}
+
 /** A Runnable class, than performs delta between two DocumentNGramGraphs. */
 class DeltaPerformer implements Runnable {
     private DocumentNGramGraph deltaG1, deltaG2;
@@ -9,12 +9,14 @@ package gr.demokritos.iit.jinsect.console;
 
 import gr.demokritos.iit.jinsect.gui.IStatusDisplayer;
 import gr.demokritos.iit.jinsect.structs.DocumentSet;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import gr.demokritos.iit.jinsect.utils;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +32,14 @@ public class TAC2010SummaryEvaluator {
                 String.valueOf(Boolean.FALSE))).booleanValue();
         boolean bSupportJacknifing = Boolean.valueOf(utils.getSwitch(hSwitches, "supportJack",
                 String.valueOf(Boolean.FALSE))).booleanValue();
+        // Determine if representations should be stored
+        String sCacheDir = utils.getSwitch(hSwitches, "cacheDir", "");
+        if (sCacheDir.length() > 0)
+            RepresentationCache.getShared().setRepositoryDir(sCacheDir);
+        // The arguments determining the representation of summaries and models
+        String[] saReprArgs = bMerge ? new String[] {
+            "-docClass=gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph"
+        } : new String[0];
 
         IStatusDisplayer sdOut = new StreamOutputConsole(System.err, true);
         
@@ -42,7 +52,7 @@ public class TAC2010SummaryEvaluator {
         int iAllFiles = dsPeers.getTrainingSet().size();
         int iCurFile = 0;
         Date dStart = new Date();
-        ThreadList tl = new ThreadList();
+        TaskGroup tl = new TaskGroup();
         
         sdOut.setStatus(String.format("Starting... %s ", dStart.toString()), 0.0);
         // For each category
@@ -58,12 +68,30 @@ public class TAC2010SummaryEvaluator {
                 if (isModel(sCandModel))
                     lModelFiles.add(sCandModel);
             }
+            // Keep files to judge, ignoring model files if requested
+            ArrayList<String> lEvalFiles = new ArrayList<String>();
+            for (String sCurFile : lCatFiles) {
+                if (!(bNoModels && isModel(sCurFile)))
+                    lEvalFiles.add(sCurFile);
+            }
+            if (lEvalFiles.isEmpty())
+                continue;
+
+            // Represent every summary and model of the category once, in parallel
+            final ArrayList<String> lCategoryFiles = new ArrayList<String>(lModelFiles);
+            lCategoryFiles.addAll(lEvalFiles);
+            try {
+                summarySingleFileEvaluator.precompute(saReprArgs, lCategoryFiles);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(TAC2010SummaryEvaluator.class.getName()).log(
+                        Level.SEVERE, null, ex);
+                break;
+            }
+            // Release the representations after the last judgement of the category
+            final AtomicInteger aiPending = new AtomicInteger(lEvalFiles.size());
 
             // For each file
-            for (String sCurFile : lCatFiles) {
-                // Ignore model files, if requested
-                if (bNoModels && isModel(sCurFile))
-                    continue;
+            for (String sCurFile : lEvalFiles) {
                 
                 // Create command line string
                 final ArrayList<String> sArgs = new ArrayList<String>();
@@ -73,7 +101,8 @@ public class TAC2010SummaryEvaluator {
                     "AllPeers\t")); // Add per line
                 if (bMerge) {
                     sArgs.add("-merge");
-                    sArgs.add("-docClass=gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph");
+                    // Judge with the representations just computed
+                    sArgs.addAll(Arrays.asList(saReprArgs));
                     sArgs.add("-compClass=gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator");
                 }
                 // If judging a model file
@@ -92,16 +121,22 @@ public class TAC2010SummaryEvaluator {
                     sbModels.append(";" + sCurModel.trim());
                 }
                 sArgs.add("-models=" + sbModels.toString());
-                while (!tl.addThreadFor(new Runnable() {
+                tl.execute(new Runnable() {
 
                     @Override
                     public void run() {
                         // Get summary
-                        summarySingleFileEvaluator.main(
-                                sArgs.toArray(new String[sArgs.size()]));
+                        try {
+                            summarySingleFileEvaluator.main(
+                                    sArgs.toArray(new String[sArgs.size()]));
+                        }
+                        finally {
+                            if (aiPending.decrementAndGet() == 0)
+                                RepresentationCache.getShared().removeAll(
+                                        lCategoryFiles);
+                        }
                     }
-                }))
-                    Thread.yield();
+                });
                 
                 if (iCurFile % 25 == 0) {
                     double dRemaining = (double)(iAllFiles - iCurFile);
@@ -0,0 +1,251 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphBinaryFormat;
+import gr.demokritos.iit.jinsect.storage.SegmentedLog;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/** A write-ahead journal of the training messages accepted by a
+ * {@link SpamFilterServer}. Every message is appended as a record holding its
+ * sequence number, a hash of its text, its class, the class it was judged to
+ * belong to and its text, so that the models can be rebuilt from the last
+ * checkpoint by replaying the records that follow it. The text is kept char for
+ * char (see {@link NGramGraphBinaryFormat#encodeString(String)}), so that texts
+ * cut within a surrogate pair still match their hash.
+ * <p>
+ * Records are written to the operating system as they are appended, so they
+ * survive the crash of the process. They are synced to disk by group commit:
+ * {@link #sync(long)} lets concurrent writers share a single sync, so that
+ * durability costs one sync per batch of messages rather than one per message.
+ * The journal is a {@link SegmentedLog}, whose segments covered by a checkpoint
+ * are deleted by {@link #truncate(long)}. On opening, a torn or corrupt record at
+ * the tail of the last segment (e.g. after a crash) is truncated, while one in an
+ * earlier segment fails the opening.
+ *
+ * @author ggianna
+ */
+public class TrainingJournal implements Closeable {
+    /** The suffix of the segment files. */
+    public static final String SEGMENT_SUFFIX = ".journal";
+    /** The default maximum size of a segment file, in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 16L << 20;
+
+    /** The segments of the journal. */
+    protected final SegmentedLog Log;
+    /** The sequence number of the last record of every segment holding records,
+     * by segment id. Guarded by the journal itself. */
+    protected final TreeMap<Integer, Long> LastSequences = new TreeMap<Integer, Long>();
+    /** The sequence number of the last appended record. Guarded by the journal
+     * itself. */
+    protected long LastSequence = 0;
+
+    /** Opens a journal in a given directory, creating the directory if required.
+     *@param sPrefix The prefix of the names of the segment files.
+     *@param sBaseDir The directory of the journal.
+     *@throws IOException If the journal cannot be opened.
+     */
+    public TrainingJournal(String sPrefix, String sBaseDir) throws IOException {
+        Log = new SegmentedLog(sPrefix, sBaseDir, SEGMENT_SUFFIX, DEFAULT_SEGMENT_SIZE);
+        open();
+    }
+
+    /** Sets the size over which a new segment is started.
+     *@param lMaxSegmentSize The maximum segment size, in bytes.
+     */
+    public void setMaxSegmentSize(long lMaxSegmentSize) {
+        Log.setMaxSegmentSize(lMaxSegmentSize);
+    }
+
+    public long getMaxSegmentSize() {
+        return Log.getMaxSegmentSize();
+    }
+
+    /** Returns the sequence number of the last appended record, or zero if the
+     * journal has never had any. */
+    public synchronized long getLastSequence() {
+        return LastSequence;
+    }
+
+    /** Makes sure that the records appended from now on are numbered after a
+     * given sequence number, e.g. the last one covered by a checkpoint, whose
+     * records may have been deleted.
+     *@param lSequence The sequence number to number records after.
+     */
+    public synchronized void skipTo(long lSequence) {
+        if (LastSequence < lSequence)
+            LastSequence = lSequence;
+    }
+
+    /** Reads the segments, truncating any torn record at the tail of the last
+     * one. */
+    protected void open() throws IOException {
+        for (SegmentedLog.Segment sCur : Log.getSegments())
+            scanSegment(sCur, null, 0);
+    }
+
+    /** Reads the records of a segment. The last segment is truncated at its first
+     * incomplete or corrupt record (see
+     * {@link SegmentedLog#scan(SegmentedLog.Segment, long, SegmentedLog.RecordHandler)}).
+     *@param sSegment The segment to read.
+     *@param lEntries The list to add the entries read to, or null to only find
+     * the sequence numbers of the segment.
+     *@param lAfter The sequence number after which entries are added.
+     */
+    protected void scanSegment(final SegmentedLog.Segment sSegment,
+            final List<Entry> lEntries, final long lAfter) throws IOException {
+        Log.scan(sSegment, 0, new SegmentedLog.RecordHandler() {
+            @Override
+            public void handleRecord(SegmentedLog.Location lRecord, byte[] baBody)
+                    throws IOException {
+                Entry eCur = decodeEntry(baBody);
+                LastSequences.put(sSegment.getId(), eCur.Sequence);
+                LastSequence = Math.max(LastSequence, eCur.Sequence);
+                if ((lEntries != null) && (eCur.Sequence > lAfter))
+                    lEntries.add(eCur);
+            }
+        });
+    }
+
+    /** Appends a training message to the journal, without syncing it.
+     *@param sClass The class of the message.
+     *@param sJudgedClass The class the message was judged to belong to.
+     *@param sText The text of the message.
+     *@return The sequence number of the record, to wait for with
+     * {@link #sync(long)}.
+     *@throws IOException If the record cannot be written.
+     */
+    public long append(String sClass, String sJudgedClass, String sText)
+            throws IOException {
+        byte[] baText = NGramGraphBinaryFormat.encodeString(sText);
+        synchronized (this) {
+            long lSequence = LastSequence + 1;
+            ByteArrayOutputStream baosBody = new ByteArrayOutputStream(baText.length + 64);
+            DataOutputStream dosBody = new DataOutputStream(baosBody);
+            dosBody.writeLong(lSequence);
+            dosBody.writeLong(hash(sText));
+            dosBody.writeUTF((sClass == null) ? "" : sClass);
+            dosBody.writeUTF((sJudgedClass == null) ? "" : sJudgedClass);
+            dosBody.writeInt(baText.length);
+            dosBody.write(baText);
+            dosBody.close();
+
+            SegmentedLog.Location lRecord = Log.append(SegmentedLog.encodeRecord(
+                    baosBody.toByteArray()), lSequence);
+            LastSequences.put(lRecord.Segment, lSequence);
+            LastSequence = lSequence;
+            return lSequence;
+        }
+    }
+
+    /** Waits until the records up to a given sequence number are synced to disk.
+     * If no sync covering them is in progress, syncs all the records appended so
+     * far, so that concurrent writers share a single sync.
+     *@param lSequence The sequence number of the last record that must be synced.
+     *@throws IOException If syncing fails.
+     */
+    public void sync(long lSequence) throws IOException {
+        Log.sync(lSequence);
+    }
+
+    /** Syncs all the records appended so far to disk.
+     *@throws IOException If syncing fails.
+     */
+    public void sync() throws IOException {
+        Log.sync();
+    }
+
+    /** Reads the records that follow a given sequence number, in order.
+     *@param lAfter The sequence number after which records are read, e.g. the
+     * last one covered by a checkpoint.
+     *@return The entries of the records.
+     *@throws IOException If the journal cannot be read.
+     */
+    public synchronized List<Entry> readAfter(long lAfter) throws IOException {
+        List<Entry> lRes = new ArrayList<Entry>();
+        for (SegmentedLog.Segment sCur : Log.getSegments()) {
+            Long lLast = LastSequences.get(sCur.getId());
+            if ((lLast != null) && (lLast > lAfter))
+                scanSegment(sCur, lRes, lAfter);
+        }
+        return lRes;
+    }
+
+    /** Deletes the segments whose records are all covered by a checkpoint. The
+     * active segment is first sealed, if it is covered too.
+     *@param lCovered The sequence number of the last record covered by the
+     * checkpoint.
+     *@throws IOException If the active segment cannot be sealed.
+     */
+    public synchronized void truncate(long lCovered) throws IOException {
+        Long lActiveLast = LastSequences.get(Log.getActiveSegment().getId());
+        if ((lActiveLast != null) && (lActiveLast <= lCovered))
+            Log.roll();
+        for (SegmentedLog.Segment sCur : Log.getSegments()) {
+            Long lLast = LastSequences.get(sCur.getId());
+            if ((sCur != Log.getActiveSegment()) && ((lLast == null) || (lLast <= lCovered))) {
+                LastSequences.remove(sCur.getId());
+                Log.deleteSegment(sCur);
+            }
+        }
+    }
+
+    /** Syncs and closes the journal.
+     *@throws IOException If syncing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Log.close();
+    }
+
+    protected static Entry decodeEntry(byte[] baBody) throws IOException {
+        DataInputStream disIn = new DataInputStream(new ByteArrayInputStream(baBody));
+        long lSequence = disIn.readLong();
+        long lTextHash = disIn.readLong();
+        String sClass = disIn.readUTF();
+        String sJudgedClass = disIn.readUTF();
+        byte[] baText = new byte[disIn.readInt()];
+        disIn.readFully(baText);
+        return new Entry(lSequence, lTextHash, (sClass.length() == 0) ? null : sClass,
+                sJudgedClass, NGramGraphBinaryFormat.decodeString(baText, 0, baText.length));
+    }
+
+    /** Returns a 64-bit (FNV-1a) hash of a text, independent of the platform. */
+    public static long hash(String sText) {
+        long lHash = 0xCBF29CE484222325L;
+        for (int iCnt = 0; iCnt < sText.length(); iCnt++)
+            lHash = (lHash ^ sText.charAt(iCnt)) * 0x100000001B3L;
+        return lHash;
+    }
+
+    /** A training message read from the journal. */
+    public static class Entry {
+        public final long Sequence;
+        /** The hash of the text, as given by {@link TrainingJournal#hash(String)}. */
+        public final long TextHash;
+        /** The class of the message, or null if it is not to be merged. */
+        public final String Class;
+        public final String JudgedClass;
+        public final String Text;
+
+        public Entry(long lSequence, long lTextHash, String sClass, String sJudgedClass,
+                String sText) {
+            Sequence = lSequence;
+            TextHash = lTextHash;
+            Class = sClass;
+            JudgedClass = sJudgedClass;
+            Text = sText;
+        }
+    }
+}
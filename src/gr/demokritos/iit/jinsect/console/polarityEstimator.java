@@ -13,7 +13,9 @@ import gr.demokritos.iit.jinsect.interoperability.GIFileLoader;
 import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -131,11 +133,20 @@ public class polarityEstimator {
         
         if (bSaveModel) {
             System.err.print("Saving model...");
-            // Save models
-            db.saveObject(gPositive, "pos", "graphModel");
-            db.saveObject(gNegative, "neg", "graphModel");
-            db.saveObject(gNeutral, "neutral", "graphModel");
-            System.err.println("Done.");
+            // Save models, in parallel
+            HashMap<String, DocumentNGramGraph> hmModels =
+                    new HashMap<String, DocumentNGramGraph>();
+            hmModels.put("pos", gPositive);
+            hmModels.put("neg", gNegative);
+            hmModels.put("neutral", gNeutral);
+            try {
+                db.saveAll(hmModels, "graphModel").join();
+                System.err.println("Done.");
+            }
+            catch (CompletionException ce) {
+                System.err.println("Failed.");
+                ce.getCause().printStackTrace();
+            }
         }
         
         // Create WEKA Training file if requested
@@ -34,6 +34,11 @@ import gr.demokritos.iit.jinsect.structs.SimilarityArray;
  */
 public class summaryFuzzyEvaluator extends summaryEvaluator {
     protected String sspellParams; // Spectral Spell params
+    /** The cache of the model representations built with a spectral preprocessor.
+     * It is kept in memory only, apart from {@link #ModelCache}, since stored
+     * representations would not reflect the preprocessor parameters of later
+     * runs. */
+    protected final RepresentationCache SpectralCache = new RepresentationCache();
     
     /** Creates a summaryEvaluator object.
      *@param sOutputSemaphore A semaphore that ensures that the output is provided consistently.
@@ -90,9 +95,18 @@ public class summaryFuzzyEvaluator extends summaryEvaluator {
                     "-ssParams=\"string\"\tThe parameters for spectral spell.");
     }
 
-    protected SimilarityArray calcSimilarityMeasures(CategorizedFileEntry cfeCur, List dsModelSet, boolean bOutput, PrintStream pOut, Semaphore sSem, int WordNGramSize_Min, int WordNGramSize_Max, int Word_Dmax, int CharacterNGramSize_Min, int CharacterNGramSize_Max, int Character_Dmax, boolean bDoCharNGrams, boolean bDoWordNGrams, boolean bSilent) {
+    /** Does nothing: the fuzzy representations depend on the spectral preprocessor
+     * of each summary, so they are only built on comparison. */
+    @Override
+    protected void precomputeRepresentations(List<String> lFiles,
+            int WordNGramSize_Min, int WordNGramSize_Max, int Word_Dmax,
+            int CharacterNGramSize_Min, int CharacterNGramSize_Max, int Character_Dmax,
+            boolean bDoCharNGrams, boolean bDoWordNGrams) {
+    }
+
+    protected SimilarityArray calcSimilarityMeasures(CategorizedFileEntry cfeCur, List dsModelSet, boolean bOutput, PrintStream pOut, Semaphore sSem, final int WordNGramSize_Min, final int WordNGramSize_Max, final int Word_Dmax, final int CharacterNGramSize_Min, final int CharacterNGramSize_Max, final int Character_Dmax, boolean bDoCharNGrams, boolean bDoWordNGrams, boolean bSilent) {
         // Init preprocessor
-        TextSpectralSpellPreprocessor tSpectral = new TextSpectralSpellPreprocessor(sspellParams);
+        final TextSpectralSpellPreprocessor tSpectral = new TextSpectralSpellPreprocessor(sspellParams);
         initSpectralPreprocessor(cfeCur, dsModelSet, tSpectral);
         
         if (pOut == null)
@@ -144,40 +158,39 @@ public class summaryFuzzyEvaluator extends summaryEvaluator {
             SimpleTextDocument ndDoc2 = null;
             NGramDocument ndNDoc2 = null;
                     
+            // Look up cache
             if (bDoWordNGrams)
-            {
-                synchronized (hModelCache) {
-                    // Look up cache
-                    if (hModelCache.containsKey(cfeOther.getFileName()))
-                        ndDoc2 = (SimpleTextDocument)hModelCache.get(cfeOther.getFileName());
-                    else {
-                        ndDoc2 = new SimpleTextDocument(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
+                ndDoc2 = SpectralCache.getDocument(cfeOther.getFileName(), "Spectral " +
+                        RepresentationCache.getRepresentationName(SimpleTextDocument.class,
+                        WordNGramSize_Min, WordNGramSize_Max, Word_Dmax), 
+                        new RepresentationCache.DocumentFactory<SimpleTextDocument>() {
+                    public SimpleTextDocument newDocument() {
+                        SimpleTextDocument ndRes = new SimpleTextDocument(WordNGramSize_Min,
+                                WordNGramSize_Max, Word_Dmax);
                         // Set preprocessor
-                        ndDoc2.getDocumentGraph().TextPreprocessor = tSpectral;
-                        ndDoc2.getDocumentHistogram().TextPreprocessor = tSpectral;
-                        ndDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        hModelCache.put(cfeOther.getFileName(), ndDoc2);
+                        ndRes.getDocumentGraph().TextPreprocessor = tSpectral;
+                        ndRes.getDocumentHistogram().TextPreprocessor = tSpectral;
+                        return ndRes;
                     }
-                }
-            }
+                });
                 
             // Yield
             Thread.yield();
             
-            if (bDoCharNGrams) {
-                synchronized (hNModelCache) {
-                    if (hNModelCache.containsKey(cfeOther.getFileName()))
-                        ndNDoc2 = (NGramDocument)hNModelCache.get(cfeOther.getFileName());
-                    else {
-                        ndNDoc2 = new NGramDocument(CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, 
-                                  CharacterNGramSize_Min, CharacterNGramSize_Max);
+            if (bDoCharNGrams)
+                ndNDoc2 = SpectralCache.getDocument(cfeOther.getFileName(), "Spectral " +
+                        RepresentationCache.getRepresentationName(NGramDocument.class,
+                        CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax),
+                        new RepresentationCache.DocumentFactory<NGramDocument>() {
+                    public NGramDocument newDocument() {
+                        NGramDocument ndRes = new NGramDocument(CharacterNGramSize_Min,
+                                CharacterNGramSize_Max, Character_Dmax, CharacterNGramSize_Min,
+                                CharacterNGramSize_Max);
                         // Set preprocessor
-                        ndNDoc2.getDocumentGraph().TextPreprocessor = tSpectral;
-                        ndNDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        hNModelCache.put(cfeOther.getFileName(), ndNDoc2);
+                        ndRes.getDocumentGraph().TextPreprocessor = tSpectral;
+                        return ndRes;
                     }
-                }
-            }
+                });
                 
             // Yield
             Thread.yield();
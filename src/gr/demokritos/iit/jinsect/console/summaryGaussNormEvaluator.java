@@ -11,14 +11,17 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InvalidClassException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import gr.demokritos.iit.jinsect.documentModel.comparators.CachedDocumentComparator;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.NGramDistroDocument;
+import gr.demokritos.iit.jinsect.documentModel.documentTypes.NGramDocument;
 import gr.demokritos.iit.jinsect.documentModel.representations.NGramGaussNormDocument;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextDistroDocument;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextDocument;
@@ -28,7 +31,7 @@ import gr.demokritos.iit.jinsect.structs.CategorizedFileEntry;
 import gr.demokritos.iit.jinsect.structs.DocumentSet;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import gr.demokritos.iit.jinsect.structs.SimilarityArray;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 
 /** A class for object that perform evaluation using the Gauss-normalized methodology for the
  * calculation n-gram graphs.
@@ -48,8 +51,9 @@ public class summaryGaussNormEvaluator implements Runnable {
     String OutFile, SummaryDir, ModelDir, Do;
     boolean Silent, Progress, LowMem;
     Semaphore OutputSemaphore;
-    Hashtable hModelCache = new Hashtable();
-    Hashtable hNModelCache = new Hashtable();
+    /** Summary and model representation cache, shared with the other evaluators.
+     * Not used in low memory mode. */
+    RepresentationCache ModelCache = RepresentationCache.getShared();
     
     /**
      * @param args the command line arguments
@@ -64,7 +68,7 @@ public class summaryGaussNormEvaluator implements Runnable {
     private static void printUsage() {
             System.err.println("Syntax:\nsummaryGaussNormEvaluator -do=(char|word|all) [-summaryDir=summaries/] [-modelDir=models/]"+
                     "[-wordMin=#] [-wordMax=#] [-wordDist=#] [-charMin=#] [-charMax=#] [-charDist=#] [-o=outFile] [-t=#]" + 
-                    "[-s] [-use=o|d] [-progress] [-lowmem]");
+                    "[-s] [-use=o|d] [-progress] [-lowmem] [-cacheDir=dir]");
             System.err.println("wordMin=#\tMin word n-gram size.\nwordMax=#\tMax word n-gram size.\nwordDist=#\tWord n-gram window\n" +
                     "charMin=#\tMin char n-gram size.\ncharMax=#\tMax char n-gram size.\ncharDist=#\tChar n-gram window.\n" +
                     "-o=outFile\tThe file to output data. Default is stdout.\n-t=#\tNumber of threads. Defaults to 2.\n" +
@@ -72,6 +76,7 @@ public class summaryGaussNormEvaluator implements Runnable {
                     "-progress\tFor progress indication (even in silent mode).\n" +
                     "-use=o|d\tUse [o]ccurences or average [d]istance to assign weights to the graph. Defaults to o.\n" +
                     "-lowmem\tDo not use caching for documents. Less memory used, more time required.\n" +
+                    "-cacheDir=dir\tThe directory to store summary and model representations, for reuse across runs.\n" +
                     "-?\tShow this screen.");
     }
 
@@ -174,6 +179,10 @@ public class summaryGaussNormEvaluator implements Runnable {
             // Determine if progress indication should be shown
             Progress=gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "progress", "FALSE").equals("TRUE");
             LowMem = gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "lowmem", "FALSE").equals("TRUE");
+            // Determine if representations should be stored
+            String sCacheDir = gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "cacheDir", "");
+            if (sCacheDir.length() > 0)
+                ModelCache.setRepositoryDir(sCacheDir);
             
             if (!Silent)
                 System.err.println("Using parameters:\n" + hSwitches);
@@ -186,6 +195,23 @@ public class summaryGaussNormEvaluator implements Runnable {
         }
     }
     
+    /** Returns the representation of a file, from the cache unless in low memory mode.
+     *@param sFile The file to represent.
+     *@param cType The document class.
+     *@param iMinNGram The min n-gram rank.
+     *@param iMaxNGram The max n-gram rank.
+     *@param iDist The neighbourhood distance.
+     *@return The document, which must not be modified.
+     */
+    protected <T extends NGramDocument> T getDocument(String sFile, Class<T> cType,
+            int iMinNGram, int iMaxNGram, int iDist) {
+        if (!LowMem)
+            return ModelCache.getDocument(sFile, cType, iMinNGram, iMaxNGram, iDist);
+        T ndRes = RepresentationCache.newInstance(cType, iMinNGram, iMaxNGram, iDist);
+        ndRes.loadDataStringFromFile(sFile);
+        return ndRes;
+    }
+
     public void run() {
         PrintStream pOut = null;
         if (OutFile.length() != 0) {
@@ -258,13 +284,15 @@ public class summaryGaussNormEvaluator implements Runnable {
         SimilarityArray saRes = new SimilarityArray();
         
         // Read first file
-        SimpleTextDocument ndDoc1 = new SimpleTextDocument(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
-        NGramGaussNormDocument ndNDoc1 = new NGramGaussNormDocument(CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, CharacterNGramSize_Min, CharacterNGramSize_Max);
+        SimpleTextDocument ndDoc1 = null;
+        NGramGaussNormDocument ndNDoc1 = null;
         
         if (bDoWordNGrams)
-            ndDoc1.loadDataStringFromFile(cfeCur.getFileName());
+            ndDoc1 = getDocument(cfeCur.getFileName(), SimpleTextDocument.class,
+                    WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
         if (bDoCharNGrams)
-            ndNDoc1.loadDataStringFromFile(cfeCur.getFileName());
+            ndNDoc1 = getDocument(cfeCur.getFileName(), NGramGaussNormDocument.class,
+                    CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax);
         
         StandardDocumentComparator sdcComparator = new StandardDocumentComparator();
         CachedDocumentComparator sdcNComparator = new CachedDocumentComparator();
@@ -294,45 +322,17 @@ public class summaryGaussNormEvaluator implements Runnable {
             SimpleTextDocument ndDoc2 = null;
             NGramGaussNormDocument ndNDoc2 = null;
                     
+            // Look up cache
             if (bDoWordNGrams)
-            {
-                synchronized (hModelCache) {
-                    // Look up cache
-                    if (hModelCache.containsKey(cfeOther.getFileName()))
-                        ndDoc2 = (SimpleTextDocument)hModelCache.get(cfeOther.getFileName());
-                    else {
-                        ndDoc2 = new SimpleTextDocument(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
-                        ndDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        if (LowMem && (hModelCache.size() > 1))
-                            hModelCache.clear();
-                        hModelCache.put(cfeOther.getFileName(), ndDoc2);
-                    }
-                }
-            }
+                ndDoc2 = getDocument(cfeOther.getFileName(), SimpleTextDocument.class,
+                        WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
                 
             // Yield
             Thread.yield();
             
-            if (bDoCharNGrams) {
-                synchronized (hNModelCache) {
-                    if (hNModelCache.containsKey(cfeOther.getFileName())) {
-                        while ((ndNDoc2 = (NGramGaussNormDocument)hNModelCache.get(cfeOther.getFileName())) 
-                            instanceof LoadingNGramDocument)
-                            Thread.yield();
-                    }
-                    else {
-                        ndNDoc2 = new NGramGaussNormDocument(CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, 
-                                  CharacterNGramSize_Min, CharacterNGramSize_Max);
-                        // Set state to loading
-                        hNModelCache.put(cfeOther.getFileName(), new LoadingNGramDocument());
-
-                        ndNDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        if (LowMem && (hNModelCache.size() > 1))
-                            hNModelCache.clear();
-                        hNModelCache.put(cfeOther.getFileName(), ndNDoc2);
-                    }
-                }
-            }
+            if (bDoCharNGrams)
+                ndNDoc2 = getDocument(cfeOther.getFileName(), NGramGaussNormDocument.class,
+                        CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax);
                 
             // Yield
             Thread.yield();
@@ -446,13 +446,15 @@ public class summaryGaussNormEvaluator implements Runnable {
         SimilarityArray saRes = new SimilarityArray();
         
         // Read first file
-        SimpleTextDistroDocument ndDoc1 = new SimpleTextDistroDocument(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
-        NGramDistroDocument ndNDoc1 = new NGramDistroDocument(CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, CharacterNGramSize_Min, CharacterNGramSize_Max);
+        SimpleTextDistroDocument ndDoc1 = null;
+        NGramDistroDocument ndNDoc1 = null;
         
         if (bDoWordNGrams)
-            ndDoc1.loadDataStringFromFile(cfeCur.getFileName());
+            ndDoc1 = getDocument(cfeCur.getFileName(), SimpleTextDistroDocument.class,
+                    WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
         if (bDoCharNGrams)
-            ndNDoc1.loadDataStringFromFile(cfeCur.getFileName());
+            ndNDoc1 = getDocument(cfeCur.getFileName(), NGramDistroDocument.class,
+                    CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax);
         
         StandardDocumentDistroComparator sdcComparator = new StandardDocumentDistroComparator();
         StandardDocumentDistroComparator sdcNComparator = new StandardDocumentDistroComparator();
@@ -470,35 +472,17 @@ public class summaryGaussNormEvaluator implements Runnable {
             SimpleTextDistroDocument ndDoc2 = null;
             NGramDistroDocument ndNDoc2 = null;
                     
+            // Look up cache
             if (bDoWordNGrams)
-            {
-                synchronized (hModelCache) {
-                    // Look up cache
-                    if (hModelCache.containsKey(cfeOther.getFileName()))
-                        ndDoc2 = (SimpleTextDistroDocument)hModelCache.get(cfeOther.getFileName());
-                    else {
-                        ndDoc2 = new SimpleTextDistroDocument(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
-                        ndDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        hModelCache.put(cfeOther.getFileName(), ndDoc2);
-                    }
-                }
-            }
+                ndDoc2 = getDocument(cfeOther.getFileName(), SimpleTextDistroDocument.class,
+                        WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
                 
             // Yield
             Thread.yield();
             
-            if (bDoCharNGrams) {
-                synchronized (hModelCache) {
-                    if (hNModelCache.containsKey(cfeOther.getFileName()))
-                        ndNDoc2 = (NGramDistroDocument)hNModelCache.get(cfeOther.getFileName());
-                    else {
-                        ndNDoc2 = new NGramDistroDocument(CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, 
-                                CharacterNGramSize_Min, CharacterNGramSize_Max);
-                        ndNDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                        hNModelCache.put(cfeOther.getFileName(), ndNDoc2);
-                    }
-                }
-            }
+            if (bDoCharNGrams)
+                ndNDoc2 = getDocument(cfeOther.getFileName(), NGramDistroDocument.class,
+                        CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax);
                 
             
             // Yield
@@ -573,6 +557,36 @@ public class summaryGaussNormEvaluator implements Runnable {
         return saRes;
     }
     
+    /** Builds the representations used in comparisons by the weighting method of the
+     * evaluator for a given set of files, in parallel, before any comparison asks for
+     * them.
+     *@param lFiles The files to represent.
+     *@param WordNGramSize_Min The min word n-gram rank to use in the representation.
+     *@param WordNGramSize_Max The max word n-gram rank to use in the representation.
+     *@param Word_Dmax The max neighbourhood distance to use in the word n-gram graph 
+     * representation.
+     *@param CharacterNGramSize_Min The min character n-gram rank to use in the representation.
+     *@param CharacterNGramSize_Max The max character n-gram rank to use in the representation.
+     *@param Character_Dmax The max neighbourhood distance to use in the character n-gram graph 
+     * representation.
+     *@param bDoCharNGrams If true, character n-gram representations are built.
+     *@param bDoWordNGrams If true, word n-gram representations are built.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    protected void precomputeRepresentations(List<String> lFiles,
+            int WordNGramSize_Min, int WordNGramSize_Max, int Word_Dmax,
+            int CharacterNGramSize_Min, int CharacterNGramSize_Max, int Character_Dmax,
+            boolean bDoCharNGrams, boolean bDoWordNGrams) throws InterruptedException {
+        boolean bDistro = (WeightMethod == USE_DISTRO_AVERAGE_AS_WEIGHT);
+        if (bDoWordNGrams)
+            ModelCache.precompute(lFiles, bDistro ? SimpleTextDistroDocument.class :
+                SimpleTextDocument.class, WordNGramSize_Min, WordNGramSize_Max, Word_Dmax);
+        if (bDoCharNGrams)
+            ModelCache.precompute(lFiles, bDistro ? NGramDistroDocument.class :
+                NGramGaussNormDocument.class, CharacterNGramSize_Min, CharacterNGramSize_Max,
+                Character_Dmax);
+    }
+    
     /** Performs optimized evaluation of a given set of summaries, given a model directory. 
      *@param sSem A semaphore that ensures that the output is provided consistently.
      *@param pOverallResultsOutStream The output stream for results.
@@ -599,7 +613,7 @@ public class summaryGaussNormEvaluator implements Runnable {
         if (pOverallResultsOutStream == null)
             pOverallResultsOutStream = System.out;
         
-        ThreadList tqRobin = new ThreadList(iThreads);
+        TaskGroup tqRobin = new TaskGroup(iThreads);
         
         DocumentSet dsSummarySet = new DocumentSet(sSummaryDir, 1.0);
         final DocumentSet dsModelSet = new DocumentSet(sModelDir, 1.0);
@@ -650,25 +664,53 @@ public class summaryGaussNormEvaluator implements Runnable {
             if (!bSilent)
                 System.err.println("Processing category:" + sCurCategory);
             
-            // Clear cache to avoid memory redundancy
-            hModelCache.clear();
-            hNModelCache.clear();
-            
             // Load model file list
             List lModelFiles = dsModelSet.getFilesFromCategory(sCurCategory);            
             // For every file in the same category as the models
-            Iterator iIter = dsSummarySet.getFilesFromCategory(sCurCategory, 
-                    dsSummarySet.FROM_TRAINING_SET).iterator();            
+            List lSummaryFiles = dsSummarySet.getFilesFromCategory(sCurCategory, 
+                    dsSummarySet.FROM_TRAINING_SET);
+            if (lSummaryFiles.isEmpty())
+                continue;
+            final List<String> lCategoryFiles = new ArrayList<String>(
+                    DocumentSet.categorizedFileEntriesToStrings(lModelFiles));
+            lCategoryFiles.addAll(DocumentSet.categorizedFileEntriesToStrings(lSummaryFiles));
+            if (!LowMem) {
+                // Build all representations of the category once, in parallel
+                try {
+                    precomputeRepresentations(lCategoryFiles, WordNGramSize_Min,
+                            WordNGramSize_Max, Word_Dmax, CharacterNGramSize_Min,
+                            CharacterNGramSize_Max, Character_Dmax, bDoCharNGrams,
+                            bDoWordNGrams);
+                } catch (InterruptedException ie) {
+                    System.err.println("Interrupted. Aborting...");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            // Release the representations of the category from memory, once all its
+            // summaries are compared
+            final AtomicInteger aiRemaining = new AtomicInteger(lSummaryFiles.size());
+            Iterator iIter = lSummaryFiles.iterator();
             while (iIter.hasNext()) {
                 final CategorizedFileEntry cfeCur = (CategorizedFileEntry)iIter.next();
                 
-                Runnable r = new GaussCalcSimilRunner(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax,
+                final Runnable rCompare = new GaussCalcSimilRunner(WordNGramSize_Min, WordNGramSize_Max, Word_Dmax,
                         CharacterNGramSize_Min, CharacterNGramSize_Max, Character_Dmax, cfeCur,
                         lModelFiles, sSem, 
                         bDoCharNGrams, bDoWordNGrams,
                         pOverallResultsOutStream, bSilent, this, WeightMethod, Progress);
-                while (!tqRobin.addThreadFor(r))
-                    Thread.yield();
+                Runnable r = new Runnable() {
+                    public void run() {
+                        try {
+                            rCompare.run();
+                        }
+                        finally {
+                            if (aiRemaining.decrementAndGet() == 0)
+                                ModelCache.removeAll(lCategoryFiles);
+                        }
+                    }
+                };
+                tqRobin.execute(r);
 
                 Date dCurTime = new Date();            
                 long lRemaining = (iTotal - iCur + 1) * (long)((double)(dCurTime.getTime() - dStart.getTime()) / iCur);
@@ -700,7 +742,7 @@ public class summaryGaussNormEvaluator implements Runnable {
         if (pOverallResultsOutStream == null)
             pOverallResultsOutStream = System.out;
         
-        ThreadList tqRobin = new ThreadList(iThreads);
+        TaskGroup tqRobin = new TaskGroup(iThreads);
         
         DocumentSet dsSummarySet = new DocumentSet(sSummaryDir, 1.0);
         final DocumentSet dsModelSet = new DocumentSet(sModelDir, 1.0);
@@ -751,14 +793,7 @@ public class summaryGaussNormEvaluator implements Runnable {
                     dsModelSet.getFilesFromCategory(cfeCur.getCategory()), sSem, 
                     bDoCharNGrams, bDoWordNGrams,
                     pOverallResultsOutStream, bSilent, this, WeightMethod, Progress);
-            while (!tqRobin.addThreadFor(r))
-                try {
-                    Thread.sleep(500 / iThreads);
-                }
-                catch (InterruptedException ie) {
-                    // Actually ignore
-                    ie.printStackTrace(System.err);
-                }
+            tqRobin.execute(r);
                 
                 
             Date dCurTime = new Date();            
@@ -957,8 +992,3 @@ class GaussCalcSimilRunner implements Runnable {
         }
     }
 }
-
-/** Dummy class to indicate loading of a document
- */
-class LoadingNGramDocument extends NGramGaussNormDocument {
-}
\ No newline at end of file
@@ -12,12 +12,14 @@ import java.io.FileNotFoundException;
 import java.io.InvalidClassException;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import gr.demokritos.iit.jinsect.structs.CategorizedFileEntry;
 import gr.demokritos.iit.jinsect.structs.DocumentSet;
 import gr.demokritos.iit.jinsect.documentModel.ILoadableTextPrint;
@@ -26,7 +28,7 @@ import gr.demokritos.iit.jinsect.documentModel.comparators.StandardDocumentCompa
 import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import gr.demokritos.iit.jinsect.structs.SimilarityArray;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 
 /** A generic class for summary evaluation, which can host many different
  * methods, through a single interface.
@@ -39,8 +41,8 @@ public class summaryGenericEvaluator {
             ComparatorClass;
     protected boolean Silent, Progress;
     protected Semaphore OutputSemaphore;
-    protected Hashtable hModelCache = new Hashtable();
-    protected Hashtable hNModelCache = new Hashtable();
+    /** Summary and model representation cache, shared with the other evaluators. */
+    protected RepresentationCache ModelCache = RepresentationCache.getShared();
     
     /** 
      * @param args the command line arguments
@@ -55,7 +57,7 @@ public class summaryGenericEvaluator {
     private static void printUsage() {
             System.err.println("Syntax:\nsummaryEvaluator [-summaryDir=summaries/] [-modelDir=models/]"+
                     "[-nMin=#] [-nMax=#] [-dist=#] [-t=#]" + 
-                    "[-s] [-use=o|d] [-progress] [-docClass=...] [-compClass=...]");
+                    "[-s] [-use=o|d] [-progress] [-docClass=...] [-compClass=...] [-cacheDir=dir]");
             System.err.println("nMin=#\tMin n-gram size.\nnMax=#\tMax n-gram size.\n" +
                     "dist=#\tN-gram window.\n" +
                     "-o=outFile\tThe file to output data. Default is stdout.\n" +
@@ -66,6 +68,7 @@ public class summaryGenericEvaluator {
                         "Defaults to jinsect.documentModel.NGramDocument \n" +
                     "-compClass=...\tA java class identifier to use as Comparator class. " +
                         "Defaults to jinsect.documentModel.StandardDocumentComparator \n" +
+                    "-cacheDir=dir\tThe directory to store summary and model representations, for reuse across runs.\n" +
                     "-?\tShow this screen.");
     }
 
@@ -102,6 +105,10 @@ public class summaryGenericEvaluator {
             Silent=gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "s", "FALSE").equals("TRUE");
             // Determine if progress indication should be shown
             Progress=gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "progress", "FALSE").equals("TRUE");
+            // Determine if representations should be stored
+            String sCacheDir = gr.demokritos.iit.jinsect.utils.getSwitch(hSwitches, "cacheDir", "");
+            if (sCacheDir.length() > 0)
+                ModelCache.setRepositoryDir(sCacheDir);
             
             if (!Silent)
                 System.err.println("Using parameters:\n" + hSwitches);
@@ -168,7 +175,7 @@ public class summaryGenericEvaluator {
         if (pOverallResultsOutStream == null)
             pOverallResultsOutStream = System.out;
         
-        ThreadList tqRobin = new ThreadList(iThreads);
+        TaskGroup tqRobin = new TaskGroup(iThreads);
         
         DocumentSet dsSummarySet = new DocumentSet(sSummaryDir, 1.0);
         final DocumentSet dsModelSet = new DocumentSet(sModelDir, 1.0);
@@ -207,24 +214,52 @@ public class summaryGenericEvaluator {
             if (!bSilent)
                 System.err.println("Processing category:" + sCurCategory);
             
-            // Clear cache to avoid memory redundancy
-            hModelCache.clear();
-            hNModelCache.clear();
-            
             // Load model file list
             List lModelFiles = dsModelSet.getFilesFromCategory(sCurCategory);            
             // For every file in the same category as the models
-            Iterator iIter = dsSummarySet.getFilesFromCategory(sCurCategory, 
-                    dsSummarySet.FROM_TRAINING_SET).iterator();            
+            List lSummaryFiles = dsSummarySet.getFilesFromCategory(sCurCategory, 
+                    dsSummarySet.FROM_TRAINING_SET);
+            if (lSummaryFiles.isEmpty())
+                continue;
+            final List<String> lCategoryFiles = new ArrayList<String>(
+                    DocumentSet.categorizedFileEntriesToStrings(lModelFiles));
+            lCategoryFiles.addAll(DocumentSet.categorizedFileEntriesToStrings(lSummaryFiles));
+            // Build all representations of the category once, in parallel
+            try {
+                ModelCache.precompute(lCategoryFiles, Class.forName(DocumentClass),
+                        NGramSize_Min, NGramSize_Max, Dmax);
+            } catch (ClassNotFoundException ex) {
+                // Reported by the comparisons
+            } catch (IllegalArgumentException ex) {
+                // Reported by the comparisons
+            } catch (InterruptedException ex) {
+                System.err.println("Interrupted. Aborting...");
+                Thread.currentThread().interrupt();
+                break;
+            }
+            // Release the representations of the category from memory, once all its
+            // summaries are compared
+            final AtomicInteger aiRemaining = new AtomicInteger(lSummaryFiles.size());
+            Iterator iIter = lSummaryFiles.iterator();
             while (iIter.hasNext()) {
                 final CategorizedFileEntry cfeCur = (CategorizedFileEntry)iIter.next();
                 
-                Runnable r = new GenericCalcSimilRunner(NGramSize_Min, NGramSize_Max, Dmax, cfeCur,
+                final Runnable rCompare = new GenericCalcSimilRunner(NGramSize_Min, NGramSize_Max, Dmax, cfeCur,
                         lModelFiles, sSem, pOverallResultsOutStream, bSilent, this, 
                         DocumentClass, ComparatorClass,
                         Progress);
-                while (!tqRobin.addThreadFor(r))
-                    Thread.yield();
+                Runnable r = new Runnable() {
+                    public void run() {
+                        try {
+                            rCompare.run();
+                        }
+                        finally {
+                            if (aiRemaining.decrementAndGet() == 0)
+                                ModelCache.removeAll(lCategoryFiles);
+                        }
+                    }
+                };
+                tqRobin.execute(r);
 
                 Date dCurTime = new Date();            
                 long lRemaining = (iTotal - iCur + 1) * (long)((double)(dCurTime.getTime() - dStart.getTime()) / iCur);
@@ -246,6 +281,28 @@ public class summaryGenericEvaluator {
                 "performed.");
     }
     
+    /** Returns the representation of a file by the document class of the evaluator,
+     * from the cache.
+     *@param sFile The file to represent.
+     *@param NGramSize_Min The min n-gram rank to use.
+     *@param NGramSize_Max The max n-gram rank to use.
+     *@param Dmax The n-gram neighbourhood distance to use.
+     *@return The document, which must not be modified, or null if the document
+     * class cannot represent the file.
+     */
+    protected ILoadableTextPrint getDocument(String sFile, int NGramSize_Min,
+            int NGramSize_Max, int Dmax) {
+        try {
+            return (ILoadableTextPrint)ModelCache.getDocument(sFile,
+                    Class.forName(DocumentClass), NGramSize_Min, NGramSize_Max, Dmax);
+        } catch (ClassNotFoundException ex) {
+            ex.printStackTrace(System.err);
+        } catch (RuntimeException ex) {
+            ex.printStackTrace(System.err);
+        }
+        return null;
+    }
+    
     /** Executor of the evaluation. */
     public void run() {
         PrintStream pOut = null;
@@ -307,37 +364,12 @@ public class summaryGenericEvaluator {
         
         // Init return struct
         SimilarityArray saRes = new SimilarityArray();
-        ILoadableTextPrint ndNDoc1 = null;
-        try {
-            int iIdx = getConstructor(DocumentClass,3);
-            if (iIdx > -1)
-                ndNDoc1 = (ILoadableTextPrint)Class.forName(DocumentClass).getConstructors()
-                    [iIdx].newInstance(NGramSize_Min, NGramSize_Max, Dmax);
-            else {
-                iIdx = getConstructor(DocumentClass,5);
-                ndNDoc1 = (ILoadableTextPrint)Class.forName(DocumentClass).getConstructors()
-                    [iIdx].newInstance(NGramSize_Min, NGramSize_Max, Dmax, NGramSize_Min,
-                        NGramSize_Max);
-            }
-        } catch (IllegalArgumentException ex) {
-            ex.printStackTrace(System.err);
-        } catch (SecurityException ex) {
-            ex.printStackTrace(System.err);
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InstantiationException ex) {
-            ex.printStackTrace(System.err);
-        } catch (IllegalAccessException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InvocationTargetException ex) {
-            ex.printStackTrace(System.err);
-        }
+        // Read first file        
+        ILoadableTextPrint ndNDoc1 = getDocument(cfeCur.getFileName(), NGramSize_Min,
+                NGramSize_Max, Dmax);
         if (ndNDoc1 == null)
             return new SimilarityArray();
         
-        // Read first file        
-        ndNDoc1.loadDataStringFromFile(cfeCur.getFileName());
-        
         // Init Comparator Class        
         SimilarityComparatorListener sdcNComparator = null;
         try {
@@ -388,43 +420,10 @@ public class summaryGenericEvaluator {
 
             // Load model data
             // Init document class
-            ILoadableTextPrint ndNDoc2 = null;
-                    
-            synchronized (hModelCache) {
-                // Look up cache
-                if (hModelCache.containsKey(cfeOther.getFileName()))
-                    ndNDoc2 = (ILoadableTextPrint)hModelCache.get(cfeOther.getFileName());
-                else {
-                    try {
-                        int iIdx = getConstructor(DocumentClass,3);
-                        if (iIdx > -1)
-                            ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentClass).getConstructors()
-                                [iIdx].newInstance(NGramSize_Min, NGramSize_Max, Dmax);
-                        else {
-                            iIdx = getConstructor(DocumentClass,5);
-                            ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentClass).getConstructors()
-                                [iIdx].newInstance(NGramSize_Min, NGramSize_Max, Dmax, NGramSize_Min,
-                                    NGramSize_Max);
-                        }
-                    } catch (IllegalArgumentException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (SecurityException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (ClassNotFoundException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InstantiationException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (IllegalAccessException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InvocationTargetException ex) {
-                        ex.printStackTrace(System.err);
-                    }
-                    if (ndNDoc2 == null)
-                        return new SimilarityArray();
-                    ndNDoc2.loadDataStringFromFile(cfeOther.getFileName());
-                    hModelCache.put(cfeOther.getFileName(), ndNDoc2);
-                }
-            }
+            ILoadableTextPrint ndNDoc2 = getDocument(cfeOther.getFileName(), NGramSize_Min,
+                    NGramSize_Max, Dmax);
+            if (ndNDoc2 == null)
+                return new SimilarityArray();
                 
             // Yield
             Thread.yield();
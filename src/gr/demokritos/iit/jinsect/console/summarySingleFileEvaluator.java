@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InvalidClassException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Set;
@@ -39,6 +40,9 @@ public class summarySingleFileEvaluator {
     String ComparatorClassName;
     int MinNGramRank, MaxNGramRank, NGramDist;
     boolean AvoidSelfComparison, Jackknifing, Silent;
+    /** The cache of summary and model representations, shared with the other
+     * evaluators. */
+    RepresentationCache Representations = RepresentationCache.getShared();
     /** Creates a new instance of summarySingleFileEvaluator, given a single 
      *summary text and a set of model texts.
      *@param sDocumentModelClassName The document model class name.
@@ -67,6 +71,66 @@ public class summarySingleFileEvaluator {
         
     }
     
+    public RepresentationCache getRepresentations() {
+        return Representations;
+    }
+
+    /** Sets the cache of summary and model representations.
+     *@param rcCache The cache to use.
+     */
+    public void setRepresentations(RepresentationCache rcCache) {
+        Representations = rcCache;
+    }
+
+    /** Returns the representation of a file from the cache.
+     *@param sFile The file to represent.
+     *@param sClassName The name of the document or graph class.
+     *@param iMinNGramRank The min n-gram to take into account.
+     *@param iMaxNGramRank The max n-gram to take into account.
+     *@param iNGramDist The max distance to take into account for neighbourhood.
+     *@return The representation, which must not be modified, or null if the
+     * class cannot represent the file.
+     */
+    protected Object getRepresentation(String sFile, String sClassName,
+            int iMinNGramRank, int iMaxNGramRank, int iNGramDist) {
+        try {
+            return Representations.getDocument(sFile, Class.forName(sClassName),
+                    iMinNGramRank, iMaxNGramRank, iNGramDist);
+        } catch (ClassNotFoundException ex) {
+            ex.printStackTrace(System.err);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(summarySingleFileEvaluator.class.getName()
+                    ).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    /** Builds the representations that {@link #main(String[])} would use with
+     * given command line arguments for a set of files, in parallel, into the
+     * shared cache. Evaluators run on any of these files with the same
+     * representation arguments then skip building them.
+     *@param args The command line arguments. Only the representation ones
+     * (docClass, nMin, nMax, dist) are taken into account.
+     *@param cFiles The summary and model files to represent.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public static void precompute(String[] args, Collection<String> cFiles)
+            throws InterruptedException {
+        Hashtable hSwitches = utils.parseCommandLineSwitches(args);
+        try {
+            RepresentationCache.getShared().precompute(cFiles,
+                    Class.forName(utils.getSwitch(hSwitches, "docClass",
+                        NGramSymWinDocument.class.getName())),
+                    Integer.valueOf(utils.getSwitch(hSwitches, "nMin", "3")),
+                    Integer.valueOf(utils.getSwitch(hSwitches, "nMax", "3")),
+                    Integer.valueOf(utils.getSwitch(hSwitches, "dist", "3")));
+        } catch (ClassNotFoundException ex) {
+            // Reported by the evaluation
+        } catch (IllegalArgumentException ex) {
+            // Reported by the evaluation
+        }
+    }
+
     /** Performs comparison between a (summary) text file and a set of model (summary)
      * text files. The comparison result is the average similarity of the given 
      * text to the individuals of the text set.
@@ -77,36 +141,12 @@ public class summarySingleFileEvaluator {
      * between the given text and the model texts.
      */
     public double doCompare(String sSummaryTextFile, Set<String> ssModelFiles) {
-        ILoadableTextPrint ndNDoc1 = null;
-        try {
-            int iIdx = utils.getConstructor(DocumentModelClassName,3);
-            if (iIdx > -1)
-                ndNDoc1 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                    [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist);
-            else {
-                iIdx = utils.getConstructor(DocumentModelClassName,5);
-                ndNDoc1 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                    [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist, 
-                        MinNGramRank, MaxNGramRank);
-            }
-        } catch (IllegalArgumentException ex) {
-            ex.printStackTrace(System.err);
-        } catch (SecurityException ex) {
-            ex.printStackTrace(System.err);
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InstantiationException ex) {
-            ex.printStackTrace(System.err);
-        } catch (IllegalAccessException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InvocationTargetException ex) {
-            ex.printStackTrace(System.err);
-        }
+        // Read first file        
+        ILoadableTextPrint ndNDoc1 = (ILoadableTextPrint)getRepresentation(
+                sSummaryTextFile, DocumentModelClassName, MinNGramRank, MaxNGramRank,
+                NGramDist);
         if (ndNDoc1 == null)
             return Double.NEGATIVE_INFINITY;
-        
-        // Read first file        
-        ndNDoc1.loadDataStringFromFile(sSummaryTextFile);
 
         File fSummaryFile = new File(sSummaryTextFile);
         
@@ -163,36 +203,10 @@ public class summarySingleFileEvaluator {
                     }
                     // Load model data
                     // Init document class
-                    ILoadableTextPrint ndNDoc2 = null;
-
-                    try
-                    {
-                        int iIdx = utils.getConstructor(DocumentModelClassName,3);
-                        if (iIdx > -1)
-                            ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                                [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist);
-                        else {
-                            iIdx = utils.getConstructor(DocumentModelClassName,5);
-                            ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                                [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist,
-                                    MinNGramRank, MaxNGramRank);
-                        }
-                    } catch (IllegalArgumentException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (SecurityException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (ClassNotFoundException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InstantiationException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (IllegalAccessException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InvocationTargetException ex) {
-                        ex.printStackTrace(System.err);
-                    }
+                    ILoadableTextPrint ndNDoc2 = (ILoadableTextPrint)getRepresentation(sModelFile,
+                            DocumentModelClassName, MinNGramRank, MaxNGramRank, NGramDist);
                     if (ndNDoc2 == null)
                         return Double.NEGATIVE_INFINITY;
-                    ndNDoc2.loadDataStringFromFile(sModelFile);
 
                     // Save and Output results
                     try {
@@ -228,36 +242,10 @@ public class summarySingleFileEvaluator {
             }
             // Load model data
             // Init document class
-            ILoadableTextPrint ndNDoc2 = null;
-
-            try
-            {
-                int iIdx = utils.getConstructor(DocumentModelClassName,3);
-                if (iIdx > -1)
-                    ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                        [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist);
-                else {
-                    iIdx = utils.getConstructor(DocumentModelClassName,5);
-                    ndNDoc2 = (ILoadableTextPrint)Class.forName(DocumentModelClassName).getConstructors()
-                        [iIdx].newInstance(MinNGramRank, MaxNGramRank, NGramDist,
-                            MinNGramRank, MaxNGramRank);
-                }
-            } catch (IllegalArgumentException ex) {
-                ex.printStackTrace(System.err);
-            } catch (SecurityException ex) {
-                ex.printStackTrace(System.err);
-            } catch (ClassNotFoundException ex) {
-                ex.printStackTrace(System.err);
-            } catch (InstantiationException ex) {
-                ex.printStackTrace(System.err);
-            } catch (IllegalAccessException ex) {
-                ex.printStackTrace(System.err);
-            } catch (InvocationTargetException ex) {
-                ex.printStackTrace(System.err);
-            }
+            ILoadableTextPrint ndNDoc2 = (ILoadableTextPrint)getRepresentation(sModelFile,
+                    DocumentModelClassName, MinNGramRank, MaxNGramRank, NGramDist);
             if (ndNDoc2 == null)
                 return Double.NEGATIVE_INFINITY;
-            ndNDoc2.loadDataStringFromFile(sModelFile);
 
             // Save and Output results
             try {
@@ -289,41 +277,12 @@ public class summarySingleFileEvaluator {
             Set<String> ssModelFiles, String sGraphModelClassName, 
             String sComparatorClassName, int iMinNGramRank, int iMaxNGramRank, 
             int iNGramDist) {
-        DocumentNGramGraph ndNDoc1 = null;
-        try {
-            int iIdx = utils.getConstructor(sGraphModelClassName,3);
-            if (iIdx > -1)
-                ndNDoc1 = (DocumentNGramGraph)Class.forName(sGraphModelClassName).getConstructors()
-                    [iIdx].newInstance(iMinNGramRank, iMaxNGramRank, iNGramDist);
-            else {
-                iIdx = utils.getConstructor(sGraphModelClassName,5);
-                ndNDoc1 = (DocumentNGramGraph)Class.forName(sGraphModelClassName).getConstructors()
-                    [iIdx].newInstance(iMinNGramRank, iMaxNGramRank, iNGramDist, 
-                        iMinNGramRank, iMaxNGramRank);
-            }
-        } catch (IllegalArgumentException ex) {
-            ex.printStackTrace(System.err);
-        } catch (SecurityException ex) {
-            ex.printStackTrace(System.err);
-        } catch (ClassNotFoundException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InstantiationException ex) {
-            ex.printStackTrace(System.err);
-        } catch (IllegalAccessException ex) {
-            ex.printStackTrace(System.err);
-        } catch (InvocationTargetException ex) {
-            ex.printStackTrace(System.err);
-        }
+        // Read first file
+        DocumentNGramGraph ndNDoc1 = (DocumentNGramGraph)getRepresentation(
+                sSummaryTextFile, sGraphModelClassName, iMinNGramRank, iMaxNGramRank,
+                iNGramDist);
         if (ndNDoc1 == null)
             return Double.NEGATIVE_INFINITY;
-        try {
-            // Read first file
-            ndNDoc1.loadDataStringFromFile(sSummaryTextFile);
-        } catch (IOException ex) {
-            Logger.getLogger(summarySingleFileEvaluator.class.getName()
-                    ).log(Level.SEVERE, null, ex);
-            return Double.NEGATIVE_INFINITY;
-        } 
         
         // Init Comparator Class        
         SimilarityComparatorListener sdcNComparator = null;
@@ -362,50 +321,16 @@ public class summarySingleFileEvaluator {
                 String sModelFile = iOtherIter.next();
                 // Load model data
                 // Init document class
-                DocumentNGramGraph ndNDoc2 = null;
-
-                try
-                {
-                    int iIdx = utils.getConstructor(sGraphModelClassName,3);
-                    if (iIdx > -1)
-                        ndNDoc2 = (DocumentNGramGraph)Class.forName(
-                                sGraphModelClassName).getConstructors()
-                            [iIdx].newInstance(iMinNGramRank, iMaxNGramRank,
-                            iNGramDist);
-                    else {
-                        iIdx = utils.getConstructor(sGraphModelClassName,5);
-                        ndNDoc2 = (DocumentNGramGraph)Class.forName(
-                                sGraphModelClassName).getConstructors()
-                            [iIdx].newInstance(iMinNGramRank, iMaxNGramRank,
-                            iNGramDist, iMinNGramRank, iMaxNGramRank);
-                    }
-                } catch (IllegalArgumentException ex) {
-                    ex.printStackTrace(System.err);
-                } catch (SecurityException ex) {
-                    ex.printStackTrace(System.err);
-                } catch (ClassNotFoundException ex) {
-                    ex.printStackTrace(System.err);
-                } catch (InstantiationException ex) {
-                    ex.printStackTrace(System.err);
-                } catch (IllegalAccessException ex) {
-                    ex.printStackTrace(System.err);
-                } catch (InvocationTargetException ex) {
-                    ex.printStackTrace(System.err);
-                }
+                DocumentNGramGraph ndNDoc2 = (DocumentNGramGraph)getRepresentation(
+                        sModelFile, sGraphModelClassName, iMinNGramRank, iMaxNGramRank,
+                        iNGramDist);
                 if (ndNDoc2 == null)
                     return Double.NEGATIVE_INFINITY;
 
-                try {
-                    ndNDoc2.loadDataStringFromFile(sModelFile);
-                } catch (IOException ex) {
-                    Logger.getLogger(summarySingleFileEvaluator.class.getName()
-                            ).log(Level.SEVERE, null, ex);
-                    return Double.NEGATIVE_INFINITY;
-                }
-
                 ++iDocCnt;
                 if (ndNModel == null)
-                    ndNModel = ndNDoc2;
+                    // Merge into a copy: the representation is shared
+                    ndNModel = (DocumentNGramGraph)ndNDoc2.clone();
                 else
                     ndNModel.merge(ndNDoc2, 1.0 - (iDocCnt / ssModelFiles.size()));
             }
@@ -453,50 +378,16 @@ public class summarySingleFileEvaluator {
                     
                     // Load model data
                     // Init document class
-                    DocumentNGramGraph ndNDoc2 = null;
-
-                    try
-                    {
-                        int iIdx = utils.getConstructor(sGraphModelClassName,3);
-                        if (iIdx > -1)
-                            ndNDoc2 = (DocumentNGramGraph)Class.forName(
-                                    sGraphModelClassName).getConstructors()
-                                [iIdx].newInstance(iMinNGramRank, iMaxNGramRank,
-                                iNGramDist);
-                        else {
-                            iIdx = utils.getConstructor(sGraphModelClassName,5);
-                            ndNDoc2 = (DocumentNGramGraph)Class.forName(
-                                    sGraphModelClassName).getConstructors()
-                                [iIdx].newInstance(iMinNGramRank, iMaxNGramRank,
-                                iNGramDist, iMinNGramRank, iMaxNGramRank);
-                        }
-                    } catch (IllegalArgumentException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (SecurityException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (ClassNotFoundException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InstantiationException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (IllegalAccessException ex) {
-                        ex.printStackTrace(System.err);
-                    } catch (InvocationTargetException ex) {
-                        ex.printStackTrace(System.err);
-                    }
+                    DocumentNGramGraph ndNDoc2 = (DocumentNGramGraph)getRepresentation(
+                            sModelFile, sGraphModelClassName, iMinNGramRank, iMaxNGramRank,
+                            iNGramDist);
                     if (ndNDoc2 == null)
                         return Double.NEGATIVE_INFINITY;
 
-                    try {
-                        ndNDoc2.loadDataStringFromFile(sModelFile);
-                    } catch (IOException ex) {
-                        Logger.getLogger(summarySingleFileEvaluator.class.getName()
-                                ).log(Level.SEVERE, null, ex);
-                        return Double.NEGATIVE_INFINITY;
-                    }
-
                     ++iDocCnt;
                     if (ndNModel == null)
-                        ndNModel = ndNDoc2;
+                        // Merge into a copy: the representation is shared
+                        ndNModel = (DocumentNGramGraph)ndNDoc2.clone();
                     else
                         ndNModel.merge(ndNDoc2, 1.0 - (iDocCnt / ssModelFiles.size()));
                 }
@@ -528,7 +419,7 @@ public class summarySingleFileEvaluator {
     private static void printUsage() {
             System.err.println("Syntax:\nsummaryEvaluator [-summary=summary.txt] [-modelDir=models/]"+
                     "[-nMin=#] [-nMax=#] [-dist=#]" + 
-                    "[-s] [-docClass=...] [-compClass=...] [-merge]");
+                    "[-s] [-docClass=...] [-compClass=...] [-merge] [-cacheDir=dir]");
             System.err.println("nMin=#\tMin n-gram size.\nnMax=#\tMax n-gram size.\n" +
                     "dist=#\tN-gram window.\n" +
                     "-s\tFor non-verbose output (silent).\n" +
@@ -541,6 +432,7 @@ public class summarySingleFileEvaluator {
                     " with respect to the overall graph." +
                     "-jack\tUse jackknifing in comparison (round robin comparison with leave-one-out)" +
                     "to the model summaries. The resulting score is the mean of the scores." +
+                    "-cacheDir=dir\tThe directory to store summary and model representations, for reuse across runs." +
                     "-?\tShow this screen.");
     }
     
@@ -588,6 +480,10 @@ public class summarySingleFileEvaluator {
             bJack = utils.getSwitch(hSwitches,
                     "jack", "FALSE").equals("TRUE");
             PrependPerLine = utils.getSwitch(hSwitches, "prepend", "");
+            // Determine if representations should be stored
+            String sCacheDir = utils.getSwitch(hSwitches, "cacheDir", "");
+            if (sCacheDir.length() > 0)
+                RepresentationCache.getShared().setRepositoryDir(sCacheDir);
 
             if (bJack && bAvoidSelfComparison)
                 System.err.println("WARNING: Both jackknifing and self-comparison " +
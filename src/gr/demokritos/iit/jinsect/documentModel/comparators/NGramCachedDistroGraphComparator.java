@@ -9,9 +9,9 @@ package gr.demokritos.iit.jinsect.documentModel.comparators;
 
 import gr.demokritos.iit.conceptualIndex.events.IDistributionComparisonListener;
 import gr.demokritos.iit.conceptualIndex.structs.Distribution;
-import java.util.Iterator;
 import java.util.Map;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramDistroGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
 import gr.demokritos.iit.jinsect.structs.EdgeCachedLocator;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
@@ -34,114 +34,102 @@ public class NGramCachedDistroGraphComparator extends NGramCachedGraphComparator
         distroComparator = cl;
     }
     
-    /***
-     *Returns the similarity of the document n-gram graph oFirst as opposed
-     * to oSecond.
-     *@param oFirst The first document n-gram graph.
-     *@param oSecond The second document n-gram graph.
-     *@return A {@link GraphSimilarity} object indicative of the similarity between the two graphs.
-     ***/
-    public GraphSimilarity getSimilarityBetween(Object oFirst, Object oSecond) {        
-        // Initialize variables
-        GraphSimilarity sSimil = new GraphSimilarity();
-        DocumentNGramDistroGraph dgFirst = (DocumentNGramDistroGraph)oFirst;
-        DocumentNGramDistroGraph dgSecond = (DocumentNGramDistroGraph)oSecond;
+    /** Looks up the corresponding levels of two graphs, along with the edge
+     * distributions of the graphs.
+     *@param dgFirst The first document n-gram graph, which must be a
+     * {@link DocumentNGramDistroGraph}.
+     *@param dgSecond The second document n-gram graph, which must be a
+     * {@link DocumentNGramDistroGraph}.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The description of the level comparison, or null if the level does
+     * not exist in the second graph.
+     */
+    @Override
+    protected LevelComparison createLevelComparison(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond, int iNGramSize) {
+        UniqueVertexGraph ngFirstGraph = dgFirst.getGraphLevelByNGramSize(iNGramSize);
+        UniqueVertexGraph ngSecondGraph = dgSecond.getGraphLevelByNGramSize(iNGramSize);
+        // If there is no corresponding level in dgOtherGraph
+        if (ngSecondGraph == null)
+            return null;
         
-        // Use a weight for every level. Larger n-grams have higher weight.
-        int iOverallImportance = 0;
-        for (int iCnt = dgFirst.getMinSize(); iCnt <= dgFirst.getMaxSize(); iCnt++ )
-            iOverallImportance += gr.demokritos.iit.jinsect.utils.sumFromTo(dgFirst.getMinSize(), iCnt);
+        DistroLevelComparison lcLevel = new DistroLevelComparison();
+        lcLevel.FirstDocument = dgFirst;
+        lcLevel.SecondDocument = dgSecond;
+        // Get edge count
+        lcLevel.FirstTotalEdges = ngFirstGraph.getEdgesCount();
+        int iSecondTotalEdges = ngSecondGraph.getEdgesCount();
         
-        for (int iCurLvl = dgFirst.getMinSize(); iCurLvl <= dgFirst.getMaxSize(); iCurLvl++) {
-            // Calc level weight
-            int iLevelImportance = gr.demokritos.iit.jinsect.utils.sumFromTo(dgFirst.getMinSize(), iCurLvl);
-            GraphSimilarity sSimilLevel = new GraphSimilarity();
-            UniqueVertexGraph ngFirstGraph = dgFirst.getGraphLevelByNGramSize(iCurLvl);
-            UniqueVertexGraph ngSecondGraph = dgSecond.getGraphLevelByNGramSize(iCurLvl);
-            // If there is no corresponding level in dgOtherGraph
-            if (ngSecondGraph == null)
-                // Ignore it
-                continue;
-            
-            // Get edge count
-            int iFirstTotalEdges = ngFirstGraph.getEdgesCount();
-            int iSecondTotalEdges = ngSecondGraph.getEdgesCount();
-            
-            Map firstEdges = dgFirst.getEdgesToDistros();
-            Map secondEdges = dgSecond.getEdgesToDistros();
-            
-            // Use minimum-edged as main graph for speed
-            if (iFirstTotalEdges > iSecondTotalEdges) {
-                // Swap graphs
-                UniqueVertexGraph ngIntermediate = ngSecondGraph;
-                ngSecondGraph = ngFirstGraph;
-                ngFirstGraph = ngIntermediate;                
-                
-                firstEdges = dgSecond.getEdgesToDistros();
-                secondEdges = dgFirst.getEdgesToDistros();                
-            
-            }
-            
-            // Get min and max edge count
-            int iMinEdges = ngFirstGraph.getEdgesCount();
-            int iMaxEdges = ngSecondGraph.getEdgesCount();
-            eclLocator = new EdgeCachedLocator(iMinEdges);
-            
-            int iProgress = 0;
-            
-            
-            // For every edge of the first graph
-            Iterator iIter = ngFirstGraph.getEdgeSet().iterator();
-            iProgress = 0;
-            while (iIter.hasNext())
-            {
-                // Get edge
-                WeightedEdge weEdge = (WeightedEdge)iIter.next();
-                
-                iProgress++;
-                
-                // If edge does not exist in other graph
-                WeightedEdge weFound = (WeightedEdge)eclLocator.locateDirectedEdgeInGraph(ngSecondGraph, 
-                        weEdge.getVertexA(), weEdge.getVertexB());
-                if (weFound == null)
-                    // Ignore
-                    continue;
-                // else update similarity parameters
-                // Take degredation into account
-                double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
-                		dgFirst.degredationDegree(weEdge));
-                sSimilLevel.ContainmentSimilarity += 1.0 / (iMinEdges *
-                        Math.max(1.0, dFinalDegredation));
-                
-                // Value difference metrics, using DISTROS
-                Distribution d1 = (Distribution)firstEdges.get(weEdge);
-                Distribution d2 = (Distribution)secondEdges.get(weFound);
-                
-//                double dFirstData = weEdge.getWeight();
-//                double dOtherData = weFound.getWeight();
-                
-                // Take degredation into account
-                sSimilLevel.ValueSimilarity += distroComparator.compareDistributions(d1, d2) / (iMinEdges *
-                        Math.max(1.0, 
-                            (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
-                
-                // TODO : Use progress indication
-                if (iProgress % 500 == 0)
-                    if (Listener != null) {
-                        Listener.Notify(this, new Double(100.0 * ((double)iProgress / iMinEdges)));
-                    }
-            }
-            sSimilLevel.SizeSimilarity = (double)iMinEdges / gr.demokritos.iit.jinsect.utils.max(iMaxEdges, 1.0);
-            
-            // Summarize
-            sSimil.ValueSimilarity += sSimilLevel.ValueSimilarity * iLevelImportance / iOverallImportance;
-            sSimil.ContainmentSimilarity += sSimilLevel.ContainmentSimilarity * iLevelImportance / iOverallImportance;
-            sSimil.SizeSimilarity += sSimilLevel.SizeSimilarity * iLevelImportance / iOverallImportance;            
-            ////////////
+        lcLevel.FirstEdges = ((DocumentNGramDistroGraph)dgFirst).getEdgesToDistros();
+        lcLevel.SecondEdges = ((DocumentNGramDistroGraph)dgSecond).getEdgesToDistros();
+        lcLevel.FirstLevel = ngFirstGraph;
+        lcLevel.SecondLevel = ngSecondGraph;
+        
+        // Use minimum-edged as main graph for speed
+        if (lcLevel.FirstTotalEdges > iSecondTotalEdges) {
+            // Swap graphs
+            lcLevel.FirstLevel = ngSecondGraph;
+            lcLevel.SecondLevel = ngFirstGraph;
+            lcLevel.Swapped = true;
             
+            lcLevel.FirstEdges = ((DocumentNGramDistroGraph)dgSecond).getEdgesToDistros();
+            lcLevel.SecondEdges = ((DocumentNGramDistroGraph)dgFirst).getEdgesToDistros();
         }
         
-        return sSimil;
-    }    
+        // Get min and max edge count
+        lcLevel.MinEdges = lcLevel.FirstLevel.getEdgesCount();
+        lcLevel.MaxEdges = lcLevel.SecondLevel.getEdgesCount();
+        lcLevel.Locator = new EdgeCachedLocator(lcLevel.MinEdges);
+        
+        return lcLevel;
+    }
+    
+    /***
+     *Updates the similarity of a level with a single edge, comparing the
+     * distributions of the edges instead of their weights.
+     *@param lcLevel The level comparison.
+     *@param weEdge The edge of the first level.
+     *@param sPartial The partial similarity to update.
+     ***/
+    @Override
+    protected void compareEdge(LevelComparison lcLevel, WeightedEdge weEdge,
+            GraphSimilarity sPartial) {
+        // If edge does not exist in other graph
+        WeightedEdge weFound = (WeightedEdge)lcLevel.Locator.locateDirectedEdgeInGraph(
+                lcLevel.SecondLevel, weEdge.getVertexA(), weEdge.getVertexB());
+        if (weFound == null)
+            // Ignore
+            return;
+        DocumentNGramGraph dgFirst = lcLevel.FirstDocument;
+        DocumentNGramGraph dgSecond = lcLevel.SecondDocument;
+        // else update similarity parameters
+        // Take degredation into account
+        double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
+                dgFirst.degredationDegree(weEdge));
+        sPartial.ContainmentSimilarity += 1.0 / (lcLevel.MinEdges *
+                Math.max(1.0, dFinalDegredation));
+        
+        // Value difference metrics, using DISTROS
+        Distribution d1 = (Distribution)((DistroLevelComparison)lcLevel).FirstEdges.get(weEdge);
+        Distribution d2 = (Distribution)((DistroLevelComparison)lcLevel).SecondEdges.get(weFound);
+        
+        // Take degredation into account
+        sPartial.ValueSimilarity += distroComparator.compareDistributions(d1, d2) / (lcLevel.MinEdges *
+                Math.max(1.0, 
+                    (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
+    }
+
+    /** The sorted merge comparison does not use distributions, so it is not
+     * supported. */
+    @Override
+    protected boolean supportsSortedMerge() {
+        return false;
+    }
+
+    /** A level comparison that also holds the edge distributions of the levels. */
+    protected static class DistroLevelComparison extends LevelComparison {
+        /** The edge distributions of the graphs of the first and second level. */
+        public Map FirstEdges, SecondEdges;
+    }
     
 }
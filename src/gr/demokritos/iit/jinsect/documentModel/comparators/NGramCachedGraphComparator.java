@@ -7,12 +7,16 @@
 
 package gr.demokritos.iit.jinsect.documentModel.comparators;
 
-import java.util.Iterator;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
 import gr.demokritos.iit.jinsect.structs.EdgeCachedLocator;
-import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
-import gr.demokritos.iit.jinsect.utils;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import salvo.jesus.graph.Edge;
 import salvo.jesus.graph.WeightedEdge;
 
@@ -22,108 +26,247 @@ import salvo.jesus.graph.WeightedEdge;
  * @author ggianna
  */
 public class NGramCachedGraphComparator extends NGramGraphComparator {
-    EdgeCachedLocator eclLocator = null;
-    
+    /** If true, levels are compared through a linear merge of their sorted edge
+     * lists, instead of looking up every edge in the other graph. */
+    protected boolean UseSortedMerge = false;
+
+    /** Creates a comparator that looks up every edge in the other graph. */
+    public NGramCachedGraphComparator() {
+    }
+
+    /** Creates a comparator.
+     *@param bUseSortedMerge If true, levels are compared through a linear merge
+     * of their sorted edge lists (see {@link SortedEdgeList}), which gives the
+     * same results much faster on big graphs.
+     */
+    public NGramCachedGraphComparator(boolean bUseSortedMerge) {
+        UseSortedMerge = bUseSortedMerge;
+    }
+
+    public boolean isUsingSortedMerge() {
+        return UseSortedMerge;
+    }
+
+    public void setUseSortedMerge(boolean bUseSortedMerge) {
+        UseSortedMerge = bUseSortedMerge;
+    }
+
     /***
-     *Returns the similarity of the document n-gram graph oFirst as opposed
-     * to oSecond.
-     *@param oFirst The first document n-gram graph.
-     *@param oSecond The second document n-gram graph.
-     *@return A {@link GraphSimilarity} object indicative of the similarity between the two graphs.
+     *Returns the similarity of a level of the document n-gram graph dgFirst as
+     * opposed to dgSecond.
+     *@param dgFirst The first document n-gram graph.
+     *@param dgSecond The second document n-gram graph.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The similarity of the level, or null if the level does not exist in
+     * the second graph.
      ***/
     @Override
-    public GraphSimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
-        // Initialize variables
-        GraphSimilarity sSimil = new GraphSimilarity();
-        DocumentNGramGraph dgFirst = (DocumentNGramGraph)oFirst;
-        DocumentNGramGraph dgSecond = (DocumentNGramGraph)oSecond;
+    protected GraphSimilarity getLevelSimilarity(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond, int iNGramSize) {
+        if (!UseSortedMerge || !supportsSortedMerge())
+            return super.getLevelSimilarity(dgFirst, dgSecond, iNGramSize);
+        
+        // If there is no corresponding level in dgSecond, ignore it
+        if ((iNGramSize < dgSecond.getMinSize()) || (iNGramSize > dgSecond.getMaxSize()))
+            return null;
+        return getSortedMergeLevelSimilarity(
+                dgFirst.getSortedEdgeList(iNGramSize - dgFirst.getMinSize()),
+                dgSecond.getSortedEdgeList(iNGramSize - dgSecond.getMinSize(),
+                    dgFirst.getLabelDictionary()));
+    }
+
+    @Override
+    protected LevelComparison createLevelComparison(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond, int iNGramSize) {
+        LevelComparison lcLevel = super.createLevelComparison(dgFirst, dgSecond,
+                iNGramSize);
+        // The locator may be shared by all the partitions of the level
+        if (lcLevel != null)
+            lcLevel.Locator = new EdgeCachedLocator(lcLevel.MinEdges);
+        return lcLevel;
+    }
+
+    @Override
+    protected void compareEdge(LevelComparison lcLevel, WeightedEdge weEdge,
+            GraphSimilarity sPartial) {
+        // If edge does not exist in other graph
+        WeightedEdge weFound = (WeightedEdge)lcLevel.Locator.locateEdgeInGraph(
+                lcLevel.SecondLevel, weEdge.getVertexA(), weEdge.getVertexB());
+        if (weFound == null)
+            // Ignore
+            return;
+        DocumentNGramGraph dgFirst = lcLevel.FirstDocument;
+        DocumentNGramGraph dgSecond = lcLevel.SecondDocument;
+        // else update similarity parameters
+        // Take degredation into account
+        double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
+                dgFirst.degredationDegree(weEdge));
+        sPartial.ContainmentSimilarity += 1.0 / (lcLevel.MinEdges *
+                Math.max(1.0, dFinalDegredation));
         
-        // Use a weight for every level. Larger n-grams have higher weight.
-        int iOverallImportance = 0;
-        for (int iCnt = dgFirst.getMinSize(); iCnt <= dgFirst.getMaxSize(); iCnt++ )
-            iOverallImportance += utils.sumFromTo(dgFirst.getMinSize(), iCnt);
+        // Value difference metrics
+        double dFirstData = weEdge.getWeight();
+        double dOtherData = weFound.getWeight();
+
+        if ((dFirstData < 0) || (dOtherData < 0))
+                System.err.println("Negative weights found...");
         
-        for (int iCurLvl = dgFirst.getMinSize(); iCurLvl <= dgFirst.getMaxSize(); iCurLvl++) {
-            // Calc level weight
-            int iLevelImportance = utils.sumFromTo(dgFirst.getMinSize(), iCurLvl);
-            GraphSimilarity sSimilLevel = new GraphSimilarity();
-            UniqueVertexGraph ngFirstGraph = dgFirst.getGraphLevelByNGramSize(iCurLvl);
-            UniqueVertexGraph ngSecondGraph = dgSecond.getGraphLevelByNGramSize(iCurLvl);
-            // If there is no corresponding level in dgOtherGraph
-            if (ngSecondGraph == null)
-                // Ignore it
-                continue;
-            
-            // Get edge count
-            int iFirstTotalEdges = ngFirstGraph.getEdgesCount();
-            int iSecondTotalEdges = ngSecondGraph.getEdgesCount();
-            // Use minimum-edged as main graph for speed
-            if (iFirstTotalEdges > iSecondTotalEdges) {
-                // Swap graphs
-                UniqueVertexGraph ngIntermediate = ngSecondGraph;
-                ngSecondGraph = ngFirstGraph;
-                ngFirstGraph = ngIntermediate;
+        // Take degredation into account
+        sPartial.ValueSimilarity += (Math.min(dFirstData, dOtherData) /
+                Math.max(dFirstData, dOtherData)) / (lcLevel.MaxEdges *
+                Math.max(1.0, 
+                    (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
+    }
+
+    @Override
+    protected double getSizeSimilarity(LevelComparison lcLevel) {
+        return (double)lcLevel.MinEdges / gr.demokritos.iit.jinsect.utils.max(
+                lcLevel.MaxEdges, 1.0);
+    }
+
+    @Override
+    protected void notifyProgress(int iProgress, int iTotal) {
+        // TODO : Use progress indication
+        if (iProgress % 500 == 0)
+            synchronized (this) {
+                if (Listener != null) {
+                    Listener.Notify(this, new Double(100.0 * ((double)iProgress / iTotal)));
+                }
             }
-            // Get min and max edge count
-            int iMinEdges = ngFirstGraph.getEdgesCount();
-            int iMaxEdges = ngSecondGraph.getEdgesCount();
-            eclLocator = new EdgeCachedLocator(iMinEdges);
+    }
+
+    /***
+     *Returns the similarity of two frozen graphs, comparing each level through
+     * a merge of the sorted edge lists, whatever the mode of the comparator.
+     * Levels not sorted by key (see {@link SortedEdgeList#isSortedByKey()}) are
+     * compared by looking up every edge of the smaller level. A second graph of
+     * another dictionary is first copied into the dictionary of the first.
+     *@param fgFirst The first frozen graph.
+     *@param fgSecondArg The second frozen graph.
+     *@return A {@link GraphSimilarity} object indicative of the similarity between the two graphs.
+     ***/
+    public GraphSimilarity getSimilarityBetween(final FrozenNGramGraph fgFirst,
+            FrozenNGramGraph fgSecondArg) {
+        final FrozenNGramGraph fgSecond = fgSecondArg.toDictionary(fgFirst.getDictionary());
+        List<Callable<GraphSimilarity>> lLevels = new ArrayList<Callable<GraphSimilarity>>();
+        for (int iCurLvl = fgFirst.getMinSize(); iCurLvl <= fgFirst.getMaxSize(); iCurLvl++) {
+            final int iNGramSize = iCurLvl;
+            lLevels.add(new Callable<GraphSimilarity>() {
+                public GraphSimilarity call() {
+                    SortedEdgeList selSecond = fgSecond.getLevelByNGramSize(iNGramSize);
+                    // If there is no corresponding level in fgSecond, ignore it
+                    if (selSecond == null)
+                        return null;
+                    return getSortedMergeLevelSimilarity(
+                            fgFirst.getLevelByNGramSize(iNGramSize), selSecond);
+                }
+            });
+        }
+        return getLevelWeightedSimilarity(fgFirst.getMinSize(), fgFirst.getMaxSize(),
+                lLevels);
+    }
+
+    /** Calculates the similarity of a single level, given the sorted edge lists of
+     * the two graphs.
+     *@param selFirst The edges of the level in the first graph.
+     *@param selSecond The edges of the level in the second graph.
+     *@return The (unweighted) similarity of the level.
+     */
+    protected GraphSimilarity getSortedMergeLevelSimilarity(SortedEdgeList selFirst,
+            SortedEdgeList selSecond) {
+        // Use minimum-edged as main graph. The edge-probing comparison only
+        // finds the degradation of edges when the graphs are not swapped, since
+        // it looks up each edge in the degradation map of the other graph.
+        boolean bUseDegradation = true;
+        if (selFirst.size() > selSecond.size()) {
+            SortedEdgeList selIntermediate = selSecond;
+            selSecond = selFirst;
+            selFirst = selIntermediate;
+            bUseDegradation = false;
+        }
+        final SortedEdgeList selMin = selFirst;
+        final SortedEdgeList selMax = selSecond;
+        final boolean bDegradation = bUseDegradation;
+        final AtomicInteger aiProgress = new AtomicInteger();
+        
+        GraphSimilarity sSimilLevel = comparePartitioned(selMin.size(),
+                new EdgeRangeComparison() {
+            public void compare(int iFrom, int iTo, GraphSimilarity sPartial) {
+                mergeEdgeRange(selMin, selMax, bDegradation, iFrom, iTo, sPartial,
+                        aiProgress);
+            }
+        });
+        sSimilLevel.SizeSimilarity = (double)selMin.size() /
+                gr.demokritos.iit.jinsect.utils.max(selMax.size(), 1.0);
+        
+        return sSimilLevel;
+    }
+
+    /** Merges a range of the edges of the smaller list with the bigger list,
+     * updating a partial similarity.
+     *@param selFirst The list with the fewer edges.
+     *@param selSecond The list with the more edges.
+     *@param bUseDegradation If true, the degradation of edges is taken into account.
+     *@param iFrom The index of the first edge of the range in selFirst.
+     *@param iTo The end of the range in selFirst (exclusive).
+     *@param sPartial The partial similarity to update.
+     *@param aiProgress The number of edges of the level already compared.
+     */
+    protected void mergeEdgeRange(SortedEdgeList selFirst, SortedEdgeList selSecond,
+            boolean bUseDegradation, int iFrom, int iTo, GraphSimilarity sPartial,
+            AtomicInteger aiProgress) {
+        // Get min and max edge count
+        int iMinEdges = selFirst.size();
+        int iMaxEdges = selSecond.size();
+        
+        // Lists not sorted by key are probed edge by edge
+        boolean bMerge = selFirst.isSortedByKey() && selSecond.isSortedByKey();
+        int iOther = ((iFrom == 0) || !bMerge) ? 0 :
+            selSecond.ceilingIndex(selFirst.getKeyAt(iFrom));
+        for (int iCur = iFrom; iCur < iTo; iCur++) {
+            long lKey = selFirst.getKeyAt(iCur);
+            int iFound;
+            if (bMerge) {
+                // Advance in the other list, up to the current key
+                while ((iOther < iMaxEdges) && (selSecond.getKeyAt(iOther) < lKey))
+                    iOther++;
+                iFound = ((iOther < iMaxEdges) && (selSecond.getKeyAt(iOther) == lKey)) ?
+                    iOther : -1;
+            }
+            else
+                iFound = selSecond.indexOf(lKey);
+            if (iFound < 0)
+                // Look for the edge in the opposite direction
+                iFound = selSecond.indexOf(CompactNGramGraph.reverseKey(lKey));
+            
+            if (Listener != null)
+                notifyProgress(aiProgress.incrementAndGet(), iMinEdges);
             
-            int iProgress = 0;
+            // If edge does not exist in other graph, ignore
+            if (iFound < 0)
+                continue;
             
-            // For every edge of the first graph
-            Iterator iIter = ngFirstGraph.getEdgeSet().iterator();
-            iProgress = 0;
-            while (iIter.hasNext())
-            {
-                // Get edge
-                WeightedEdge weEdge = (WeightedEdge)iIter.next();
-                iProgress++;
-                
-                // If edge does not exist in other graph
-                WeightedEdge weFound = (WeightedEdge)eclLocator.locateEdgeInGraph(ngSecondGraph, weEdge.getVertexA(), 
-                        weEdge.getVertexB());
-                if (weFound == null)
-                    // Ignore
-                    continue;
-                // else update similarity parameters
-                // Take degredation into account
-                double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
-                		dgFirst.degredationDegree(weEdge));
-                sSimilLevel.ContainmentSimilarity += 1.0 / (iMinEdges *
-                        Math.max(1.0, dFinalDegredation));
-                
-                // Value difference metrics
-                double dFirstData = weEdge.getWeight();
-                double dOtherData = weFound.getWeight();
-
-                if ((dFirstData < 0) || (dOtherData < 0))
-                        System.err.println("Negative weights found...");
-                
-                // Take degredation into account
-                sSimilLevel.ValueSimilarity += (Math.min(dFirstData, dOtherData) /
-                        Math.max(dFirstData, dOtherData)) / (iMaxEdges *
-                        Math.max(1.0, 
-                            (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
-                
-                // TODO : Use progress indication
-                if (iProgress % 500 == 0)
-                    if (Listener != null) {
-                        Listener.Notify(this, new Double(100.0 * ((double)iProgress / iMinEdges)));
-                    }
+            // Take degredation into account
+            double dFirstDegredation = 0.0, dOtherDegredation = 0.0;
+            if (bUseDegradation) {
+                dFirstDegredation = selFirst.getDegradationAt(iCur);
+                dOtherDegredation = selSecond.getDegradationAt(iFound);
             }
-            sSimilLevel.SizeSimilarity = (double)iMinEdges / gr.demokritos.iit.jinsect.utils.max(iMaxEdges, 1.0);
+            sPartial.ContainmentSimilarity += 1.0 / (iMinEdges *
+                    Math.max(1.0, Math.min(dOtherDegredation, dFirstDegredation)));
             
-            // Summarize
-            sSimil.ValueSimilarity += sSimilLevel.ValueSimilarity * iLevelImportance / iOverallImportance;
-            sSimil.ContainmentSimilarity += sSimilLevel.ContainmentSimilarity * iLevelImportance / iOverallImportance;
-            sSimil.SizeSimilarity += sSimilLevel.SizeSimilarity * iLevelImportance / iOverallImportance;            
-            ////////////
+            // Value difference metrics
+            double dFirstData = selFirst.getWeightAt(iCur);
+            double dOtherData = selSecond.getWeightAt(iFound);
+
+            if ((dFirstData < 0) || (dOtherData < 0))
+                    System.err.println("Negative weights found...");
             
+            sPartial.ValueSimilarity += (Math.min(dFirstData, dOtherData) /
+                    Math.max(dFirstData, dOtherData)) / (iMaxEdges *
+                    Math.max(1.0, dOtherDegredation + dFirstDegredation));
         }
-        
-        return sSimil;
-    }    
+    }
     
 }
  
@@ -12,7 +12,16 @@ import gr.demokritos.iit.jinsect.events.Notifier;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.EdgeCachedLocator;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import salvo.jesus.graph.WeightedEdge;
 
 /** An n-gram graph comparison performing class, the compares DocumentNGramGraph objects.
@@ -20,7 +29,16 @@ import salvo.jesus.graph.WeightedEdge;
  * @author PCKid
  */
 public class NGramGraphComparator implements SimilarityComparatorListener, Notifier {
+    /** The default maximum number of edges compared by a single parallel task. */
+    public static final int DEFAULT_PARTITION_SIZE = 8192;
+
     protected NotificationListener Listener = null;
+    /** The pool used to compare levels and edge partitions in parallel, or null
+     * to compare them sequentially in the calling thread. */
+    protected ForkJoinPool Pool = null;
+    /** The maximum number of edges compared by a single parallel task. */
+    protected int PartitionSize = DEFAULT_PARTITION_SIZE;
+
     /**
      * Creates a new instance of NGramGraphComparator.
      */
@@ -36,87 +54,396 @@ public class NGramGraphComparator implements SimilarityComparatorListener, Notif
      *@see DocumentNGramGraph
      ***/
     public GraphSimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
+        return getLevelWeightedSimilarity((DocumentNGramGraph)oFirst,
+                (DocumentNGramGraph)oSecond);
+    }
+
+    /** Returns the weighted sum of the similarities of the levels of two graphs,
+     * as calculated by {@link #getLevelSimilarity}. Larger n-grams have higher
+     * weight. If a pool is set, levels are compared in parallel, but the level
+     * similarities are always summed in level order.
+     *@param dgFirst The first document n-gram graph.
+     *@param dgSecond The second document n-gram graph.
+     *@return The similarity of the two graphs.
+     */
+    protected GraphSimilarity getLevelWeightedSimilarity(final DocumentNGramGraph dgFirst,
+            final DocumentNGramGraph dgSecond) {
+        List<Callable<GraphSimilarity>> lLevels = new ArrayList<Callable<GraphSimilarity>>();
+        for (int iCurLvl = dgFirst.getMinSize(); iCurLvl <= dgFirst.getMaxSize(); iCurLvl++) {
+            final int iNGramSize = iCurLvl;
+            lLevels.add(new Callable<GraphSimilarity>() {
+                public GraphSimilarity call() {
+                    return getLevelSimilarity(dgFirst, dgSecond, iNGramSize);
+                }
+            });
+        }
+        return getLevelWeightedSimilarity(dgFirst.getMinSize(), dgFirst.getMaxSize(),
+                lLevels);
+    }
+
+    /** Returns the weighted sum of level similarities. Larger n-grams have higher
+     * weight. If a pool is set, the levels are compared in parallel, but the level
+     * similarities are always summed in level order.
+     *@param iMinSize The n-gram size of the first level.
+     *@param iMaxSize The n-gram size of the last level.
+     *@param lLevels The calculations of the similarity of each level, in level
+     * order. A calculation returns null for a level that should be ignored.
+     *@return The weighted similarity.
+     */
+    protected GraphSimilarity getLevelWeightedSimilarity(int iMinSize, int iMaxSize,
+            List<Callable<GraphSimilarity>> lLevels) {
         // Initialize variables
         GraphSimilarity sSimil = new GraphSimilarity();
-        DocumentNGramGraph dgFirst = (DocumentNGramGraph)oFirst;
-        DocumentNGramGraph dgSecond = (DocumentNGramGraph)oSecond;
         
         // Use a weight for every level. Larger n-gram have higher weight.
         int iOverallImportance = 0;
-        for (int iCnt = dgFirst.getMinSize(); iCnt <= dgFirst.getMaxSize(); iCnt++ )
-            iOverallImportance += gr.demokritos.iit.jinsect.utils.sumFromTo(dgFirst.getMinSize(), iCnt);
+        for (int iCnt = iMinSize; iCnt <= iMaxSize; iCnt++ )
+            iOverallImportance += gr.demokritos.iit.jinsect.utils.sumFromTo(iMinSize, iCnt);
         
-        for (int iCurLvl = dgFirst.getMinSize(); iCurLvl <= dgFirst.getMaxSize(); iCurLvl++) {
-            // Calc level weight
-            int iLevelImportance = gr.demokritos.iit.jinsect.utils.sumFromTo(dgFirst.getMinSize(), iCurLvl);
-            GraphSimilarity sSimilLevel = new GraphSimilarity();
-            UniqueVertexGraph ngFirstGraph = dgFirst.getGraphLevelByNGramSize(iCurLvl);
-            UniqueVertexGraph ngSecondGraph = dgSecond.getGraphLevelByNGramSize(iCurLvl);
+        List<GraphSimilarity> lLevelSimilarities = invokeInOrder(lLevels);
+        
+        for (int iCurLvl = iMinSize; iCurLvl <= iMaxSize; iCurLvl++) {
+            GraphSimilarity sSimilLevel = lLevelSimilarities.get(iCurLvl - iMinSize);
             // If there is no corresponding level in dgOtherGraph
-            if (ngSecondGraph == null)
+            if (sSimilLevel == null)
                 // Ignore it
                 continue;
-            
-            // Get edge count
-            int iFirstTotalEdges = ngFirstGraph.getEdgesCount();
-            int iSecondTotalEdges = ngSecondGraph.getEdgesCount();
-            // Use minimum-edged as main graph for speed
-            if (iFirstTotalEdges > iSecondTotalEdges) {
-                // Swap graphs
-                UniqueVertexGraph ngIntermediate = ngSecondGraph;
-                ngSecondGraph = ngFirstGraph;
-                ngFirstGraph = ngIntermediate;
-            }
-            // Get min and max edge count
-            int iMinEdges = ngFirstGraph.getEdgesCount();
-            int iMaxEdges = ngSecondGraph.getEdgesCount();
-            
-            // For every edge of the first graph
-            java.util.Iterator iIter = ngFirstGraph.getEdgeSet().iterator();
-            int iProgress = 0;
-            while (iIter.hasNext())
-            {
-                // Get edge
-                WeightedEdge weEdge = (WeightedEdge)iIter.next();
-                iProgress++;
-                
-                // If edge does not exist in other graph
-                WeightedEdge weFound = (WeightedEdge)gr.demokritos.iit.jinsect.utils.locateEdgeInGraph(ngSecondGraph, weEdge.getVertexA(), 
-                        weEdge.getVertexB());
-                if (weFound == null)
-                    // Ignore
-                    continue;
-                // else update similarity parameters
-                // Take degredation into account
-                double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
-                		dgFirst.degredationDegree(weEdge));
-                sSimilLevel.ContainmentSimilarity += 1.0 / (iMinEdges *
-                        Math.max(1.0, dFinalDegredation));
-                
-                // Value difference metrics
-                double dFirstData = weEdge.getWeight();
-                double dOtherData = weFound.getWeight();
-                
-                // Take degredation into account
-                sSimilLevel.ValueSimilarity += (gr.demokritos.iit.jinsect.utils.min(dFirstData, dOtherData) /
-                        gr.demokritos.iit.jinsect.utils.max(dFirstData, dOtherData)) / (iMaxEdges *
-                        Math.max(1.0, 
-                            (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
-                
-                if (Listener != null) {
-                    Listener.Notify(this, new Double(((double)iProgress / iMinEdges)));
-                }
-            }
-            sSimilLevel.SizeSimilarity = iMinEdges / gr.demokritos.iit.jinsect.utils.max(iMaxEdges, 1.0);
+            // Calc level weight
+            int iLevelImportance = gr.demokritos.iit.jinsect.utils.sumFromTo(iMinSize, iCurLvl);
             
             // Summarize
             sSimil.ValueSimilarity += sSimilLevel.ValueSimilarity * iLevelImportance / iOverallImportance;
             sSimil.ContainmentSimilarity += sSimilLevel.ContainmentSimilarity * iLevelImportance / iOverallImportance;
             sSimil.SizeSimilarity += sSimilLevel.SizeSimilarity * iLevelImportance / iOverallImportance;            
-            ////////////
         }
         return sSimil;
-    }    
+    }
+
+    /** Returns the (unweighted) similarity of a single level of two graphs. Levels
+     * held in compact form by both graphs are compared without converting them
+     * to {@link UniqueVertexGraph}s, if the comparator supports it.
+     *@param dgFirst The first document n-gram graph.
+     *@param dgSecond The second document n-gram graph.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The similarity of the level, or null if the level does not exist in
+     * the second graph.
+     */
+    protected GraphSimilarity getLevelSimilarity(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond, int iNGramSize) {
+        if (supportsSortedMerge() && (iNGramSize >= dgSecond.getMinSize()) &&
+                (iNGramSize <= dgSecond.getMaxSize())) {
+            CompactNGramGraph cgFirst = dgFirst.peekCompactGraphLevel(
+                    iNGramSize - dgFirst.getMinSize());
+            CompactNGramGraph cgSecond = dgSecond.peekCompactGraphLevel(
+                    iNGramSize - dgSecond.getMinSize());
+            if ((cgFirst != null) && (cgSecond != null) &&
+                    (cgFirst.getDictionary() == cgSecond.getDictionary()))
+                return getCompactLevelSimilarity(cgFirst, cgSecond);
+        }
+
+        final LevelComparison lcLevel = createLevelComparison(dgFirst, dgSecond,
+                iNGramSize);
+        if (lcLevel == null)
+            return null;
+        
+        // For every edge of the first graph
+        final Object[] oaEdges = lcLevel.FirstLevel.getEdgeSet().toArray();
+        GraphSimilarity sSimilLevel = comparePartitioned(oaEdges.length,
+                new EdgeRangeComparison() {
+            public void compare(int iFrom, int iTo, GraphSimilarity sPartial) {
+                for (int iCnt = iFrom; iCnt < iTo; iCnt++) {
+                    compareEdge(lcLevel, (WeightedEdge)oaEdges[iCnt], sPartial);
+                    if (Listener != null)
+                        notifyProgress(lcLevel.Progress.incrementAndGet(),
+                                lcLevel.MinEdges);
+                }
+            }
+        });
+        sSimilLevel.SizeSimilarity = getSizeSimilarity(lcLevel);
+        
+        return sSimilLevel;
+    }
+
+    /** Indicates whether the similarity of a level only depends on the weights
+     * of the edges the two levels share, as calculated by {@link #compareEdge},
+     * so that it can also be calculated from compact levels or sorted edge
+     * lists. Subclasses that change the similarity of edges must return false.
+     *@return True if compact and sorted merge comparison is supported.
+     */
+    protected boolean supportsSortedMerge() {
+        return true;
+    }
+
+    /** Calculates the similarity of a level held in compact form by both graphs,
+     * looking up every edge of the smaller level in the other one, in both
+     * directions, as {@link #compareEdge} does. Compact levels have no degraded
+     * edges.
+     *@param cgFirst The level of the first graph.
+     *@param cgSecond The level of the second graph, using the same dictionary.
+     *@return The (unweighted) similarity of the level.
+     */
+    protected GraphSimilarity getCompactLevelSimilarity(CompactNGramGraph cgFirst,
+            CompactNGramGraph cgSecond) {
+        // Use minimum-edged as main graph for speed
+        if (cgFirst.getEdgesCount() > cgSecond.getEdgesCount()) {
+            CompactNGramGraph cgIntermediate = cgSecond;
+            cgSecond = cgFirst;
+            cgFirst = cgIntermediate;
+        }
+        final CompactNGramGraph cgMin = cgFirst;
+        final CompactNGramGraph cgMax = cgSecond;
+        final int iMinEdges = cgMin.getEdgesCount();
+        final int iMaxEdges = cgMax.getEdgesCount();
+        final AtomicInteger aiProgress = new AtomicInteger();
+
+        // Partitions are ranges of slots of the smaller level
+        GraphSimilarity sSimilLevel = comparePartitioned(cgMin.getCapacity(),
+                new EdgeRangeComparison() {
+            public void compare(int iFrom, int iTo, GraphSimilarity sPartial) {
+                for (int iSlot = iFrom; iSlot < iTo; iSlot++) {
+                    if (!cgMin.isSlotUsed(iSlot))
+                        continue;
+                    long lKey = cgMin.getKeyAt(iSlot);
+                    int iFound = cgMax.indexOf(lKey);
+                    if (iFound < 0)
+                        // Look for the edge in the opposite direction
+                        iFound = cgMax.indexOf(CompactNGramGraph.reverseKey(lKey));
+                    if (Listener != null)
+                        notifyProgress(aiProgress.incrementAndGet(), iMinEdges);
+                    // If edge does not exist in other graph, ignore
+                    if (iFound < 0)
+                        continue;
+                    sPartial.ContainmentSimilarity += 1.0 / iMinEdges;
+                    // Value difference metrics
+                    double dFirstData = cgMin.getWeightAt(iSlot);
+                    double dOtherData = cgMax.getWeightAt(iFound);
+                    sPartial.ValueSimilarity += (Math.min(dFirstData, dOtherData) /
+                            Math.max(dFirstData, dOtherData)) / iMaxEdges;
+                }
+            }
+        });
+        sSimilLevel.SizeSimilarity = (double)iMinEdges /
+                gr.demokritos.iit.jinsect.utils.max(iMaxEdges, 1.0);
+
+        return sSimilLevel;
+    }
+
+    /** Looks up the corresponding levels of two graphs, using the level with the
+     * fewer edges as the first one.
+     *@param dgFirst The first document n-gram graph.
+     *@param dgSecond The second document n-gram graph.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The description of the level comparison, or null if the level does
+     * not exist in the second graph.
+     */
+    protected LevelComparison createLevelComparison(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond, int iNGramSize) {
+        UniqueVertexGraph ngFirstGraph = dgFirst.getGraphLevelByNGramSize(iNGramSize);
+        UniqueVertexGraph ngSecondGraph = dgSecond.getGraphLevelByNGramSize(iNGramSize);
+        // If there is no corresponding level in dgOtherGraph
+        if (ngSecondGraph == null)
+            return null;
+        
+        LevelComparison lcLevel = new LevelComparison();
+        lcLevel.FirstDocument = dgFirst;
+        lcLevel.SecondDocument = dgSecond;
+        // Get edge count
+        lcLevel.FirstTotalEdges = ngFirstGraph.getEdgesCount();
+        int iSecondTotalEdges = ngSecondGraph.getEdgesCount();
+        // Use minimum-edged as main graph for speed
+        if (lcLevel.FirstTotalEdges > iSecondTotalEdges) {
+            lcLevel.FirstLevel = ngSecondGraph;
+            lcLevel.SecondLevel = ngFirstGraph;
+            lcLevel.Swapped = true;
+        }
+        else {
+            lcLevel.FirstLevel = ngFirstGraph;
+            lcLevel.SecondLevel = ngSecondGraph;
+        }
+        // Get min and max edge count
+        lcLevel.MinEdges = lcLevel.FirstLevel.getEdgesCount();
+        lcLevel.MaxEdges = lcLevel.SecondLevel.getEdgesCount();
+        
+        return lcLevel;
+    }
+
+    /** Updates the similarity of a level with a single edge of the (smaller) first
+     * level. May be called concurrently for different edges of the same level,
+     * each time with a different partial similarity object.
+     *@param lcLevel The level comparison.
+     *@param weEdge The edge of the first level.
+     *@param sPartial The partial similarity to update.
+     */
+    protected void compareEdge(LevelComparison lcLevel, WeightedEdge weEdge,
+            GraphSimilarity sPartial) {
+        // If edge does not exist in other graph
+        WeightedEdge weFound = (WeightedEdge)gr.demokritos.iit.jinsect.utils.locateEdgeInGraph(
+                lcLevel.SecondLevel, weEdge.getVertexA(), weEdge.getVertexB());
+        if (weFound == null)
+            // Ignore
+            return;
+        DocumentNGramGraph dgFirst = lcLevel.FirstDocument;
+        DocumentNGramGraph dgSecond = lcLevel.SecondDocument;
+        // else update similarity parameters
+        // Take degredation into account
+        double dFinalDegredation = Math.min(dgSecond.degredationDegree(weFound),
+                dgFirst.degredationDegree(weEdge));
+        sPartial.ContainmentSimilarity += 1.0 / (lcLevel.MinEdges *
+                Math.max(1.0, dFinalDegredation));
+        
+        // Value difference metrics
+        double dFirstData = weEdge.getWeight();
+        double dOtherData = weFound.getWeight();
+        
+        // Take degredation into account
+        sPartial.ValueSimilarity += (gr.demokritos.iit.jinsect.utils.min(dFirstData, dOtherData) /
+                gr.demokritos.iit.jinsect.utils.max(dFirstData, dOtherData)) / (lcLevel.MaxEdges *
+                Math.max(1.0, 
+                    (dgSecond.degredationDegree(weFound) + dgFirst.degredationDegree(weEdge))));
+    }
+
+    /** Returns the size similarity of a level.
+     *@param lcLevel The level comparison.
+     *@return The size similarity.
+     */
+    protected double getSizeSimilarity(LevelComparison lcLevel) {
+        return lcLevel.MinEdges / gr.demokritos.iit.jinsect.utils.max(lcLevel.MaxEdges, 1.0);
+    }
+
+    /** Reports the progress of a level comparison to the listener, if any.
+     *@param iProgress The number of edges already compared.
+     *@param iTotal The total number of edges to compare.
+     */
+    protected void notifyProgress(int iProgress, int iTotal) {
+        synchronized (this) {
+            if (Listener != null) {
+                Listener.Notify(this, new Double(((double)iProgress / iTotal)));
+            }
+        }
+    }
+
+    /** Compares a range of edges, adding the results to a partial similarity. */
+    protected interface EdgeRangeComparison {
+        /** Compares the edges with indices from <code>iFrom</code> (inclusive) to
+         * <code>iTo</code> (exclusive).
+         *@param iFrom The first edge index.
+         *@param iTo The end of the edge range.
+         *@param sPartial The partial similarity to update.
+         */
+        void compare(int iFrom, int iTo, GraphSimilarity sPartial);
+    }
+
+    /** Compares a number of edges, split into partitions of at most
+     * {@link #getPartitionSize()} edges that are compared in parallel, if a pool
+     * is set. The partitions only depend on the number of edges and the partial
+     * value and containment similarities are summed in partition order, so that
+     * the result does not depend on the scheduling of the tasks.
+     *@param iCount The number of edges.
+     *@param ercComparison The comparison of an edge range.
+     *@return The sum of the partial similarities.
+     */
+    protected GraphSimilarity comparePartitioned(int iCount,
+            final EdgeRangeComparison ercComparison) {
+        GraphSimilarity sRes = new GraphSimilarity();
+        if ((Pool == null) || (iCount <= PartitionSize)) {
+            ercComparison.compare(0, iCount, sRes);
+            return sRes;
+        }
+        
+        List<Callable<GraphSimilarity>> lPartitions =
+                new ArrayList<Callable<GraphSimilarity>>();
+        for (int iFrom = 0; iFrom < iCount; iFrom += PartitionSize) {
+            final int iStart = iFrom;
+            final int iEnd = Math.min(iCount, iFrom + PartitionSize);
+            lPartitions.add(new Callable<GraphSimilarity>() {
+                public GraphSimilarity call() {
+                    GraphSimilarity sPartial = new GraphSimilarity();
+                    ercComparison.compare(iStart, iEnd, sPartial);
+                    return sPartial;
+                }
+            });
+        }
+        for (GraphSimilarity sPartial : invokeInOrder(lPartitions)) {
+            sRes.ValueSimilarity += sPartial.ValueSimilarity;
+            sRes.ContainmentSimilarity += sPartial.ContainmentSimilarity;
+        }
+        return sRes;
+    }
+
+    /** Executes a number of tasks, in the pool if one is set, and returns their
+     * results in the order of the tasks.
+     *@param lTasks The tasks to execute.
+     *@return The results of the tasks.
+     */
+    protected <T> List<T> invokeInOrder(List<Callable<T>> lTasks) {
+        List<T> lRes = new ArrayList<T>(lTasks.size());
+        if ((Pool == null) || (lTasks.size() <= 1)) {
+            for (Callable<T> cTask : lTasks) {
+                try {
+                    lRes.add(cTask.call());
+                } catch (RuntimeException re) {
+                    throw re;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return lRes;
+        }
+        
+        final List<ForkJoinTask<T>> lForkJoinTasks = new ArrayList<ForkJoinTask<T>>(
+                lTasks.size());
+        for (Callable<T> cTask : lTasks)
+            lForkJoinTasks.add(ForkJoinTask.adapt(cTask));
+        if (ForkJoinTask.getPool() == Pool)
+            // Already running within the pool (e.g. a level comparison)
+            ForkJoinTask.invokeAll(lForkJoinTasks);
+        else
+            Pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(lForkJoinTasks);
+                }
+            });
+        for (ForkJoinTask<T> fjtTask : lForkJoinTasks)
+            lRes.add(fjtTask.join());
+        return lRes;
+    }
+
+    /** Sets whether levels and edge partitions are compared in parallel, using
+     * the common {@link ForkJoinPool}.
+     *@param bParallel If true, comparisons are performed in parallel.
+     */
+    public void setParallel(boolean bParallel) {
+        Pool = bParallel ? ForkJoinPool.commonPool() : null;
+    }
+
+    public boolean isParallel() {
+        return Pool != null;
+    }
+
+    /** Sets the pool used to compare levels and edge partitions in parallel.
+     *@param fjpPool The pool to use, or null to compare sequentially.
+     */
+    public void setForkJoinPool(ForkJoinPool fjpPool) {
+        Pool = fjpPool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return Pool;
+    }
+
+    /** Sets the maximum number of edges compared by a single parallel task.
+     *@param iPartitionSize The partition size, which must be positive.
+     */
+    public void setPartitionSize(int iPartitionSize) {
+        if (iPartitionSize <= 0)
+            throw new IllegalArgumentException("Partition size must be positive.");
+        PartitionSize = iPartitionSize;
+    }
+
+    public int getPartitionSize() {
+        return PartitionSize;
+    }
 
     /** Sets the notification listener, that accepts progress report info.
      *@param nlListener The listener object.
@@ -142,4 +469,20 @@ public class NGramGraphComparator implements SimilarityComparatorListener, Notif
         return Listener;
     }
     
+    /** Describes the comparison of a single level of two graphs. */
+    protected static class LevelComparison {
+        /** The compared document graphs, in the order given to the comparator. */
+        public DocumentNGramGraph FirstDocument, SecondDocument;
+        /** The compared levels; the first one is the level with the fewer edges. */
+        public UniqueVertexGraph FirstLevel, SecondLevel;
+        /** True if the levels were swapped to make the smaller one first. */
+        public boolean Swapped = false;
+        /** The edge count of the level of the first document. */
+        public int FirstTotalEdges;
+        public int MinEdges, MaxEdges;
+        /** The locator used to look up edges in the second level, if any. */
+        public EdgeCachedLocator Locator = null;
+        /** The number of edges already compared. */
+        public final AtomicInteger Progress = new AtomicInteger();
+    }
 }
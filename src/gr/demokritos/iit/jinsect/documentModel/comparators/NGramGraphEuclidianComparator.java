@@ -6,7 +6,6 @@ package gr.demokritos.iit.jinsect.documentModel.comparators;
 
 import gr.demokritos.iit.conceptualIndex.structs.Distribution;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
-import gr.demokritos.iit.jinsect.structs.EdgeCachedLocator;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import gr.demokritos.iit.jinsect.structs.ISimilarity;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
@@ -94,7 +93,6 @@ public class NGramGraphEuclidianComparator extends NGramCachedGraphComparator {
 
         // Get edge count
         int iTotalEdges = gCur.getEdgesCount();
-        eclLocator = new EdgeCachedLocator(iTotalEdges);
 
         int iProgress = 0;
 
@@ -0,0 +1,143 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.comparators;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphSketch;
+import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
+import gr.demokritos.iit.jinsect.structs.SketchSimilarity;
+import gr.demokritos.iit.jinsect.utils;
+import java.io.InvalidClassException;
+
+/** Estimates the similarity of n-gram graphs from their {@link NGramGraphSketch}es.
+ * Levels are weighted as in {@link NGramGraphComparator}: larger n-grams have
+ * higher weight, and levels missing from the second graph are ignored. The
+ * Jaccard similarity of every level is estimated from the sketches, and the
+ * containment of the level is derived from it and the (exact) level sizes.
+ * <p>
+ * The error bound of the Jaccard similarity follows from Hoeffding's inequality
+ * over the weighted hash matches of all levels. The containment bounds follow
+ * from a Hoeffding bound of the Jaccard similarity of every level, at a
+ * confidence split evenly among the levels, since the containment of a level
+ * rises monotonically with its Jaccard similarity.
+ *
+ * @author ggianna
+ */
+public class NGramGraphSketchComparator implements SimilarityComparatorListener {
+    /** The confidence of the error bounds. */
+    protected double Confidence = 0.95;
+
+    /** Creates a comparator, with error bounds of 95% confidence. */
+    public NGramGraphSketchComparator() {
+    }
+
+    /** Creates a comparator with a given confidence of error bounds.
+     *@param dConfidence The probability that errors are within the bounds, less
+     * than 1.
+     */
+    public NGramGraphSketchComparator(double dConfidence) {
+        setConfidence(dConfidence);
+    }
+
+    public double getConfidence() {
+        return Confidence;
+    }
+
+    public void setConfidence(double dConfidence) {
+        if ((dConfidence <= 0.0) || (dConfidence >= 1.0))
+            throw new IllegalArgumentException("Confidence must be in (0, 1)");
+        Confidence = dConfidence;
+    }
+
+    /** Estimates the similarity of two sketches, or of two graphs, which are
+     * sketched with the default number of hash functions.
+     *@param oFirst The first {@link NGramGraphSketch} or {@link DocumentNGramGraph}.
+     *@param oSecond The second {@link NGramGraphSketch} or {@link DocumentNGramGraph}.
+     *@return The {@link SketchSimilarity} of the objects.
+     *@throws InvalidClassException If the objects are neither sketches nor graphs.
+     */
+    @Override
+    public SketchSimilarity getSimilarityBetween(Object oFirst, Object oSecond)
+            throws InvalidClassException {
+        return getSimilarityBetween(toSketch(oFirst), toSketch(oSecond));
+    }
+
+    /** Estimates the similarity of two sketches.
+     *@param ngsFirst The first sketch.
+     *@param ngsSecond The second sketch, with the same number of hash functions.
+     *@return The estimated similarity.
+     */
+    public SketchSimilarity getSimilarityBetween(NGramGraphSketch ngsFirst,
+            NGramGraphSketch ngsSecond) {
+        SketchSimilarity sRes = new SketchSimilarity();
+        sRes.Confidence = Confidence;
+        int iMinSize = ngsFirst.getMinSize();
+        int iMaxSize = ngsFirst.getMaxSize();
+        int iOverallImportance = 0;
+        for (int iCnt = iMinSize; iCnt <= iMaxSize; iCnt++)
+            iOverallImportance += utils.sumFromTo(iMinSize, iCnt);
+
+        double[] daJaccard = new double[iMaxSize - iMinSize + 1];
+        int iLevels = 0;
+        for (int iCurLvl = iMinSize; iCurLvl <= iMaxSize; iCurLvl++) {
+            daJaccard[iCurLvl - iMinSize] = ngsFirst.estimateJaccard(ngsSecond, iCurLvl);
+            if (!Double.isNaN(daJaccard[iCurLvl - iMinSize]))
+                iLevels++;
+        }
+        int iHashCount = Math.max(ngsFirst.getHashCount(), 1);
+        // P(|error of a level| > e) <= 2 exp(-2 e^2 H), for each of the levels
+        double dLevelError = Math.sqrt(Math.log(2.0 * Math.max(iLevels, 1) /
+                (1.0 - Confidence)) / (2.0 * iHashCount));
+
+        double dSquaredWeights = 0.0;
+        for (int iCurLvl = iMinSize; iCurLvl <= iMaxSize; iCurLvl++) {
+            double dJaccard = daJaccard[iCurLvl - iMinSize];
+            // If there is no corresponding level in the second graph, ignore it
+            if (Double.isNaN(dJaccard))
+                continue;
+            double dWeight = (double)utils.sumFromTo(iMinSize, iCurLvl) /
+                    iOverallImportance;
+            dSquaredWeights += dWeight * dWeight;
+
+            int iFirstSize = ngsFirst.getLevelSize(iCurLvl);
+            int iSecondSize = ngsSecond.getLevelSize(iCurLvl);
+            int iMin = Math.min(iFirstSize, iSecondSize);
+            int iMax = Math.max(iFirstSize, iSecondSize);
+            sRes.Jaccard += dJaccard * dWeight;
+            sRes.ContainmentSimilarity += getContainment(dJaccard, iFirstSize,
+                    iSecondSize) * dWeight;
+            sRes.ContainmentLowerBound += getContainment(Math.max(0.0,
+                    dJaccard - dLevelError), iFirstSize, iSecondSize) * dWeight;
+            sRes.ContainmentUpperBound += getContainment(Math.min(1.0,
+                    dJaccard + dLevelError), iFirstSize, iSecondSize) * dWeight;
+            sRes.SizeSimilarity += ((double)iMin / Math.max(iMax, 1)) * dWeight;
+        }
+        // P(|error| > e) <= 2 exp(-2 e^2 / sum((w / H)^2 * H))
+        sRes.ErrorBound = Math.sqrt(Math.log(2.0 / (1.0 - Confidence)) *
+                dSquaredWeights / (2.0 * iHashCount));
+        return sRes;
+    }
+
+    /** Returns the containment of a level, i.e. the shared edges over the edges of
+     * the smaller graph, given the Jaccard similarity and sizes of the level. */
+    private static double getContainment(double dJaccard, int iFirstSize,
+            int iSecondSize) {
+        int iMin = Math.min(iFirstSize, iSecondSize);
+        if (iMin == 0)
+            return 0.0;
+        // |A n B| = J * (|A| + |B|) / (1 + J)
+        double dShared = dJaccard * (iFirstSize + iSecondSize) / (1.0 + dJaccard);
+        return Math.min(1.0, dShared / iMin);
+    }
+
+    private static NGramGraphSketch toSketch(Object oObj) throws InvalidClassException {
+        if (oObj instanceof NGramGraphSketch)
+            return (NGramGraphSketch)oObj;
+        if (oObj instanceof DocumentNGramGraph)
+            return new NGramGraphSketch((DocumentNGramGraph)oObj);
+        throw new InvalidClassException("Only sketches and n-gram graphs can be compared");
+    }
+}
@@ -9,6 +9,7 @@ package gr.demokritos.iit.jinsect.documentModel.documentTypes;
 
 import gr.demokritos.iit.jinsect.documentModel.ITextPrint;
 import java.util.Iterator;
+import java.util.List;
 import gr.demokritos.iit.jinsect.events.WordEvaluatorListener;
 import gr.demokritos.iit.jinsect.structs.Dictionary;
 
@@ -83,6 +84,37 @@ public class NGramCategory extends NGramDocument  implements WordEvaluatorListen
     public void mergeWith(ITextPrint tpData) {
         mergeWith(tpData, 1.0 / (Math.log10(DocumentCount + 20)));
     }
+
+    /** Merges a number of documents into the category, with the same result as
+     * merging them one after the other with {@link #mergeWith(ITextPrint)}, but
+     * merging their graphs at once.
+     *@param lData The documents to merge, in merging order.
+     */
+    public void mergeWithAll(List<? extends ITextPrint> lData) {
+        double[] daLearningRates = new double[lData.size()];
+        for (int iCnt = 0; iCnt < daLearningRates.length; iCnt++)
+            daLearningRates[iCnt] = 1.0 / (Math.log10(DocumentCount + iCnt + 20));
+        mergeWithAll(lData, daLearningRates);
+    }
+
+    /** Merges a number of documents into the category, given their learning
+     * rates, with the same result as merging them one after the other with
+     * {@link #mergeWith(ITextPrint, double)}, but merging their graphs at once.
+     *@param lData The documents to merge, in merging order.
+     *@param daLearningRates The learning rate of every document.
+     */
+    @Override
+    public void mergeWithAll(List<? extends ITextPrint> lData, double[] daLearningRates) {
+        super.mergeWithAll(lData, daLearningRates);
+
+        // Reset and update dictionary
+        Dictionary.clear();
+        for (Iterator iIter = getDocumentHistogram().NGramHistogram.keySet().iterator(); iIter.hasNext();) {
+            String sWord = (String)iIter.next();
+            Dictionary.addWord(sWord);
+        }
+        DocumentCount += lData.size();
+    }
     
     /** Merges a given document ({@link ITextPrint} descendant) into the category, given a 
      * learning rate..
@@ -11,6 +11,8 @@ import gr.demokritos.iit.jinsect.documentModel.ILoadableTextPrint;
 import gr.demokritos.iit.jinsect.documentModel.ITextPrint;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramHistogram;
 
@@ -109,6 +111,23 @@ public class NGramDocument implements ILoadableTextPrint, Serializable {
         Histogram.mergeHistogram(tpData.getDocumentHistogram(), fLearningRate);
         Graph.mergeGraph(tpData.getDocumentGraph(), fLearningRate);
     }
+
+    /** Merges a number of {@link ITextPrint} objects into this object, with the
+     * same result as merging them one after the other with
+     * {@link #mergeWith(ITextPrint, double)}. The graphs are merged at once, with
+     * {@link DocumentNGramGraph#mergeAll(List, double[])}.
+     *@param lData The text representation objects, in merging order.
+     *@param daLearningRates The learning rate of every object.
+     */
+    public void mergeWithAll(List<? extends ITextPrint> lData, double[] daLearningRates) {
+        List<DocumentNGramGraph> lGraphs = new ArrayList<DocumentNGramGraph>(lData.size());
+        for (int iCnt = 0; iCnt < lData.size(); iCnt++) {
+            Histogram.mergeHistogram(lData.get(iCnt).getDocumentHistogram(),
+                    daLearningRates[iCnt]);
+            lGraphs.add(lData.get(iCnt).getDocumentGraph());
+        }
+        Graph.mergeAll(lGraphs, daLearningRates);
+    }
     
     /** Prunes the n-gram representation, given a minimum co-existence importance.
      *@param dMinCoexistenceImportance The minimum importance of nodes to be kept.
@@ -0,0 +1,188 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.events.WordEvaluatorListener;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+
+/** Creates the {@link CompactNGramGraph} levels of a document n-gram graph in a
+ * single pass over the characters of the text. A rolling hash identifies each
+ * n-gram without creating a substring, and the most recent n-grams are kept in
+ * a fixed ring buffer, so that no objects are created per text position. A
+ * string is only created once for every distinct n-gram of the text.
+ *<p>
+ * The {@link WordEvaluatorListener}, if any, is consulted once per distinct n-gram
+ * of each level; it is expected to give the same answer for the same n-gram.
+ * Instances are not thread-safe, but may be reused for several levels.
+ *
+ * @author ggianna
+ */
+public class CompactGraphBuilder {
+    /** The base of the polynomial rolling hash. */
+    protected static final int HASH_BASE = 31;
+
+    protected NGramLabelDictionary Dictionary;
+    protected WordEvaluatorListener WordEvaluator;
+
+    // Distinct n-grams of the current level, indexed by a local id.
+    protected int[] Slots = new int[0];
+    protected int[] FirstPosition = new int[16];
+    protected int[] Hash = new int[16];
+    protected int[] LabelId = new int[16];
+    protected int DistinctCount = 0;
+    protected int[] Window = new int[1];
+
+    /** Creates a new builder.
+     *@param dDictionary The dictionary that assigns ids to the n-grams.
+     *@param weEvaluator The evaluator of n-grams, or null to accept all of them.
+     */
+    public CompactGraphBuilder(NGramLabelDictionary dDictionary,
+            WordEvaluatorListener weEvaluator) {
+        Dictionary = dDictionary;
+        WordEvaluator = weEvaluator;
+    }
+
+    /** Creates the graph of a single n-gram level. Every n-gram is connected to the
+     * (at most) <code>iWindow</code> accepted n-grams preceding it, increasing the
+     * weight of an existing edge by 1.0 or creating it with a weight of 1.0.
+     * An n-gram without preceding n-grams is added as a solitary vertex.
+     *@param caText The characters of the text.
+     *@param iLen The number of characters of the text to use.
+     *@param iNGramSize The n-gram size of the level.
+     *@param iWindow The maximum distance of n-grams to be considered neighbours.
+     *@param bSymmetric If true, an edge is also created from every preceding
+     * neighbour to the n-gram, as in {@link DocumentNGramSymWinGraph}. Otherwise
+     * only edges from the n-gram to its neighbours are created, as in
+     * {@link DocumentNGramGraph}.
+     *@return The graph of the level.
+     */
+    public CompactNGramGraph buildLevel(char[] caText, int iLen, int iNGramSize,
+            int iWindow, boolean bSymmetric) {
+        CompactNGramGraph gRes = new CompactNGramGraph(Dictionary, iLen);
+        if ((iNGramSize <= 0) || (iLen < iNGramSize))
+            return gRes;
+
+        reset(iLen - iNGramSize + 1);
+        if (Window.length != Math.max(iWindow, 1))
+            Window = new int[Math.max(iWindow, 1)];
+        int iWindowStart = 0, iWindowSize = 0;
+
+        // The weight of the first character in the current hash
+        int iLeadPower = 1;
+        for (int iCnt = 1; iCnt < iNGramSize; iCnt++)
+            iLeadPower *= HASH_BASE;
+        int iHash = 0;
+        for (int iCnt = 0; iCnt < iNGramSize; iCnt++)
+            iHash = iHash * HASH_BASE + caText[iCnt];
+
+        for (int iCurStart = 0; iCurStart + iNGramSize <= iLen; iCurStart++) {
+            if (iCurStart > 0)
+                iHash = (iHash - caText[iCurStart - 1] * iLeadPower) * HASH_BASE
+                        + caText[iCurStart + iNGramSize - 1];
+
+            int iLabel = locate(caText, iCurStart, iNGramSize, iHash);
+            // Ignore n-grams that do not evaluate
+            if (iLabel < 0)
+                continue;
+
+            if (iWindowSize == 0)
+                gRes.addVertex(iLabel);
+            for (int iCnt = 0; iCnt < iWindowSize; iCnt++) {
+                int iNeighbour = Window[(iWindowStart + iCnt) % Window.length];
+                gRes.increaseWeight(CompactNGramGraph.edgeKey(iLabel, iNeighbour),
+                        1.0, 1.0);
+                if (bSymmetric)
+                    gRes.increaseWeight(CompactNGramGraph.edgeKey(iNeighbour, iLabel),
+                            1.0, 1.0);
+            }
+
+            // Update window
+            if (iWindow <= 0)
+                continue;
+            if (iWindowSize < iWindow)
+                Window[(iWindowStart + iWindowSize++) % Window.length] = iLabel;
+            else {
+                Window[iWindowStart] = iLabel;
+                iWindowStart = (iWindowStart + 1) % Window.length;
+            }
+        }
+
+        return gRes;
+    }
+
+    /** Clears the distinct n-gram table, preparing it for a given number of
+     * n-gram positions. */
+    protected void reset(int iPositions) {
+        int iSize = 16;
+        while (iSize * 2 < Math.min(iPositions, 1 << 24) * 3)
+            iSize <<= 1;
+        if (Slots.length != iSize)
+            Slots = new int[iSize];
+        else
+            java.util.Arrays.fill(Slots, 0);
+        DistinctCount = 0;
+    }
+
+    /** Returns the dictionary id of the n-gram at a given position, or -1 if the
+     * n-gram is rejected by the word evaluator. */
+    protected int locate(char[] caText, int iStart, int iNGramSize, int iHash) {
+        int iMask = Slots.length - 1;
+        int iSlot = spread(iHash) & iMask;
+        int iEntry;
+        while ((iEntry = Slots[iSlot]) != 0) {
+            int iLocal = iEntry - 1;
+            if ((Hash[iLocal] == iHash) && regionMatches(caText,
+                    FirstPosition[iLocal], iStart, iNGramSize))
+                return LabelId[iLocal];
+            iSlot = (iSlot + 1) & iMask;
+        }
+
+        // New n-gram
+        if (DistinctCount == Hash.length) {
+            int iNewLength = Hash.length << 1;
+            Hash = java.util.Arrays.copyOf(Hash, iNewLength);
+            FirstPosition = java.util.Arrays.copyOf(FirstPosition, iNewLength);
+            LabelId = java.util.Arrays.copyOf(LabelId, iNewLength);
+        }
+        String sNGram = new String(caText, iStart, iNGramSize);
+        int iLabel = -1;
+        if ((WordEvaluator == null) || WordEvaluator.evaluateWord(sNGram))
+            iLabel = Dictionary.getId(sNGram);
+        Hash[DistinctCount] = iHash;
+        FirstPosition[DistinctCount] = iStart;
+        LabelId[DistinctCount] = iLabel;
+        Slots[iSlot] = ++DistinctCount;
+        if (DistinctCount * 3 > Slots.length * 2)
+            rehash(Slots.length << 1);
+
+        return iLabel;
+    }
+
+    protected void rehash(int iNewSize) {
+        Slots = new int[iNewSize];
+        int iMask = iNewSize - 1;
+        for (int iLocal = 0; iLocal < DistinctCount; iLocal++) {
+            int iSlot = spread(Hash[iLocal]) & iMask;
+            while (Slots[iSlot] != 0)
+                iSlot = (iSlot + 1) & iMask;
+            Slots[iSlot] = iLocal + 1;
+        }
+    }
+
+    protected static boolean regionMatches(char[] caText, int iFirst, int iSecond,
+            int iLength) {
+        for (int iCnt = 0; iCnt < iLength; iCnt++)
+            if (caText[iFirst + iCnt] != caText[iSecond + iCnt])
+                return false;
+        return true;
+    }
+
+    protected static int spread(int iHash) {
+        iHash *= 0x9e3779b9;
+        return iHash ^ (iHash >>> 16);
+    }
+}
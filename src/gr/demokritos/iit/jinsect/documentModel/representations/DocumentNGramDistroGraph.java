@@ -214,7 +214,7 @@ public class DocumentNGramDistroGraph extends DocumentNGramGraph {
                     try {
                         weMyCurItem = gGraph.addEdge(weCurItem.getVertexA(), weCurItem.getVertexB(), 
                                 weCurItem.getWeight());
-                        ecLocator.addedEdge(weMyCurItem);
+                        ecLocator.addedEdge(gGraph, weMyCurItem);
                     } catch (Exception ex) {
                         ex.printStackTrace(System.err);
                         continue;
@@ -283,7 +283,7 @@ public class DocumentNGramDistroGraph extends DocumentNGramGraph {
                         l.add(sTail);
                         createWeightedEdgesConnecting(gNewGraph, sHead, l, eEdge.getWeight() + weCurItem.getWeight(), 
                                 eEdge.getWeight() + weCurItem.getWeight(), 
-                                1.0);
+                                1.0, ecNewLocator);
                         // Locate newly added edge
                         weNewEdge = (WeightedEdge)gr.demokritos.iit.jinsect.utils.locateDirectedEdgeInGraph(gNewGraph, 
                                 weCurItem.getVertexA(), weCurItem.getVertexB());
@@ -471,7 +471,7 @@ public class DocumentNGramDistroGraph extends DocumentNGramGraph {
         DocumentNGramDistroGraph gRes = new DocumentNGramDistroGraph(MinSize, MaxSize, CorrelationWindow);
         gRes.DataString = DataString;
         gRes.DegradedEdges.putAll(this.DegradedEdges);
-        gRes.NGramGraphArray = this.NGramGraphArray.clone();
+        copyLevelsTo(gRes);
         gRes.Normalizer = this.Normalizer;
         gRes.TextPreprocessor = this.TextPreprocessor;
         gRes.WordEvaluator = this.WordEvaluator;
@@ -245,7 +245,7 @@ public class DocumentNGramGaussNormGraph extends DocumentNGramGraph {
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vA, vB, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
@@ -258,7 +258,7 @@ public class DocumentNGramGaussNormSymWinGraph extends DocumentNGramGaussNormGra
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vA, vB, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
@@ -284,7 +284,7 @@ public class DocumentNGramGaussNormSymWinGraph extends DocumentNGramGaussNormGra
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vB, vA, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
@@ -390,7 +390,7 @@ public class DocumentNGramGaussNormSymWinGraph extends DocumentNGramGaussNormGra
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vA, vB, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
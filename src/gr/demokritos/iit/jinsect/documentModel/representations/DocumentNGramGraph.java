@@ -6,6 +6,7 @@
  */
 
 package gr.demokritos.iit.jinsect.documentModel.representations;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
 import gr.demokritos.iit.jinsect.structs.IMergeable;
 import java.io.IOException;
 import java.io.Serializable;
@@ -18,7 +19,10 @@ import java.util.Vector;
 import gr.demokritos.iit.jinsect.events.NormalizerListener;
 import gr.demokritos.iit.jinsect.events.WordEvaluatorListener;
 import gr.demokritos.iit.jinsect.structs.EdgeCachedLocator;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import gr.demokritos.iit.jinsect.utils;
 import gr.demokritos.iit.jinsect.events.TextPreprocessorListener;
 import java.util.Arrays;
@@ -31,6 +35,10 @@ import salvo.jesus.graph.*;
  * @author PCKid
  */
 public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<DocumentNGramGraph> {
+    /** The number of graphs {@link #mergeAll(List, double[])} converts at a time,
+     * per partition. */
+    protected static final int MERGE_CHUNK_STRIPES = 4;
+
     /** The minimum and maximum n-gram size, and the cooccurence window.
      * Default values are 3, 3, 3 correspondingly.
      */
@@ -43,7 +51,20 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
     public TextPreprocessorListener TextPreprocessor = null;
     
     protected UniqueVertexGraph[] NGramGraphArray;
+    /** The compact form of each level. A level is held either here or in
+     * {@link #NGramGraphArray}; a compact level is converted to a
+     * {@link UniqueVertexGraph} the first time it is requested as such. The
+     * slots of both arrays are only read and replaced under the lock of the
+     * graph, since the conversion may happen while other threads read it.
+     */
+    protected transient CompactNGramGraph[] CompactGraphArray;
+    /** The dictionary of the labels of the compact levels built by the graph, or
+     * null for the default one. */
+    protected transient NGramLabelDictionary LabelDictionary = null;
     protected EdgeCachedLocator eclLocator = null;
+    /** The locator shared by the edge creation calls that build a level through
+     * <code>createGraphs</code>, if no locator is set. */
+    protected transient EdgeCachedLocator LevelLocator = null;
 
     /** Creates a new instance of INSECTDocumentGraph */
     public DocumentNGramGraph() {
@@ -71,6 +92,7 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         // Init array
         for (int iCnt=MinSize; iCnt <= MaxSize; iCnt++)
             NGramGraphArray[iCnt - MinSize] = new UniqueVertexGraph();
+        CompactGraphArray = new CompactNGramGraph[MaxSize - MinSize + 1];
         // Create degraded edge list
         DegradedEdges = new HashMap();        
     }
@@ -82,15 +104,27 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
      * the document n-gram graph.
      */
     public int length() {
-        java.util.Iterator iIter = java.util.Arrays.asList(NGramGraphArray).iterator();
         int iCnt = 0;
-        while (iIter.hasNext())
-            iCnt += ((UniqueVertexGraph)iIter.next()).getEdgesCount();
+        for (int iLevel = 0; iLevel < NGramGraphArray.length; iLevel++)
+            iCnt += getEdgesCount(iLevel);
         return  iCnt;
     }
     
     public boolean isEmpty() {
-        return NGramGraphArray[0].getEdgesCount()== 0;
+        return getEdgesCount(0) == 0;
+    }
+
+    /** Returns the edge count of a level, without converting a compact level
+     * to a {@link UniqueVertexGraph}.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@return The number of edges of the level.
+     */
+    public int getEdgesCount(int iIndex) {
+        CompactNGramGraph gCompact = peekCompactGraphLevel(iIndex);
+        if (gCompact != null)
+            return gCompact.getEdgesCount();
+        return getGraphLevel(iIndex).getEdgesCount();
     }
     
     /** Creates the graph based on a data string loaded from a given file.
@@ -108,8 +142,11 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
      * level MinSize n-grams.
      *@return The {@link UniqueVertexGraph} of the corresponding level.
      ***/
-    public UniqueVertexGraph getGraphLevel(int iIndex) {
-        return NGramGraphArray[iIndex];
+    public synchronized UniqueVertexGraph getGraphLevel(int iIndex) {
+        UniqueVertexGraph gRes = NGramGraphArray[iIndex];
+        if (gRes == null)
+            gRes = expandLevel(iIndex);
+        return gRes;
     }
 
     /***
@@ -122,15 +159,179 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         if ((iNGramSize < MinSize) || (iNGramSize > MaxSize))
             return null;
         
-        return NGramGraphArray[iNGramSize - MinSize];
+        return getGraphLevel(iNGramSize - MinSize);
+    }
+
+    /** Checks whether a level is currently held in compact form.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@return True if the level is compact, otherwise false.
+     */
+    public boolean isLevelCompact(int iIndex) {
+        return peekCompactGraphLevel(iIndex) != null;
+    }
+
+    /** Returns the compact graph of a level, if the level is held in compact form.
+     * A compact graph that is later converted to a {@link UniqueVertexGraph} is
+     * not modified by the conversion, so it can still be read.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@return The live {@link CompactNGramGraph} of the level, or null if the
+     * level is not held in compact form.
+     */
+    public synchronized CompactNGramGraph peekCompactGraphLevel(int iIndex) {
+        return (CompactGraphArray == null) ? null : CompactGraphArray[iIndex];
+    }
+
+    /***
+     *Returns the compact form of a level. If the level is held in compact form,
+     *the live graph is returned. Otherwise a compact snapshot of the
+     *{@link UniqueVertexGraph} of the level is created, which does not reflect
+     *later changes.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@return The {@link CompactNGramGraph} of the corresponding level.
+     ***/
+    public CompactNGramGraph getCompactGraphLevel(int iIndex) {
+        CompactNGramGraph gCompact = peekCompactGraphLevel(iIndex);
+        if (gCompact != null)
+            return gCompact;
+        return CompactNGramGraph.fromUniqueVertexGraph(getGraphLevel(iIndex),
+                getLabelDictionary());
+    }
+
+    /** Returns the dictionary that assigns ids to the labels of the compact levels
+     * the graph builds.
+     *@return The dictionary of the graph, by default
+     * {@link NGramLabelDictionary#getDefault()}.
+     */
+    public NGramLabelDictionary getLabelDictionary() {
+        NGramLabelDictionary dRes = LabelDictionary;
+        return (dRes == null) ? NGramLabelDictionary.getDefault() : dRes;
+    }
+
+    /** Sets the dictionary that assigns ids to the labels of the compact levels
+     * built from now on, e.g. one scoped to a model or an index, so that its
+     * labels can be dropped along with it. Levels already built keep their
+     * dictionary.
+     *@param dDictionary The dictionary, or null for the default one.
+     */
+    public void setLabelDictionary(NGramLabelDictionary dDictionary) {
+        LabelDictionary = dDictionary;
+    }
+
+    /** Returns a frozen snapshot of the edges of a level, sorted by edge key, with
+     * their weights and degradation degrees. Subclasses that hold immutable
+     * levels may return the same list on every call.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@return The {@link SortedEdgeList} of the corresponding level.
+     */
+    public SortedEdgeList getSortedEdgeList(int iIndex) {
+        NGramLabelDictionary dDictionary = getLabelDictionary();
+        CompactNGramGraph gCompact = peekCompactGraphLevel(iIndex);
+        if ((gCompact != null) && (gCompact.getDictionary() == dDictionary))
+            return SortedEdgeList.fromCompactGraph(gCompact, null);
+        if (gCompact != null)
+            return SortedEdgeList.fromCompactGraph(getCompactLevelByNGramSize(
+                    MinSize + iIndex, dDictionary), null);
+
+        UniqueVertexGraph gLevel = getGraphLevel(iIndex);
+        CompactNGramGraph gWeights = new CompactNGramGraph(dDictionary,
+                gLevel.getEdgesCount());
+        CompactNGramGraph gDegradations = null;
+        Iterator iIter = gLevel.getEdgeSet().iterator();
+        while (iIter.hasNext()) {
+            WeightedEdge weCur = (WeightedEdge)iIter.next();
+            long lKey = gWeights.edgeKey(weCur.getVertexA().getLabel(),
+                    weCur.getVertexB().getLabel());
+            gWeights.setWeight(lKey, weCur.getWeight());
+            if (DegradedEdges.isEmpty())
+                continue;
+            double dDegradation = degredationDegree(weCur);
+            if (dDegradation != 0.0) {
+                if (gDegradations == null)
+                    gDegradations = new CompactNGramGraph(dDictionary, 16);
+                gDegradations.setWeight(lKey, dDegradation);
+            }
+        }
+        return SortedEdgeList.fromCompactGraph(gWeights, gDegradations);
+    }
+
+    /** Returns a frozen snapshot of the edges of a level, keyed by a given
+     * dictionary (see {@link #getSortedEdgeList(int)}).
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@param dDictionary The dictionary of the edge keys.
+     *@return The {@link SortedEdgeList} of the corresponding level.
+     */
+    public SortedEdgeList getSortedEdgeList(int iIndex, NGramLabelDictionary dDictionary) {
+        SortedEdgeList selRes = getSortedEdgeList(iIndex);
+        if (dDictionary == getLabelDictionary())
+            return selRes;
+        return FrozenNGramGraph.rekey(selRes, getLabelDictionary(), dDictionary);
+    }
+
+    /** Sets the compact graph of a level, replacing any previous content of the
+     * level.
+     *@param iIndex The index of the level. Zero (0) equals to the graph for
+     * level MinSize n-grams.
+     *@param gLevel The new compact graph of the level.
+     */
+    protected synchronized void setCompactGraphLevel(int iIndex,
+            CompactNGramGraph gLevel) {
+        if (CompactGraphArray == null)
+            CompactGraphArray = new CompactNGramGraph[NGramGraphArray.length];
+        CompactGraphArray[iIndex] = gLevel;
+        NGramGraphArray[iIndex] = null;
+    }
+
+    /** Converts all levels to compact form, releasing their
+     * {@link UniqueVertexGraph} representation. Levels previously returned by
+     * <code>getGraphLevel</code> are no longer connected to this graph. Graphs
+     * with degraded edges are left unchanged, since degradation refers to
+     * edge objects.
+     *@return True if the levels were converted, otherwise false.
+     */
+    public synchronized boolean compactGraphs() {
+        if (!DegradedEdges.isEmpty())
+            return false;
+        for (int iLevel = 0; iLevel < NGramGraphArray.length; iLevel++)
+            if (!isLevelCompact(iLevel))
+                setCompactGraphLevel(iLevel, getCompactGraphLevel(iLevel));
+        return true;
+    }
+
+    /** Replaces a compact level by the equivalent {@link UniqueVertexGraph}.
+     * The compact graph itself is left unchanged, for threads still reading it.
+     */
+    protected synchronized UniqueVertexGraph expandLevel(int iIndex) {
+        // Another thread may have expanded the level already
+        if (NGramGraphArray[iIndex] == null) {
+            NGramGraphArray[iIndex] = CompactGraphArray[iIndex].toUniqueVertexGraph();
+            CompactGraphArray[iIndex] = null;
+        }
+        return NGramGraphArray[iIndex];
+    }
+
+    /** Copies the level slots of this graph to another graph, sharing the
+     * levels, as the shallow <code>clone()</code> of subclasses requires. The
+     * slots are copied under the lock, so that no level is missed if it is being
+     * expanded.
+     *@param gTarget The graph to copy the slots to.
+     */
+    protected synchronized void copyLevelsTo(DocumentNGramGraph gTarget) {
+        gTarget.NGramGraphArray = NGramGraphArray.clone();
+        if (CompactGraphArray != null)
+            gTarget.CompactGraphArray = CompactGraphArray.clone();
     }
 
     public HashSet getAllNodes() {
         HashSet hRes = new HashSet(length() / (MaxSize - MinSize)); // Init set
         for (int iCurLvl = MinSize; iCurLvl <= MaxSize; iCurLvl++)
         {
-            java.util.Iterator iIter = NGramGraphArray[iCurLvl - 
-                    MinSize].getEdgeSet().iterator();
+            java.util.Iterator iIter = getGraphLevel(iCurLvl - 
+                    MinSize).getEdgeSet().iterator();
             
             while (iIter.hasNext())
                 hRes.add(iIter.next());
@@ -203,10 +404,12 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
             
         
         EdgeCachedLocator ecl;
-        if (eclLocator == null)
-            ecl = new EdgeCachedLocator(100);
-        else
+        if (eclLocator != null)
             ecl = eclLocator;
+        else if (LevelLocator != null)
+            ecl = LevelLocator;
+        else
+            ecl = new EdgeCachedLocator(100);
         
         // For every edge
         while (iIter.hasNext())
@@ -234,7 +437,7 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
             try
             {
                 if (weCorrectEdge == null) {
-                    ecl.addedEdge(gGraph.addEdge(vA, vB, dNewWeight));
+                    ecl.addedEdge(gGraph, gGraph.addEdge(vA, vB, dNewWeight));
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
@@ -264,6 +467,30 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
     public void createWeightedEdgesConnecting(UniqueVertexGraph gGraph,
             String sStartNode, List lOtherNodes,
             double dStartWeight, double dNewWeight, double dDataImportance) {
+        createWeightedEdgesConnecting(gGraph, sStartNode, lOtherNodes, dStartWeight,
+                dNewWeight, dDataImportance, (eclLocator == null) ?
+                    new EdgeCachedLocator(100) : eclLocator);
+    }
+
+    /***
+     * Creates an edge in [gGraph] connecting [sBaseNode] to each node in the
+     *[lOtherNodes] list of nodes, as
+     *{@link #createWeightedEdgesConnecting(UniqueVertexGraph, String, List, double, double, double)}
+     *does, using a given locator. Callers that create many edges should use one
+     *locator for all of them.
+     *@param gGraph The graph to use
+     *@param sStartNode The node from which all edges begin
+     *@param lOtherNodes The list of nodes to which sBaseNode is connected
+     *@param dStartWeight The initial weight for first-occuring nodes
+     *@param dNewWeight The new weight
+     *@param dDataImportance The tendency towards the new value.
+     *@param ecl The locator to look up edges of gGraph with, which is informed
+     *of the new edges.
+    ***/
+    public void createWeightedEdgesConnecting(UniqueVertexGraph gGraph,
+            String sStartNode, List lOtherNodes,
+            double dStartWeight, double dNewWeight, double dDataImportance,
+            EdgeCachedLocator ecl) {
         
         // If no neightbours
         if (lOtherNodes != null)
@@ -295,12 +522,6 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
             }
         }
 
-        EdgeCachedLocator ecl;
-        if (eclLocator == null)
-            ecl = new EdgeCachedLocator(100);
-        else
-            ecl = eclLocator;
-        
         // Otherwise for every neighbour add edge
         java.util.Iterator iIter = lOtherNodes.iterator();
         // For every edge
@@ -333,8 +554,7 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
                 // Not found. New edge.
                 dFinalWeight = dStartWeight;
                 try {
-                    gGraph.addEdge(vA, vB, dFinalWeight);
-                    ecl.resetCache();
+                    ecl.addedEdge(gGraph, gGraph.addEdge(vA, vB, dFinalWeight));
                 }
                 catch (Exception e) {
                     // Insert failed. Ignoring...
@@ -354,6 +574,11 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
     ***/
 
     public void createGraphs() {       
+        if (supportsCompactConstruction()) {
+            createCompactGraphs(false);
+            return;
+        }
+
         String sUsableString = new StringBuilder().append(DataString).toString();
         
         // Use preprocessor if available
@@ -404,49 +629,87 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         // 2nd pass. Create graph.
         ///////////////////////////////
         // For all sizes create corresponding levels
-        for (int iNGramSize = MinSize; iNGramSize <= MaxSize; iNGramSize++)
-        {
-            // If n-gram bigger than text
-            if (iLen < iNGramSize)
-                // then Ignore
-                continue;
+        try {
+            for (int iNGramSize = MinSize; iNGramSize <= MaxSize; iNGramSize++)
+            {
+                // If n-gram bigger than text
+                if (iLen < iNGramSize)
+                    // then Ignore
+                    continue;
             
-            Vector PrecedingNeighbours = new Vector();
-            UniqueVertexGraph gGraph = getGraphLevelByNGramSize(iNGramSize);
+                Vector PrecedingNeighbours = new Vector();
+                UniqueVertexGraph gGraph = getGraphLevelByNGramSize(iNGramSize);
+                // Use a single locator for the whole level
+                LevelLocator = new EdgeCachedLocator(100);
             
-            // The String has a size of at least [iNGramSize]
-            String sCurNGram = "";
-            for (int iCurStart = 0; iCurStart < iLen; iCurStart++)
-            {
-                // If reached end
-                if (iLen < iCurStart + iNGramSize)
-                    // then break
-                    break;
-                
-                // Get n-gram                
-                sCurNGram = sUsableString.substring(iCurStart, iCurStart + iNGramSize);
-                // Evaluate word
-                if (WordEvaluator != null)
-                    if (!WordEvaluator.evaluateWord(sCurNGram))
-                        // and ignore if it does not evaluate
-                        continue;
-                String[] aFinalNeighbours;
-                // Normalize
-                if (Normalizer != null)
-                    aFinalNeighbours = (String[])Normalizer.normalize(null, PrecedingNeighbours.toArray());
-                else
+                // The String has a size of at least [iNGramSize]
+                String sCurNGram = "";
+                for (int iCurStart = 0; iCurStart < iLen; iCurStart++)
                 {
-                    aFinalNeighbours = new String[PrecedingNeighbours.size()];
-                    PrecedingNeighbours.toArray(aFinalNeighbours);
-                }
-                createEdgesConnecting(gGraph, sCurNGram, java.util.Arrays.asList(aFinalNeighbours), 
-                        hTokenAppearence);
+                    // If reached end
+                    if (iLen < iCurStart + iNGramSize)
+                        // then break
+                        break;
                 
-                PrecedingNeighbours.add(sCurNGram);
-                if (PrecedingNeighbours.size() > CorrelationWindow)
-                    PrecedingNeighbours.removeElementAt(0);// Remove first element
+                    // Get n-gram                
+                    sCurNGram = sUsableString.substring(iCurStart, iCurStart + iNGramSize);
+                    // Evaluate word
+                    if (WordEvaluator != null)
+                        if (!WordEvaluator.evaluateWord(sCurNGram))
+                            // and ignore if it does not evaluate
+                            continue;
+                    String[] aFinalNeighbours;
+                    // Normalize
+                    if (Normalizer != null)
+                        aFinalNeighbours = (String[])Normalizer.normalize(null, PrecedingNeighbours.toArray());
+                    else
+                    {
+                        aFinalNeighbours = new String[PrecedingNeighbours.size()];
+                        PrecedingNeighbours.toArray(aFinalNeighbours);
+                    }
+                    createEdgesConnecting(gGraph, sCurNGram, java.util.Arrays.asList(aFinalNeighbours), 
+                            hTokenAppearence);
+                
+                    PrecedingNeighbours.add(sCurNGram);
+                    if (PrecedingNeighbours.size() > CorrelationWindow)
+                        PrecedingNeighbours.removeElementAt(0);// Remove first element
+                }
             }
-        }        
+        }
+        finally {
+            LevelLocator = null;
+        }
+    }
+
+    /** Indicates whether <code>createGraphs</code> may build the levels directly
+     * in compact form, through a {@link CompactGraphBuilder}. This is only the case
+     * when no normalizer is used and the edge creation methods are not
+     * overridden, so subclasses must opt in explicitly.
+     *@return True if the compact construction can be used, otherwise false.
+     */
+    protected boolean supportsCompactConstruction() {
+        return (Normalizer == null) && (getClass() == DocumentNGramGraph.class);
+    }
+
+    /***
+     * Creates the graph of n-grams in compact form, for all the levels specified
+     * in the MinSize, MaxSize range, in a single pass over the text per level.
+     *@param bSymmetric If true, edges are created in both directions between
+     * neighbouring n-grams, as in {@link DocumentNGramSymWinGraph}.
+    ***/
+    protected void createCompactGraphs(boolean bSymmetric) {
+        String sUsableString = DataString;
+        // Use preprocessor if available
+        if (TextPreprocessor != null)
+            sUsableString = TextPreprocessor.preprocess(sUsableString);
+        char[] caText = sUsableString.toCharArray();
+        int iLen = Math.min(DataString.length(), caText.length);
+
+        CompactGraphBuilder cgbBuilder = new CompactGraphBuilder(
+                getLabelDictionary(), WordEvaluator);
+        for (int iNGramSize = MinSize; iNGramSize <= MaxSize; iNGramSize++)
+            setCompactGraphLevel(iNGramSize - MinSize, cgbBuilder.buildLevel(caText,
+                    iLen, iNGramSize, CorrelationWindow, bSymmetric));
     }
     
 /***
@@ -466,13 +729,26 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         if (dgOtherGraph == this)
             return;
         
+        // Use a single locator for the whole merge
+        EdgeCachedLocator ecl = eclLocator;
         for (int iCurLvl = MinSize; iCurLvl <= MaxSize; iCurLvl++) {
+            // Compact levels are merged without creating edge objects
+            CompactNGramGraph gLevel = peekCompactGraphLevel(iCurLvl - MinSize);
+            if (gLevel != null) {
+                CompactNGramGraph gOtherLevel = dgOtherGraph.getCompactLevelByNGramSize(
+                        iCurLvl, gLevel.getDictionary());
+                if (gOtherLevel != null)
+                    mergeCompactLevel(gLevel, gOtherLevel, fWeightPercent, 0, 1);
+                continue;
+            }
             UniqueVertexGraph gGraph = getGraphLevelByNGramSize(iCurLvl);
             UniqueVertexGraph gOtherGraph = dgOtherGraph.getGraphLevelByNGramSize(iCurLvl);
             // Check if other graph has corresponding level
             if (gOtherGraph == null)
                 // If not, ignore level
                 continue;
+            if (ecl == null)
+                ecl = new EdgeCachedLocator(100);
 
             // For every edge on other graph
             java.util.Iterator iIter = gOtherGraph.getEdgeSet().iterator();
@@ -487,46 +763,226 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
                 lOtherNodes.add(sTail);
                 // TODO: Check this
                 createWeightedEdgesConnecting(gGraph, sHead,
-                 lOtherNodes, dWeight, dWeight, fWeightPercent);
+                 lOtherNodes, dWeight, dWeight, fWeightPercent, ecl);
+            }
+        }
+    }
+
+    /** Merges a number of graphs into this graph, with the same result as merging
+     * them one after the other with {@link #mergeGraph}, each with a weight
+     * percent of 1 / (n + 2) for the n-th (zero based) graph. This graph and the
+     * given ones then contribute equally to the edges they all have (running
+     * average).
+     *@param lOtherGraphs The graphs to merge, in merging order.
+     */
+    public void mergeAll(List<? extends DocumentNGramGraph> lOtherGraphs) {
+        double[] daWeightPercents = new double[lOtherGraphs.size()];
+        for (int iCnt = 0; iCnt < daWeightPercents.length; iCnt++)
+            daWeightPercents[iCnt] = 1.0 / (iCnt + 2);
+        mergeAll(lOtherGraphs, daWeightPercents);
+    }
+
+    /** Merges a number of graphs into this graph, with the same result as merging
+     * them one after the other with {@link #mergeGraph}, using the same weight
+     * percent for all.
+     *@param lOtherGraphs The graphs to merge, in merging order.
+     *@param fWeightPercent The convergence tendency parameter of every merge.
+     */
+    public void mergeAll(List<? extends DocumentNGramGraph> lOtherGraphs,
+            double fWeightPercent) {
+        double[] daWeightPercents = new double[lOtherGraphs.size()];
+        Arrays.fill(daWeightPercents, fWeightPercent);
+        mergeAll(lOtherGraphs, daWeightPercents);
+    }
+
+    /** Merges a number of graphs into this graph, with the same result as merging
+     * them one after the other with {@link #mergeGraph}, using the given weight
+     * percents. Since the final weight of every edge only depends on the graphs
+     * that contain it, the edges of every level are partitioned by key, and the
+     * partitions are merged in parallel, each one into a separate compact graph,
+     * so that no locking is needed. The levels of this graph are then updated
+     * once, instead of once per merged graph. The given graphs are merged in
+     * chunks, so that only the compact copies of the levels of a chunk (needed
+     * for expanded levels) are kept at a time.
+     *@param lOtherGraphs The graphs to merge, in merging order.
+     *@param daWeightPercents The convergence tendency parameter of every merge.
+     */
+    public void mergeAll(final List<? extends DocumentNGramGraph> lOtherGraphs,
+            final double[] daWeightPercents) {
+        if (lOtherGraphs.size() != daWeightPercents.length)
+            throw new IllegalArgumentException("One weight percent per graph is required");
+        final int iStripes = (lOtherGraphs.size() < 2) ? 1 :
+                Runtime.getRuntime().availableProcessors();
+        final int iLevels = MaxSize - MinSize + 1;
+        final int iChunkSize = MERGE_CHUNK_STRIPES * iStripes;
+        final CompactNGramGraph[] cgaLevels = new CompactNGramGraph[iLevels];
+        final CompactNGramGraph[][] cgaParts = new CompactNGramGraph[iLevels][iStripes];
+        TaskGroup tgTasks = new TaskGroup();
+        try {
+            // Partition the edges of all levels
+            for (int iLevel = 0; iLevel < iLevels; iLevel++)
+                cgaLevels[iLevel] = getCompactGraphLevel(iLevel);
+            for (int iLevel = 0; iLevel < iLevels; iLevel++)
+                for (int iStripe = 0; iStripe < iStripes; iStripe++) {
+                    final int iLevelArg = iLevel;
+                    final int iStripeArg = iStripe;
+                    tgTasks.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            CompactNGramGraph cgPart = new CompactNGramGraph(
+                                    cgaLevels[iLevelArg].getDictionary(),
+                                    cgaLevels[iLevelArg].getEdgesCount() / iStripes + 16);
+                            mergeCompactLevel(cgPart, cgaLevels[iLevelArg], 1.0,
+                                    iStripeArg, iStripes);
+                            cgaParts[iLevelArg][iStripeArg] = cgPart;
+                        }
+                    });
+                }
+            tgTasks.waitUntilCompletion();
+
+            for (int iFirst = 0; iFirst < lOtherGraphs.size(); iFirst += iChunkSize) {
+                final int iFirstArg = iFirst;
+                final CompactNGramGraph[][] cgaOthers = new CompactNGramGraph[
+                        Math.min(iChunkSize, lOtherGraphs.size() - iFirst)][];
+                // Get the compact form of the levels of the chunk
+                for (int iOther = 0; iOther < cgaOthers.length; iOther++) {
+                    final int iOtherArg = iOther;
+                    tgTasks.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            DocumentNGramGraph dgOther = lOtherGraphs.get(iFirstArg + iOtherArg);
+                            cgaOthers[iOtherArg] = new CompactNGramGraph[iLevels];
+                            // Merging a graph with itself changes nothing
+                            if (dgOther == DocumentNGramGraph.this)
+                                return;
+                            for (int iLevel = 0; iLevel < iLevels; iLevel++)
+                                cgaOthers[iOtherArg][iLevel] = dgOther.getCompactLevelByNGramSize(
+                                        MinSize + iLevel, cgaLevels[iLevel].getDictionary());
+                        }
+                    });
+                }
+                tgTasks.waitUntilCompletion();
+
+                // Merge the chunk into every partition of every level, in order
+                for (int iLevel = 0; iLevel < iLevels; iLevel++)
+                    for (int iStripe = 0; iStripe < iStripes; iStripe++) {
+                        final int iLevelArg = iLevel;
+                        final int iStripeArg = iStripe;
+                        tgTasks.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                CompactNGramGraph cgPart = cgaParts[iLevelArg][iStripeArg];
+                                for (int iOther = 0; iOther < cgaOthers.length; iOther++)
+                                    if (cgaOthers[iOther][iLevelArg] != null)
+                                        mergeCompactLevel(cgPart,
+                                                cgaOthers[iOther][iLevelArg],
+                                                daWeightPercents[iFirstArg + iOther],
+                                                iStripeArg, iStripes);
+                            }
+                        });
+                    }
+                tgTasks.waitUntilCompletion();
             }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while merging", ie);
+        }
 
-            // DONE: Remove multi-threading
-//            // Multi-threading
-//            ThreadQueue tq = new ThreadQueue();
-//            // For every edge on other graph
-//            java.util.Iterator iIter = gOtherGraph.getEdgeSet().iterator();
-//            while (iIter.hasNext())
-//            {
-//                WeightedEdge weCurItem = (WeightedEdge)iIter.next();
-//                final String sHead = weCurItem.getVertexA().getLabel();
-//                final String sTail = weCurItem.getVertexB().getLabel();
-//                final double dWeight = weCurItem.getWeight();
-//                final String[] lOtherNodes = new String[1];
-//                lOtherNodes[0] = sTail;
-//                final UniqueVertexGraph graphArg = gGraph;
-//                final double dWeightPercentArg = fWeightPercent;
-//
-//                while (!tq.addThreadFor(new Runnable() {
-//                    @Override
-//                    public void run() {
-//                        synchronized (graphArg) {
-//                            createWeightedEdgesConnecting(graphArg, sHead,
-//                             java.util.Arrays.asList(lOtherNodes), 1.0, dWeight,
-//                             dWeightPercentArg);
-//                        }
-//                    }
-//                }))
-//                    Thread.yield();
-//            }
-//
-//            try {
-//                tq.waitUntilCompletion();
-//            }
-//            catch (InterruptedException ie) {
-//                // Do nothing
-//            }
+        // Update the levels with the merged edges
+        for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+            CompactNGramGraph cgLevel = cgaLevels[iLevel];
+            UniqueVertexGraph gLevel = isLevelCompact(iLevel) ? null :
+                    getGraphLevel(iLevel);
+            EdgeCachedLocator ecl = new EdgeCachedLocator(100);
+            for (CompactNGramGraph cgPart : cgaParts[iLevel])
+                for (int iSlot = 0; iSlot < cgPart.getCapacity(); iSlot++) {
+                    if (!cgPart.isSlotUsed(iSlot))
+                        continue;
+                    long lKey = cgPart.getKeyAt(iSlot);
+                    double dWeight = cgPart.getWeightAt(iSlot);
+                    if (gLevel == null) {
+                        cgLevel.setWeight(lKey, dWeight);
+                        continue;
+                    }
+                    // Only touch the edges that changed
+                    int iOldSlot = cgLevel.indexOf(lKey);
+                    if ((iOldSlot >= 0) && (cgLevel.getWeightAt(iOldSlot) == dWeight))
+                        continue;
+                    setEdgeWeight(gLevel, ecl,
+                            cgLevel.getDictionary().getLabel(CompactNGramGraph.headOf(lKey)),
+                            cgLevel.getDictionary().getLabel(CompactNGramGraph.tailOf(lKey)),
+                            dWeight);
+                }
         }
     }
+
+    /** Returns the compact form of a level, using a given dictionary.
+     *@param iNGramSize The n-gram size of the level.
+     *@param dDictionary The dictionary of the vertex labels.
+     *@return The compact level, which is a snapshot unless the level is compact
+     * with the same dictionary, or null if there is no such level.
+     */
+    protected CompactNGramGraph getCompactLevelByNGramSize(int iNGramSize,
+            NGramLabelDictionary dDictionary) {
+        if ((iNGramSize < MinSize) || (iNGramSize > MaxSize))
+            return null;
+        int iIndex = iNGramSize - MinSize;
+        CompactNGramGraph cgRes = peekCompactGraphLevel(iIndex);
+        if (cgRes != null) {
+            if (cgRes.getDictionary() == dDictionary)
+                return cgRes;
+            return CompactNGramGraph.fromUniqueVertexGraph(cgRes.toUniqueVertexGraph(),
+                    dDictionary);
+        }
+        return CompactNGramGraph.fromUniqueVertexGraph(getGraphLevel(iIndex), dDictionary);
+    }
+
+    /** Merges the edges of a compact level into another, as {@link #mergeGraph}
+     * does, only for the edges of a given partition.
+     *@param cgTarget The level to update.
+     *@param cgSource The level to merge.
+     *@param dWeightPercent The convergence tendency parameter.
+     *@param iStripe The partition of edges to merge.
+     *@param iStripes The number of partitions.
+     */
+    protected static void mergeCompactLevel(CompactNGramGraph cgTarget,
+            CompactNGramGraph cgSource, double dWeightPercent, int iStripe, int iStripes) {
+        for (int iSlot = 0; iSlot < cgSource.getCapacity(); iSlot++) {
+            if (!cgSource.isSlotUsed(iSlot))
+                continue;
+            long lKey = cgSource.getKeyAt(iSlot);
+            if ((iStripes > 1) &&
+                    ((int)(((lKey * 0x9E3779B97F4A7C15L) >>> 33) % iStripes) != iStripe))
+                continue;
+            double dNewWeight = cgSource.getWeightAt(iSlot);
+            int iTargetSlot = cgTarget.indexOf(lKey);
+            if (iTargetSlot < 0)
+                cgTarget.setWeight(lKey, dNewWeight);
+            else {
+                double dOldWeight = cgTarget.getWeightAt(iTargetSlot);
+                cgTarget.setWeightAt(iTargetSlot, dOldWeight +
+                        (dNewWeight - dOldWeight) * dWeightPercent);
+            }
+        }
+    }
+
+    /** Sets the weight of an edge, adding it if required. */
+    private void setEdgeWeight(UniqueVertexGraph gGraph, EdgeCachedLocator ecl,
+            String sHead, String sTail, double dWeight) {
+        Vertex vA = gGraph.locateVertex(sHead);
+        if (vA != null) {
+            VertexImpl vB = new VertexImpl();
+            vB.setLabel(sTail);
+            WeightedEdge weEdge = (WeightedEdge)ecl.locateDirectedEdgeInGraph(gGraph, vA, vB);
+            if (weEdge != null) {
+                weEdge.setWeight(dWeight);
+                return;
+            }
+        }
+        createWeightedEdgesConnecting(gGraph, sHead, Arrays.asList(sTail), dWeight,
+                dWeight, 1.0, ecl);
+    }
     
     
     public DocumentNGramGraph intersectGraph(DocumentNGramGraph dgOtherGraph) {
@@ -535,6 +991,8 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         
         // Use cached edge locator
         EdgeCachedLocator ecl = new EdgeCachedLocator(1000);
+        // and a separate one for the new graph
+        EdgeCachedLocator eclNew = new EdgeCachedLocator(100);
         
         for (int iCurLvl = MinSize; iCurLvl <= MaxSize; iCurLvl++) {
             UniqueVertexGraph gGraph = getGraphLevelByNGramSize(iCurLvl);
@@ -567,7 +1025,8 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
                         double dTargetWeight = 0.5 * (eEdge.getWeight() + weCurItem.getWeight());
 
                         // Initialize with mean weight
-                        createWeightedEdgesConnecting(gNewGraph, sHead, l, dTargetWeight, dTargetWeight, 1.0);
+                        createWeightedEdgesConnecting(gNewGraph, sHead, l, dTargetWeight,
+                                dTargetWeight, 1.0, eclNew);
                         // Used to be
                         //createWeightedEdgesConnecting(gNewGraph, sHead, l,1, eEdge.getWeight(), 1.0);
                     }
@@ -843,7 +1302,11 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
     // For each graph
     for (int iCnt=MinSize; iCnt <= MaxSize; iCnt++) {
 
-        UniqueVertexGraph g = getGraphLevelByNGramSize(iCnt);
+        // Write compact levels without keeping the expanded form
+        int iLevel = iCnt - MinSize;
+        CompactNGramGraph gCompact = peekCompactGraphLevel(iLevel);
+        UniqueVertexGraph g = (gCompact != null) ?
+            gCompact.toUniqueVertexGraph() : getGraphLevel(iLevel);
         // Serialize
         out.writeObject(g);
     }
@@ -861,17 +1324,9 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         DataString = (String)in.readObject();
 //        DataString = "";
 
-////        // DEBUG LINES
-//        if (utils.Sum == 0) {
-//            UniqueVertexGraph uT = new UniqueVertexGraph();
-//            Runtime.getRuntime().gc();
-//            utils.Sum = Runtime.getRuntime().freeMemory();
-//            System.out.println("Starting free (MB):" +
-//                Runtime.getRuntime().freeMemory() / (1024*1024));
-//        }
-//        //////////////
         // Create array of graphs
         NGramGraphArray = new UniqueVertexGraph[MaxSize - MinSize + 1];
+        CompactGraphArray = new CompactNGramGraph[MaxSize - MinSize + 1];
         // For each graph
         for (int iCnt=MinSize; iCnt <= MaxSize; iCnt++) {
             // TODO: Restore
@@ -880,19 +1335,6 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
 //            UniqueVertexGraph g = null;
             
             this.NGramGraphArray[iCnt - MinSize] = g;
-
-////            // DEBUG LINES
-//            if (++utils.Count % 200 == 0) {
-//                System.out.println("So far " + utils.Count);
-//                Runtime.getRuntime().runFinalization();
-//                Runtime.getRuntime().gc();
-//                System.out.println("Current free (MB):" +
-//                    Runtime.getRuntime().freeMemory() / (1024*1024));
-//                System.out.println("Average size (Kb): " + (double)
-//                        (utils.Sum - Runtime.getRuntime().freeMemory())
-//                        / (utils.Count * 1024));
-//            }
-//            //////////////
         }
         // Load degredation
         DegradedEdges = (HashMap)in.readObject();
@@ -990,12 +1432,19 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
         gRes.DataString = DataString;
         gRes.DegradedEdges.putAll((HashMap)this.DegradedEdges.clone());
         gRes.NGramGraphArray = new UniqueVertexGraph[this.NGramGraphArray.length];
-        int iCnt=0;
-        for (UniqueVertexGraph uCur : this.NGramGraphArray)
-            gRes.NGramGraphArray[iCnt++] = (UniqueVertexGraph)uCur.clone();
+        gRes.CompactGraphArray = new CompactNGramGraph[this.NGramGraphArray.length];
+        for (int iCnt = 0; iCnt < this.NGramGraphArray.length; iCnt++) {
+            CompactNGramGraph gCompact = peekCompactGraphLevel(iCnt);
+            if (gCompact != null)
+                gRes.CompactGraphArray[iCnt] = (CompactNGramGraph)gCompact.clone();
+            else
+                gRes.NGramGraphArray[iCnt] =
+                        (UniqueVertexGraph)getGraphLevel(iCnt).clone();
+        }
         gRes.Normalizer = this.Normalizer;
         gRes.TextPreprocessor = this.TextPreprocessor;
         gRes.WordEvaluator = this.WordEvaluator;
+        gRes.LabelDictionary = this.LabelDictionary;
         
         return gRes;
     }
@@ -1035,7 +1484,7 @@ public class DocumentNGramGraph implements Serializable, Cloneable, IMergeable<D
                 if (eEdge != null)
                     try {
                         gCloneLevel.removeEdge(weCurItem);
-                        eclLocator.resetCache();
+                        eclLocator.removedEdge(gCloneLevel, weCurItem);
                         // Refresh edge iterator
                         // iIter = gCloneLevel.getEdgeSet().iterator();
                     } catch (Exception ex) {
@@ -201,7 +201,7 @@ public class DocumentNGramSymWinDistroGraph extends DocumentNGramDistroGraph {
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vA, vB, 0.0);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                     EdgeDistros.put(e, dDist);
                 }
                 else {
@@ -235,7 +235,7 @@ public class DocumentNGramSymWinDistroGraph extends DocumentNGramDistroGraph {
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vB, vA, 0.0);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                     EdgeDistros.put(e, dDist);
                 }
                 else {
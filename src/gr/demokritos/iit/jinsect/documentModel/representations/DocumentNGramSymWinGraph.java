@@ -39,7 +39,18 @@ public class DocumentNGramSymWinGraph extends DocumentNGramGraph {
         InitGraphs();
     }
     
+    @Override
+    protected boolean supportsCompactConstruction() {
+        return (Normalizer == null) &&
+                (getClass() == DocumentNGramSymWinGraph.class);
+    }
+
     public void createGraphs() {       
+        if (supportsCompactConstruction()) {
+            createCompactGraphs(true);
+            return;
+        }
+
         String sUsableString = new StringBuilder().append(DataString).toString();
         
         // Use preprocessor if available
@@ -198,7 +209,7 @@ public class DocumentNGramSymWinGraph extends DocumentNGramGraph {
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vA, vB, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
@@ -224,7 +235,7 @@ public class DocumentNGramSymWinGraph extends DocumentNGramGraph {
             {
                 if (weCorrectEdge == null) {
                     WeightedEdge e = gGraph.addEdge(vB, vA, dNewWeight);
-                    eclLocator.addedEdge(e);
+                    eclLocator.addedEdge(gGraph, e);
                 }
                 else
                     weCorrectEdge.setWeight(dNewWeight);
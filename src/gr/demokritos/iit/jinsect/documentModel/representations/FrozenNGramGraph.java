@@ -0,0 +1,132 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+
+/** An immutable, query-optimized snapshot of a {@link DocumentNGramGraph}, holding
+ * the {@link SortedEdgeList} of every level. Instances can be kept resident and
+ * shared by any number of threads, e.g. as compiled category models that are
+ * compared to many documents. The edge keys of the levels are assigned by the
+ * {@link NGramLabelDictionary} of the snapshot; only snapshots of the same
+ * dictionary can be compared directly (see {@link #toDictionary}).
+ *
+ * @author ggianna
+ */
+public class FrozenNGramGraph {
+    protected final int MinSize, MaxSize;
+    protected final SortedEdgeList[] Levels;
+    /** The dictionary of the edge keys of the levels. */
+    protected final NGramLabelDictionary Dictionary;
+
+    /** Creates a snapshot of the current state of a given graph, keyed by the
+     * dictionary of the graph. Later changes of the graph are not reflected in
+     * the snapshot.
+     *@param dgGraph The graph to freeze.
+     */
+    public FrozenNGramGraph(DocumentNGramGraph dgGraph) {
+        this(dgGraph, dgGraph.getLabelDictionary());
+    }
+
+    /** Creates a snapshot of the current state of a given graph, keyed by a given
+     * dictionary. Later changes of the graph are not reflected in the snapshot.
+     *@param dgGraph The graph to freeze.
+     *@param dDictionary The dictionary of the edge keys of the snapshot.
+     */
+    public FrozenNGramGraph(DocumentNGramGraph dgGraph, NGramLabelDictionary dDictionary) {
+        MinSize = dgGraph.getMinSize();
+        MaxSize = dgGraph.getMaxSize();
+        Dictionary = dDictionary;
+        Levels = new SortedEdgeList[MaxSize - MinSize + 1];
+        for (int iCnt = 0; iCnt < Levels.length; iCnt++)
+            Levels[iCnt] = dgGraph.getSortedEdgeList(iCnt, dDictionary);
+    }
+
+    /** Creates a graph from the lists of its levels, which are used as-is.
+     *@param iMinSize The n-gram size of the first level.
+     *@param iMaxSize The n-gram size of the last level.
+     *@param selaLevels The edges of every level.
+     *@param dDictionary The dictionary of the edge keys of the levels.
+     */
+    protected FrozenNGramGraph(int iMinSize, int iMaxSize, SortedEdgeList[] selaLevels,
+            NGramLabelDictionary dDictionary) {
+        MinSize = iMinSize;
+        MaxSize = iMaxSize;
+        Levels = selaLevels;
+        Dictionary = dDictionary;
+    }
+
+    public int getMinSize() {
+        return MinSize;
+    }
+
+    public int getMaxSize() {
+        return MaxSize;
+    }
+
+    public NGramLabelDictionary getDictionary() {
+        return Dictionary;
+    }
+
+    /** Returns the snapshot keyed by a given dictionary.
+     *@param dDictionary The dictionary of the edge keys.
+     *@return This snapshot, if it uses the dictionary, otherwise a copy whose
+     * labels are registered with the dictionary.
+     */
+    public FrozenNGramGraph toDictionary(NGramLabelDictionary dDictionary) {
+        if (dDictionary == Dictionary)
+            return this;
+        SortedEdgeList[] selaLevels = new SortedEdgeList[Levels.length];
+        for (int iCnt = 0; iCnt < Levels.length; iCnt++)
+            selaLevels[iCnt] = rekey(Levels[iCnt], Dictionary, dDictionary);
+        return new FrozenNGramGraph(MinSize, MaxSize, selaLevels, dDictionary);
+    }
+
+    /** Returns a copy of a sorted edge list, keyed by another dictionary.
+     *@param selLevel The edges to copy.
+     *@param dFrom The dictionary of the keys of the edges.
+     *@param dTo The dictionary of the keys of the copy.
+     *@return The copy.
+     */
+    protected static SortedEdgeList rekey(SortedEdgeList selLevel,
+            NGramLabelDictionary dFrom, NGramLabelDictionary dTo) {
+        CompactNGramGraph gWeights = new CompactNGramGraph(dTo, selLevel.size());
+        CompactNGramGraph gDegradations = selLevel.hasDegradations() ?
+            new CompactNGramGraph(dTo, selLevel.size()) : null;
+        for (int iCnt = 0; iCnt < selLevel.size(); iCnt++) {
+            long lKey = selLevel.getKeyAt(iCnt);
+            long lNewKey = CompactNGramGraph.edgeKey(
+                    dTo.getId(dFrom.getLabel(CompactNGramGraph.headOf(lKey))),
+                    dTo.getId(dFrom.getLabel(CompactNGramGraph.tailOf(lKey))));
+            gWeights.setWeight(lNewKey, selLevel.getWeightAt(iCnt));
+            if (gDegradations != null)
+                gDegradations.setWeight(lNewKey, selLevel.getDegradationAt(iCnt));
+        }
+        return SortedEdgeList.fromCompactGraph(gWeights, gDegradations);
+    }
+
+    /** Returns the sorted edge list of a level.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The edges of the level, or null if the graph has no such level.
+     */
+    public SortedEdgeList getLevelByNGramSize(int iNGramSize) {
+        if ((iNGramSize < MinSize) || (iNGramSize > MaxSize))
+            return null;
+        return Levels[iNGramSize - MinSize];
+    }
+
+    /** Returns the total number of edges of all levels.
+     *@return The edge count.
+     */
+    public int length() {
+        int iRes = 0;
+        for (SortedEdgeList selLevel : Levels)
+            iRes += selLevel.size();
+        return iRes;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.MappedSortedEdgeList;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import gr.demokritos.iit.jinsect.utils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+
+/** A read-only {@link FrozenNGramGraph} that is read in place from a memory
+ * mapped file. Opening a graph only reads its label table; edge lookups,
+ * iteration and weight reads access the mapped file directly, so that large
+ * graphs load in milliseconds and processes of the same host share the pages of
+ * the file instead of holding their own copies.
+ *<p>
+ * The file holds fixed-width, 8-byte aligned arrays, in big-endian order:
+ *<ul>
+ * <li>the magic bytes, the version, the n-gram sizes, the label count and the
+ * size of the label data,</li>
+ * <li>the byte offset of every label and the bytes of all the labels, in
+ * ascending order and in modified UTF-8 (see
+ * {@link NGramGraphBinaryFormat#encodeString(String)}), so that labels with
+ * unpaired surrogates are kept,</li>
+ * <li>for every level, the edge count, a flag indicating degraded edges, the
+ * edge keys (built from the label indices and sorted), the weights and, if any
+ * edge is degraded, the degradation degrees of the edges.</li>
+ *</ul>
+ * Version 1 files, with standard UTF-8 labels, can still be opened. The file must
+ * not be changed while mapped.
+ *
+ * @author ggianna
+ */
+public class MappedNGramGraph extends FrozenNGramGraph {
+    /** The bytes every mapped graph file starts with. */
+    public static final byte[] MAGIC = {'J', 'N', 'G', 'M'};
+    /** The current version of the format. */
+    public static final int VERSION = 2;
+    /** The first version, storing labels in standard UTF-8. */
+    protected static final int VERSION_UTF8 = 1;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The mapped file, kept for the lifetime of the graph. */
+    protected final MappedByteBuffer Buffer;
+    protected final MappedSortedEdgeList.LabelIdMap IdMap;
+
+    protected MappedNGramGraph(int iMinSize, int iMaxSize, SortedEdgeList[] selaLevels,
+            NGramLabelDictionary dDictionary, MappedByteBuffer mbbBuffer,
+            MappedSortedEdgeList.LabelIdMap lmIdMap) {
+        super(iMinSize, iMaxSize, selaLevels, dDictionary);
+        Buffer = mbbBuffer;
+        IdMap = lmIdMap;
+    }
+
+    /** Returns the number of distinct n-gram labels of the graph.
+     *@return The label count.
+     */
+    public int getLabelCount() {
+        return IdMap.size();
+    }
+
+    /** Maps a graph file, registering its labels with the default
+     * {@link NGramLabelDictionary}.
+     *@param fFile The file to map.
+     *@return The mapped graph.
+     *@throws IOException If the file is not a valid mapped graph file, or cannot
+     * be mapped.
+     */
+    public static MappedNGramGraph open(File fFile) throws IOException {
+        return open(fFile, NGramLabelDictionary.getDefault());
+    }
+
+    /** Maps a graph file, registering its labels with a given dictionary, e.g.
+     * one scoped to the models of a service.
+     *@param fFile The file to map.
+     *@param dDictionary The dictionary of the labels.
+     *@return The mapped graph, keyed by the dictionary.
+     *@throws IOException If the file is not a valid mapped graph file, or cannot
+     * be mapped.
+     */
+    public static MappedNGramGraph open(File fFile, NGramLabelDictionary dDictionary)
+            throws IOException {
+        MappedByteBuffer mbbBuffer;
+        FileChannel fcIn = FileChannel.open(fFile.toPath(), StandardOpenOption.READ);
+        try {
+            if (fcIn.size() > Integer.MAX_VALUE)
+                throw new IOException("Mapped graph file too big: " + fFile);
+            mbbBuffer = fcIn.map(FileChannel.MapMode.READ_ONLY, 0, fcIn.size());
+        }
+        finally {
+            // The mapping remains valid after the channel is closed
+            fcIn.close();
+        }
+
+        try {
+            return open(mbbBuffer, dDictionary);
+        }
+        catch (RuntimeException re) {
+            // Buffer underflows and invalid positions
+            throw new IOException("Corrupt mapped graph file " + fFile + ": " +
+                    re.getMessage());
+        }
+    }
+
+    protected static MappedNGramGraph open(MappedByteBuffer mbbBuffer,
+            NGramLabelDictionary dDictionary) throws IOException {
+        ByteBuffer bbIn = mbbBuffer.duplicate();
+        for (byte bCur : MAGIC)
+            if (bbIn.get() != bCur)
+                throw new IOException("Not a mapped n-gram graph file.");
+        int iVersion = bbIn.getInt();
+        if ((iVersion != VERSION) && (iVersion != VERSION_UTF8))
+            throw new IOException("Unsupported mapped graph format version: " +
+                    iVersion);
+        int iMinSize = bbIn.getInt();
+        int iMaxSize = bbIn.getInt();
+        int iLabels = bbIn.getInt();
+        int iLabelBytes = bbIn.getInt();
+        if ((iMaxSize < iMinSize) || (iLabels < 0) || (iLabelBytes < 0))
+            throw new IOException("Corrupt mapped graph header.");
+
+        // Labels
+        int[] iaOffsets = new int[iLabels + 1];
+        bbIn.asIntBuffer().get(iaOffsets);
+        bbIn.position(bbIn.position() + (iLabels + 1) * 4);
+        byte[] baLabels = new byte[iLabelBytes];
+        bbIn.get(baLabels);
+        int[] iaGlobalIds = new int[iLabels];
+        for (int iCnt = 0; iCnt < iLabels; iCnt++) {
+            if ((iaOffsets[iCnt] < 0) || (iaOffsets[iCnt] > iaOffsets[iCnt + 1]) ||
+                    (iaOffsets[iCnt + 1] > iLabelBytes))
+                throw new IOException("Corrupt mapped graph label table.");
+            int iLength = iaOffsets[iCnt + 1] - iaOffsets[iCnt];
+            iaGlobalIds[iCnt] = dDictionary.getId((iVersion == VERSION_UTF8) ?
+                new String(baLabels, iaOffsets[iCnt], iLength, UTF8) :
+                NGramGraphBinaryFormat.decodeString(baLabels, iaOffsets[iCnt], iLength));
+        }
+        MappedSortedEdgeList.LabelIdMap lmIdMap =
+                new MappedSortedEdgeList.LabelIdMap(iaGlobalIds);
+        align(bbIn);
+
+        // Levels
+        SortedEdgeList[] selaLevels = new SortedEdgeList[iMaxSize - iMinSize + 1];
+        for (int iLevel = 0; iLevel < selaLevels.length; iLevel++) {
+            int iEdges = bbIn.getInt();
+            boolean bDegradations = bbIn.getInt() != 0;
+            if (iEdges < 0)
+                throw new IOException("Corrupt mapped graph level.");
+            ByteBuffer bbKeys = slice(bbIn, iEdges * 8);
+            ByteBuffer bbWeights = slice(bbIn, iEdges * 8);
+            DoubleBuffer dbDegradations = bDegradations ?
+                slice(bbIn, iEdges * 8).asDoubleBuffer() : null;
+            selaLevels[iLevel] = new MappedSortedEdgeList(bbKeys.asLongBuffer(),
+                    bbWeights.asDoubleBuffer(), dbDegradations, lmIdMap);
+        }
+
+        return new MappedNGramGraph(iMinSize, iMaxSize, selaLevels, dDictionary,
+                mbbBuffer, lmIdMap);
+    }
+
+    /** Returns a view of the next bytes of a buffer, advancing its position. */
+    protected static ByteBuffer slice(ByteBuffer bbIn, int iBytes) {
+        ByteBuffer bbRes = bbIn.slice();
+        bbRes.limit(iBytes);
+        bbIn.position(bbIn.position() + iBytes);
+        return bbRes;
+    }
+
+    /** Advances the position of a buffer to the next multiple of 8. */
+    protected static void align(ByteBuffer bbBuffer) {
+        bbBuffer.position((bbBuffer.position() + 7) & ~7);
+    }
+
+    /** Writes a graph to a file, in the mapped graph format. The file is written
+     * to a new temporary file of the same directory first, and then renamed, so
+     * that it never appears incomplete and concurrent writers do not share a
+     * temporary file.
+     *@param fgGraph The graph to write.
+     *@param fFile The file to (over)write.
+     *@throws IOException If writing fails.
+     */
+    public static void write(FrozenNGramGraph fgGraph, File fFile) throws IOException {
+        NGramLabelDictionary dDictionary = fgGraph.getDictionary();
+        int iLevels = fgGraph.getMaxSize() - fgGraph.getMinSize() + 1;
+
+        // Create the label table
+        TreeSet<String> tsLabels = new TreeSet<String>();
+        for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+            SortedEdgeList selLevel = fgGraph.Levels[iLevel];
+            for (int iCnt = 0; iCnt < selLevel.size(); iCnt++) {
+                long lKey = selLevel.getKeyAt(iCnt);
+                tsLabels.add(dDictionary.getLabel(CompactNGramGraph.headOf(lKey)));
+                tsLabels.add(dDictionary.getLabel(CompactNGramGraph.tailOf(lKey)));
+            }
+        }
+        String[] saLabels = tsLabels.toArray(new String[tsLabels.size()]);
+        byte[][] baaLabels = new byte[saLabels.length][];
+        int iLabelBytes = 0;
+        // The dictionary id of every label, to translate keys to label indices
+        int[] iaGlobalIds = new int[saLabels.length];
+        for (int iCnt = 0; iCnt < saLabels.length; iCnt++) {
+            baaLabels[iCnt] = NGramGraphBinaryFormat.encodeString(saLabels[iCnt]);
+            iLabelBytes += baaLabels[iCnt].length;
+            iaGlobalIds[iCnt] = dDictionary.getId(saLabels[iCnt]);
+        }
+        MappedSortedEdgeList.LabelIdMap lmIdMap =
+                new MappedSortedEdgeList.LabelIdMap(iaGlobalIds);
+
+        // Sort the edges of every level by local key
+        SortedEdgeList[] selaLocal = new SortedEdgeList[iLevels];
+        long lSize = 4 + 5 * 4 + (saLabels.length + 1) * 4 + iLabelBytes;
+        lSize = (lSize + 7) & ~7;
+        for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+            SortedEdgeList selLevel = fgGraph.Levels[iLevel];
+            CompactNGramGraph gWeights = new CompactNGramGraph(dDictionary,
+                    selLevel.size());
+            CompactNGramGraph gDegradations = selLevel.hasDegradations() ?
+                new CompactNGramGraph(dDictionary, selLevel.size()) : null;
+            for (int iCnt = 0; iCnt < selLevel.size(); iCnt++) {
+                long lKey = selLevel.getKeyAt(iCnt);
+                long lLocalKey = CompactNGramGraph.edgeKey(
+                        lmIdMap.toLocal(CompactNGramGraph.headOf(lKey)),
+                        lmIdMap.toLocal(CompactNGramGraph.tailOf(lKey)));
+                gWeights.setWeight(lLocalKey, selLevel.getWeightAt(iCnt));
+                if (gDegradations != null)
+                    gDegradations.setWeight(lLocalKey, selLevel.getDegradationAt(iCnt));
+            }
+            selaLocal[iLevel] = SortedEdgeList.fromCompactGraph(gWeights, gDegradations);
+            lSize += 8 + (long)selaLocal[iLevel].size() *
+                    (selaLocal[iLevel].hasDegradations() ? 24 : 16);
+        }
+        if (lSize > Integer.MAX_VALUE)
+            throw new IOException("Graph too big to be mapped.");
+
+        ByteBuffer bbOut = ByteBuffer.allocate((int)lSize);
+        bbOut.put(MAGIC);
+        bbOut.putInt(VERSION);
+        bbOut.putInt(fgGraph.getMinSize());
+        bbOut.putInt(fgGraph.getMaxSize());
+        bbOut.putInt(saLabels.length);
+        bbOut.putInt(iLabelBytes);
+        int iOffset = 0;
+        for (byte[] baLabel : baaLabels) {
+            bbOut.putInt(iOffset);
+            iOffset += baLabel.length;
+        }
+        bbOut.putInt(iOffset);
+        for (byte[] baLabel : baaLabels)
+            bbOut.put(baLabel);
+        align(bbOut);
+        for (SortedEdgeList selLevel : selaLocal) {
+            bbOut.putInt(selLevel.size());
+            bbOut.putInt(selLevel.hasDegradations() ? 1 : 0);
+            for (int iCnt = 0; iCnt < selLevel.size(); iCnt++)
+                bbOut.putLong(selLevel.getKeyAt(iCnt));
+            for (int iCnt = 0; iCnt < selLevel.size(); iCnt++)
+                bbOut.putDouble(selLevel.getWeightAt(iCnt));
+            if (selLevel.hasDegradations())
+                for (int iCnt = 0; iCnt < selLevel.size(); iCnt++)
+                    bbOut.putDouble(selLevel.getDegradationAt(iCnt));
+        }
+        bbOut.flip();
+
+        File fTemp = utils.createTempFileFor(fFile);
+        try {
+            FileChannel fcOut = FileChannel.open(fTemp.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                while (bbOut.hasRemaining())
+                    fcOut.write(bbOut);
+            }
+            finally {
+                fcOut.close();
+            }
+        }
+        catch (IOException ioe) {
+            fTemp.delete();
+            throw ioe;
+        }
+        utils.replaceFile(fTemp, fFile);
+    }
+}
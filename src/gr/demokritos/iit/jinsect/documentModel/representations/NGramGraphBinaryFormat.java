@@ -0,0 +1,652 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.indexing.NamedDocumentNGramGraph;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
+import gr.demokritos.iit.jinsect.utils;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import salvo.jesus.graph.Edge;
+import salvo.jesus.graph.Vertex;
+import salvo.jesus.graph.VertexImpl;
+
+/** A compact, versioned binary format for {@link DocumentNGramGraph} objects, read
+ * and written through NIO channels. Compared to Java serialization, which stores
+ * the whole object graph of every level, the format holds:
+ *<ul>
+ * <li>a header with the magic bytes, the version and the graph class,</li>
+ * <li>the graph parameters and the data string,</li>
+ * <li>a sorted, front-coded table of all the n-gram labels,</li>
+ * <li>the degraded edges, as (level, head, tail, degradation) entries,</li>
+ * <li>for every level, the solitary vertices and the edges sorted by (head, tail),
+ * with delta-encoded variable length label indices and float or double
+ * weights.</li>
+ *</ul>
+ * Strings are stored in modified UTF-8 (see {@link #encodeString(String)}), so
+ * that labels with unpaired surrogates are read back unchanged. Version 1 files,
+ * with standard UTF-8 strings, can still be read.
+ * Levels without degraded edges are read directly into {@link CompactNGramGraph}
+ * form. Only graph classes without additional state are supported (see
+ * {@link #isSupported(Object)}).
+ *
+ * @author ggianna
+ */
+public class NGramGraphBinaryFormat {
+    /** The bytes every graph file starts with. */
+    public static final byte[] MAGIC = {'J', 'N', 'G', 'G'};
+    /** The current version of the format. */
+    public static final int VERSION = 2;
+    /** The first version, storing strings in standard UTF-8. */
+    protected static final int VERSION_UTF8 = 1;
+
+    protected static final int WEIGHTS_DOUBLE = 0;
+    protected static final int WEIGHTS_FLOAT = 1;
+    protected static final int BUFFER_SIZE = 1 << 16;
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The graph classes that hold no state beyond that of DocumentNGramGraph
+     * (and the name of a NamedDocumentNGramGraph). */
+    protected static final Class[] SUPPORTED_CLASSES = {DocumentNGramGraph.class,
+        DocumentNGramSymWinGraph.class, NamedDocumentNGramGraph.class};
+
+    /** Checks whether an object can be stored in this format.
+     *@param oObj The object to check.
+     *@return True if the object is a graph of a supported class.
+     */
+    public static boolean isSupported(Object oObj) {
+        return (oObj != null) && (getSupportedClass(oObj.getClass().getName()) != null);
+    }
+
+    protected static Class getSupportedClass(String sClassName) {
+        for (Class cCur : SUPPORTED_CLASSES)
+            if (cCur.getName().equals(sClassName))
+                return cCur;
+        return null;
+    }
+
+    /** Checks whether some data starts with the magic bytes of the format.
+     *@param baHeader The first bytes of the data.
+     *@param iLength The number of available bytes.
+     *@return True if the data are in this format.
+     */
+    public static boolean hasMagic(byte[] baHeader, int iLength) {
+        if (iLength < MAGIC.length)
+            return false;
+        for (int iCnt = 0; iCnt < MAGIC.length; iCnt++)
+            if (baHeader[iCnt] != MAGIC[iCnt])
+                return false;
+        return true;
+    }
+
+    /** Writes a graph to a channel.
+     *@param dgGraph The graph to write.
+     *@param wbcOut The channel to write to. It is not closed.
+     *@throws IOException If the graph class is not supported, or writing fails.
+     */
+    public static void write(DocumentNGramGraph dgGraph, WritableByteChannel wbcOut)
+            throws IOException {
+        if (!isSupported(dgGraph))
+            throw new IOException("Unsupported graph class: " +
+                    dgGraph.getClass().getName());
+
+        int iLevels = dgGraph.MaxSize - dgGraph.MinSize + 1;
+        CompactNGramGraph[] gaLevels = new CompactNGramGraph[iLevels];
+        HashSet<String> hsLabels = new HashSet<String>();
+        for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+            gaLevels[iLevel] = dgGraph.getCompactGraphLevel(iLevel);
+            NGramLabelDictionary dDictionary = gaLevels[iLevel].getDictionary();
+            for (int iVertex : gaLevels[iLevel].getVertexIds())
+                hsLabels.add(dDictionary.getLabel(iVertex));
+        }
+        // Create the label table
+        String[] saLabels = hsLabels.toArray(new String[hsLabels.size()]);
+        Arrays.sort(saLabels);
+        HashMap<String, Integer> hmLabelIndex = new HashMap<String, Integer>(
+                saLabels.length * 2);
+        for (int iCnt = 0; iCnt < saLabels.length; iCnt++)
+            hmLabelIndex.put(saLabels[iCnt], iCnt);
+
+        ChannelOutput coOut = new ChannelOutput(wbcOut);
+        // Header
+        for (byte bCur : MAGIC)
+            coOut.writeByte(bCur);
+        coOut.writeByte(VERSION);
+        coOut.writeString(dgGraph.getClass().getName());
+        boolean bNamed = dgGraph instanceof NamedDocumentNGramGraph;
+        coOut.writeVarInt(bNamed ? 1 : 0);
+        if (bNamed)
+            coOut.writeNullableString(((NamedDocumentNGramGraph)dgGraph).getName());
+        coOut.writeVarInt(dgGraph.MinSize);
+        coOut.writeVarInt(dgGraph.MaxSize);
+        coOut.writeVarInt(dgGraph.CorrelationWindow);
+        coOut.writeNullableString(dgGraph.DataString);
+
+        // Label table, front-coded
+        coOut.writeVarInt(saLabels.length);
+        String sPrevious = "";
+        for (String sLabel : saLabels) {
+            int iCommon = 0;
+            int iMaxCommon = Math.min(sPrevious.length(), sLabel.length());
+            while ((iCommon < iMaxCommon) &&
+                    (sPrevious.charAt(iCommon) == sLabel.charAt(iCommon)))
+                iCommon++;
+            coOut.writeVarInt(iCommon);
+            coOut.writeString(sLabel.substring(iCommon));
+            sPrevious = sLabel;
+        }
+
+        writeDegradations(dgGraph, hmLabelIndex, coOut);
+
+        // Levels
+        for (int iLevel = 0; iLevel < iLevels; iLevel++)
+            writeLevel(gaLevels[iLevel], hmLabelIndex, saLabels.length, coOut);
+        coOut.flush();
+    }
+
+    protected static void writeDegradations(DocumentNGramGraph dgGraph,
+            HashMap<String, Integer> hmLabelIndex, ChannelOutput coOut)
+            throws IOException {
+        int iLevels = dgGraph.MaxSize - dgGraph.MinSize + 1;
+        int[] iaLevel = new int[dgGraph.DegradedEdges.size()];
+        int[] iaHead = new int[iaLevel.length];
+        int[] iaTail = new int[iaLevel.length];
+        double[] daDegradation = new double[iaLevel.length];
+        int iCount = 0;
+
+        Iterator iIter = dgGraph.DegradedEdges.entrySet().iterator();
+        while (iIter.hasNext()) {
+            Map.Entry eCur = (Map.Entry)iIter.next();
+            Edge eEdge = (Edge)eCur.getKey();
+            Integer iHead = hmLabelIndex.get(eEdge.getVertexA().getLabel());
+            Integer iTail = hmLabelIndex.get(eEdge.getVertexB().getLabel());
+            // Ignore edges no longer in the graph
+            if ((iHead == null) || (iTail == null))
+                continue;
+            for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+                // Degraded edges only exist in expanded levels
+                if (dgGraph.isLevelCompact(iLevel))
+                    continue;
+                if (locateEdge(dgGraph.getGraphLevel(iLevel),
+                        eEdge.getVertexA().getLabel(),
+                        eEdge.getVertexB().getLabel()) == eEdge) {
+                    iaLevel[iCount] = iLevel;
+                    iaHead[iCount] = iHead;
+                    iaTail[iCount] = iTail;
+                    daDegradation[iCount++] = ((Double)eCur.getValue()).doubleValue();
+                    break;
+                }
+            }
+        }
+
+        coOut.writeVarInt(iCount);
+        for (int iCnt = 0; iCnt < iCount; iCnt++) {
+            coOut.writeVarInt(iaLevel[iCnt]);
+            coOut.writeVarInt(iaHead[iCnt]);
+            coOut.writeVarInt(iaTail[iCnt]);
+            coOut.writeDouble(daDegradation[iCnt]);
+        }
+    }
+
+    protected static void writeLevel(CompactNGramGraph gLevel,
+            HashMap<String, Integer> hmLabelIndex, int iLabels, ChannelOutput coOut)
+            throws IOException {
+        NGramLabelDictionary dDictionary = gLevel.getDictionary();
+        // Sort edges by local label indices
+        long[] laKeys = gLevel.getEdgeKeys();
+        long[] laLocalKeys = new long[laKeys.length];
+        boolean[] baConnected = new boolean[iLabels];
+        // Maps local label indices back to the dictionary, to look up weights
+        int[] iaDictionaryIds = new int[iLabels];
+        for (int iCnt = 0; iCnt < laKeys.length; iCnt++) {
+            int iHeadId = CompactNGramGraph.headOf(laKeys[iCnt]);
+            int iTailId = CompactNGramGraph.tailOf(laKeys[iCnt]);
+            int iHead = hmLabelIndex.get(dDictionary.getLabel(iHeadId));
+            int iTail = hmLabelIndex.get(dDictionary.getLabel(iTailId));
+            baConnected[iHead] = true;
+            baConnected[iTail] = true;
+            iaDictionaryIds[iHead] = iHeadId;
+            iaDictionaryIds[iTail] = iTailId;
+            laLocalKeys[iCnt] = CompactNGramGraph.edgeKey(iHead, iTail);
+        }
+        Arrays.sort(laLocalKeys);
+
+        // Solitary vertices
+        int[] iaVertices = gLevel.getVertexIds();
+        int[] iaSolitary = new int[iaVertices.length];
+        int iSolitary = 0;
+        for (int iVertex : iaVertices) {
+            int iLocal = hmLabelIndex.get(dDictionary.getLabel(iVertex));
+            if (!baConnected[iLocal])
+                iaSolitary[iSolitary++] = iLocal;
+        }
+        Arrays.sort(iaSolitary, 0, iSolitary);
+        coOut.writeVarInt(iSolitary);
+        int iPrevious = 0;
+        for (int iCnt = 0; iCnt < iSolitary; iCnt++) {
+            coOut.writeVarInt(iaSolitary[iCnt] - iPrevious);
+            iPrevious = iaSolitary[iCnt];
+        }
+
+        double[] daWeights = new double[laLocalKeys.length];
+        boolean bFloat = true;
+        for (int iCnt = 0; iCnt < laLocalKeys.length; iCnt++) {
+            int iHead = CompactNGramGraph.headOf(laLocalKeys[iCnt]);
+            int iTail = CompactNGramGraph.tailOf(laLocalKeys[iCnt]);
+            daWeights[iCnt] = gLevel.getWeight(CompactNGramGraph.edgeKey(
+                    iaDictionaryIds[iHead], iaDictionaryIds[iTail]), 0.0);
+            bFloat &= ((double)(float)daWeights[iCnt] == daWeights[iCnt]);
+        }
+
+        // Edges
+        coOut.writeVarInt(laLocalKeys.length);
+        coOut.writeByte(bFloat ? WEIGHTS_FLOAT : WEIGHTS_DOUBLE);
+        int iPreviousHead = 0, iPreviousTail = 0;
+        for (int iCnt = 0; iCnt < laLocalKeys.length; iCnt++) {
+            int iHead = CompactNGramGraph.headOf(laLocalKeys[iCnt]);
+            int iTail = CompactNGramGraph.tailOf(laLocalKeys[iCnt]);
+            coOut.writeVarInt(iHead - iPreviousHead);
+            // Tails of the same head are ascending
+            coOut.writeVarInt((iHead == iPreviousHead) && (iCnt > 0) ?
+                iTail - iPreviousTail : iTail);
+            if (bFloat)
+                coOut.writeFloat((float)daWeights[iCnt]);
+            else
+                coOut.writeDouble(daWeights[iCnt]);
+            iPreviousHead = iHead;
+            iPreviousTail = iTail;
+        }
+    }
+
+    /** Reads a graph from a channel, registering its labels with the default
+     * {@link NGramLabelDictionary}.
+     *@param rbcIn The channel to read from. It is not closed.
+     *@return The graph.
+     *@throws IOException If the data are not a graph of a supported class and
+     * version, or reading fails.
+     */
+    public static DocumentNGramGraph read(ReadableByteChannel rbcIn) throws IOException {
+        return read(rbcIn, null);
+    }
+
+    /** Reads a graph from a channel, registering its labels with a given
+     * dictionary, which the graph then uses (see
+     * {@link DocumentNGramGraph#setLabelDictionary(NGramLabelDictionary)}).
+     *@param rbcIn The channel to read from. It is not closed.
+     *@param dDictionary The dictionary of the labels, or null for the default one.
+     *@return The graph.
+     *@throws IOException If the data are not a graph of a supported class and
+     * version, or reading fails.
+     */
+    public static DocumentNGramGraph read(ReadableByteChannel rbcIn,
+            NGramLabelDictionary dDictionary) throws IOException {
+        ChannelInput ciIn = new ChannelInput(rbcIn);
+        // Header
+        for (byte bCur : MAGIC)
+            if (ciIn.readByte() != bCur)
+                throw new IOException("Not an n-gram graph binary file.");
+        int iVersion = ciIn.readByte();
+        if ((iVersion != VERSION) && (iVersion != VERSION_UTF8))
+            throw new IOException("Unsupported n-gram graph format version: " +
+                    iVersion);
+        ciIn.StandardUTF8 = (iVersion == VERSION_UTF8);
+        String sClassName = ciIn.readString();
+        Class cGraph = getSupportedClass(sClassName);
+        if (cGraph == null)
+            throw new IOException("Unsupported graph class: " + sClassName);
+        DocumentNGramGraph dgRes;
+        try {
+            dgRes = (DocumentNGramGraph)cGraph.newInstance();
+        } catch (Exception e) {
+            throw new IOException("Cannot create graph of class " + sClassName +
+                    ": " + e.getMessage());
+        }
+        boolean bNamed = (ciIn.readVarInt() & 1) != 0;
+        if (bNamed) {
+            String sName = ciIn.readNullableString();
+            if (dgRes instanceof NamedDocumentNGramGraph)
+                ((NamedDocumentNGramGraph)dgRes).setName(sName);
+        }
+        dgRes.MinSize = ciIn.readVarInt();
+        dgRes.MaxSize = ciIn.readVarInt();
+        dgRes.CorrelationWindow = ciIn.readVarInt();
+        if (dgRes.MaxSize < dgRes.MinSize)
+            throw new IOException("Invalid n-gram sizes.");
+        dgRes.DataString = ciIn.readNullableString();
+        dgRes.InitGraphs();
+        dgRes.setLabelDictionary(dDictionary);
+
+        // Label table
+        dDictionary = dgRes.getLabelDictionary();
+        String[] saLabels = new String[ciIn.readCount()];
+        int[] iaIds = new int[saLabels.length];
+        String sPrevious = "";
+        for (int iCnt = 0; iCnt < saLabels.length; iCnt++) {
+            int iCommon = ciIn.readVarInt();
+            if (iCommon > sPrevious.length())
+                throw new IOException("Corrupt label table.");
+            saLabels[iCnt] = sPrevious.substring(0, iCommon) + ciIn.readString();
+            iaIds[iCnt] = dDictionary.getId(saLabels[iCnt]);
+            sPrevious = saLabels[iCnt];
+        }
+
+        // Degradations
+        int iLevels = dgRes.MaxSize - dgRes.MinSize + 1;
+        int iDegraded = ciIn.readCount();
+        int[] iaLevel = new int[iDegraded];
+        int[] iaHead = new int[iDegraded];
+        int[] iaTail = new int[iDegraded];
+        double[] daDegradation = new double[iDegraded];
+        boolean[] baDegradedLevel = new boolean[iLevels];
+        for (int iCnt = 0; iCnt < iDegraded; iCnt++) {
+            iaLevel[iCnt] = ciIn.readIndex(iLevels);
+            iaHead[iCnt] = ciIn.readIndex(saLabels.length);
+            iaTail[iCnt] = ciIn.readIndex(saLabels.length);
+            daDegradation[iCnt] = ciIn.readDouble();
+            baDegradedLevel[iaLevel[iCnt]] = true;
+        }
+
+        // Levels
+        for (int iLevel = 0; iLevel < iLevels; iLevel++) {
+            dgRes.setCompactGraphLevel(iLevel, readLevel(ciIn, dDictionary, iaIds));
+            // Degraded edges need the expanded form
+            if (baDegradedLevel[iLevel])
+                dgRes.getGraphLevel(iLevel);
+        }
+        for (int iCnt = 0; iCnt < iDegraded; iCnt++) {
+            Edge eEdge = locateEdge(dgRes.getGraphLevel(iaLevel[iCnt]),
+                    saLabels[iaHead[iCnt]], saLabels[iaTail[iCnt]]);
+            if (eEdge != null)
+                dgRes.DegradedEdges.put(eEdge, daDegradation[iCnt]);
+        }
+
+        return dgRes;
+    }
+
+    protected static CompactNGramGraph readLevel(ChannelInput ciIn,
+            NGramLabelDictionary dDictionary, int[] iaIds) throws IOException {
+        int iSolitary = ciIn.readCount();
+        CompactNGramGraph gRes = new CompactNGramGraph(dDictionary, 16);
+        int iLocal = 0;
+        for (int iCnt = 0; iCnt < iSolitary; iCnt++) {
+            iLocal += ciIn.readVarInt();
+            gRes.addVertex(iaIds[checkIndex(iLocal, iaIds.length)]);
+        }
+
+        int iEdges = ciIn.readCount();
+        boolean bFloat = ciIn.readByte() == WEIGHTS_FLOAT;
+        int iHead = 0, iTail = 0;
+        for (int iCnt = 0; iCnt < iEdges; iCnt++) {
+            int iHeadDelta = ciIn.readVarInt();
+            iHead += iHeadDelta;
+            int iTailValue = ciIn.readVarInt();
+            iTail = ((iHeadDelta == 0) && (iCnt > 0)) ? iTail + iTailValue : iTailValue;
+            double dWeight = bFloat ? ciIn.readFloat() : ciIn.readDouble();
+            gRes.setWeight(CompactNGramGraph.edgeKey(
+                    iaIds[checkIndex(iHead, iaIds.length)],
+                    iaIds[checkIndex(iTail, iaIds.length)]), dWeight);
+        }
+        return gRes;
+    }
+
+    protected static int checkIndex(int iIndex, int iSize) throws IOException {
+        if ((iIndex < 0) || (iIndex >= iSize))
+            throw new IOException("Corrupt n-gram graph data: index out of range.");
+        return iIndex;
+    }
+
+    protected static Edge locateEdge(UniqueVertexGraph gGraph, String sHead,
+            String sTail) {
+        Vertex vHead = gGraph.locateVertex(new VertexImpl(sHead));
+        Vertex vTail = gGraph.locateVertex(new VertexImpl(sTail));
+        if ((vHead == null) || (vTail == null))
+            return null;
+        return utils.locateDirectedEdgeInGraph(gGraph, vHead, vTail);
+    }
+
+    /** Encodes a string in modified UTF-8, as
+     * {@link java.io.DataOutput#writeUTF(String)} does but without a length
+     * limit: every char takes one to three bytes, encoded on its own, so that
+     * unpaired surrogates and split surrogate pairs are kept. ASCII text takes
+     * one byte per char.
+     *@param sValue The string to encode.
+     *@return The bytes of the string.
+     */
+    public static byte[] encodeString(String sValue) {
+        int iBytes = 0;
+        for (int iCnt = 0; iCnt < sValue.length(); iCnt++) {
+            char cCur = sValue.charAt(iCnt);
+            iBytes += ((cCur >= 0x01) && (cCur <= 0x7F)) ? 1 : (cCur <= 0x7FF) ? 2 : 3;
+        }
+        byte[] baRes = new byte[iBytes];
+        int iPos = 0;
+        for (int iCnt = 0; iCnt < sValue.length(); iCnt++) {
+            char cCur = sValue.charAt(iCnt);
+            if ((cCur >= 0x01) && (cCur <= 0x7F))
+                baRes[iPos++] = (byte)cCur;
+            else if (cCur <= 0x7FF) {
+                baRes[iPos++] = (byte)(0xC0 | (cCur >> 6));
+                baRes[iPos++] = (byte)(0x80 | (cCur & 0x3F));
+            }
+            else {
+                baRes[iPos++] = (byte)(0xE0 | (cCur >> 12));
+                baRes[iPos++] = (byte)(0x80 | ((cCur >> 6) & 0x3F));
+                baRes[iPos++] = (byte)(0x80 | (cCur & 0x3F));
+            }
+        }
+        return baRes;
+    }
+
+    /** Decodes a string encoded by {@link #encodeString(String)}.
+     *@param baBytes The array holding the encoded string.
+     *@param iOffset The offset of the string in the array.
+     *@param iLength The number of bytes of the string.
+     *@return The string.
+     *@throws IOException If the bytes are not a valid encoding.
+     */
+    public static String decodeString(byte[] baBytes, int iOffset, int iLength)
+            throws IOException {
+        char[] caRes = new char[iLength];
+        int iChars = 0;
+        int iEnd = iOffset + iLength;
+        while (iOffset < iEnd) {
+            int iByte = baBytes[iOffset++] & 0xFF;
+            if (iByte < 0x80)
+                caRes[iChars++] = (char)iByte;
+            else if (((iByte & 0xE0) == 0xC0) && (iOffset < iEnd) &&
+                    ((baBytes[iOffset] & 0xC0) == 0x80))
+                caRes[iChars++] = (char)(((iByte & 0x1F) << 6) |
+                        (baBytes[iOffset++] & 0x3F));
+            else if (((iByte & 0xF0) == 0xE0) && (iOffset + 1 < iEnd) &&
+                    ((baBytes[iOffset] & 0xC0) == 0x80) &&
+                    ((baBytes[iOffset + 1] & 0xC0) == 0x80)) {
+                caRes[iChars++] = (char)(((iByte & 0x0F) << 12) |
+                        ((baBytes[iOffset] & 0x3F) << 6) | (baBytes[iOffset + 1] & 0x3F));
+                iOffset += 2;
+            }
+            else
+                throw new IOException("Corrupt data: invalid string.");
+        }
+        return new String(caRes, 0, iChars);
+    }
+
+    /** Buffered output of primitive values to a channel. */
+    protected static class ChannelOutput {
+        protected final WritableByteChannel Channel;
+        protected final ByteBuffer Buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        public ChannelOutput(WritableByteChannel wbcChannel) {
+            Channel = wbcChannel;
+        }
+
+        protected void ensure(int iBytes) throws IOException {
+            if (Buffer.remaining() < iBytes)
+                flush();
+        }
+
+        /** Writes all buffered data to the channel. */
+        public void flush() throws IOException {
+            Buffer.flip();
+            while (Buffer.hasRemaining())
+                Channel.write(Buffer);
+            Buffer.clear();
+        }
+
+        public void writeByte(int iValue) throws IOException {
+            ensure(1);
+            Buffer.put((byte)iValue);
+        }
+
+        /** Writes a non-negative integer in 7-bit groups, least significant first. */
+        public void writeVarInt(int iValue) throws IOException {
+            if (iValue < 0)
+                throw new IOException("Cannot write negative value " + iValue);
+            ensure(5);
+            while ((iValue & ~0x7F) != 0) {
+                Buffer.put((byte)((iValue & 0x7F) | 0x80));
+                iValue >>>= 7;
+            }
+            Buffer.put((byte)iValue);
+        }
+
+        public void writeFloat(float fValue) throws IOException {
+            ensure(4);
+            Buffer.putFloat(fValue);
+        }
+
+        public void writeDouble(double dValue) throws IOException {
+            ensure(8);
+            Buffer.putDouble(dValue);
+        }
+
+        /** Writes a string as its encoded byte count, followed by the bytes (see
+         * {@link #encodeString(String)}). */
+        public void writeString(String sValue) throws IOException {
+            byte[] baBytes = encodeString(sValue);
+            writeVarInt(baBytes.length);
+            writeBytes(baBytes);
+        }
+
+        /** Writes a string that may be null, as its encoded byte count plus one
+         * (zero for null), followed by the bytes. */
+        public void writeNullableString(String sValue) throws IOException {
+            if (sValue == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] baBytes = encodeString(sValue);
+            writeVarInt(baBytes.length + 1);
+            writeBytes(baBytes);
+        }
+
+        protected void writeBytes(byte[] baBytes) throws IOException {
+            int iOffset = 0;
+            while (iOffset < baBytes.length) {
+                if (!Buffer.hasRemaining())
+                    flush();
+                int iChunk = Math.min(Buffer.remaining(), baBytes.length - iOffset);
+                Buffer.put(baBytes, iOffset, iChunk);
+                iOffset += iChunk;
+            }
+        }
+    }
+
+    /** Buffered input of primitive values from a channel. */
+    protected static class ChannelInput {
+        protected final ReadableByteChannel Channel;
+        protected final ByteBuffer Buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        /** True if strings are in standard UTF-8, as in version 1 files. */
+        protected boolean StandardUTF8 = false;
+
+        public ChannelInput(ReadableByteChannel rbcChannel) {
+            Channel = rbcChannel;
+            Buffer.limit(0);
+        }
+
+        /** Makes sure that a number of bytes are buffered. */
+        protected void require(int iBytes) throws IOException {
+            if (Buffer.remaining() >= iBytes)
+                return;
+            Buffer.compact();
+            while (Buffer.position() < iBytes)
+                if (Channel.read(Buffer) < 0)
+                    throw new EOFException("Unexpected end of n-gram graph data.");
+            Buffer.flip();
+        }
+
+        public int readByte() throws IOException {
+            require(1);
+            return Buffer.get() & 0xFF;
+        }
+
+        public int readVarInt() throws IOException {
+            int iRes = 0;
+            for (int iShift = 0; iShift < 35; iShift += 7) {
+                int iByte = readByte();
+                iRes |= (iByte & 0x7F) << iShift;
+                if ((iByte & 0x80) == 0) {
+                    if (iRes < 0)
+                        break;
+                    return iRes;
+                }
+            }
+            throw new IOException("Corrupt n-gram graph data: invalid number.");
+        }
+
+        /** Reads a count, used to size arrays. */
+        public int readCount() throws IOException {
+            return readVarInt();
+        }
+
+        /** Reads an index that must be less than a given size. */
+        public int readIndex(int iSize) throws IOException {
+            return checkIndex(readVarInt(), iSize);
+        }
+
+        public float readFloat() throws IOException {
+            require(4);
+            return Buffer.getFloat();
+        }
+
+        public double readDouble() throws IOException {
+            require(8);
+            return Buffer.getDouble();
+        }
+
+        public String readString() throws IOException {
+            return readBytes(readCount());
+        }
+
+        public String readNullableString() throws IOException {
+            int iLength = readCount();
+            return (iLength == 0) ? null : readBytes(iLength - 1);
+        }
+
+        protected String readBytes(int iLength) throws IOException {
+            byte[] baBytes = new byte[iLength];
+            int iOffset = 0;
+            while (iOffset < baBytes.length) {
+                require(1);
+                int iChunk = Math.min(Buffer.remaining(), baBytes.length - iOffset);
+                Buffer.get(baBytes, iOffset, iChunk);
+                iOffset += iChunk;
+            }
+            return StandardUTF8 ? new String(baBytes, UTF8) :
+                decodeString(baBytes, 0, baBytes.length);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** A compact MinHash sketch of the edge sets of the levels of a
+ * {@link DocumentNGramGraph}. For every level the sketch keeps, for each of a
+ * number of hash functions, the minimum hash of the edges of the level. The
+ * fraction of equal minimums of two sketches estimates the Jaccard similarity of
+ * the edge sets of the level, with a standard error of at most
+ * 1 / (2 * sqrt(hash count)).
+ * <p>
+ * Edges are hashed by the labels of their vertices, so sketches are comparable
+ * across processes, and can be stored next to their graphs, in the
+ * {@link #SKETCH_CATEGORY} category of an INSECTDB, as
+ * {@link gr.demokritos.iit.jinsect.indexing.LSHGraphIndex} stores them.
+ *
+ * @author ggianna
+ */
+public class NGramGraphSketch implements Serializable {
+    /** The default number of hash functions per level. */
+    public static final int DEFAULT_HASH_COUNT = 128;
+    /** The storage category of sketches. */
+    public static final String SKETCH_CATEGORY = "sketch";
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    protected final int MinSize, MaxSize;
+    /** The number of edges of every level. */
+    protected final int[] LevelSizes;
+    /** The minimum hashes of every level. */
+    protected final long[][] Signatures;
+
+    /** Creates a sketch of a graph, with the default number of hash functions.
+     *@param dgGraph The graph to sketch.
+     */
+    public NGramGraphSketch(DocumentNGramGraph dgGraph) {
+        this(new FrozenNGramGraph(dgGraph), DEFAULT_HASH_COUNT);
+    }
+
+    /** Creates a sketch of a graph. The sketch depends on the labels of the edges
+     * only, so sketches of graphs of different dictionaries are comparable.
+     *@param fgGraph The graph to sketch.
+     *@param iHashCount The number of hash functions per level. Sketches are only
+     * comparable if they use the same number.
+     */
+    public NGramGraphSketch(FrozenNGramGraph fgGraph, int iHashCount) {
+        if (iHashCount < 1)
+            throw new IllegalArgumentException("Invalid hash count: " + iHashCount);
+        MinSize = fgGraph.getMinSize();
+        MaxSize = fgGraph.getMaxSize();
+        LevelSizes = new int[MaxSize - MinSize + 1];
+        Signatures = new long[LevelSizes.length][iHashCount];
+
+        long[] laSeeds = getSeeds(iHashCount);
+        NGramLabelDictionary dDictionary = fgGraph.getDictionary();
+        for (int iLvl = 0; iLvl < LevelSizes.length; iLvl++) {
+            SortedEdgeList selLevel = fgGraph.getLevelByNGramSize(MinSize + iLvl);
+            long[] laSignature = Signatures[iLvl];
+            Arrays.fill(laSignature, Long.MAX_VALUE);
+            LevelSizes[iLvl] = selLevel.size();
+            for (int iEdge = 0; iEdge < selLevel.size(); iEdge++) {
+                long lKey = selLevel.getKeyAt(iEdge);
+                long lEdgeHash = hash(hash(SEED,
+                        dDictionary.getLabel(CompactNGramGraph.headOf(lKey))),
+                        dDictionary.getLabel(CompactNGramGraph.tailOf(lKey)));
+                for (int iHash = 0; iHash < iHashCount; iHash++) {
+                    long lCur = mix(lEdgeHash + laSeeds[iHash]);
+                    if (lCur < laSignature[iHash])
+                        laSignature[iHash] = lCur;
+                }
+            }
+        }
+    }
+
+    public int getMinSize() {
+        return MinSize;
+    }
+
+    public int getMaxSize() {
+        return MaxSize;
+    }
+
+    /** Returns the number of hash functions per level. */
+    public int getHashCount() {
+        return Signatures.length == 0 ? 0 : Signatures[0].length;
+    }
+
+    /** Returns the number of edges of a level.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The edge count, or -1 if the graph has no such level.
+     */
+    public int getLevelSize(int iNGramSize) {
+        if ((iNGramSize < MinSize) || (iNGramSize > MaxSize))
+            return -1;
+        return LevelSizes[iNGramSize - MinSize];
+    }
+
+    /** Returns the minimum hashes of a level. The array must not be modified.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The minimum hashes, or null if the graph has no such level.
+     */
+    public long[] getSignature(int iNGramSize) {
+        if ((iNGramSize < MinSize) || (iNGramSize > MaxSize))
+            return null;
+        return Signatures[iNGramSize - MinSize];
+    }
+
+    /** Estimates the Jaccard similarity of the edge sets of a level of this and
+     * another sketch.
+     *@param ngsOther The other sketch, with the same number of hash functions.
+     *@param iNGramSize The n-gram size of the level.
+     *@return The estimated similarity, or {@link Double#NaN} if either graph has
+     * no such level, or the level is empty in both.
+     */
+    public double estimateJaccard(NGramGraphSketch ngsOther, int iNGramSize) {
+        long[] laFirst = getSignature(iNGramSize);
+        long[] laSecond = ngsOther.getSignature(iNGramSize);
+        if ((laFirst == null) || (laSecond == null))
+            return Double.NaN;
+        if (laFirst.length != laSecond.length)
+            throw new IllegalArgumentException("Sketches of different hash counts");
+        int iFirstSize = getLevelSize(iNGramSize);
+        int iSecondSize = ngsOther.getLevelSize(iNGramSize);
+        if ((iFirstSize == 0) || (iSecondSize == 0))
+            return ((iFirstSize == 0) && (iSecondSize == 0)) ? Double.NaN : 0.0;
+        int iEqual = 0;
+        for (int iCnt = 0; iCnt < laFirst.length; iCnt++)
+            if (laFirst[iCnt] == laSecond[iCnt])
+                iEqual++;
+        return (double)iEqual / laFirst.length;
+    }
+
+    private static long[] getSeeds(int iHashCount) {
+        long[] laRes = new long[iHashCount];
+        for (int iCnt = 0; iCnt < iHashCount; iCnt++)
+            laRes[iCnt] = mix(SEED + iCnt * 0x9E3779B97F4A7C15L);
+        return laRes;
+    }
+
+    /** Hashes a string into a running hash, independently of the platform. */
+    private static long hash(long lHash, String sText) {
+        for (int iCnt = 0; iCnt < sText.length(); iCnt++)
+            lHash = (lHash ^ sText.charAt(iCnt)) * 0x100000001B3L;
+        // Separate consecutive strings
+        return mix(lHash ^ sText.length());
+    }
+
+    /** Scrambles the bits of a value (the finalizer of SplitMix64). */
+    static long mix(long lValue) {
+        lValue = (lValue ^ (lValue >>> 30)) * 0xBF58476D1CE4E5B9L;
+        lValue = (lValue ^ (lValue >>> 27)) * 0x94D049BB133111EBL;
+        return lValue ^ (lValue >>> 31);
+    }
+}
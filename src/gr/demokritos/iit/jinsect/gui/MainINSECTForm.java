@@ -32,7 +32,7 @@ import gr.demokritos.iit.jinsect.storage.INSECTFileDB;
 import gr.demokritos.iit.jinsect.storage.INSECTMemoryDB;
 import java.util.Arrays;
 import gr.demokritos.iit.jinsect.structs.Decision;
-import gr.demokritos.iit.jinsect.threading.ThreadQueue;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import gr.demokritos.iit.jinsect.utils;
 import java.awt.event.WindowAdapter;
 import java.util.Hashtable;
@@ -746,7 +746,7 @@ public class MainINSECTForm extends javax.swing.JFrame {
                 final Distribution<String> dFailure = new Distribution<String>();
                 final Distribution<String> dAll = new Distribution<String>();
                 
-                ThreadQueue tqThreads = new ThreadQueue();
+                TaskGroup tqThreads = new TaskGroup();
 
                 dStart = new Date();
                 Iterator iTestIter = dsTesting.getTestSet().iterator();
@@ -758,7 +758,7 @@ public class MainINSECTForm extends javax.swing.JFrame {
                     final CategorizedFileEntry feFile = (CategorizedFileEntry)iTestIter.next();
                     dAll.increaseValue(feFile.getCategory(), 1.0);
 
-                    while (!tqThreads.addThreadFor(new Runnable() {
+                    tqThreads.execute(new Runnable() {
                         @Override
                         public void run() {
                             if (checkFile(feFile.getFileName(),
@@ -771,8 +771,7 @@ public class MainINSECTForm extends javax.swing.JFrame {
                                     dFailure.increaseValue(feFile.getCategory(), 1.0);
                                 }
                         }
-                    }))
-                        Thread.yield();
+                    });
                     
                     Date dCurTime = new Date();
                     long lRemaining = (iAll - iCur) *
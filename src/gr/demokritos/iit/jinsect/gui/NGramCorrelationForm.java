@@ -48,7 +48,7 @@ import gr.demokritos.iit.jinsect.console.StreamOutputConsole;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.NGramDocument;
 import gr.demokritos.iit.jinsect.structs.IntegerPair;
 import gr.demokritos.iit.jinsect.supportUtils.linguistic.WordDefinition;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import gr.demokritos.iit.jinsect.utils;
 import gr.demokritos.iit.summarization.analysis.EntropyChunker;
 import salvo.jesus.graph.Vertex;
@@ -1788,7 +1788,7 @@ public class NGramCorrelationForm extends javax.swing.JFrame implements IMatchin
                 cdDoc[iCnt] = new DistributionDocument(1, MinLevel + iCnt); // For all windows
 
             fStatus.setVisible(true);
-            ThreadList t = new ThreadList(Runtime.getRuntime().availableProcessors() + 1);
+            TaskGroup t = new TaskGroup(Runtime.getRuntime().availableProcessors() + 1);
             
             appendToLog("(Pass 1/3) Loading files..." + sFile);
             TreeSet tsOverallSymbols = new TreeSet();
@@ -1803,7 +1803,7 @@ public class NGramCorrelationForm extends javax.swing.JFrame implements IMatchin
                 
                 for (int iCnt=0; iCnt < cdDoc.length; iCnt++) {
                     final int iCntArg = iCnt;
-                    while (!t.addThreadFor(new Runnable() {
+                    t.execute(new Runnable() {
                         public void run() {
                             if (!RightToLeftText)
                                 cdDocArg[iCntArg].loadDataStringFromFile(sFileArg,false);
@@ -1815,8 +1815,7 @@ public class NGramCorrelationForm extends javax.swing.JFrame implements IMatchin
                                         iCntArg, false);
                             }
                         }
-                    }))
-                        Thread.yield();
+                    });
                 }
                 try {
                     t.waitUntilCompletion();
@@ -1982,7 +1981,7 @@ public class NGramCorrelationForm extends javax.swing.JFrame implements IMatchin
                 
                 for (int iSymbolSize = iMinSymbolSize; iSymbolSize <= iMaxSymbolSize; iSymbolSize++) {
                     final int iSymbolSizeArg = iSymbolSize;
-                    while (!t.addThreadFor(new Runnable() {
+                    t.execute(new Runnable() {
                         public void run() {
                                 NGramDocument ndCur = new NGramDocument(iSymbolSizeArg, iSymbolSizeArg,
                                         1, iSymbolSizeArg, iSymbolSizeArg);
@@ -2017,8 +2016,7 @@ public class NGramCorrelationForm extends javax.swing.JFrame implements IMatchin
                                 }
                                 
                             }
-                    }))
-                        Thread.yield();
+                    });
                 }
             }
             if (!bDistrosLoadedOK)
@@ -0,0 +1,457 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.indexing;
+
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import gr.demokritos.iit.jinsect.structs.Pair;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** An index of named graphs, returning the graphs most similar to a given one.
+ * The index maps every edge (of every level) to the list of the graphs that
+ * contain it. A query only visits the lists of its own edges, ranks the graphs
+ * found by the number of edges they share with the query, and compares only the
+ * best ranked ones to the query, with a {@link NGramCachedGraphComparator}. Edges
+ * contained in most graphs are not used for ranking, unless they are needed to
+ * find enough graphs, so that query time depends on the graphs actually sharing
+ * content with the query, rather than on the size of the index.
+ * <p>
+ * The index keeps its graphs, and looks up queries, in a label dictionary of
+ * its own choice, so that an index can be dropped together with the labels of
+ * its graphs.
+ * <p>
+ * Queries can run concurrently with each other. The addition of a graph waits
+ * for running queries to finish, and blocks new queries until it is done.
+ *
+ * @author ggianna
+ */
+public class InvertedGraphIndex implements IIndex<DocumentNGramGraph> {
+    /** The default number of graphs returned by
+     * {@link #locateSimilarDocuments(DocumentNGramGraph)}. */
+    public static final int DEFAULT_K = 10;
+
+    /** The named graphs to index on {@link #createIndex()}. */
+    protected List<NamedDocumentNGramGraph> NamedObjects;
+    /** The comparator of the best ranked graphs to a query. */
+    protected NGramCachedGraphComparator Comparator = new NGramCachedGraphComparator();
+    /** The number of graphs returned by default. */
+    protected int K = DEFAULT_K;
+    /** The number of graphs compared to a query, per graph returned. */
+    protected int CandidateFactor = 4;
+    /** The fraction of indexed graphs above which an edge is considered too common
+     * for ranking. */
+    protected double MaxPostingFraction = 0.5;
+
+    /** The dictionary of the edge keys of the indexed graphs. */
+    protected final NGramLabelDictionary Dictionary;
+    /** The names of the indexed graphs, by graph number. */
+    protected final List<String> Names = new ArrayList<String>();
+    /** The indexed graphs, by graph number. */
+    protected final List<FrozenNGramGraph> Graphs = new ArrayList<FrozenNGramGraph>();
+    /** The numbers of the graphs containing every edge, by edge key. */
+    protected final PostingTable Postings = new PostingTable();
+
+    private final ReentrantReadWriteLock Lock = new ReentrantReadWriteLock();
+
+    /** Creates an empty index. Graphs are added with
+     * {@link #addDocument(NamedDocumentNGramGraph)}.
+     */
+    public InvertedGraphIndex() {
+        this(NGramLabelDictionary.getDefault());
+    }
+
+    /** Creates an empty index, keeping its graphs in a given dictionary.
+     *@param dDictionary The dictionary of the indexed graphs.
+     */
+    public InvertedGraphIndex(NGramLabelDictionary dDictionary) {
+        NamedObjects = new ArrayList<NamedDocumentNGramGraph>();
+        Dictionary = dDictionary;
+    }
+
+    /** Creates an index of a given set of graphs, which are indexed on
+     * {@link #createIndex()}.
+     *@param cNamedObjects The graphs to index. Their names identify them in the
+     * results of queries.
+     */
+    public InvertedGraphIndex(Collection<NamedDocumentNGramGraph> cNamedObjects) {
+        this(cNamedObjects, NGramLabelDictionary.getDefault());
+    }
+
+    /** Creates an index of a given set of graphs, which are indexed on
+     * {@link #createIndex()}, keeping the graphs in a given dictionary.
+     *@param cNamedObjects The graphs to index. Their names identify them in the
+     * results of queries.
+     *@param dDictionary The dictionary of the indexed graphs.
+     */
+    public InvertedGraphIndex(Collection<NamedDocumentNGramGraph> cNamedObjects,
+            NGramLabelDictionary dDictionary) {
+        NamedObjects = new ArrayList<NamedDocumentNGramGraph>(cNamedObjects);
+        Dictionary = dDictionary;
+    }
+
+    /** Indexes the graphs given on construction. */
+    @Override
+    public void createIndex() {
+        for (NamedDocumentNGramGraph ngCur : NamedObjects)
+            addDocument(ngCur.getName(), new FrozenNGramGraph(ngCur, Dictionary));
+        NamedObjects.clear();
+    }
+
+    /** Adds a graph to the index.
+     *@param ngDoc The graph to add, named after its document.
+     */
+    public void addDocument(NamedDocumentNGramGraph ngDoc) {
+        addDocument(ngDoc.getName(), new FrozenNGramGraph(ngDoc, Dictionary));
+    }
+
+    /** Adds a graph to the index.
+     *@param sName The name of the graph.
+     *@param fgDoc The graph to add. A graph of another dictionary is copied
+     * into the dictionary of the index.
+     */
+    public void addDocument(String sName, FrozenNGramGraph fgDoc) {
+        fgDoc = fgDoc.toDictionary(Dictionary);
+        Lock.writeLock().lock();
+        try {
+            int iDoc = Graphs.size();
+            Names.add(sName);
+            Graphs.add(fgDoc);
+            for (int iLvl = fgDoc.getMinSize(); iLvl <= fgDoc.getMaxSize(); iLvl++) {
+                SortedEdgeList selLevel = fgDoc.getLevelByNGramSize(iLvl);
+                for (int iCnt = 0; iCnt < selLevel.size(); iCnt++) {
+                    Postings.getOrAdd(getPostingKey(iLvl, selLevel.getKeyAt(iCnt)))
+                            .add(iDoc);
+                }
+            }
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the names of the graphs most similar to a given graph.
+     *@param dngCur The graph to look up.
+     *@return The names of at most {@link #getK()} graphs, from the most similar
+     * down.
+     */
+    @Override
+    public Set<String> locateSimilarDocuments(DocumentNGramGraph dngCur) {
+        Set<String> sRes = new LinkedHashSet<String>();
+        for (Pair<String, Double> pCur : getTopK(dngCur, K))
+            sRes.add(pCur.getFirst());
+        return sRes;
+    }
+
+    /** Returns the graphs most similar to a given graph, with their similarity.
+     *@param dgQuery The graph to look up.
+     *@param iK The maximum number of graphs to return.
+     *@return The names of the graphs and their overall similarity to the given
+     * graph, from the most similar down.
+     */
+    public List<Pair<String, Double>> getTopK(DocumentNGramGraph dgQuery, int iK) {
+        return getTopK(new FrozenNGramGraph(dgQuery, Dictionary), iK);
+    }
+
+    /** Returns the graphs most similar to a given graph, with their similarity.
+     *@param fgQuery The graph to look up.
+     *@param iK The maximum number of graphs to return.
+     *@return The names of the graphs and their overall similarity to the given
+     * graph, from the most similar down.
+     */
+    public List<Pair<String, Double>> getTopK(FrozenNGramGraph fgQuery, int iK) {
+        fgQuery = fgQuery.toDictionary(Dictionary);
+        Lock.readLock().lock();
+        try {
+            int[] iaCandidates = getCandidates(fgQuery,
+                    Math.max(iK, iK * CandidateFactor));
+            // Compare the candidates and keep the best
+            final double[] daScores = new double[iaCandidates.length];
+            Integer[] iaOrder = new Integer[iaCandidates.length];
+            for (int iCnt = 0; iCnt < iaCandidates.length; iCnt++) {
+                daScores[iCnt] = Comparator.getSimilarityBetween(fgQuery,
+                        Graphs.get(iaCandidates[iCnt])).getOverallSimilarity();
+                iaOrder[iCnt] = iCnt;
+            }
+            Arrays.sort(iaOrder, new java.util.Comparator<Integer>() {
+                @Override
+                public int compare(Integer iFirst, Integer iSecond) {
+                    return Double.compare(daScores[iSecond], daScores[iFirst]);
+                }
+            });
+            List<Pair<String, Double>> lRes = new ArrayList<Pair<String, Double>>();
+            for (int iCnt = 0; iCnt < Math.min(iK, iaOrder.length); iCnt++)
+                lRes.add(new Pair<String, Double>(
+                        Names.get(iaCandidates[iaOrder[iCnt]]), daScores[iaOrder[iCnt]]));
+            return lRes;
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    /** Ranks the indexed graphs sharing edges with a query by the fraction of
+     * shared edges, and returns the best ranked ones.
+     *@param fgQuery The graph to look up.
+     *@param iMaxCandidates The maximum number of graphs to return.
+     *@return The numbers of the best ranked graphs.
+     */
+    protected int[] getCandidates(FrozenNGramGraph fgQuery, int iMaxCandidates) {
+        SharedCounts scShared = new SharedCounts(iMaxCandidates);
+        int iMaxPosting = Math.max(1, (int)(MaxPostingFraction * Graphs.size()));
+        List<PostingList> lCommon = new ArrayList<PostingList>();
+        for (int iLvl = fgQuery.getMinSize(); iLvl <= fgQuery.getMaxSize(); iLvl++) {
+            SortedEdgeList selLevel = fgQuery.getLevelByNGramSize(iLvl);
+            for (int iCnt = 0; iCnt < selLevel.size(); iCnt++) {
+                PostingList plCur = Postings.get(getPostingKey(iLvl,
+                        selLevel.getKeyAt(iCnt)));
+                if (plCur == null)
+                    continue;
+                if (plCur.Size > iMaxPosting) {
+                    lCommon.add(plCur);
+                    continue;
+                }
+                scShared.add(plCur);
+            }
+        }
+        // Use common edges only if the rest did not find enough graphs
+        if (scShared.Size < iMaxCandidates)
+            for (PostingList plCur : lCommon)
+                scShared.add(plCur);
+
+        // Rank by the shared edges, relative to the larger graph
+        int iFound = scShared.Size;
+        int[] iaFound = new int[iFound];
+        final double[] daRanks = new double[iFound];
+        Integer[] iaOrder = new Integer[iFound];
+        int iQueryLength = fgQuery.length();
+        int iCnt = 0;
+        for (int iSlot = 0; iSlot < scShared.Documents.length; iSlot++) {
+            int iDoc = scShared.Documents[iSlot];
+            if (iDoc == SharedCounts.EMPTY_DOCUMENT)
+                continue;
+            iaFound[iCnt] = iDoc;
+            daRanks[iCnt] = (double)scShared.Counts[iSlot] /
+                    Math.max(1, Math.max(iQueryLength, Graphs.get(iDoc).length()));
+            iaOrder[iCnt] = iCnt;
+            iCnt++;
+        }
+        Arrays.sort(iaOrder, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer iFirst, Integer iSecond) {
+                return Double.compare(daRanks[iSecond], daRanks[iFirst]);
+            }
+        });
+        int[] iaRes = new int[Math.min(iMaxCandidates, iFound)];
+        for (iCnt = 0; iCnt < iaRes.length; iCnt++)
+            iaRes[iCnt] = iaFound[iaOrder[iCnt]];
+        return iaRes;
+    }
+
+    /** Returns the key of the posting list of an edge, combining the edge key
+     * with its level. Different edges may rarely share a posting list, which only
+     * affects the ranking of candidates, not their similarity.
+     */
+    private static long getPostingKey(int iNGramSize, long lEdgeKey) {
+        return lEdgeKey ^ (iNGramSize * 0x9E3779B97F4A7C15L);
+    }
+
+    /** Returns the dictionary of the indexed graphs. */
+    public NGramLabelDictionary getDictionary() {
+        return Dictionary;
+    }
+
+    /** Returns the number of indexed graphs. */
+    public int size() {
+        Lock.readLock().lock();
+        try {
+            return Graphs.size();
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    public int getK() {
+        return K;
+    }
+
+    public void setK(int iK) {
+        K = iK;
+    }
+
+    public int getCandidateFactor() {
+        return CandidateFactor;
+    }
+
+    /** Sets the number of graphs compared to every query, per graph returned.
+     * Higher values make results more accurate, and queries slower.
+     *@param iCandidateFactor The number of graphs compared per graph returned.
+     */
+    public void setCandidateFactor(int iCandidateFactor) {
+        CandidateFactor = iCandidateFactor;
+    }
+
+    public double getMaxPostingFraction() {
+        return MaxPostingFraction;
+    }
+
+    /** Sets the fraction of indexed graphs above which an edge is considered too
+     * common to rank graphs by.
+     *@param dMaxPostingFraction The fraction, where 1.0 uses all edges.
+     */
+    public void setMaxPostingFraction(double dMaxPostingFraction) {
+        MaxPostingFraction = dMaxPostingFraction;
+    }
+
+    public NGramCachedGraphComparator getComparator() {
+        return Comparator;
+    }
+
+    public void setComparator(NGramCachedGraphComparator ngcComparator) {
+        Comparator = ngcComparator;
+    }
+
+    /** The numbers of the graphs containing an edge, in increasing order. */
+    protected static class PostingList {
+        int[] Documents = new int[2];
+        int Size = 0;
+
+        void add(int iDoc) {
+            // Edges sharing a list may belong to the same graph
+            if ((Size > 0) && (Documents[Size - 1] == iDoc))
+                return;
+            if (Size == Documents.length)
+                Documents = Arrays.copyOf(Documents, Size * 2);
+            Documents[Size++] = iDoc;
+        }
+    }
+
+    /** The posting lists of an index by key, in an open addressing table of
+     * primitive keys. Empty slots have no list, so that every key can be stored.
+     */
+    protected static class PostingTable {
+        long[] Keys = new long[CompactNGramGraph.tableSizeFor(0)];
+        PostingList[] Lists = new PostingList[Keys.length];
+        int Size = 0;
+
+        /** Returns the posting list of a key, or null if there is none. */
+        PostingList get(long lKey) {
+            int iMask = Keys.length - 1;
+            for (int iSlot = CompactNGramGraph.mix(lKey) & iMask; Lists[iSlot] != null;
+                    iSlot = (iSlot + 1) & iMask)
+                if (Keys[iSlot] == lKey)
+                    return Lists[iSlot];
+            return null;
+        }
+
+        /** Returns the posting list of a key, adding an empty one if there is none. */
+        PostingList getOrAdd(long lKey) {
+            PostingList plRes = get(lKey);
+            if (plRes != null)
+                return plRes;
+            if ((Size + 1) * 3 > Keys.length * 2)
+                resize(Keys.length << 1);
+            int iSlot = freeSlotFor(Keys, Lists, lKey);
+            Keys[iSlot] = lKey;
+            Lists[iSlot] = plRes = new PostingList();
+            Size++;
+            return plRes;
+        }
+
+        private void resize(int iNewCapacity) {
+            long[] laOldKeys = Keys;
+            PostingList[] plaOldLists = Lists;
+            Keys = new long[iNewCapacity];
+            Lists = new PostingList[iNewCapacity];
+            for (int iOld = 0; iOld < laOldKeys.length; iOld++) {
+                if (plaOldLists[iOld] == null)
+                    continue;
+                int iSlot = freeSlotFor(Keys, Lists, laOldKeys[iOld]);
+                Keys[iSlot] = laOldKeys[iOld];
+                Lists[iSlot] = plaOldLists[iOld];
+            }
+        }
+
+        private static int freeSlotFor(long[] laKeys, PostingList[] plaLists,
+                long lKey) {
+            int iMask = laKeys.length - 1;
+            int iSlot = CompactNGramGraph.mix(lKey) & iMask;
+            while (plaLists[iSlot] != null)
+                iSlot = (iSlot + 1) & iMask;
+            return iSlot;
+        }
+    }
+
+    /** The number of edges every graph found shares with a query, in an open
+     * addressing table sized by the graphs found rather than by the index.
+     */
+    private static class SharedCounts {
+        static final int EMPTY_DOCUMENT = -1;
+
+        int[] Documents;
+        int[] Counts;
+        int Size = 0;
+
+        SharedCounts(int iExpected) {
+            Documents = new int[CompactNGramGraph.tableSizeFor(iExpected)];
+            Arrays.fill(Documents, EMPTY_DOCUMENT);
+            Counts = new int[Documents.length];
+        }
+
+        /** Counts an edge shared with every graph of a posting list. */
+        void add(PostingList plCur) {
+            for (int iCnt = 0; iCnt < plCur.Size; iCnt++)
+                increment(plCur.Documents[iCnt]);
+        }
+
+        private void increment(int iDoc) {
+            int iMask = Documents.length - 1;
+            int iSlot = CompactNGramGraph.mix(iDoc) & iMask;
+            while (Documents[iSlot] != iDoc) {
+                if (Documents[iSlot] == EMPTY_DOCUMENT) {
+                    if ((Size + 1) * 3 > Documents.length * 2) {
+                        resize(Documents.length << 1);
+                        increment(iDoc);
+                        return;
+                    }
+                    Documents[iSlot] = iDoc;
+                    Size++;
+                    break;
+                }
+                iSlot = (iSlot + 1) & iMask;
+            }
+            Counts[iSlot]++;
+        }
+
+        private void resize(int iNewCapacity) {
+            int[] iaOldDocuments = Documents;
+            int[] iaOldCounts = Counts;
+            Documents = new int[iNewCapacity];
+            Arrays.fill(Documents, EMPTY_DOCUMENT);
+            Counts = new int[iNewCapacity];
+            int iMask = iNewCapacity - 1;
+            for (int iOld = 0; iOld < iaOldDocuments.length; iOld++) {
+                if (iaOldDocuments[iOld] == EMPTY_DOCUMENT)
+                    continue;
+                int iSlot = CompactNGramGraph.mix(iaOldDocuments[iOld]) & iMask;
+                while (Documents[iSlot] != EMPTY_DOCUMENT)
+                    iSlot = (iSlot + 1) & iMask;
+                Documents[iSlot] = iaOldDocuments[iOld];
+                Counts[iSlot] = iaOldCounts[iOld];
+            }
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.indexing;
+
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramGraphSketchComparator;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphSketch;
+import gr.demokritos.iit.jinsect.storage.INSECTDB;
+import gr.demokritos.iit.jinsect.structs.Pair;
+import gr.demokritos.iit.jinsect.structs.SketchSimilarity;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** A locality sensitive hashing index of {@link NGramGraphSketch}es, for the
+ * retrieval of near-duplicate graphs. The signature of a level of every sketch
+ * is split into bands of a few hashes, and graphs agreeing on all the hashes of
+ * any band become candidates of each other. Graphs of Jaccard similarity s
+ * become candidates with probability 1 - (1 - s^rows)^bands, which rises steeply
+ * around {@link #getThreshold(int, int)}. Candidates are then checked by their
+ * sketches, so that no graph is ever fully compared.
+ * <p>
+ * Given an {@link INSECTDB}, the index stores every graph it sketches, with its
+ * sketch under the {@link NGramGraphSketch#SKETCH_CATEGORY} category, so that
+ * the graphs can be indexed again from their stored sketches, and candidates can
+ * be compared fully when needed.
+ * <p>
+ * Graphs whose banding level is empty, e.g. of texts shorter than the n-grams of
+ * the level, are kept but not banded, since their signatures are all equal.
+ * <p>
+ * Queries can run concurrently with each other, while the addition of a graph
+ * excludes them, as in {@link InvertedGraphIndex}.
+ *
+ * @author ggianna
+ */
+public class LSHGraphIndex implements IIndex<DocumentNGramGraph> {
+    /** The storage category of the graphs of an index. */
+    public static final String GRAPH_CATEGORY = "SketchedGraph";
+
+    /** The named graphs to index on {@link #createIndex()}. */
+    protected List<NamedDocumentNGramGraph> NamedObjects;
+    /** The number of bands of a signature. */
+    protected final int Bands;
+    /** The number of hashes per band. */
+    protected final int Rows;
+    /** The n-gram size of the level used for banding, or zero for the largest
+     * level of every sketch. */
+    protected int BandNGramSize = 0;
+    /** The similarity above which graphs are considered near-duplicates by
+     * {@link #locateSimilarDocuments(DocumentNGramGraph)}. */
+    protected double Threshold = 0.8;
+    /** The estimator of similarity between candidates. */
+    protected NGramGraphSketchComparator Comparator = new NGramGraphSketchComparator();
+    /** The number of graphs of a bucket that {@link #findNearDuplicates(double)}
+     * pairs with each other. */
+    protected int MaxBucketSize = 1000;
+    /** The storage of the graphs and their sketches, or null if they are not
+     * stored. */
+    protected INSECTDB<? extends Serializable> Storage;
+
+    /** The names of the indexed graphs, by graph number. */
+    protected final List<String> Names = new ArrayList<String>();
+    /** The indexed sketches, by graph number. */
+    protected final List<NGramGraphSketch> Sketches = new ArrayList<NGramGraphSketch>();
+    /** The numbers of the graphs in every bucket, per band. */
+    protected final InvertedGraphIndex.PostingTable[] Buckets;
+
+    private final ReentrantReadWriteLock Lock = new ReentrantReadWriteLock();
+
+    /** Creates an empty index, with 16 bands of 8 hashes, for sketches of at least
+     * 128 hashes. Graphs of similarity above 0.8 are found with
+     * a probability of about 95%.
+     */
+    public LSHGraphIndex() {
+        this(new ArrayList<NamedDocumentNGramGraph>(), 16, 8);
+    }
+
+    /** Creates an index of a given set of graphs, which are indexed on
+     * {@link #createIndex()}.
+     *@param cNamedObjects The graphs to index.
+     *@param iBands The number of bands of a signature.
+     *@param iRows The number of hashes per band. Sketches must have at least
+     * iBands * iRows hashes.
+     */
+    public LSHGraphIndex(Collection<NamedDocumentNGramGraph> cNamedObjects, int iBands,
+            int iRows) {
+        this(cNamedObjects, iBands, iRows, null);
+    }
+
+    /** Creates an index of a given set of graphs, which are indexed on
+     * {@link #createIndex()}, and stored with their sketches.
+     *@param cNamedObjects The graphs to index.
+     *@param iBands The number of bands of a signature.
+     *@param iRows The number of hashes per band. Sketches must have at least
+     * iBands * iRows hashes.
+     *@param dbStorage The storage of the graphs and their sketches, or null to
+     * keep only the sketches, in memory.
+     */
+    public LSHGraphIndex(Collection<NamedDocumentNGramGraph> cNamedObjects, int iBands,
+            int iRows, INSECTDB<? extends Serializable> dbStorage) {
+        if ((iBands < 1) || (iRows < 1))
+            throw new IllegalArgumentException("Invalid band layout");
+        NamedObjects = new ArrayList<NamedDocumentNGramGraph>(cNamedObjects);
+        Bands = iBands;
+        Rows = iRows;
+        Storage = dbStorage;
+        Buckets = new InvertedGraphIndex.PostingTable[iBands];
+        for (int iCnt = 0; iCnt < iBands; iCnt++)
+            Buckets[iCnt] = new InvertedGraphIndex.PostingTable();
+    }
+
+    /** Returns the similarity at which graphs become candidates with probability
+     * about one half, for a given band layout.
+     *@param iBands The number of bands.
+     *@param iRows The number of hashes per band.
+     *@return The threshold similarity.
+     */
+    public static double getThreshold(int iBands, int iRows) {
+        return Math.pow(1.0 / iBands, 1.0 / iRows);
+    }
+
+    /** Sketches and indexes the graphs given on construction. */
+    @Override
+    public void createIndex() {
+        for (NamedDocumentNGramGraph ngCur : NamedObjects)
+            addDocument(ngCur);
+        NamedObjects.clear();
+    }
+
+    /** Sketches and adds a graph to the index. If the index has a storage, the
+     * graph and its sketch are stored under its name.
+     *@param ngDoc The graph to add, named after its document.
+     */
+    public void addDocument(NamedDocumentNGramGraph ngDoc) {
+        NGramGraphSketch ngsDoc = new NGramGraphSketch(ngDoc);
+        if (Storage != null) {
+            Storage.saveObject(ngDoc, ngDoc.getName(), GRAPH_CATEGORY);
+            Storage.saveObject(ngsDoc, ngDoc.getName(), NGramGraphSketch.SKETCH_CATEGORY);
+        }
+        addDocument(ngDoc.getName(), ngsDoc);
+    }
+
+    /** Adds a stored graph to the index, by its stored sketch. Graphs stored
+     * without a sketch are sketched, and their sketch is stored.
+     *@param sName The name of the stored graph.
+     *@throws IllegalStateException If the index has no storage.
+     *@throws IllegalArgumentException If no such graph is stored.
+     */
+    public void addStoredDocument(String sName) {
+        if (Storage == null)
+            throw new IllegalStateException("The index has no storage");
+        NGramGraphSketch ngsDoc = null;
+        if (Storage.existsObject(sName, NGramGraphSketch.SKETCH_CATEGORY))
+            ngsDoc = (NGramGraphSketch)Storage.loadObject(sName,
+                    NGramGraphSketch.SKETCH_CATEGORY);
+        if (ngsDoc == null) {
+            DocumentNGramGraph dgDoc = loadGraph(sName);
+            if (dgDoc == null)
+                throw new IllegalArgumentException("No graph is stored as " + sName);
+            ngsDoc = new NGramGraphSketch(dgDoc);
+            Storage.saveObject(ngsDoc, sName, NGramGraphSketch.SKETCH_CATEGORY);
+        }
+        addDocument(sName, ngsDoc);
+    }
+
+    /** Loads a stored graph, e.g. to compare a candidate fully.
+     *@param sName The name of the graph.
+     *@return The graph, or null if the index has no storage, or no such graph is
+     * stored.
+     */
+    public DocumentNGramGraph loadGraph(String sName) {
+        if ((Storage == null) || !Storage.existsObject(sName, GRAPH_CATEGORY))
+            return null;
+        return (DocumentNGramGraph)Storage.loadObject(sName, GRAPH_CATEGORY);
+    }
+
+    /** Adds a sketch to the index.
+     *@param sName The name of the sketched graph.
+     *@param ngsDoc The sketch to add.
+     *@throws IllegalArgumentException If the sketch has too few hashes, or lacks
+     * the banding level.
+     */
+    public void addDocument(String sName, NGramGraphSketch ngsDoc) {
+        long[] laSignature = getBandSignature(ngsDoc);
+        if (laSignature == null)
+            throw new IllegalArgumentException("The sketch lacks the banding level");
+        if (laSignature.length < Bands * Rows)
+            throw new IllegalArgumentException("The sketch has fewer than " +
+                    (Bands * Rows) + " hashes");
+        Lock.writeLock().lock();
+        try {
+            int iDoc = Sketches.size();
+            Names.add(sName);
+            Sketches.add(ngsDoc);
+            if (!isBanded(ngsDoc))
+                return;
+            for (int iBand = 0; iBand < Bands; iBand++)
+                Buckets[iBand].getOrAdd(getBucketKey(laSignature, iBand)).add(iDoc);
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the names of the near-duplicates of a graph, i.e. the graphs whose
+     * estimated similarity reaches {@link #getThreshold()}.
+     *@param dngCur The graph to look up.
+     *@return The names of the near-duplicates, from the most similar down.
+     */
+    @Override
+    public Set<String> locateSimilarDocuments(DocumentNGramGraph dngCur) {
+        Set<String> sRes = new LinkedHashSet<String>();
+        for (Pair<String, SketchSimilarity> pCur : getSimilar(
+                new NGramGraphSketch(dngCur), Threshold))
+            if (pCur.getSecond().getOverallSimilarity() >= Threshold)
+                sRes.add(pCur.getFirst());
+        return sRes;
+    }
+
+    /** Returns the candidates of a sketch that may reach a given similarity, i.e.
+     * whose estimated similarity is within the error bound of the threshold or
+     * above it. Candidates below the threshold by more than the error bound are
+     * dismissed.
+     *@param ngsQuery The sketch to look up.
+     *@param dThreshold The similarity to reach.
+     *@return The names of the candidates and their estimated similarity, from
+     * the most similar down.
+     */
+    public List<Pair<String, SketchSimilarity>> getSimilar(NGramGraphSketch ngsQuery,
+            double dThreshold) {
+        List<Pair<String, SketchSimilarity>> lRes =
+                new ArrayList<Pair<String, SketchSimilarity>>();
+        long[] laSignature = getBandSignature(ngsQuery);
+        if ((laSignature == null) || (laSignature.length < Bands * Rows) ||
+                !isBanded(ngsQuery))
+            return lRes;
+        Lock.readLock().lock();
+        try {
+            Set<Integer> sCandidates = new HashSet<Integer>();
+            for (int iBand = 0; iBand < Bands; iBand++) {
+                InvertedGraphIndex.PostingList plCur = Buckets[iBand].get(
+                        getBucketKey(laSignature, iBand));
+                if (plCur == null)
+                    continue;
+                for (int iCnt = 0; iCnt < plCur.Size; iCnt++)
+                    sCandidates.add(plCur.Documents[iCnt]);
+            }
+            for (int iDoc : sCandidates) {
+                SketchSimilarity sSimil = Comparator.getSimilarityBetween(ngsQuery,
+                        Sketches.get(iDoc));
+                if (sSimil.getUpperBound() >= dThreshold)
+                    lRes.add(new Pair<String, SketchSimilarity>(Names.get(iDoc), sSimil));
+            }
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+        sortBySimilarity(lRes);
+        return lRes;
+    }
+
+    /** Returns all pairs of indexed graphs whose estimated similarity reaches a
+     * given threshold. Only graphs sharing a bucket are compared, and only the
+     * first {@link #getMaxBucketSize()} graphs of every bucket are paired, so that
+     * degenerate buckets do not make the search quadratic.
+     *@param dThreshold The similarity to reach.
+     *@return The pairs of names of near-duplicate graphs, with their estimated
+     * similarity, from the most similar down.
+     */
+    public List<Pair<Pair<String, String>, SketchSimilarity>> findNearDuplicates(
+            double dThreshold) {
+        List<Pair<Pair<String, String>, SketchSimilarity>> lRes =
+                new ArrayList<Pair<Pair<String, String>, SketchSimilarity>>();
+        Lock.readLock().lock();
+        try {
+            // The last graph every graph was compared with, to compare pairs
+            // sharing several buckets once
+            int[] iaComparedWith = new int[Sketches.size()];
+            Arrays.fill(iaComparedWith, -1);
+            for (int iFirstDoc = 0; iFirstDoc < Sketches.size(); iFirstDoc++) {
+                NGramGraphSketch ngsFirst = Sketches.get(iFirstDoc);
+                if (!isBanded(ngsFirst))
+                    continue;
+                long[] laSignature = getBandSignature(ngsFirst);
+                for (int iBand = 0; iBand < Bands; iBand++) {
+                    InvertedGraphIndex.PostingList plCur = Buckets[iBand].get(
+                            getBucketKey(laSignature, iBand));
+                    // Pair the graph with the later graphs of the bucket, if it is
+                    // among the paired ones
+                    int iEnd = Math.min(plCur.Size, MaxBucketSize);
+                    int iPos = Arrays.binarySearch(plCur.Documents, 0, iEnd, iFirstDoc);
+                    if (iPos < 0)
+                        continue;
+                    for (int iCnt = iPos + 1; iCnt < iEnd; iCnt++) {
+                        int iSecondDoc = plCur.Documents[iCnt];
+                        if (iaComparedWith[iSecondDoc] == iFirstDoc)
+                            continue;
+                        iaComparedWith[iSecondDoc] = iFirstDoc;
+                        SketchSimilarity sSimil = Comparator.getSimilarityBetween(
+                                ngsFirst, Sketches.get(iSecondDoc));
+                        if (sSimil.getOverallSimilarity() >= dThreshold)
+                            lRes.add(new Pair<Pair<String, String>, SketchSimilarity>(
+                                    new Pair<String, String>(Names.get(iFirstDoc),
+                                    Names.get(iSecondDoc)), sSimil));
+                    }
+                }
+            }
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+        sortBySimilarity(lRes);
+        return lRes;
+    }
+
+    private static <T> void sortBySimilarity(List<Pair<T, SketchSimilarity>> lPairs) {
+        Collections.sort(lPairs, new Comparator<Pair<T, SketchSimilarity>>() {
+            @Override
+            public int compare(Pair<T, SketchSimilarity> pFirst,
+                    Pair<T, SketchSimilarity> pSecond) {
+                return Double.compare(pSecond.getSecond().getOverallSimilarity(),
+                        pFirst.getSecond().getOverallSimilarity());
+            }
+        });
+    }
+
+    private long[] getBandSignature(NGramGraphSketch ngsDoc) {
+        return ngsDoc.getSignature(getBandNGramSize(ngsDoc));
+    }
+
+    /** Returns true if the banding level of a sketch has edges. */
+    private boolean isBanded(NGramGraphSketch ngsDoc) {
+        return ngsDoc.getLevelSize(getBandNGramSize(ngsDoc)) > 0;
+    }
+
+    private int getBandNGramSize(NGramGraphSketch ngsDoc) {
+        return (BandNGramSize > 0) ? BandNGramSize : ngsDoc.getMaxSize();
+    }
+
+    private long getBucketKey(long[] laSignature, int iBand) {
+        long lRes = iBand;
+        for (int iCnt = iBand * Rows; iCnt < (iBand + 1) * Rows; iCnt++)
+            lRes = lRes * 0x100000001B3L + laSignature[iCnt];
+        return lRes;
+    }
+
+    /** Returns the number of indexed graphs. */
+    public int size() {
+        Lock.readLock().lock();
+        try {
+            return Sketches.size();
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    public int getBands() {
+        return Bands;
+    }
+
+    public int getRows() {
+        return Rows;
+    }
+
+    public int getBandNGramSize() {
+        return BandNGramSize;
+    }
+
+    /** Sets the level used for banding. It must be set before adding graphs.
+     *@param iBandNGramSize The n-gram size of the level, or zero for the largest
+     * level of every sketch.
+     */
+    public void setBandNGramSize(int iBandNGramSize) {
+        BandNGramSize = iBandNGramSize;
+    }
+
+    public double getThreshold() {
+        return Threshold;
+    }
+
+    public void setThreshold(double dThreshold) {
+        Threshold = dThreshold;
+    }
+
+    public int getMaxBucketSize() {
+        return MaxBucketSize;
+    }
+
+    /** Sets the number of graphs of every bucket that are paired by
+     * {@link #findNearDuplicates(double)}.
+     *@param iMaxBucketSize The number of graphs. Pairs of graphs that only share
+     * buckets beyond this size are missed.
+     */
+    public void setMaxBucketSize(int iMaxBucketSize) {
+        MaxBucketSize = iMaxBucketSize;
+    }
+
+    public INSECTDB<? extends Serializable> getStorage() {
+        return Storage;
+    }
+
+    public NGramGraphSketchComparator getComparator() {
+        return Comparator;
+    }
+
+    public void setComparator(NGramGraphSketchComparator ngscComparator) {
+        Comparator = ngscComparator;
+    }
+}
@@ -53,6 +53,11 @@ public class NamedDocumentNGramGraph extends DocumentNGramSymWinGraph implements
         return true;
     }
 
+    @Override
+    protected boolean supportsCompactConstruction() {
+        return Normalizer == null;
+    }
+
     @Override
     public DocumentNGramGraph allNotIn(DocumentNGramGraph dgOtherGraph) {
         // TODO: Order by edge count for optimization
@@ -97,7 +102,7 @@ public class NamedDocumentNGramGraph extends DocumentNGramSymWinGraph implements
         NamedDocumentNGramGraph gRes = new NamedDocumentNGramGraph();
         gRes.DataString = DataString;
         gRes.DegradedEdges.putAll(this.DegradedEdges);
-        gRes.NGramGraphArray = this.NGramGraphArray.clone();
+        copyLevelsTo(gRes);
         gRes.Normalizer = this.Normalizer;
         gRes.TextPreprocessor = this.TextPreprocessor;
         gRes.WordEvaluator = this.WordEvaluator;
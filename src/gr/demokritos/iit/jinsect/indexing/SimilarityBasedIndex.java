@@ -129,7 +129,7 @@ public class SimilarityBasedIndex implements Serializable,
                 public ProgressEvent event = peCreation;
                 
             @Override
-                public synchronized ISimilarity getSimilarityBetween(Object oFirst, 
+                public ISimilarity getSimilarityBetween(Object oFirst, 
                         Object oSecond) throws InvalidClassException {
                     NamedDocumentNGramGraph pCurDocArg = 
                             (NamedDocumentNGramGraph)oFirst;
@@ -137,12 +137,16 @@ public class SimilarityBasedIndex implements Serializable,
                             (NamedDocumentNGramGraph)oSecond;
                     GraphSimilarity sSimil = null;
 
-                    peCreation.updateSubtask("Comparing documents");
+                    // The comparator is stateless, so comparisons can run in
+                    // parallel; only the progress needs to be guarded.
                     sSimil = gcComparator.getSimilarityBetween(pCurDocArg,
                             pCompareToDocArg);
-                    if (Notifier != null)
-                        Notifier.Notify(this, 
-                                peCreation.updateProgress(peCreation.Progress + 1.0));
+                    synchronized (peCreation) {
+                        peCreation.updateSubtask("Comparing documents");
+                        if (Notifier != null)
+                            Notifier.Notify(this, 
+                                    peCreation.updateProgress(peCreation.Progress + 1.0));
+                    }
                     /*sSimil.setCalculator(new CalculatorListener<GraphSimilarity, GraphSimilarity>() {
                         public double Calculate(GraphSimilarity oCaller, GraphSimilarity oCalculationParams) {
                             // Return size normalized value similarity
@@ -22,7 +22,7 @@ import gr.demokritos.iit.jinsect.structs.DocumentSet;
 import gr.demokritos.iit.jinsect.console.ConsoleNotificationListener;
 import gr.demokritos.iit.jinsect.documentModel.documentTypes.SimpleTextHistoDocument;
 import gr.demokritos.iit.jinsect.events.NotificationListener;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -114,7 +114,7 @@ public class HierLDACaller implements NotificationListener {
         TreeMap<String, Integer> hOverall = new TreeMap<String, Integer>();
         //TreeMap<Integer, String> tmReverseIndex = new TreeMap<Integer, String>();
         Vector<Distribution> vDocs = new Vector(lDocs.size());
-        ThreadList tl = new ThreadList();
+        TaskGroup tl = new TaskGroup();
         
         Iterator iIter = lDocs.iterator();
         while (iIter.hasNext()) {
@@ -125,7 +125,7 @@ public class HierLDACaller implements NotificationListener {
             final List<Distribution> vDocsArg = Collections.synchronizedList(vDocs);
             
             // Execute in thread
-            while (!tl.addThreadFor(new Runnable() {
+            tl.execute(new Runnable() {
                 @Override
                 public void run() {
                     SimpleTextHistoDocument sthdDoc = new SimpleTextHistoDocument(1,1,1);
@@ -153,8 +153,7 @@ public class HierLDACaller implements NotificationListener {
                         vDocsArg.add(dDoc);
                     }
                 }
-            }))
-                Thread.yield();
+            });
             
             // DEBUG LINES
             System.err.print(".");
@@ -185,7 +184,7 @@ public class HierLDACaller implements NotificationListener {
         
         DocumentSet dsSet = new DocumentSet(sBaseDir, 1.0);
         dsSet.createSets();
-        ThreadList tl = new ThreadList();
+        TaskGroup tl = new TaskGroup();
         
         int[][] iaRes = new int[dsSet.getTrainingSet().size()][];
         
@@ -202,7 +201,7 @@ public class HierLDACaller implements NotificationListener {
             final List<Distribution> vDocsArg = Collections.synchronizedList(vDocs);
             
             // Execute in thread
-            while (!tl.addThreadFor(new Runnable() {
+            tl.execute(new Runnable() {
                 @Override
                 public void run() {
                     SimpleTextHistoDocument sthdDoc = new SimpleTextHistoDocument(1,1,1);
@@ -233,8 +232,7 @@ public class HierLDACaller implements NotificationListener {
                     System.err.print(".");
                     //////////////
                 }
-            }))
-                Thread.yield();
+            });
             
         }
         
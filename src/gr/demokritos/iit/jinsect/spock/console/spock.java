@@ -43,7 +43,7 @@ import gr.demokritos.iit.jinsect.interoperability.SPOCKEval;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
 import gr.demokritos.iit.jinsect.structs.ISimilarity;
-import gr.demokritos.iit.jinsect.threading.ThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import salvo.jesus.graph.Edge;
 import salvo.jesus.graph.Vertex;
 import salvo.jesus.graph.VertexImpl;
@@ -311,7 +311,7 @@ public class spock {
         else
             iDocIter = dsSrc.getFilesFromCategory(sLimitTo).iterator();
         
-        ThreadList t = new ThreadList(Runtime.getRuntime().availableProcessors());
+        TaskGroup t = new TaskGroup(Runtime.getRuntime().availableProcessors());
         HTMLTagRemoverInteroperator htrRemover = null;
         try {
             htrRemover = new HTMLTagRemoverInteroperator(null);
@@ -403,7 +403,7 @@ public class spock {
                         iMinNGramArg, iMaxNGramArg);
                 nd1.setDataString(htrRemoverArg.removeTagsFromFile(sCurDocArg));
                 
-                while (!t.addThreadFor(new Runnable() {
+                t.execute(new Runnable() {
                     public void run() {
                         ///////////////////////
                         StandardDocumentComparator sdcComparator = 
@@ -443,8 +443,7 @@ public class spock {
 
                         ///////////////////////
                     }
-                }))
-                    Thread.yield();
+                });
                 iCurCmpCnt++;
                 Date dCurTime = new Date();
                 long lRemaining = (iTotalCmpCnt - iCurCmpCnt + 1) * 
@@ -515,7 +514,7 @@ public class spock {
             iDocIter = dsSrc.getTrainingSet().iterator();
         else
             iDocIter = dsSrc.getFilesFromCategory(sLimitTo).iterator();
-        ThreadList t = new ThreadList(Runtime.getRuntime().availableProcessors());
+        TaskGroup t = new TaskGroup(Runtime.getRuntime().availableProcessors());
         
         while (iDocIter.hasNext()) {
             // Get n-gram document
@@ -524,7 +523,7 @@ public class spock {
             System.err.print(".");
            
             // Multi-threading
-            while (!t.addThreadFor(new Runnable() {
+            t.execute(new Runnable() {
                 public void run() {
                     synchronized (dCurDoc) {
                         dCurDoc.loadDataStringFromFile(sFile);
@@ -534,8 +533,7 @@ public class spock {
                         hmDocumentIndex.put(sFile, dCurDoc);
                     }
                 }
-            }))
-                Thread.yield();
+            });
             
         }
         try {
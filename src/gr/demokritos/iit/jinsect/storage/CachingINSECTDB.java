@@ -0,0 +1,464 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A decorator of an {@link INSECTDB} that keeps recently loaded objects in memory,
+ * up to a given budget of (estimated) bytes, evicting the least recently used
+ * objects when the budget is exceeded. Saves and deletions are written through
+ * to the underlying database. Concurrent loads of the same object share a single
+ * load from the underlying database.
+ *<p>
+ * Saved objects are cached only if the underlying database reports the save
+ * as successful through {@link #saveObjectChecked(Serializable, String, String)}.
+ * As with {@link INSECTMemoryDB}, loaded objects are shared: changes to a loaded
+ * object must be followed by a save of the object, or the cached object must be
+ * invalidated.
+ *
+ * @author ggianna
+ */
+public class CachingINSECTDB<TObjectType extends Serializable> extends INSECTDB {
+    /** The default memory budget of the cache, in bytes. */
+    public static final long DEFAULT_MAX_WEIGHT = 256L << 20;
+    /** The default estimate of the memory used by an edge of a graph, in bytes. */
+    public static final int DEFAULT_BYTES_PER_EDGE = 128;
+    /** The estimate of the memory used by objects other than graphs, in bytes. */
+    public static final long DEFAULT_OBJECT_WEIGHT = 1024;
+
+    protected final INSECTDB Base;
+    protected long MaxWeight;
+    protected int BytesPerEdge = DEFAULT_BYTES_PER_EDGE;
+
+    /** The cached objects, in access order. Used as the lock of the cache. */
+    protected final LinkedHashMap<String, CacheEntry> Entries =
+            new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+    /** The total weight of the cached objects. Guarded by Entries. */
+    protected long Weight = 0;
+    /** The loads in progress, by object key. */
+    protected final ConcurrentHashMap<String, FutureTask<Object>> Loading =
+            new ConcurrentHashMap<String, FutureTask<Object>>();
+    /** Increased on every change of the underlying database. Guarded by Entries. */
+    protected long Generation = 0;
+    /** The generation of the last change of each object changed while loads or
+     * saves were in progress, so that an object loaded or saved before a change
+     * of the same object is not cached. Guarded by Entries. */
+    protected final HashMap<String, Long> Changes = new HashMap<String, Long>();
+    /** The generation of the last invalidation of all objects. Guarded by Entries. */
+    protected long ClearGeneration = 0;
+    /** The number of loads and saves in progress. Guarded by Entries. */
+    protected int Pending = 0;
+
+    protected final AtomicLong Hits = new AtomicLong(), Misses = new AtomicLong(),
+            Evictions = new AtomicLong(), LoadTime = new AtomicLong();
+
+    /** Creates a cache over a given database, with the default memory budget.
+     *@param dbBase The database to cache.
+     */
+    public CachingINSECTDB(INSECTDB dbBase) {
+        this(dbBase, DEFAULT_MAX_WEIGHT);
+    }
+
+    /** Creates a cache over a given database.
+     *@param dbBase The database to cache.
+     *@param lMaxWeight The memory budget of the cache, in (estimated) bytes.
+     */
+    public CachingINSECTDB(INSECTDB dbBase, long lMaxWeight) {
+        Base = dbBase;
+        MaxWeight = lMaxWeight;
+    }
+
+    public INSECTDB getBase() {
+        return Base;
+    }
+
+    /** Sets the memory budget of the cache, evicting objects if required.
+     *@param lMaxWeight The budget, in (estimated) bytes.
+     */
+    public void setMaxWeight(long lMaxWeight) {
+        synchronized (Entries) {
+            MaxWeight = lMaxWeight;
+            evict();
+        }
+    }
+
+    public long getMaxWeight() {
+        return MaxWeight;
+    }
+
+    /** Sets the estimate of the memory used by a graph edge, which should reflect
+     * the representation of the graphs of the underlying database (e.g. lower for
+     * compact graphs). Only applies to objects cached afterwards.
+     *@param iBytesPerEdge The estimated bytes per edge.
+     */
+    public void setBytesPerEdge(int iBytesPerEdge) {
+        BytesPerEdge = iBytesPerEdge;
+    }
+
+    public int getBytesPerEdge() {
+        return BytesPerEdge;
+    }
+
+    protected String getKey(String sObjectName, String sObjectCategory) {
+        return sObjectCategory + '/' + sObjectName;
+    }
+
+    /** Estimates the memory used by an object. Graphs are weighed by their edges
+     * and data string, other objects have a fixed weight.
+     *@param oObj The object.
+     *@return The estimated size in bytes.
+     */
+    protected long estimateWeight(Object oObj) {
+        if (!(oObj instanceof DocumentNGramGraph))
+            return DEFAULT_OBJECT_WEIGHT;
+        DocumentNGramGraph dgGraph = (DocumentNGramGraph)oObj;
+        long lRes = DEFAULT_OBJECT_WEIGHT;
+        for (int iLevel = 0; iLevel <= dgGraph.getMaxSize() - dgGraph.getMinSize();
+                iLevel++)
+            lRes += (long)dgGraph.getEdgesCount(iLevel) * BytesPerEdge;
+        if (dgGraph.getDataString() != null)
+            lRes += 2L * dgGraph.getDataString().length();
+        return lRes;
+    }
+
+    /** Starts a load or save.
+     *@return The generation at the start of the operation.
+     */
+    protected long begin() {
+        synchronized (Entries) {
+            Pending++;
+            return Generation;
+        }
+    }
+
+    /** Ends a load or save. Changes are only tracked while operations are in
+     * progress. */
+    protected void end() {
+        synchronized (Entries) {
+            if (--Pending == 0)
+                Changes.clear();
+        }
+    }
+
+    /** Records a change of an object. Later loads do not share a load in
+     * progress, which may read the previous version. Must be called while holding
+     * the lock of Entries. */
+    protected void markChanged(String sKey) {
+        Loading.remove(sKey);
+        Generation++;
+        if (Pending > 0)
+            Changes.put(sKey, Generation);
+    }
+
+    /** Checks whether an object changed after a given generation. Must be called
+     * while holding the lock of Entries. */
+    protected boolean changedSince(String sKey, long lGeneration) {
+        if (ClearGeneration > lGeneration)
+            return true;
+        Long lChanged = Changes.get(sKey);
+        return (lChanged != null) && (lChanged > lGeneration);
+    }
+
+    /** Adds an object to the cache, unless the object has changed since the
+     * given generation. Objects bigger than the budget are not cached. */
+    protected void cache(String sKey, Object oObj, long lGeneration) {
+        long lWeight = estimateWeight(oObj);
+        synchronized (Entries) {
+            if (!changedSince(sKey, lGeneration))
+                put(sKey, oObj, lWeight);
+        }
+    }
+
+    /** Puts an object in the cache, unless it is bigger than the budget. Must be
+     * called while holding the lock of Entries. */
+    protected void put(String sKey, Object oObj, long lWeight) {
+        if (lWeight > MaxWeight)
+            return;
+        CacheEntry ceOld = Entries.put(sKey, new CacheEntry(oObj, lWeight));
+        if (ceOld != null)
+            Weight -= ceOld.Weight;
+        Weight += lWeight;
+        evict();
+    }
+
+    /** Evicts the least recently used objects, until the cache fits its budget.
+     * Must be called while holding the lock of Entries. */
+    protected void evict() {
+        Iterator<CacheEntry> iIter = Entries.values().iterator();
+        while ((Weight > MaxWeight) && iIter.hasNext()) {
+            Weight -= iIter.next().Weight;
+            iIter.remove();
+            Evictions.incrementAndGet();
+        }
+    }
+
+    /** Removes an object from the cache and outdates any load in progress. */
+    protected void invalidate(String sKey) {
+        synchronized (Entries) {
+            markChanged(sKey);
+            CacheEntry ceOld = Entries.remove(sKey);
+            if (ceOld != null)
+                Weight -= ceOld.Weight;
+        }
+    }
+
+    /** Removes an object from the cache, e.g. after it was changed without being
+     * saved.
+     *@param sObjectName The name of the object.
+     *@param sObjectCategory The category of the object.
+     */
+    public void invalidate(String sObjectName, String sObjectCategory) {
+        invalidate(getKey(sObjectName, sObjectCategory));
+    }
+
+    /** Removes all objects from the cache. */
+    public void invalidateAll() {
+        synchronized (Entries) {
+            ClearGeneration = ++Generation;
+            Loading.clear();
+            Entries.clear();
+            Weight = 0;
+        }
+    }
+
+    @Override
+    public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {
+        try {
+            saveObjectChecked(oObj, sObjectName, sObjectCategory);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        String sKey = getKey(sObjectName, sObjectCategory);
+        long lGeneration;
+        synchronized (Entries) {
+            invalidate(sKey);
+            lGeneration = begin();
+        }
+        try {
+            Base.saveObjectChecked(oObj, sObjectName, sObjectCategory);
+            long lWeight = estimateWeight(oObj);
+            synchronized (Entries) {
+                // Cache the saved object, unless it changed again meanwhile, and
+                // outdate the loads that may have read the previous version
+                if (!changedSince(sKey, lGeneration)) {
+                    markChanged(sKey);
+                    put(sKey, oObj, lWeight);
+                }
+            }
+        }
+        finally {
+            end();
+        }
+    }
+
+    @Override
+    public TObjectType loadObject(String sObjectName, String sObjectCategory) {
+        try {
+            return loadObjectChecked(sObjectName, sObjectCategory);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    protected TObjectType loadObjectChecked(final String sObjectName,
+            final String sObjectCategory) throws IOException {
+        String sKey = getKey(sObjectName, sObjectCategory);
+        FutureTask<Object> ftLoad, ftExisting;
+        synchronized (Entries) {
+            CacheEntry ceCur = Entries.get(sKey);
+            if (ceCur != null) {
+                Hits.incrementAndGet();
+                return (TObjectType)ceCur.Value;
+            }
+            // Share the load with concurrent loads of the same object. Changes
+            // remove the shared load under the same lock.
+            ftLoad = createLoad(sObjectName, sObjectCategory, begin());
+            ftExisting = Loading.putIfAbsent(sKey, ftLoad);
+        }
+        Misses.incrementAndGet();
+
+        try {
+            if (ftExisting == null) {
+                ftExisting = ftLoad;
+                try {
+                    ftLoad.run();
+                }
+                finally {
+                    Loading.remove(sKey, ftLoad);
+                }
+            }
+            return (TObjectType)ftExisting.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + sKey);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException)
+                throw (IOException)ee.getCause();
+            throw new IOException("Cannot load " + sKey, ee.getCause());
+        }
+        finally {
+            end();
+        }
+    }
+
+    /** Creates the load of an object from the underlying database, which caches
+     * the object unless it changed since a given generation. */
+    protected FutureTask<Object> createLoad(final String sObjectName,
+            final String sObjectCategory, final long lGeneration) {
+        return new FutureTask<Object>(new Callable<Object>() {
+            @Override
+            public Object call() throws IOException {
+                long lStart = System.nanoTime();
+                Object oRes = Base.loadObjectChecked(sObjectName, sObjectCategory);
+                LoadTime.addAndGet(System.nanoTime() - lStart);
+                if (oRes != null)
+                    cache(getKey(sObjectName, sObjectCategory), oRes, lGeneration);
+                return oRes;
+            }
+        });
+    }
+
+    @Override
+    public void deleteObject(String sObjectName, String sObjectCategory) {
+        String sKey = getKey(sObjectName, sObjectCategory);
+        invalidate(sKey);
+        Base.deleteObject(sObjectName, sObjectCategory);
+        // Outdate the loads that may have read the object during the deletion
+        invalidate(sKey);
+    }
+
+    @Override
+    public boolean existsObject(String sObjectName, String sObjectCategory) {
+        synchronized (Entries) {
+            // Do not affect the access order
+            if (Entries.containsKey(getKey(sObjectName, sObjectCategory)))
+                return true;
+        }
+        return Base.existsObject(sObjectName, sObjectCategory);
+    }
+
+    @Override
+    public String[] getObjectList(String sObjectCategory) {
+        return Base.getObjectList(sObjectCategory);
+    }
+
+    @Override
+    public String getObjDataToString(Object oObject) {
+        return Base.getObjDataToString(oObject);
+    }
+
+    @Override
+    public TObjectType getStringToObjData(String sData) {
+        return (TObjectType)Base.getStringToObjData(sData);
+    }
+
+    @Override
+    public void finalizeDB() {
+        invalidateAll();
+        Base.finalizeDB();
+    }
+
+    /** Returns the number of loads served by the cache.
+     *@return The hit count.
+     */
+    public long getHits() {
+        return Hits.get();
+    }
+
+    /** Returns the number of loads that were not served by the cache.
+     *@return The miss count.
+     */
+    public long getMisses() {
+        return Misses.get();
+    }
+
+    /** Returns the success ratio of the cache.
+     *@return The ratio of hits (number of hits / number of total loads) of the cache.
+     */
+    public double getHitRatio() {
+        long lHits = Hits.get();
+        long lTotal = lHits + Misses.get();
+        return (lTotal == 0) ? 0.0 : (double)lHits / lTotal;
+    }
+
+    /** Returns the number of objects evicted to keep the cache within its budget.
+     *@return The eviction count.
+     */
+    public long getEvictions() {
+        return Evictions.get();
+    }
+
+    /** Returns the total time spent loading objects from the underlying database.
+     *@return The load time, in nanoseconds.
+     */
+    public long getTotalLoadTime() {
+        return LoadTime.get();
+    }
+
+    /** Returns the number of cached objects.
+     *@return The object count.
+     */
+    public int size() {
+        synchronized (Entries) {
+            return Entries.size();
+        }
+    }
+
+    /** Returns the estimated memory used by the cached objects.
+     *@return The weight, in bytes.
+     */
+    public long getWeight() {
+        synchronized (Entries) {
+            return Weight;
+        }
+    }
+
+    /** Resets the hit, miss, eviction and load time statistics. */
+    public void resetStatistics() {
+        Hits.set(0);
+        Misses.set(0);
+        Evictions.set(0);
+        LoadTime.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Cache: %d objects, %d/%d bytes, %d hits, %d misses, " +
+                "%d evictions, %.1f ms loading", size(), getWeight(), MaxWeight,
+                Hits.get(), Misses.get(), Evictions.get(), LoadTime.get() / 1e6);
+    }
+
+    /** A cached object and its estimated weight. */
+    protected static class CacheEntry {
+        protected final Object Value;
+        protected final long Weight;
+
+        protected CacheEntry(Object oValue, long lWeight) {
+            Value = oValue;
+            Weight = lWeight;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Provides the available {@link ICompressionCodec}s, and reads and writes
+ * compressed data headers. A header consists of the {@link #MAGIC} bytes,
+ * followed by the identifier of the codec that compressed the data after the
+ * header. Data without a header are also readable: gzip streams (the format of
+ * older repositories) are detected by their own magic bytes, while all other
+ * data are considered uncompressed.
+ * <p>
+ * Codecs, other than the built-in ones, can be added with
+ * {@link #register(ICompressionCodec)}.
+ *
+ * @author ggianna
+ */
+public final class CompressionCodecs {
+    /** The first bytes of compressed data headers. */
+    public static final byte[] MAGIC = {'J', 'N', 'G', 'C'};
+
+    /** The size of compressed data headers, in bytes. */
+    public static final int HEADER_SIZE = MAGIC.length + 1;
+
+    /** The number of bytes, from the start of compressed data, that
+     * {@link #isCompressedWith(byte[], int, ICompressionCodec)} needs. */
+    public static final int PEEK_SIZE = HEADER_SIZE + 1;
+
+    /** A codec storing data as they are. Useful for data where decompression
+     * costs more than reading the additional bytes. */
+    public static final ICompressionCodec NONE = new NoCompressionCodec();
+
+    /** A fast LZ77 codec, trading compression ratio for speed. */
+    public static final ICompressionCodec LZ = new LZCodec();
+
+    /** The deflate codec, at the default compression level (the compression used
+     * by gzip). */
+    public static final ICompressionCodec DEFLATE = deflate(Deflater.DEFAULT_COMPRESSION);
+
+    /** The first version of the deflate codec, which does not record the
+     * compression level. Kept to read the data it compressed. */
+    private static final ICompressionCodec DEFLATE_V1 = new DeflateCodec(
+            Deflater.DEFAULT_COMPRESSION, false);
+
+    private static final ConcurrentHashMap<Byte, ICompressionCodec> Codecs =
+            new ConcurrentHashMap<Byte, ICompressionCodec>();
+    static {
+        register(NONE);
+        register(DEFLATE_V1);
+        register(LZ);
+        register(DEFLATE);
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /** Returns a deflate codec of a given compression level. All levels share the
+     * same identifier, since they are decompressed the same way, and the level is
+     * recorded after the header.
+     *@param iLevel The compression level, from {@link Deflater#BEST_SPEED} to
+     * {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     *@return The codec.
+     */
+    public static ICompressionCodec deflate(int iLevel) {
+        if ((iLevel < Deflater.DEFAULT_COMPRESSION) || (iLevel > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid deflate level: " + iLevel);
+        return new DeflateCodec(iLevel, true);
+    }
+
+    /** Registers a codec, so that data it compressed can be read.
+     *@param cCodec The codec to register.
+     *@throws IllegalArgumentException If a different codec is registered with the
+     * same identifier.
+     */
+    public static void register(ICompressionCodec cCodec) {
+        ICompressionCodec cExisting = Codecs.putIfAbsent(cCodec.getId(), cCodec);
+        if ((cExisting != null) && (cExisting.getClass() != cCodec.getClass()))
+            throw new IllegalArgumentException("Codec id " + cCodec.getId() +
+                    " is already used by " + cExisting.getName());
+    }
+
+    /** Returns the registered codec with a given identifier.
+     *@param bId The identifier of the codec.
+     *@return The codec, or null if no such codec is registered.
+     */
+    public static ICompressionCodec forId(byte bId) {
+        return Codecs.get(bId);
+    }
+
+    /** Returns a codec, given its name. Deflate codecs can also be given with their
+     * level, as in "deflate:1".
+     *@param sName The name of the codec.
+     *@return The codec.
+     *@throws IllegalArgumentException If there is no codec with the given name.
+     */
+    public static ICompressionCodec forName(String sName) {
+        String sCodec = sName.trim().toLowerCase();
+        if (sCodec.startsWith(DeflateCodec.NAME + ":"))
+            return deflate(Integer.parseInt(sCodec.substring(DeflateCodec.NAME.length() + 1)));
+        for (ICompressionCodec cCur : Codecs.values())
+            if (cCur.getName().equals(sCodec))
+                return cCur;
+        throw new IllegalArgumentException("Unknown codec: " + sName);
+    }
+
+    /** Returns all registered codecs, ordered by identifier. */
+    public static List<ICompressionCodec> getCodecs() {
+        List<ICompressionCodec> lRes = new ArrayList<ICompressionCodec>();
+        for (int iId = Byte.MIN_VALUE; iId <= Byte.MAX_VALUE; iId++) {
+            ICompressionCodec cCur = Codecs.get((byte)iId);
+            if (cCur != null)
+                lRes.add(cCur);
+        }
+        return lRes;
+    }
+
+    /** Writes the header of a codec to a stream, and returns a stream compressing
+     * the data written to it with the codec.
+     *@param osOut The stream to write to.
+     *@param cCodec The codec to use.
+     *@return The compressing stream. Closing it closes the given stream.
+     *@throws IOException If the header cannot be written.
+     */
+    public static OutputStream compress(OutputStream osOut, ICompressionCodec cCodec)
+            throws IOException {
+        osOut.write(MAGIC);
+        osOut.write(cCodec.getId());
+        return cCodec.compress(osOut);
+    }
+
+    /** Returns a stream of the decompressed data of a given stream, using the
+     * codec named in the header of the data. Data without a header are read as
+     * gzip streams, if they start like one, otherwise as they are.
+     *@param isIn The stream to read. It is wrapped in a buffered stream, if it does
+     * not support marks.
+     *@return The decompressing stream. Closing it closes the given stream.
+     *@throws IOException If the data are compressed by an unknown codec, or cannot
+     * be read.
+     */
+    public static InputStream decompress(InputStream isIn) throws IOException {
+        if (!isIn.markSupported())
+            isIn = new BufferedInputStream(isIn);
+        byte[] baHeader = new byte[HEADER_SIZE];
+        isIn.mark(HEADER_SIZE);
+        int iRead = readHeader(isIn, baHeader);
+        if (startsWith(baHeader, iRead, MAGIC) && (iRead == HEADER_SIZE)) {
+            ICompressionCodec cCodec = forId(baHeader[MAGIC.length]);
+            if (cCodec == null)
+                throw new IOException("Unknown compression codec id: " +
+                        baHeader[MAGIC.length]);
+            return cCodec.decompress(isIn);
+        }
+        isIn.reset();
+        if ((iRead >= 2) && (baHeader[0] == (byte)(GZIPInputStream.GZIP_MAGIC & 0xff)) &&
+                (baHeader[1] == (byte)(GZIPInputStream.GZIP_MAGIC >> 8)))
+            return new GZIPInputStream(isIn, 8192);
+        return isIn;
+    }
+
+    /** Returns the codec named in the header of some data.
+     *@param baData The buffer holding the data.
+     *@param iLength The number of bytes of data in the buffer.
+     *@return The codec, or null if the data do not start with a header.
+     */
+    public static ICompressionCodec codecOf(byte[] baData, int iLength) {
+        if ((iLength < HEADER_SIZE) || !startsWith(baData, iLength, MAGIC))
+            return null;
+        return forId(baData[MAGIC.length]);
+    }
+
+    /** Checks whether some data were compressed by a given codec, including the
+     * level of deflate codecs.
+     *@param baData The buffer holding the data.
+     *@param iLength The number of bytes of data in the buffer, which should be at
+     * least {@link #PEEK_SIZE} unless the data are shorter.
+     *@param cCodec The codec.
+     *@return True if the data start with the header of the codec, followed by the
+     * same deflate level in the case of deflate codecs.
+     */
+    public static boolean isCompressedWith(byte[] baData, int iLength,
+            ICompressionCodec cCodec) {
+        ICompressionCodec cData = codecOf(baData, iLength);
+        if ((cData == null) || (cData.getId() != cCodec.getId()))
+            return false;
+        if (cCodec instanceof DeflateCodec)
+            return ((DeflateCodec)cCodec).isLevelOf(baData, iLength);
+        return true;
+    }
+
+    /** Checks whether some data start with a given sequence of bytes.
+     *@param baData The buffer holding the data.
+     *@param iLength The number of bytes of data in the buffer.
+     *@param baPrefix The bytes to look for.
+     *@return True if the data start with the given bytes.
+     */
+    public static boolean startsWith(byte[] baData, int iLength, byte[] baPrefix) {
+        if (iLength < baPrefix.length)
+            return false;
+        for (int iCnt = 0; iCnt < baPrefix.length; iCnt++)
+            if (baData[iCnt] != baPrefix[iCnt])
+                return false;
+        return true;
+    }
+
+    private static int readHeader(InputStream isIn, byte[] baHeader) throws IOException {
+        int iRead = 0;
+        while (iRead < baHeader.length) {
+            int iCur = isIn.read(baHeader, iRead, baHeader.length - iRead);
+            if (iCur < 0)
+                break;
+            iRead += iCur;
+        }
+        return iRead;
+    }
+
+    /** Stores data without compression. */
+    private static class NoCompressionCodec implements ICompressionCodec {
+        @Override
+        public byte getId() {
+            return 0;
+        }
+
+        @Override
+        public String getName() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream osOut) {
+            // Do not let callers close the given stream twice
+            return new FilterOutputStream(osOut) {
+                @Override
+                public void write(byte[] baData, int iOffset, int iLength)
+                        throws IOException {
+                    out.write(baData, iOffset, iLength);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream isIn) {
+            return isIn;
+        }
+
+        private Object readResolve() {
+            return NONE;
+        }
+    }
+
+    /** Compresses data with a {@link Deflater} of a given level. The level is
+     * written as a byte before the compressed data, except by the first version
+     * of the codec. */
+    private static class DeflateCodec implements ICompressionCodec {
+        static final String NAME = "deflate";
+        private final int Level;
+        private final boolean LevelHeader;
+
+        DeflateCodec(int iLevel, boolean bLevelHeader) {
+            Level = iLevel;
+            LevelHeader = bLevelHeader;
+        }
+
+        @Override
+        public byte getId() {
+            return LevelHeader ? (byte)3 : (byte)1;
+        }
+
+        @Override
+        public String getName() {
+            if (!LevelHeader)
+                return NAME + "-v1";
+            return (Level == Deflater.DEFAULT_COMPRESSION) ? NAME : NAME + ":" + Level;
+        }
+
+        /** Checks whether data, starting with the header of the codec, were
+         * compressed at the level of the codec. */
+        boolean isLevelOf(byte[] baData, int iLength) {
+            if (!LevelHeader)
+                return true;
+            return (iLength > HEADER_SIZE) && (baData[HEADER_SIZE] == (byte)Level);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream osOut) throws IOException {
+            if (LevelHeader)
+                osOut.write(Level);
+            final Deflater dDeflater = new Deflater(Level);
+            return new DeflaterOutputStream(osOut, dDeflater, 8192) {
+                private boolean Closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    if (Closed)
+                        return;
+                    Closed = true;
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        // Deflaters given to the stream are not ended by it
+                        dDeflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream isIn) throws IOException {
+            // The level is not needed to decompress
+            if (LevelHeader && (isIn.read() < 0))
+                throw new EOFException("Missing deflate level");
+            final Inflater iInflater = new Inflater();
+            return new InflaterInputStream(isIn, iInflater, 8192) {
+                private boolean Closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    if (Closed)
+                        return;
+                    Closed = true;
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        iInflater.end();
+                    }
+                }
+            };
+        }
+    }
+}
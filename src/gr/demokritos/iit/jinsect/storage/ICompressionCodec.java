@@ -0,0 +1,48 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/** This interface describes a compression method for stored objects. Every codec
+ * has a unique identifier, written in the header of the data it compresses (see
+ * {@link CompressionCodecs}), so that data compressed with different codecs can
+ * be read back without further information.
+ *
+ * @author ggianna
+ */
+public interface ICompressionCodec extends Serializable {
+    /** Returns the identifier of the codec, stored in compressed data headers.
+     * Identifiers up to 15 are reserved for the codecs of {@link CompressionCodecs}.
+     *@return The identifier of the codec.
+     */
+    public byte getId();
+
+    /** Returns the name of the codec, as used in {@link CompressionCodecs#forName(String)}.
+     *@return The name of the codec.
+     */
+    public String getName();
+
+    /** Returns a stream that compresses the data written to it into a given
+     * stream. Closing the returned stream completes the compressed data and closes
+     * the given stream.
+     *@param osOut The stream to write the compressed data to.
+     *@return The compressing stream.
+     *@throws IOException If the stream cannot be created.
+     */
+    public OutputStream compress(OutputStream osOut) throws IOException;
+
+    /** Returns a stream that decompresses the data read from a given stream.
+     * Closing the returned stream closes the given stream.
+     *@param isIn The stream of the compressed data.
+     *@return The decompressing stream.
+     *@throws IOException If the stream cannot be created.
+     */
+    public InputStream decompress(InputStream isIn) throws IOException;
+}
@@ -10,34 +10,49 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /** A class that uses memory for storage, while compressing the data of stored
- *  objects to optimize memory use.
+ *  objects to optimize memory use. The data are compressed with a selectable
+ *  {@link ICompressionCodec}, after a header naming the codec, so that objects
+ *  stored with different codecs remain readable.
  *
  * @author pckid
  */
 public class INSECTCompressedMemoryDB<TObjectType extends Serializable> 
         extends INSECTMemoryDB implements Serializable {
+    protected ICompressionCodec Codec = CompressionCodecs.DEFLATE;
+
+    /** Sets the codec used to compress saved objects.
+     *@param cCodec The codec to use. Objects already saved keep their codec.
+     */
+    public void setCodec(ICompressionCodec cCodec) {
+        if (cCodec == null)
+            throw new IllegalArgumentException("No codec given");
+        Codec = cCodec;
+    }
+
+    public ICompressionCodec getCodec() {
+        return Codec;
+    }
     
     @Override
     public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {
-        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
         try {
-            GZIPOutputStream gzOut = new GZIPOutputStream(bOut);
-            ObjectOutputStream oOut = new ObjectOutputStream(gzOut);
-            oOut.writeObject(oObj);
-            oOut.flush();
-            oOut.close();
-            gzOut.flush();
-            gzOut.close();
-            bOut.close();
+            saveObjectChecked(oObj, sObjectName, sObjectCategory);
         } catch (IOException e) {
             System.err.println("Cannot save object to memory. Reason:");
             e.printStackTrace(System.err);
-            return;
         }
+    }
+
+    @Override
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        ObjectOutputStream oOut = new ObjectOutputStream(
+                CompressionCodecs.compress(bOut, Codec));
+        oOut.writeObject(oObj);
+        oOut.close();
         
         ObjectMap.put(getObjectName(sObjectName, sObjectCategory), bOut.toByteArray());
     }
@@ -48,12 +63,11 @@ public class INSECTCompressedMemoryDB<TObjectType extends Serializable>
                 getObjectName(sObjectName, sObjectCategory)));
         TObjectType tObj = null;
         try {
-            GZIPInputStream gzIn = new GZIPInputStream(bIn);
-            ObjectInputStream oIn = new ObjectInputStream(gzIn);
+            // Objects saved by older versions are gzipped, without a header
+            ObjectInputStream oIn = new ObjectInputStream(
+                    CompressionCodecs.decompress(bIn));
             tObj = (TObjectType) oIn.readObject();
             oIn.close();
-            gzIn.close();
-            bIn.close();
         } catch (IOException iOException) {
             System.err.println("Cannot load object from memory. Reason:");
             iOException.printStackTrace(System.err);
@@ -73,10 +87,18 @@ public class INSECTCompressedMemoryDB<TObjectType extends Serializable>
     private void readObject(java.io.ObjectInputStream in)
           throws IOException, ClassNotFoundException {
           ObjectMap = (HashMap)in.readObject();
+          // Streams of older versions end with the map
+          try {
+              Codec = (ICompressionCodec)in.readObject();
+          }
+          catch (java.io.OptionalDataException ode) {
+              Codec = CompressionCodecs.DEFLATE;
+          }
     }
     
     private void writeObject(java.io.ObjectOutputStream out)
       throws IOException {
         out.writeObject(ObjectMap);
+        out.writeObject(Codec);
     }    
 }
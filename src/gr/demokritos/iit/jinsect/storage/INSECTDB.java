@@ -7,10 +7,31 @@
 
 package gr.demokritos.iit.jinsect.storage;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /** This class describes a database interface, that supports categorized 
- * objects.
+ * objects. Besides the blocking operations, objects can be loaded and saved
+ * asynchronously (singly or in batches), on a bounded I/O executor, so that
+ * callers can overlap the creation of objects with their storage. Errors of
+ * asynchronous operations are reported through the returned futures, for
+ * databases that implement {@link #saveObjectChecked(Serializable, String, String)}
+ * and {@link #loadObjectChecked(String, String)}.
  *
  * @author PCKid
  */
@@ -18,10 +39,141 @@ public abstract class INSECTDB<TObjectType extends Serializable> {
     // Object types
     public static String CATEGORY_TYPE = "Category";
     public static String DOCUMENT_TYPE = "Document";
+
+    /** The executor used for asynchronous operations, or null for the shared
+     * default I/O executor. */
+    protected Executor IOExecutor = null;
     
     /** Creates a new instance of ObjectDB */
     public INSECTDB() {
     }    
+
+    /** Sets the executor of the asynchronous operations of this database.
+     *@param eExecutor The executor to use, or null for the shared default one,
+     * which has a thread per processor and makes submitters run the operations
+     * themselves when too many are queued.
+     */
+    public void setIOExecutor(Executor eExecutor) {
+        IOExecutor = eExecutor;
+    }
+
+    public Executor getIOExecutor() {
+        return (IOExecutor == null) ? DefaultIOExecutor.INSTANCE : IOExecutor;
+    }
+
+    /** Saves an object like {@link #saveObject(Serializable, String, String)},
+     * but reports errors. The default implementation cannot detect errors;
+     * databases should override it and implement saveObject through it.
+     *@param oObj The object to save.
+     *@param sObjectName The name (and unique identifier within the category) of the object.
+     *@param sObjectCategory The category of the object.
+     *@throws IOException If the object could not be saved.
+     */
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        saveObject(oObj, sObjectName, sObjectCategory);
+    }
+
+    /** Loads an object like {@link #loadObject(String, String)}, but reports
+     * errors. The default implementation cannot detect errors; databases should
+     * override it and implement loadObject through it.
+     *@param sObjectName The name (and unique identifier within the category) of the object.
+     *@param sObjectCategory The category of the saved object.
+     *@return The loaded object, or null if it does not exist.
+     *@throws IOException If the object exists, but could not be loaded.
+     */
+    protected TObjectType loadObjectChecked(String sObjectName, String sObjectCategory)
+            throws IOException {
+        return loadObject(sObjectName, sObjectCategory);
+    }
+
+    /** Saves an object asynchronously, on the I/O executor.
+     *@param oObj The object to save. It must not be changed until the save
+     * completes.
+     *@param sObjectName The name (and unique identifier within the category) of the object.
+     *@param sObjectCategory The category of the object.
+     *@return A future completed when the object is saved, or exceptionally if
+     * saving fails.
+     */
+    public CompletableFuture<Void> saveObjectAsync(final Serializable oObj,
+            final String sObjectName, final String sObjectCategory) {
+        return CompletableFuture.supplyAsync(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                try {
+                    saveObjectChecked(oObj, sObjectName, sObjectCategory);
+                    return null;
+                } catch (IOException ioe) {
+                    throw new CompletionException(ioe);
+                }
+            }
+        }, getIOExecutor());
+    }
+
+    /** Loads an object asynchronously, on the I/O executor.
+     *@param sObjectName The name (and unique identifier within the category) of the object.
+     *@param sObjectCategory The category of the saved object.
+     *@return A future of the object (null if it does not exist), completed
+     * exceptionally if loading fails.
+     */
+    public CompletableFuture<TObjectType> loadObjectAsync(final String sObjectName,
+            final String sObjectCategory) {
+        return CompletableFuture.supplyAsync(new Supplier<TObjectType>() {
+            @Override
+            public TObjectType get() {
+                try {
+                    return loadObjectChecked(sObjectName, sObjectCategory);
+                } catch (IOException ioe) {
+                    throw new CompletionException(ioe);
+                }
+            }
+        }, getIOExecutor());
+    }
+
+    /** Saves a number of objects of a category asynchronously, in parallel on the
+     * I/O executor.
+     *@param mObjects The objects to save, by name. They must not be changed until
+     * the save completes.
+     *@param sObjectCategory The category of the objects.
+     *@return A future completed when all objects are saved, or exceptionally if
+     * saving any of them fails.
+     */
+    public CompletableFuture<Void> saveAll(Map<String, ? extends Serializable> mObjects,
+            String sObjectCategory) {
+        List<CompletableFuture<Void>> lSaves = new ArrayList<CompletableFuture<Void>>();
+        for (Map.Entry<String, ? extends Serializable> eCur : mObjects.entrySet())
+            lSaves.add(saveObjectAsync(eCur.getValue(), eCur.getKey(), sObjectCategory));
+        return CompletableFuture.allOf(lSaves.toArray(new CompletableFuture[lSaves.size()]));
+    }
+
+    /** Loads a number of objects of a category asynchronously, in parallel on the
+     * I/O executor.
+     *@param cNames The names of the objects to load.
+     *@param sObjectCategory The category of the objects.
+     *@return A future of the objects by name, in the order of the given names.
+     * Objects that do not exist are mapped to null. The future is completed
+     * exceptionally if loading any of the objects fails.
+     */
+    public CompletableFuture<Map<String, TObjectType>> loadAll(Collection<String> cNames,
+            String sObjectCategory) {
+        final LinkedHashMap<String, CompletableFuture<TObjectType>> mLoads =
+                new LinkedHashMap<String, CompletableFuture<TObjectType>>();
+        for (String sName : cNames)
+            if (!mLoads.containsKey(sName))
+                mLoads.put(sName, loadObjectAsync(sName, sObjectCategory));
+        return CompletableFuture.allOf(mLoads.values().toArray(
+                new CompletableFuture[mLoads.size()])).thenApply(
+                new Function<Void, Map<String, TObjectType>>() {
+            @Override
+            public Map<String, TObjectType> apply(Void vIgnored) {
+                Map<String, TObjectType> mRes = new LinkedHashMap<String, TObjectType>();
+                for (Map.Entry<String, CompletableFuture<TObjectType>> eCur :
+                        mLoads.entrySet())
+                    mRes.put(eCur.getKey(), eCur.getValue().join());
+                return mRes;
+            }
+        });
+    }
     
     /** Finalizes db. Descendants should perform finalization operations in this
      * member. */
@@ -79,4 +231,25 @@ public abstract class INSECTDB<TObjectType extends Serializable> {
      *@return The represented object. 
      */
     public abstract TObjectType getStringToObjData(String sData);
+
+    /** Holds the shared default I/O executor, created on first use. */
+    private static class DefaultIOExecutor {
+        static final Executor INSTANCE;
+        static {
+            int iThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            final AtomicInteger aiThreads = new AtomicInteger();
+            ThreadPoolExecutor tpeRes = new ThreadPoolExecutor(iThreads, iThreads,
+                    30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(iThreads * 16),
+                    new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread tRes = new Thread(r, "INSECTDB-IO-" + aiThreads.incrementAndGet());
+                    tRes.setDaemon(true);
+                    return tRes;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            tpeRes.allowCoreThreadTimeOut(true);
+            INSTANCE = tpeRes;
+        }
+    }
 }
@@ -7,6 +7,12 @@
 
 package gr.demokritos.iit.jinsect.storage;
 
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.MappedNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphBinaryFormat;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -14,15 +20,30 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
-/** A file database that uses a single file per stored object.
+/** A file database that uses a single file per stored object. N-gram graphs
+ * supported by {@link NGramGraphBinaryFormat} are stored in that format (unless
+ * disabled through {@link #setUseBinaryFormat(boolean)}), while all other
+ * objects are stored as Java serialization streams. By default, graphs are
+ * stored uncompressed and other objects gzipped; if a codec is set through
+ * {@link #setCodec(ICompressionCodec)}, all files are compressed with it, after a
+ * header naming the codec (see {@link CompressionCodecs}). Loading detects the
+ * format and compression of every file, so that repositories with files of
+ * different codecs or older versions remain readable. Graphs can also be
+ * loaded as read-only {@link MappedNGramGraph} objects, kept in a separate file
+ * next to the stored object (see {@link #loadMappedGraph(String, String)}).
  *
  * @author PCKid
  */
@@ -31,6 +52,11 @@ public class INSECTFileDB<TObjectType extends Serializable> extends INSECTDB
     
     private String Prefix;
     private String BaseDir;
+    private boolean UseBinaryFormat = true;
+    private ICompressionCodec Codec = null;
+
+    /** The suffix of the files holding mapped graphs. */
+    public static final String MAPPED_SUFFIX = ".mapped";
     
     public INSECTFileDB() {
         this(null, null);
@@ -58,57 +84,284 @@ public class INSECTFileDB<TObjectType extends Serializable> extends INSECTDB
         return BaseDir + System.getProperty("file.separator") + Prefix + 
                 String.valueOf((sObjectName).hashCode()) + '.' + sObjectCategory;
     }
+
+    /** Returns the filename of the mapped graph of a given object.
+     *
+     * @param sObjectName The name of the object.
+     * @param sObjectCategory The category of the object.
+     * @return A string representing the filename of the mapped graph in the db.
+     */
+    public String getMappedFileName(String sObjectName, String sObjectCategory) {
+        return getFileName(sObjectName, sObjectCategory) + MAPPED_SUFFIX;
+    }
+
+    /** Deletes the mapped graph of an object, if any, before the object is
+     * changed or deleted, so that it is recreated from the new version of the
+     * object by {@link #loadMappedGraph(String, String)}.
+     *@param sObjectName The name of the object.
+     *@param sObjectCategory The category of the object.
+     */
+    protected void outdateMappedGraph(String sObjectName, String sObjectCategory) {
+        new File(getMappedFileName(sObjectName, sObjectCategory)).delete();
+    }
+
+    /** Loads a stored graph as a read-only, memory mapped graph. The mapped file
+     * is created from the stored object the first time, and recreated whenever
+     * the object is saved again.
+     *@param sObjectName The name of the object.
+     *@param sObjectCategory The category of the object.
+     *@return The mapped graph, or null if the object does not exist, is not an
+     * n-gram graph, or cannot be mapped.
+     */
+    public FrozenNGramGraph loadMappedGraph(String sObjectName, String sObjectCategory) {
+        File fObject = new File(getFileName(sObjectName, sObjectCategory));
+        File fMapped = new File(getMappedFileName(sObjectName, sObjectCategory));
+        try {
+            if (!fMapped.exists() || (fMapped.lastModified() < fObject.lastModified())) {
+                Object oObj = loadObject(sObjectName, sObjectCategory);
+                if (!(oObj instanceof DocumentNGramGraph))
+                    return null;
+                MappedNGramGraph.write(new FrozenNGramGraph((DocumentNGramGraph)oObj),
+                        fMapped);
+            }
+            return MappedNGramGraph.open(fMapped);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+    }
     
+    /** Sets whether supported n-gram graphs are saved in the binary graph format.
+     *@param bUseBinaryFormat If false, all objects are saved as gzipped Java
+     * serialization streams, readable by older versions.
+     */
+    public void setUseBinaryFormat(boolean bUseBinaryFormat) {
+        UseBinaryFormat = bUseBinaryFormat;
+    }
+
+    public boolean isUsingBinaryFormat() {
+        return UseBinaryFormat;
+    }
+
+    /** Sets the codec used to compress saved objects. Files already saved keep
+     * their codec, until they are saved again.
+     *@param cCodec The codec to use, or null to store graphs uncompressed and
+     * other objects gzipped, without a codec header, as older versions do.
+     */
+    public void setCodec(ICompressionCodec cCodec) {
+        Codec = cCodec;
+    }
+
+    public ICompressionCodec getCodec() {
+        return Codec;
+    }
+
+    /** Writes a graph to a file, in the binary graph format.
+     *@param fFile The file to (over)write.
+     *@param dgGraph The graph to write.
+     *@throws IOException If the graph is not supported by the format, or writing
+     * fails.
+     */
+    public static void writeBinaryFile(File fFile, DocumentNGramGraph dgGraph)
+            throws IOException {
+        FileChannel fcOut = FileChannel.open(fFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            NGramGraphBinaryFormat.write(dgGraph, fcOut);
+        }
+        finally {
+            fcOut.close();
+        }
+    }
+
+    /** Reads a graph from a file in the binary graph format.
+     *@param fFile The file to read.
+     *@return The graph.
+     *@throws IOException If the file is not in the binary graph format, or
+     * reading fails.
+     */
+    public static DocumentNGramGraph readBinaryFile(File fFile) throws IOException {
+        FileChannel fcIn = FileChannel.open(fFile.toPath(), StandardOpenOption.READ);
+        try {
+            return NGramGraphBinaryFormat.read(fcIn);
+        }
+        finally {
+            fcIn.close();
+        }
+    }
+
+    /** Writes an object to a file, compressed with a given codec, after the header
+     * of the codec.
+     *@param fFile The file to (over)write.
+     *@param oObj The object to write.
+     *@param cCodec The codec to use.
+     *@param bUseBinaryFormat If true, supported graphs are written in the binary
+     * graph format, instead of a Java serialization stream.
+     *@throws IOException If writing fails.
+     */
+    public static void writeCompressedFile(File fFile, Serializable oObj,
+            ICompressionCodec cCodec, boolean bUseBinaryFormat) throws IOException {
+        writeCompressed(new BufferedOutputStream(new FileOutputStream(fFile), 8192),
+                oObj, cCodec, bUseBinaryFormat);
+    }
+
+    /** Writes an object to a stream, as {@link #writeCompressedFile(File,
+     * Serializable, ICompressionCodec, boolean)} writes it to a file.
+     *@param osOut The stream to write to. It is closed when the object is written.
+     *@param oObj The object to write.
+     *@param cCodec The codec to use.
+     *@param bUseBinaryFormat If true, supported graphs are written in the binary
+     * graph format, instead of a Java serialization stream.
+     *@throws IOException If writing fails.
+     */
+    public static void writeCompressed(OutputStream osOut, Serializable oObj,
+            ICompressionCodec cCodec, boolean bUseBinaryFormat) throws IOException {
+        OutputStream osCompressed = null;
+        try {
+            osCompressed = CompressionCodecs.compress(osOut, cCodec);
+            if (bUseBinaryFormat && NGramGraphBinaryFormat.isSupported(oObj))
+                NGramGraphBinaryFormat.write((DocumentNGramGraph)oObj,
+                        Channels.newChannel(osCompressed));
+            else {
+                ObjectOutputStream oOut = new ObjectOutputStream(osCompressed);
+                oOut.writeObject(oObj);
+                oOut.flush();
+            }
+        }
+        finally {
+            if (osCompressed != null)
+                osCompressed.close();
+            else
+                osOut.close();
+        }
+    }
+
+    /** Reads an object from a file, in any of the formats and with any of the
+     * codecs that files of the database can have.
+     *@param fFile The file to read.
+     *@return The object.
+     *@throws IOException If the file is not readable, or its data are corrupt.
+     */
+    public static Object readFile(File fFile) throws IOException {
+        if (isBinaryFile(fFile))
+            return readBinaryFile(fFile);
+        return readCompressed(new FileInputStream(fFile));
+    }
+
+    /** Reads an object from a stream, in any of the formats and with any of the
+     * codecs that files of the database can have.
+     *@param isIn The stream to read. It is closed when the object is read.
+     *@return The object.
+     *@throws IOException If the stream is not readable, or its data are corrupt.
+     */
+    public static Object readCompressed(InputStream isIn) throws IOException {
+        InputStream isData = null;
+        try {
+            isData = new BufferedInputStream(CompressionCodecs.decompress(isIn), 8192);
+            // Look for the binary graph format within compressed data
+            byte[] baMagic = new byte[NGramGraphBinaryFormat.MAGIC.length];
+            isData.mark(baMagic.length);
+            int iRead = 0;
+            while (iRead < baMagic.length) {
+                int iCur = isData.read(baMagic, iRead, baMagic.length - iRead);
+                if (iCur < 0)
+                    break;
+                iRead += iCur;
+            }
+            isData.reset();
+            if (NGramGraphBinaryFormat.hasMagic(baMagic, iRead))
+                return NGramGraphBinaryFormat.read(Channels.newChannel(isData));
+            return new ObjectInputStream(isData).readObject();
+        }
+        catch (ClassNotFoundException cnfe) {
+            throw new IOException("Cannot load object: " + cnfe.getMessage());
+        }
+        finally {
+            if (isData != null)
+                isData.close();
+            else
+                isIn.close();
+        }
+    }
+
+    /** Checks whether a file is in the binary graph format.
+     *@param fFile The file to check.
+     *@return True if the file starts with the magic bytes of the format.
+     *@throws IOException If the file cannot be read.
+     */
+    public static boolean isBinaryFile(File fFile) throws IOException {
+        FileChannel fcIn = FileChannel.open(fFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer bbHeader = ByteBuffer.allocate(NGramGraphBinaryFormat.MAGIC.length);
+            while (bbHeader.hasRemaining())
+                if (fcIn.read(bbHeader, bbHeader.position()) < 0)
+                    break;
+            return NGramGraphBinaryFormat.hasMagic(bbHeader.array(),
+                    bbHeader.position());
+        }
+        finally {
+            fcIn.close();
+        }
+    }
+
     @Override
     public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {         
         try {
-            FileOutputStream fsOut = new FileOutputStream(getFileName(sObjectName, sObjectCategory));
+            saveObjectChecked(oObj, sObjectName, sObjectCategory);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        outdateMappedGraph(sObjectName, sObjectCategory);
+        if (Codec != null) {
+            writeCompressedFile(new File(getFileName(sObjectName, sObjectCategory)),
+                    oObj, Codec, UseBinaryFormat);
+            return;
+        }
+        if (UseBinaryFormat && NGramGraphBinaryFormat.isSupported(oObj)) {
+            writeBinaryFile(new File(getFileName(sObjectName, sObjectCategory)),
+                    (DocumentNGramGraph)oObj);
+            return;
+        }
+        FileOutputStream fsOut = new FileOutputStream(getFileName(sObjectName, sObjectCategory));
+        try {
             GZIPOutputStream gzout = new GZIPOutputStream(fsOut);
 
             ObjectOutputStream oOut = new ObjectOutputStream(gzout);            
             oOut.writeObject(oObj);
-            oOut.close();
+            oOut.flush();
             // Complete the GZIP file
             gzout.finish();
-            fsOut.close();
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        finally {
+            fsOut.close();
         }
     }
     
     @Override
     public TObjectType loadObject(String sObjectName, String sObjectCategory) {
-        FileInputStream fsIn = null;
-        GZIPInputStream gzIn = null;
-        ObjectInputStream iIn = null;
         try {
-            fsIn = new FileInputStream(getFileName(sObjectName, sObjectCategory));
-            gzIn = new GZIPInputStream(fsIn);
-            iIn = new ObjectInputStream(gzIn);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-            return null;
+            return loadObjectChecked(sObjectName, sObjectCategory);
         }
-                
-        Object oRes;
-        try {
-            oRes = iIn.readObject();
-        }
-        catch (Exception e) {
+        catch (IOException e) {
             e.printStackTrace();
             return null;
         }
+    }
 
-        try {
-            fsIn.close();
-            gzIn.close();
-            iIn.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        return (TObjectType)oRes;
+    @Override
+    protected TObjectType loadObjectChecked(String sObjectName, String sObjectCategory)
+            throws IOException {
+        File fFile = new File(getFileName(sObjectName, sObjectCategory));
+        if (!fFile.exists())
+            return null;
+        return (TObjectType)readFile(fFile);
     }
     
     @Override
@@ -117,6 +370,7 @@ public class INSECTFileDB<TObjectType extends Serializable> extends INSECTDB
             // Delete File
             File f = new File(getFileName(sObjectName, sObjectCategory));
             f.delete(); // Might fail. No testing.
+            outdateMappedGraph(sObjectName, sObjectCategory);
         }
     }
     
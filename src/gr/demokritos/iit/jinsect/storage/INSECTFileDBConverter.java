@@ -0,0 +1,169 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphBinaryFormat;
+import gr.demokritos.iit.jinsect.utils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Hashtable;
+
+/** Converts the n-gram graph files of an {@link INSECTFileDB} directory, stored as
+ * gzipped Java serialization streams, to the {@link NGramGraphBinaryFormat}.
+ * Files already in the binary format and objects that are not supported by the
+ * format are left untouched. Alternatively, all files can be recompressed with a
+ * given {@link ICompressionCodec}. Every file is replaced only after its new
+ * version has been completely written.
+ *
+ * @author ggianna
+ */
+public class INSECTFileDBConverter {
+    /** Converts a single file.
+     *@param fFile The file to convert.
+     *@return True if the file was converted, false if it was already in the binary
+     * format or does not contain a supported graph.
+     *@throws IOException If the file cannot be read or written.
+     */
+    public static boolean convertFile(File fFile) throws IOException {
+        return convertFile(fFile, null);
+    }
+
+    /** Converts a single file, to the binary graph format compressed with a given
+     * codec.
+     *@param fFile The file to convert.
+     *@param cCodec The codec to compress with, or null to convert graphs to the
+     * uncompressed binary format, as {@link #convertFile(File)} does.
+     *@return True if the file was converted, false if it was already in the
+     * required format.
+     *@throws IOException If the file cannot be read or written.
+     */
+    public static boolean convertFile(File fFile, ICompressionCodec cCodec)
+            throws IOException {
+        if (cCodec == null) {
+            if (INSECTFileDB.isBinaryFile(fFile))
+                return false;
+        }
+        else if (isCompressedWith(fFile, cCodec))
+            return false;
+
+        Object oObj = INSECTFileDB.readFile(fFile);
+        if ((cCodec == null) && !NGramGraphBinaryFormat.isSupported(oObj))
+            return false;
+
+        File fTemp = utils.createTempFileFor(fFile);
+        try {
+            if (cCodec == null)
+                INSECTFileDB.writeBinaryFile(fTemp, (DocumentNGramGraph)oObj);
+            else
+                INSECTFileDB.writeCompressedFile(fTemp, (Serializable)oObj, cCodec,
+                        true);
+        }
+        catch (IOException ioe) {
+            fTemp.delete();
+            throw ioe;
+        }
+        utils.replaceFile(fTemp, fFile);
+        return true;
+    }
+
+    /** Checks whether a file was compressed by a given codec, at the same level
+     * in the case of deflate codecs. */
+    private static boolean isCompressedWith(File fFile, ICompressionCodec cCodec)
+            throws IOException {
+        byte[] baHeader = new byte[CompressionCodecs.PEEK_SIZE];
+        FileInputStream fisIn = new FileInputStream(fFile);
+        try {
+            int iRead = 0;
+            while (iRead < baHeader.length) {
+                int iCur = fisIn.read(baHeader, iRead, baHeader.length - iRead);
+                if (iCur < 0)
+                    break;
+                iRead += iCur;
+            }
+            return CompressionCodecs.isCompressedWith(baHeader, iRead, cCodec);
+        }
+        finally {
+            fisIn.close();
+        }
+    }
+
+    /** Converts all the files of a given object category in a directory.
+     *@param sDir The directory of the repository.
+     *@param sObjectCategory The category of the objects to convert.
+     *@return The number of converted files.
+     */
+    public static int convertCategory(String sDir, String sObjectCategory) {
+        return convertCategory(sDir, sObjectCategory, null);
+    }
+
+    /** Converts all the files of a given object category in a directory.
+     *@param sDir The directory of the repository.
+     *@param sObjectCategory The category of the objects to convert.
+     *@param cCodec The codec to compress with, or null for uncompressed binary
+     * graphs (see {@link #convertFile(File, ICompressionCodec)}).
+     *@return The number of converted files.
+     */
+    public static int convertCategory(String sDir, String sObjectCategory,
+            ICompressionCodec cCodec) {
+        int iConverted = 0;
+        File[] faFiles = new File(sDir).listFiles();
+        if (faFiles == null)
+            return 0;
+        for (File fCur : faFiles) {
+            if (!fCur.isFile() || !fCur.getName().endsWith("." + sObjectCategory))
+                continue;
+            try {
+                if (convertFile(fCur, cCodec))
+                    iConverted++;
+                else
+                    System.err.println("Skipped " + fCur.getName());
+            } catch (IOException ex) {
+                System.err.println("Could not convert " + fCur.getName() + ": " +
+                        ex.getMessage());
+            }
+        }
+        return iConverted;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        Hashtable hSwitches = utils.parseCommandLineSwitches(args);
+        String sDir = utils.getSwitch(hSwitches, "dir", "");
+        if (sDir.length() == 0) {
+            printSyntax();
+            return;
+        }
+        String sCategories = utils.getSwitch(hSwitches, "category",
+                INSECTDB.CATEGORY_TYPE + "," + INSECTDB.DOCUMENT_TYPE);
+        String sCodec = utils.getSwitch(hSwitches, "codec", "");
+        ICompressionCodec cCodec = null;
+        if (sCodec.length() > 0)
+            try {
+                cCodec = CompressionCodecs.forName(sCodec);
+            }
+            catch (IllegalArgumentException iae) {
+                System.err.println(iae.getMessage());
+                printSyntax();
+                return;
+            }
+        for (String sCategory : sCategories.split(",")) {
+            System.err.print("Converting " + sCategory + " files...");
+            int iConverted = convertCategory(sDir, sCategory.trim(), cCodec);
+            System.err.println("Done. " + iConverted + " files converted.");
+        }
+    }
+
+    public static void printSyntax() {
+        System.err.println("Syntax:\n" + INSECTFileDBConverter.class.getName() +
+                " -dir=reposDir/ [-category=Category,Document] " +
+                "[-codec=none|deflate[:level]|lz]");
+    }
+}
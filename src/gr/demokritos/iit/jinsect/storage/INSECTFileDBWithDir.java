@@ -4,6 +4,7 @@
  */
 package gr.demokritos.iit.jinsect.storage;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -60,24 +61,27 @@ public class INSECTFileDBWithDir extends INSECTFileDB{
      */
     
     @Override
-    public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
         
-        super.saveObject(oObj, sObjectName, sObjectCategory);
-        if (existsObject(sObjectCategory, ListCategoryName)){
+        super.saveObjectChecked(oObj, sObjectName, sObjectCategory);
+        // Concurrent saves share the name list
+        synchronized (this) {
+            if (existsObject(sObjectCategory, ListCategoryName)){
             
-            ArrayList<String> nlist = (ArrayList<String>)loadObject(sObjectCategory, ListCategoryName); //create a name list that it contains all names of save object
-            nlist.add(sObjectName);                                                                     // add name in the name list
+                ArrayList<String> nlist = (ArrayList<String>)loadObjectChecked(sObjectCategory, ListCategoryName); //create a name list that it contains all names of save object
+                nlist.add(sObjectName);                                                                     // add name in the name list
         
-            super.saveObject(nlist, sObjectCategory, ListCategoryName);                                 // save the name list
+                super.saveObjectChecked(nlist, sObjectCategory, ListCategoryName);                          // save the name list
             
-        }else {
-            ArrayList<String>  nlist = new ArrayList<String>();
-            nlist.add(sObjectName);
+            }else {
+                ArrayList<String>  nlist = new ArrayList<String>();
+                nlist.add(sObjectName);
         
-            super.saveObject(nlist, sObjectCategory, ListCategoryName);
+                super.saveObjectChecked(nlist, sObjectCategory, ListCategoryName);
+            }
         }
         
-        
     }
     
    
@@ -88,13 +92,17 @@ public class INSECTFileDBWithDir extends INSECTFileDB{
      * @param sObjectCategory  the category name
      */
     @Override
-   public void deleteObject(String sObjectName, String sObjectCategory) {
+   public synchronized void deleteObject(String sObjectName, String sObjectCategory) {
         int index;
         super.deleteObject(sObjectName, sObjectCategory);                       // delete the object
         ArrayList<String> nlist = (ArrayList<String>)loadObject(sObjectCategory, ListCategoryName); // load the name list
         index= nlist.indexOf(sObjectName);                                      //find the index in tha name list
         nlist.remove(index);                                                    // remove name from name list
-        super.saveObject(nlist, sObjectCategory, ListCategoryName);             //save new name list
+        try {
+            super.saveObjectChecked(nlist, sObjectCategory, ListCategoryName);  //save new name list
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
     
     
@@ -5,6 +5,7 @@
 
 package gr.demokritos.iit.jinsect.storage;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -24,48 +25,36 @@ public class INSECTFileRawDB<TObjectType extends Serializable> extends INSECTFil
     }
 
     @Override
-    public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        outdateMappedGraph(sObjectName, sObjectCategory);
+        FileOutputStream fsOut = new FileOutputStream(getFileName(sObjectName, sObjectCategory));
         try {
-            FileOutputStream fsOut = new FileOutputStream(getFileName(sObjectName, sObjectCategory));
-
             ObjectOutputStream oOut = new ObjectOutputStream(fsOut);
             oOut.writeObject(oObj);
-            // Complete the GZIP file
-            fsOut.close();
+            oOut.flush();
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        finally {
+            fsOut.close();
         }
     }
 
     @Override
-    public TObjectType loadObject(String sObjectName, String sObjectCategory) {
-        FileInputStream fsIn = null;
-        ObjectInputStream iIn = null;
-        try {
-            fsIn = new FileInputStream(getFileName(sObjectName, sObjectCategory));
-            iIn = new ObjectInputStream(fsIn);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
+    protected TObjectType loadObjectChecked(String sObjectName, String sObjectCategory)
+            throws IOException {
+        File fFile = new File(getFileName(sObjectName, sObjectCategory));
+        if (!fFile.exists())
             return null;
-        }
-
-        Object oRes;
+        ObjectInputStream iIn = new ObjectInputStream(new FileInputStream(fFile));
         try {
-            oRes = iIn.readObject();
+            return (TObjectType)iIn.readObject();
         }
-        catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        catch (ClassNotFoundException cnfe) {
+            throw new IOException("Cannot load " + fFile + ": " + cnfe.getMessage());
         }
-
-        try {
-            fsIn.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+        finally {
+            iIn.close();
         }
-        return (TObjectType)oRes;
     }
 
 }
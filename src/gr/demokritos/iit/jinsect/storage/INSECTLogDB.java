@@ -0,0 +1,678 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphBinaryFormat;
+import gr.demokritos.iit.jinsect.utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** A database that appends every saved or deleted object as a record to a log,
+ * split in segment files, keeping an in-memory index from object names to record
+ * positions. Saving, loading, deleting, checking and listing objects thus never
+ * scan or create files per object.
+ *<p>
+ * The segments are kept by a {@link SegmentedLog}, which frames every record by
+ * its length and a CRC32 checksum. The body of a record holds the type of the
+ * record, the category and name of the object and its data: n-gram graphs
+ * supported by {@link NGramGraphBinaryFormat} are stored in that format, other
+ * objects as gzipped Java serialization streams. Deletions are stored as records
+ * without data.
+ *<p>
+ * The index is persisted to a checkpoint file by {@link #checkpoint()} and
+ * {@link #finalizeDB()}. On opening, the checkpoint is loaded and the records
+ * appended after it are replayed; a torn or corrupt record at the tail of a
+ * segment (e.g. after a crash) is truncated. Saves are made durable by group
+ * commit: concurrent savers share a single fsync of the log. Older versions of
+ * objects are dropped by {@link #compact()}, which copies all live records of
+ * the sealed segments to new segments.
+ *
+ * @author ggianna
+ */
+public class INSECTLogDB<TObjectType extends Serializable> extends INSECTDB<TObjectType> {
+    /** The default maximum size of a segment file, in bytes. */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    /** The suffix of the segment files. */
+    public static final String SEGMENT_SUFFIX = ".log";
+    /** The suffix of the index checkpoint file. */
+    public static final String INDEX_SUFFIX = ".index";
+
+    protected static final byte RECORD_OBJECT = 1;
+    protected static final byte RECORD_GRAPH = 2;
+    protected static final byte RECORD_DELETE = 3;
+    protected static final int INDEX_MAGIC = 0x4A4C4749;
+    protected static final int INDEX_VERSION = 1;
+
+    protected final String Prefix;
+    protected final String BaseDir;
+    /** The segments of the log. */
+    protected final SegmentedLog Log;
+    /** If true, every save or delete returns only after the log is synced. */
+    protected boolean SyncOnSave = true;
+    /** If positive, the log is compacted when the ratio of superseded bytes to all
+     * bytes exceeds this value, and the log is bigger than a segment. */
+    protected double AutoCompactionRatio = 0.0;
+
+    /** Guards the index. Loads hold the read lock, while appends and compactions
+     * hold the write lock. */
+    protected final ReentrantReadWriteLock Lock = new ReentrantReadWriteLock();
+    /** The record of every object, by category and name. */
+    protected final HashMap<String, HashMap<String, SegmentedLog.Location>> Index =
+            new HashMap<String, HashMap<String, SegmentedLog.Location>>();
+    /** The total size of all records, and of the records of live objects. */
+    protected long TotalBytes = 0, LiveBytes = 0;
+
+    /** The number of records appended, used as the tickets of the records for
+     * group commit. Guarded by the write lock. */
+    protected long AppendedRecords = 0;
+
+    /** Opens a log database in a given directory, recovering its index from the
+     * last checkpoint and the segments. The directory is created if required.
+     *@param sPrefix The prefix of the names of the files of the database.
+     *@param sBaseDir The directory of the database.
+     *@throws IOException If the database cannot be opened.
+     */
+    public INSECTLogDB(String sPrefix, String sBaseDir) throws IOException {
+        Prefix = (sPrefix == null) ? "" : sPrefix;
+        BaseDir = (sBaseDir == null) ? "./" : sBaseDir;
+        Log = new SegmentedLog(Prefix, BaseDir, SEGMENT_SUFFIX, DEFAULT_SEGMENT_SIZE);
+        open();
+    }
+
+    /** Sets the size over which a new segment is started.
+     *@param lMaxSegmentSize The maximum segment size, in bytes.
+     */
+    public void setMaxSegmentSize(long lMaxSegmentSize) {
+        Log.setMaxSegmentSize(lMaxSegmentSize);
+    }
+
+    public long getMaxSegmentSize() {
+        return Log.getMaxSegmentSize();
+    }
+
+    /** Sets whether saves and deletes wait for the log to be synced to disk. If
+     * not, changes are synced by {@link #sync()}, {@link #checkpoint()} and
+     * {@link #finalizeDB()}.
+     *@param bSyncOnSave If true, every change is durable once saved.
+     */
+    public void setSyncOnSave(boolean bSyncOnSave) {
+        SyncOnSave = bSyncOnSave;
+    }
+
+    public boolean isSyncOnSave() {
+        return SyncOnSave;
+    }
+
+    /** Sets the ratio of superseded to total log bytes over which the log is
+     * compacted automatically after a save.
+     *@param dRatio The ratio, in (0, 1), or zero to disable automatic compaction.
+     */
+    public void setAutoCompactionRatio(double dRatio) {
+        AutoCompactionRatio = dRatio;
+    }
+
+    public double getAutoCompactionRatio() {
+        return AutoCompactionRatio;
+    }
+
+    /** Returns the ratio of the bytes of superseded or deleted records to the
+     * bytes of all records.
+     *@return The ratio, zero for an empty log.
+     */
+    public double getGarbageRatio() {
+        Lock.readLock().lock();
+        try {
+            return (TotalBytes == 0) ? 0.0 : (double)(TotalBytes - LiveBytes) / TotalBytes;
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    /** Checks whether the log should be compacted automatically. */
+    protected boolean needsCompaction() {
+        Lock.readLock().lock();
+        try {
+            return (TotalBytes > Log.getMaxSegmentSize()) &&
+                (TotalBytes - LiveBytes > AutoCompactionRatio * TotalBytes);
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    protected File getIndexFile() {
+        return new File(BaseDir, Prefix + INDEX_SUFFIX);
+    }
+
+    /** Recovers the index from the checkpoint and the segments. */
+    protected void open() throws IOException {
+        // Load the checkpoint and replay the records that follow it
+        int iFromSegment = -1;
+        long lFromOffset = 0;
+        long[] laCheckpoint = readIndex();
+        if (laCheckpoint != null) {
+            iFromSegment = (int)laCheckpoint[0];
+            lFromOffset = laCheckpoint[1];
+        }
+        for (SegmentedLog.Segment sCur : Log.getSegments()) {
+            if (sCur.getId() < iFromSegment)
+                continue;
+            scanSegment(sCur, (sCur.getId() == iFromSegment) ? lFromOffset : 0);
+        }
+
+        TotalBytes = Log.getTotalSize();
+        LiveBytes = 0;
+        for (HashMap<String, SegmentedLog.Location> hmCategory : Index.values())
+            for (SegmentedLog.Location lCur : hmCategory.values())
+                LiveBytes += lCur.Length;
+    }
+
+    /** Reads the index checkpoint, if a valid one exists.
+     *@return The segment and offset up to which the loaded index is valid, or
+     * null if there is no valid checkpoint (and the index is empty).
+     */
+    protected long[] readIndex() {
+        File fIndex = getIndexFile();
+        if (!fIndex.exists())
+            return null;
+        try {
+            byte[] baData = Files.readAllBytes(fIndex.toPath());
+            if (baData.length < 4)
+                return null;
+            CRC32 cCrc = new CRC32();
+            cCrc.update(baData, 0, baData.length - 4);
+            if ((int)cCrc.getValue() != ByteBuffer.wrap(baData, baData.length - 4, 4).getInt())
+                return null;
+
+            DataInputStream disIn = new DataInputStream(new ByteArrayInputStream(
+                    baData, 0, baData.length - 4));
+            if ((disIn.readInt() != INDEX_MAGIC) || (disIn.readInt() != INDEX_VERSION))
+                return null;
+            int iSegment = disIn.readInt();
+            long lOffset = disIn.readLong();
+            // The checkpoint must refer to existing data
+            SegmentedLog.Segment sCheckpoint = Log.getSegment(iSegment);
+            if ((sCheckpoint == null) || (sCheckpoint.getSize() < lOffset))
+                return null;
+
+            int iCount = disIn.readInt();
+            for (int iCnt = 0; iCnt < iCount; iCnt++) {
+                String sCategory = disIn.readUTF();
+                String sName = disIn.readUTF();
+                SegmentedLog.Location lCur = new SegmentedLog.Location(disIn.readInt(),
+                        disIn.readLong(), disIn.readInt());
+                SegmentedLog.Segment sRecord = Log.getSegment(lCur.Segment);
+                if ((sRecord == null) || (sRecord.getSize() < lCur.Offset + lCur.Length)) {
+                    Index.clear();
+                    return null;
+                }
+                getCategoryIndex(sCategory, true).put(sName, lCur);
+            }
+            return new long[] {iSegment, lOffset};
+        }
+        catch (IOException ioe) {
+            System.err.println("Cannot read index checkpoint. Scanning log.");
+            Index.clear();
+            return null;
+        }
+    }
+
+    /** Replays the records of a segment from a given offset, updating the index.
+     * The segment is truncated at the first incomplete or corrupt record.
+     */
+    protected void scanSegment(SegmentedLog.Segment sSegment, long lFrom)
+            throws IOException {
+        Log.scan(sSegment, lFrom, new SegmentedLog.RecordHandler() {
+            @Override
+            public void handleRecord(SegmentedLog.Location lRecord, byte[] baBody)
+                    throws IOException {
+                DataInputStream disIn = new DataInputStream(
+                        new ByteArrayInputStream(baBody));
+                byte bType = disIn.readByte();
+                String sCategory = disIn.readUTF();
+                String sName = disIn.readUTF();
+                if (bType == RECORD_DELETE) {
+                    HashMap<String, SegmentedLog.Location> hmCategory =
+                            getCategoryIndex(sCategory, false);
+                    if (hmCategory != null)
+                        hmCategory.remove(sName);
+                }
+                else
+                    getCategoryIndex(sCategory, true).put(sName, lRecord);
+            }
+        });
+    }
+
+    protected HashMap<String, SegmentedLog.Location> getCategoryIndex(String sCategory,
+            boolean bCreate) {
+        HashMap<String, SegmentedLog.Location> hmRes = Index.get(sCategory);
+        if ((hmRes == null) && bCreate) {
+            hmRes = new HashMap<String, SegmentedLog.Location>();
+            Index.put(sCategory, hmRes);
+        }
+        return hmRes;
+    }
+
+    /** Encodes a record, with its header. */
+    protected static byte[] encodeRecord(byte bType, String sCategory, String sName,
+            byte[] baData) throws IOException {
+        ByteArrayOutputStream baosBody = new ByteArrayOutputStream(
+                (baData == null) ? 64 : baData.length + 64);
+        DataOutputStream dosBody = new DataOutputStream(baosBody);
+        dosBody.writeByte(bType);
+        dosBody.writeUTF(sCategory);
+        dosBody.writeUTF(sName);
+        if (baData != null)
+            dosBody.write(baData);
+        dosBody.close();
+        return SegmentedLog.encodeRecord(baosBody.toByteArray());
+    }
+
+    /** Appends a record to the log and updates the index.
+     *@return The number of records appended so far, to wait for with
+     * {@link #sync(long)}.
+     */
+    protected long append(byte[] baRecord, byte bType, String sCategory, String sName)
+            throws IOException {
+        Lock.writeLock().lock();
+        try {
+            long lTicket = AppendedRecords + 1;
+            SegmentedLog.Location lNew = Log.append(baRecord, lTicket);
+            AppendedRecords = lTicket;
+            TotalBytes += baRecord.length;
+
+            SegmentedLog.Location lOld;
+            if (bType == RECORD_DELETE) {
+                HashMap<String, SegmentedLog.Location> hmCategory =
+                        getCategoryIndex(sCategory, false);
+                lOld = (hmCategory == null) ? null : hmCategory.remove(sName);
+            }
+            else {
+                lOld = getCategoryIndex(sCategory, true).put(sName, lNew);
+                LiveBytes += baRecord.length;
+            }
+            if (lOld != null)
+                LiveBytes -= lOld.Length;
+            return lTicket;
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    /** Waits until a given number of appended records are synced to disk. If no
+     * sync covering them is in progress, syncs all the records appended so far,
+     * so that concurrent savers share a single sync.
+     *@param lRecords The number of records that must be synced.
+     */
+    protected void sync(long lRecords) throws IOException {
+        Log.sync(lRecords);
+    }
+
+    /** Syncs all the changes made so far to disk.
+     *@throws IOException If syncing fails.
+     */
+    public void sync() throws IOException {
+        Log.sync();
+    }
+
+    /** Encodes the data of an object. */
+    protected static byte[] encodeObject(Serializable oObj) throws IOException {
+        ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
+        if (NGramGraphBinaryFormat.isSupported(oObj))
+            NGramGraphBinaryFormat.write((DocumentNGramGraph)oObj,
+                    Channels.newChannel(baosOut));
+        else {
+            GZIPOutputStream gzOut = new GZIPOutputStream(baosOut);
+            ObjectOutputStream oOut = new ObjectOutputStream(gzOut);
+            oOut.writeObject(oObj);
+            oOut.close();
+        }
+        return baosOut.toByteArray();
+    }
+
+    @Override
+    public void saveObject(Serializable oObj, String sObjectName, String sObjectCategory) {
+        try {
+            saveObjectChecked(oObj, sObjectName, sObjectCategory);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    @Override
+    protected void saveObjectChecked(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        long lRecords = appendObject(oObj, sObjectName, sObjectCategory);
+        if (SyncOnSave)
+            sync(lRecords);
+        if ((AutoCompactionRatio > 0) && needsCompaction())
+            compact();
+    }
+
+    /** Encodes and appends an object, without syncing.
+     *@return The number of records appended so far, to wait for with
+     * {@link #sync(long)}.
+     */
+    protected long appendObject(Serializable oObj, String sObjectName,
+            String sObjectCategory) throws IOException {
+        byte bType = NGramGraphBinaryFormat.isSupported(oObj) ? RECORD_GRAPH :
+            RECORD_OBJECT;
+        byte[] baRecord = encodeRecord(bType, sObjectCategory, sObjectName,
+                encodeObject(oObj));
+        return append(baRecord, bType, sObjectCategory, sObjectName);
+    }
+
+    /** Saves a number of objects of a category asynchronously. The objects are
+     * encoded and appended in parallel on the I/O executor, and synced once, when
+     * all of them are appended.
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, ? extends Serializable> mObjects,
+            final String sObjectCategory) {
+        List<CompletableFuture<Long>> lAppends = new ArrayList<CompletableFuture<Long>>();
+        for (final Map.Entry<String, ? extends Serializable> eCur : mObjects.entrySet())
+            lAppends.add(CompletableFuture.supplyAsync(new Supplier<Long>() {
+                @Override
+                public Long get() {
+                    try {
+                        return appendObject(eCur.getValue(), eCur.getKey(),
+                                sObjectCategory);
+                    } catch (IOException ioe) {
+                        throw new CompletionException(ioe);
+                    }
+                }
+            }, getIOExecutor()));
+        return CompletableFuture.allOf(lAppends.toArray(
+                new CompletableFuture[lAppends.size()])).thenRunAsync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (SyncOnSave)
+                        sync();
+                } catch (IOException ioe) {
+                    throw new CompletionException(ioe);
+                }
+                if ((AutoCompactionRatio > 0) && needsCompaction())
+                    compact();
+            }
+        }, getIOExecutor());
+    }
+
+    @Override
+    public TObjectType loadObject(String sObjectName, String sObjectCategory) {
+        try {
+            return loadObjectChecked(sObjectName, sObjectCategory);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    protected TObjectType loadObjectChecked(String sObjectName, String sObjectCategory)
+            throws IOException {
+        byte[] baBody;
+        Lock.readLock().lock();
+        try {
+            SegmentedLog.Location lRecord = getLocation(sObjectName, sObjectCategory);
+            if (lRecord == null)
+                return null;
+            baBody = Log.readRecord(lRecord);
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+
+        DataInputStream disIn = new DataInputStream(new ByteArrayInputStream(baBody));
+        byte bType = disIn.readByte();
+        disIn.readUTF();
+        disIn.readUTF();
+        if (bType == RECORD_GRAPH)
+            return (TObjectType)NGramGraphBinaryFormat.read(Channels.newChannel(disIn));
+        ObjectInputStream oisIn = new ObjectInputStream(new GZIPInputStream(disIn));
+        try {
+            return (TObjectType)oisIn.readObject();
+        }
+        catch (ClassNotFoundException cnfe) {
+            throw new IOException("Cannot load " + sObjectName + ": " + cnfe.getMessage());
+        }
+        finally {
+            oisIn.close();
+        }
+    }
+
+    /** Returns the location of the record of an object. Must be called while
+     * holding a lock. */
+    protected SegmentedLog.Location getLocation(String sObjectName,
+            String sObjectCategory) {
+        HashMap<String, SegmentedLog.Location> hmCategory = Index.get(sObjectCategory);
+        return (hmCategory == null) ? null : hmCategory.get(sObjectName);
+    }
+
+    @Override
+    public void deleteObject(String sObjectName, String sObjectCategory) {
+        if (!existsObject(sObjectName, sObjectCategory))
+            return;
+        try {
+            long lRecords = append(encodeRecord(RECORD_DELETE, sObjectCategory,
+                    sObjectName, null), RECORD_DELETE, sObjectCategory, sObjectName);
+            if (SyncOnSave)
+                sync(lRecords);
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean existsObject(String sObjectName, String sObjectCategory) {
+        Lock.readLock().lock();
+        try {
+            return getLocation(sObjectName, sObjectCategory) != null;
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String[] getObjectList(String sObjectCategory) {
+        Lock.readLock().lock();
+        try {
+            HashMap<String, SegmentedLog.Location> hmCategory = Index.get(sObjectCategory);
+            if (hmCategory == null)
+                return new String[0];
+            return hmCategory.keySet().toArray(new String[hmCategory.size()]);
+        }
+        finally {
+            Lock.readLock().unlock();
+        }
+    }
+
+    /** Copies the live records of all the segments, but the active one, to new
+     * segments and deletes the old segments, dropping superseded versions and
+     * deleted objects. A checkpoint is written before the old segments are
+     * deleted, so that a crash never loses data. Other operations wait for the
+     * compaction to complete.
+     */
+    public void compact() {
+        Lock.writeLock().lock();
+        try {
+            // Seal the active segment, so that all existing records are compacted
+            if (Log.getActiveSegment().getSize() > 0)
+                Log.roll();
+            int iFirstNew = Log.getActiveSegment().getId();
+            List<SegmentedLog.Segment> lOld = new ArrayList<SegmentedLog.Segment>();
+            for (SegmentedLog.Segment sCur : Log.getSegments())
+                if (sCur.getId() < iFirstNew)
+                    lOld.add(sCur);
+            if (lOld.isEmpty())
+                return;
+
+            for (HashMap<String, SegmentedLog.Location> hmCategory : Index.values())
+                for (Map.Entry<String, SegmentedLog.Location> eCur :
+                        hmCategory.entrySet()) {
+                    SegmentedLog.Location lOldRecord = eCur.getValue();
+                    if (lOldRecord.Segment >= iFirstNew)
+                        continue;
+                    eCur.setValue(Log.append(SegmentedLog.encodeRecord(
+                            Log.readRecord(lOldRecord)), AppendedRecords));
+                }
+            Log.force();
+            writeIndex();
+
+            for (SegmentedLog.Segment sOld : lOld)
+                Log.deleteSegment(sOld);
+            TotalBytes = Log.getTotalSize();
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    /** Syncs the log and writes a checkpoint of the index, so that the next
+     * opening only replays the records appended after the checkpoint.
+     *@throws IOException If writing the checkpoint fails.
+     */
+    public void checkpoint() throws IOException {
+        Lock.writeLock().lock();
+        try {
+            Log.force();
+            writeIndex();
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    /** Writes the index to the checkpoint file, through a temporary file. Must be
+     * called while holding the write lock, after syncing the log. */
+    protected void writeIndex() throws IOException {
+        ByteArrayOutputStream baosOut = new ByteArrayOutputStream();
+        DataOutputStream dosOut = new DataOutputStream(baosOut);
+        dosOut.writeInt(INDEX_MAGIC);
+        dosOut.writeInt(INDEX_VERSION);
+        SegmentedLog.Segment sActive = Log.getActiveSegment();
+        dosOut.writeInt(sActive.getId());
+        dosOut.writeLong(sActive.getSize());
+        int iCount = 0;
+        for (HashMap<String, SegmentedLog.Location> hmCategory : Index.values())
+            iCount += hmCategory.size();
+        dosOut.writeInt(iCount);
+        for (Map.Entry<String, HashMap<String, SegmentedLog.Location>> eCategory :
+                Index.entrySet())
+            for (Map.Entry<String, SegmentedLog.Location> eCur :
+                    eCategory.getValue().entrySet()) {
+                dosOut.writeUTF(eCategory.getKey());
+                dosOut.writeUTF(eCur.getKey());
+                dosOut.writeInt(eCur.getValue().Segment);
+                dosOut.writeLong(eCur.getValue().Offset);
+                dosOut.writeInt(eCur.getValue().Length);
+            }
+        dosOut.close();
+        byte[] baData = baosOut.toByteArray();
+        CRC32 cCrc = new CRC32();
+        cCrc.update(baData);
+
+        File fIndex = getIndexFile();
+        File fTemp = utils.createTempFileFor(fIndex);
+        try {
+            FileChannel fcOut = FileChannel.open(fTemp.toPath(), StandardOpenOption.WRITE);
+            try {
+                SegmentedLog.writeFully(fcOut, ByteBuffer.wrap(baData), 0);
+                SegmentedLog.writeFully(fcOut, (ByteBuffer)ByteBuffer.allocate(4).putInt(
+                        (int)cCrc.getValue()).flip(), baData.length);
+                fcOut.force(true);
+            }
+            finally {
+                fcOut.close();
+            }
+        }
+        catch (IOException ioe) {
+            fTemp.delete();
+            throw ioe;
+        }
+        utils.replaceFile(fTemp, fIndex);
+    }
+
+    /** Writes a checkpoint and closes the segment files. The database cannot be
+     * used afterwards. */
+    @Override
+    public void finalizeDB() {
+        Lock.writeLock().lock();
+        try {
+            Log.force();
+            writeIndex();
+            Log.close();
+        }
+        catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+        finally {
+            Lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getObjDataToString(Object oObject) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try {
+            ObjectOutputStream os = new ObjectOutputStream(bos);
+            os.writeObject(oObject);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null; // Failed
+        }
+
+        return bos.toString();
+    }
+
+    @Override
+    public TObjectType getStringToObjData(String sData) {
+        ByteArrayInputStream bin = new ByteArrayInputStream(sData.getBytes());
+        try {
+            ObjectInputStream ois = new ObjectInputStream(bin);
+            return (TObjectType)ois.readObject();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return null; // Failed
+        }
+    }
+}
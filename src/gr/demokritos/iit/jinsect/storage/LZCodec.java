@@ -0,0 +1,362 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 compression codec, in the spirit of LZ4. Data are split into
+ * blocks of up to {@link #BLOCK_SIZE} bytes, compressed independently. Every
+ * block is a sequence of literal runs and back-references, found through a
+ * single hash table probe per position and never searched further, so that
+ * compression is cheap and decompression is little more than copying bytes.
+ * <p>
+ * Every block is written as its decompressed length and its compressed length
+ * (4 bytes each, big-endian), followed by the compressed data. A compressed
+ * length of 0 denotes a block stored as is, and a decompressed length of 0 ends
+ * the stream.
+ *
+ * @author ggianna
+ */
+public class LZCodec implements ICompressionCodec {
+    /** The maximum decompressed size of a block. */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = (1 << 16) - 1;
+    private static final int HASH_BITS = 14;
+
+    @Override
+    public byte getId() {
+        return 2;
+    }
+
+    @Override
+    public String getName() {
+        return "lz";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream osOut) {
+        return new LZOutputStream(osOut);
+    }
+
+    @Override
+    public InputStream decompress(InputStream isIn) {
+        return new LZInputStream(isIn);
+    }
+
+    private Object readResolve() {
+        return CompressionCodecs.LZ;
+    }
+
+    /** Returns the maximum compressed size of a block.
+     *@param iLength The decompressed size of the block.
+     *@return The maximum size of the compressed block.
+     */
+    public static int maxCompressedLength(int iLength) {
+        return iLength + (iLength / 255) + 16;
+    }
+
+    /** Compresses a block of data.
+     *@param baSrc The buffer of the data.
+     *@param iSrcLength The length of the data.
+     *@param baDest The buffer of the compressed data, of at least
+     * {@link #maxCompressedLength(int)} bytes.
+     *@param iaHashTable A table of 2^14 entries, used as scratch space.
+     *@return The length of the compressed data.
+     */
+    public static int compressBlock(byte[] baSrc, int iSrcLength, byte[] baDest,
+            int[] iaHashTable) {
+        // Entries are positions plus one, so that zero means no position
+        Arrays.fill(iaHashTable, 0);
+        int iSrc = 0, iAnchor = 0, iDest = 0;
+        int iLimit = iSrcLength - MIN_MATCH;
+        while (iSrc <= iLimit) {
+            int iSeq = readInt(baSrc, iSrc);
+            int iHash = (iSeq * -1640531535) >>> (32 - HASH_BITS);
+            int iRef = iaHashTable[iHash] - 1;
+            iaHashTable[iHash] = iSrc + 1;
+            if ((iRef < 0) || (iSrc - iRef > MAX_OFFSET) || (readInt(baSrc, iRef) != iSeq)) {
+                // Skip faster over incompressible data
+                iSrc += 1 + ((iSrc - iAnchor) >>> 6);
+                continue;
+            }
+
+            int iMatchLength = MIN_MATCH;
+            while ((iSrc + iMatchLength < iSrcLength) &&
+                    (baSrc[iRef + iMatchLength] == baSrc[iSrc + iMatchLength]))
+                iMatchLength++;
+            iDest = writeSequence(baSrc, iAnchor, iSrc - iAnchor, iSrc - iRef,
+                    iMatchLength, baDest, iDest);
+            iSrc += iMatchLength;
+            iAnchor = iSrc;
+        }
+        // The last sequence only holds literals
+        return writeSequence(baSrc, iAnchor, iSrcLength - iAnchor, 0, 0, baDest, iDest);
+    }
+
+    /** Decompresses a block of data.
+     *@param baSrc The buffer of the compressed data.
+     *@param iSrcLength The length of the compressed data.
+     *@param baDest The buffer of the decompressed data.
+     *@param iDestLength The length of the decompressed data.
+     *@throws IOException If the compressed data are corrupt.
+     */
+    public static void decompressBlock(byte[] baSrc, int iSrcLength, byte[] baDest,
+            int iDestLength) throws IOException {
+        int iSrc = 0, iDest = 0;
+        try {
+            while (true) {
+                int iToken = baSrc[iSrc++] & 0xff;
+                int iLiterals = iToken >>> 4;
+                if (iLiterals == 15) {
+                    int iCur;
+                    do {
+                        iCur = baSrc[iSrc++] & 0xff;
+                        iLiterals += iCur;
+                    } while (iCur == 255);
+                }
+                System.arraycopy(baSrc, iSrc, baDest, iDest, iLiterals);
+                iSrc += iLiterals;
+                iDest += iLiterals;
+                if (iSrc >= iSrcLength)
+                    break;
+
+                int iOffset = (baSrc[iSrc++] & 0xff) | ((baSrc[iSrc++] & 0xff) << 8);
+                int iMatchLength = iToken & 15;
+                if (iMatchLength == 15) {
+                    int iCur;
+                    do {
+                        iCur = baSrc[iSrc++] & 0xff;
+                        iMatchLength += iCur;
+                    } while (iCur == 255);
+                }
+                iMatchLength += MIN_MATCH;
+                int iRef = iDest - iOffset;
+                if ((iOffset == 0) || (iRef < 0) || (iDest + iMatchLength > iDestLength))
+                    throw new IOException("Corrupt LZ block");
+                if (iOffset >= iMatchLength)
+                    System.arraycopy(baDest, iRef, baDest, iDest, iMatchLength);
+                else
+                    // Overlapping matches repeat the last bytes
+                    for (int iCnt = 0; iCnt < iMatchLength; iCnt++)
+                        baDest[iDest + iCnt] = baDest[iRef + iCnt];
+                iDest += iMatchLength;
+            }
+        }
+        catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Corrupt LZ block");
+        }
+        if (iDest != iDestLength)
+            throw new IOException("Corrupt LZ block");
+    }
+
+    private static int writeSequence(byte[] baSrc, int iLiteralStart, int iLiterals,
+            int iOffset, int iMatchLength, byte[] baDest, int iDest) {
+        int iTokenPos = iDest++;
+        int iToken = Math.min(iLiterals, 15) << 4;
+        if (iLiterals >= 15)
+            iDest = writeLength(iLiterals - 15, baDest, iDest);
+        System.arraycopy(baSrc, iLiteralStart, baDest, iDest, iLiterals);
+        iDest += iLiterals;
+        if (iMatchLength > 0) {
+            baDest[iDest++] = (byte)iOffset;
+            baDest[iDest++] = (byte)(iOffset >>> 8);
+            int iLength = iMatchLength - MIN_MATCH;
+            iToken |= Math.min(iLength, 15);
+            if (iLength >= 15)
+                iDest = writeLength(iLength - 15, baDest, iDest);
+        }
+        baDest[iTokenPos] = (byte)iToken;
+        return iDest;
+    }
+
+    private static int writeLength(int iLength, byte[] baDest, int iDest) {
+        while (iLength >= 255) {
+            baDest[iDest++] = (byte)255;
+            iLength -= 255;
+        }
+        baDest[iDest++] = (byte)iLength;
+        return iDest;
+    }
+
+    private static int readInt(byte[] baData, int iPos) {
+        return (baData[iPos] & 0xff) | ((baData[iPos + 1] & 0xff) << 8) |
+                ((baData[iPos + 2] & 0xff) << 16) | ((baData[iPos + 3] & 0xff) << 24);
+    }
+
+    private static void writeBigEndianInt(byte[] baData, int iPos, int iValue) {
+        baData[iPos] = (byte)(iValue >>> 24);
+        baData[iPos + 1] = (byte)(iValue >>> 16);
+        baData[iPos + 2] = (byte)(iValue >>> 8);
+        baData[iPos + 3] = (byte)iValue;
+    }
+
+    private static int readBigEndianInt(byte[] baData, int iPos) {
+        return ((baData[iPos] & 0xff) << 24) | ((baData[iPos + 1] & 0xff) << 16) |
+                ((baData[iPos + 2] & 0xff) << 8) | (baData[iPos + 3] & 0xff);
+    }
+
+    /** Compresses the data written to it block by block. */
+    private static class LZOutputStream extends OutputStream {
+        private final OutputStream Out;
+        private final byte[] Block = new byte[BLOCK_SIZE];
+        private final byte[] Compressed = new byte[8 + maxCompressedLength(BLOCK_SIZE)];
+        private final int[] HashTable = new int[1 << HASH_BITS];
+        private int BlockLength = 0;
+        private boolean Closed = false;
+
+        LZOutputStream(OutputStream osOut) {
+            Out = osOut;
+        }
+
+        @Override
+        public void write(int iByte) throws IOException {
+            if (BlockLength == BLOCK_SIZE)
+                writeBlock();
+            Block[BlockLength++] = (byte)iByte;
+        }
+
+        @Override
+        public void write(byte[] baData, int iOffset, int iLength) throws IOException {
+            while (iLength > 0) {
+                if (BlockLength == BLOCK_SIZE)
+                    writeBlock();
+                int iCopied = Math.min(iLength, BLOCK_SIZE - BlockLength);
+                System.arraycopy(baData, iOffset, Block, BlockLength, iCopied);
+                BlockLength += iCopied;
+                iOffset += iCopied;
+                iLength -= iCopied;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            Out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (Closed)
+                return;
+            Closed = true;
+            try {
+                writeBlock();
+                // End of stream marker
+                writeBigEndianInt(Compressed, 0, 0);
+                writeBigEndianInt(Compressed, 4, 0);
+                Out.write(Compressed, 0, 8);
+            }
+            finally {
+                Out.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (BlockLength == 0)
+                return;
+            int iLength = compressBlock(Block, BlockLength, Compressed, HashTable);
+            if (iLength >= BlockLength) {
+                // Incompressible block
+                writeBigEndianInt(Compressed, 0, BlockLength);
+                writeBigEndianInt(Compressed, 4, 0);
+                Out.write(Compressed, 0, 8);
+                Out.write(Block, 0, BlockLength);
+            }
+            else {
+                // Move the compressed data after the block header
+                System.arraycopy(Compressed, 0, Compressed, 8, iLength);
+                writeBigEndianInt(Compressed, 0, BlockLength);
+                writeBigEndianInt(Compressed, 4, iLength);
+                Out.write(Compressed, 0, iLength + 8);
+            }
+            BlockLength = 0;
+        }
+    }
+
+    /** Decompresses the blocks of an underlying stream. */
+    private static class LZInputStream extends InputStream {
+        private final InputStream In;
+        private final byte[] Block = new byte[BLOCK_SIZE];
+        private final byte[] Compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        private final byte[] Header = new byte[8];
+        private int BlockLength = 0;
+        private int Position = 0;
+        private boolean Finished = false;
+
+        LZInputStream(InputStream isIn) {
+            In = isIn;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if ((Position == BlockLength) && !readBlock())
+                return -1;
+            return Block[Position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] baData, int iOffset, int iLength) throws IOException {
+            if (iLength == 0)
+                return 0;
+            if ((Position == BlockLength) && !readBlock())
+                return -1;
+            int iCopied = Math.min(iLength, BlockLength - Position);
+            System.arraycopy(Block, Position, baData, iOffset, iCopied);
+            Position += iCopied;
+            return iCopied;
+        }
+
+        @Override
+        public int available() {
+            return BlockLength - Position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            In.close();
+        }
+
+        private boolean readBlock() throws IOException {
+            if (Finished)
+                return false;
+            readFully(Header, 8);
+            int iLength = readBigEndianInt(Header, 0);
+            int iCompressedLength = readBigEndianInt(Header, 4);
+            if (iLength == 0) {
+                Finished = true;
+                return false;
+            }
+            if ((iLength < 0) || (iLength > BLOCK_SIZE) || (iCompressedLength < 0) ||
+                    (iCompressedLength > Compressed.length))
+                throw new IOException("Corrupt LZ block header");
+            if (iCompressedLength == 0)
+                readFully(Block, iLength);
+            else {
+                readFully(Compressed, iCompressedLength);
+                decompressBlock(Compressed, iCompressedLength, Block, iLength);
+            }
+            BlockLength = iLength;
+            Position = 0;
+            return true;
+        }
+
+        private void readFully(byte[] baData, int iLength) throws IOException {
+            int iRead = 0;
+            while (iRead < iLength) {
+                int iCur = In.read(baData, iRead, iLength - iRead);
+                if (iCur < 0)
+                    throw new EOFException("Truncated LZ stream");
+                iRead += iCur;
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** An append-only log of records, split in numbered segment files of a
+ * directory. Every record is framed by its length and a CRC32 checksum of its
+ * body, so that torn or corrupt records are detected when the log is scanned.
+ * The log is used by {@link INSECTLogDB} and by the training journal of the
+ * spam filter server.
+ *<p>
+ * Appends are made durable by group commit: every append is given a ticket by
+ * the caller, increasing with every append, and {@link #sync(long)} lets
+ * concurrent writers share a single sync of the active segment. Segments are
+ * synced when a new segment is started, so only the last segment can hold records
+ * that were not synced, and only it may end in a torn record after a crash.
+ *
+ * @author ggianna
+ */
+public class SegmentedLog implements Closeable {
+    /** The size of the header of every record: its length and checksum. */
+    public static final int RECORD_HEADER_SIZE = 8;
+
+    protected final String Prefix;
+    protected final String BaseDir;
+    protected final String Suffix;
+    protected long MaxSegmentSize;
+
+    /** The segments, by id. Guarded by the log itself. */
+    protected final TreeMap<Integer, Segment> Segments = new TreeMap<Integer, Segment>();
+    protected Segment ActiveSegment;
+    /** The ticket of the last appended record. Guarded by the log itself. */
+    protected long LastTicket = 0;
+
+    /** Serializes syncs of the log. */
+    protected final Object SyncLock = new Object();
+    /** The ticket of the last record known to be synced. Guarded by SyncLock. */
+    protected long SyncedTicket = 0;
+
+    /** Opens the segments of a log, creating the directory and the first segment
+     * if required. The segments are not scanned.
+     *@param sPrefix The prefix of the names of the segment files.
+     *@param sBaseDir The directory of the log.
+     *@param sSuffix The suffix of the names of the segment files.
+     *@param lMaxSegmentSize The size over which a new segment is started.
+     *@throws IOException If the segments cannot be opened.
+     */
+    public SegmentedLog(String sPrefix, String sBaseDir, String sSuffix,
+            long lMaxSegmentSize) throws IOException {
+        Prefix = (sPrefix == null) ? "" : sPrefix;
+        BaseDir = (sBaseDir == null) ? "./" : sBaseDir;
+        Suffix = sSuffix;
+        MaxSegmentSize = lMaxSegmentSize;
+        File fDir = new File(BaseDir);
+        if (!fDir.isDirectory() && !fDir.mkdirs())
+            throw new IOException("Cannot create directory " + BaseDir);
+
+        File[] faFiles = fDir.listFiles();
+        if (faFiles != null)
+            for (File fCur : faFiles) {
+                String sName = fCur.getName();
+                if (!sName.startsWith(Prefix) || !sName.endsWith(Suffix))
+                    continue;
+                String sId = sName.substring(Prefix.length(),
+                        sName.length() - Suffix.length());
+                if (!sId.matches("\\d{8}"))
+                    continue;
+                int iId = Integer.parseInt(sId);
+                Segments.put(iId, new Segment(iId, fCur));
+            }
+        if (Segments.isEmpty())
+            ActiveSegment = createSegment(0);
+        else
+            ActiveSegment = Segments.lastEntry().getValue();
+    }
+
+    /** Sets the size over which a new segment is started.
+     *@param lMaxSegmentSize The maximum segment size, in bytes.
+     */
+    public synchronized void setMaxSegmentSize(long lMaxSegmentSize) {
+        MaxSegmentSize = lMaxSegmentSize;
+    }
+
+    public synchronized long getMaxSegmentSize() {
+        return MaxSegmentSize;
+    }
+
+    protected File getSegmentFile(int iId) {
+        return new File(BaseDir, Prefix + String.format("%08d", iId) + Suffix);
+    }
+
+    protected Segment createSegment(int iId) throws IOException {
+        Segment sRes = new Segment(iId, getSegmentFile(iId));
+        Segments.put(iId, sRes);
+        return sRes;
+    }
+
+    /** Returns the segments of the log, in order.
+     *@return A copy of the list of segments.
+     */
+    public synchronized List<Segment> getSegments() {
+        return new ArrayList<Segment>(Segments.values());
+    }
+
+    /** Returns a segment of the log.
+     *@param iId The id of the segment.
+     *@return The segment, or null if there is no such segment.
+     */
+    public synchronized Segment getSegment(int iId) {
+        return Segments.get(iId);
+    }
+
+    /** Returns the segment records are appended to.
+     *@return The active segment.
+     */
+    public synchronized Segment getActiveSegment() {
+        return ActiveSegment;
+    }
+
+    /** Returns the total size of the valid data of all the segments.
+     *@return The size, in bytes.
+     */
+    public synchronized long getTotalSize() {
+        long lRes = 0;
+        for (Segment sCur : Segments.values())
+            lRes += sCur.Size;
+        return lRes;
+    }
+
+    /** Reads the records of a segment from a given offset, in order. The last
+     * segment is truncated at its first incomplete or corrupt record, which is
+     * taken to be torn by a crash. Earlier segments were synced when rolled, so
+     * such a record in one of them fails the scan instead.
+     *@param sSegment The segment to read.
+     *@param lFrom The offset of the first record to read.
+     *@param rhHandler The handler of the records read.
+     *@throws IOException If the segment cannot be read, an earlier segment holds
+     * an incomplete or corrupt record, or the handler fails.
+     */
+    public synchronized void scan(Segment sSegment, long lFrom, RecordHandler rhHandler)
+            throws IOException {
+        long lPos = lFrom;
+        ByteBuffer bbHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (lPos < sSegment.Size) {
+            byte[] baBody = null;
+            if (sSegment.Size - lPos >= RECORD_HEADER_SIZE) {
+                bbHeader.clear();
+                readFully(sSegment.Channel, bbHeader, lPos);
+                int iLength = bbHeader.getInt(0);
+                if ((iLength > 0) && (lPos + RECORD_HEADER_SIZE + iLength <= sSegment.Size)) {
+                    baBody = new byte[iLength];
+                    readFully(sSegment.Channel, ByteBuffer.wrap(baBody),
+                            lPos + RECORD_HEADER_SIZE);
+                    if (checksum(baBody, 0, iLength) != bbHeader.getInt(4))
+                        baBody = null;
+                }
+            }
+            if (baBody == null) {
+                if (sSegment.Id != Segments.lastKey())
+                    throw new IOException("Corrupt record at " +
+                            sSegment.SegmentFile.getName() + ":" + lPos);
+                System.err.println("Truncating incomplete record at " +
+                        sSegment.SegmentFile.getName() + ":" + lPos);
+                sSegment.Channel.truncate(lPos);
+                sSegment.Size = lPos;
+                break;
+            }
+
+            Location lRecord = new Location(sSegment.Id, lPos,
+                    RECORD_HEADER_SIZE + baBody.length);
+            rhHandler.handleRecord(lRecord, baBody);
+            lPos += lRecord.Length;
+        }
+    }
+
+    /** Frames the body of a record with its header.
+     *@param baBody The body of the record.
+     *@return The record.
+     */
+    public static byte[] encodeRecord(byte[] baBody) {
+        ByteBuffer bbRes = ByteBuffer.allocate(RECORD_HEADER_SIZE + baBody.length);
+        bbRes.putInt(baBody.length);
+        bbRes.putInt(checksum(baBody, 0, baBody.length));
+        bbRes.put(baBody);
+        return bbRes.array();
+    }
+
+    /** Appends a record to the active segment, without syncing it, starting a new
+     * segment first if the active one would grow over the maximum size.
+     *@param baRecord The record, as given by {@link #encodeRecord(byte[])}.
+     *@param lTicket The ticket of the record, to wait for with
+     * {@link #sync(long)}. Tickets must increase with every append; a record
+     * given the ticket of the previous one is synced along with it.
+     *@return The location of the record.
+     *@throws IOException If the record cannot be written.
+     */
+    public synchronized Location append(byte[] baRecord, long lTicket)
+            throws IOException {
+        if ((ActiveSegment.Size > 0) &&
+                (ActiveSegment.Size + baRecord.length > MaxSegmentSize))
+            roll();
+        Location lRes = new Location(ActiveSegment.Id, ActiveSegment.Size,
+                baRecord.length);
+        writeFully(ActiveSegment.Channel, ByteBuffer.wrap(baRecord), ActiveSegment.Size);
+        ActiveSegment.Size += baRecord.length;
+        LastTicket = Math.max(LastTicket, lTicket);
+        return lRes;
+    }
+
+    /** Returns the ticket of the last appended record.
+     *@return The ticket, or zero if no record has been appended.
+     */
+    public synchronized long getLastTicket() {
+        return LastTicket;
+    }
+
+    /** Syncs the active segment and starts a new one. */
+    public synchronized void roll() throws IOException {
+        ActiveSegment.Channel.force(false);
+        ActiveSegment = createSegment(ActiveSegment.Id + 1);
+    }
+
+    /** Waits until the records up to a given ticket are synced to disk. If no sync
+     * covering them is in progress, syncs all the records appended so far, so
+     * that concurrent writers share a single sync.
+     *@param lTicket The ticket of the last record that must be synced.
+     *@throws IOException If syncing fails.
+     */
+    public void sync(long lTicket) throws IOException {
+        synchronized (SyncLock) {
+            if (SyncedTicket < lTicket)
+                force();
+        }
+    }
+
+    /** Syncs all the records appended so far to disk, even if they are known to
+     * be synced.
+     *@throws IOException If syncing fails.
+     */
+    public void force() throws IOException {
+        synchronized (SyncLock) {
+            long lTarget;
+            FileChannel fcActive;
+            synchronized (this) {
+                lTarget = LastTicket;
+                fcActive = ActiveSegment.Channel;
+            }
+            // Previous segments were synced when rolled
+            fcActive.force(false);
+            SyncedTicket = lTarget;
+        }
+    }
+
+    /** Syncs all the records appended so far to disk.
+     *@throws IOException If syncing fails.
+     */
+    public void sync() throws IOException {
+        sync(getLastTicket());
+    }
+
+    /** Reads and checks the body of a record.
+     *@param lRecord The location of the record.
+     *@return The body of the record.
+     *@throws IOException If the record cannot be read or is corrupt.
+     */
+    public byte[] readRecord(Location lRecord) throws IOException {
+        Segment sSegment = getSegment(lRecord.Segment);
+        if (sSegment == null)
+            throw new IOException("Missing segment " + lRecord.Segment);
+        ByteBuffer bbRecord = ByteBuffer.allocate(lRecord.Length);
+        readFully(sSegment.Channel, bbRecord, lRecord.Offset);
+        if ((bbRecord.getInt(0) != lRecord.Length - RECORD_HEADER_SIZE) ||
+                (checksum(bbRecord.array(), RECORD_HEADER_SIZE,
+                    lRecord.Length - RECORD_HEADER_SIZE) != bbRecord.getInt(4)))
+            throw new IOException("Corrupt record at " + sSegment.SegmentFile.getName() +
+                    ":" + lRecord.Offset);
+        byte[] baRes = new byte[lRecord.Length - RECORD_HEADER_SIZE];
+        System.arraycopy(bbRecord.array(), RECORD_HEADER_SIZE, baRes, 0, baRes.length);
+        return baRes;
+    }
+
+    /** Closes and deletes a segment, which must not be the active one.
+     *@param sSegment The segment to delete.
+     *@throws IOException If the segment cannot be closed.
+     */
+    public synchronized void deleteSegment(Segment sSegment) throws IOException {
+        if (sSegment == ActiveSegment)
+            throw new IOException("Cannot delete the active segment.");
+        Segments.remove(sSegment.Id);
+        sSegment.Channel.close();
+        if (!sSegment.SegmentFile.delete())
+            System.err.println("Cannot delete segment " + sSegment.SegmentFile);
+    }
+
+    /** Syncs and closes the segments. The log cannot be used afterwards.
+     *@throws IOException If syncing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        ActiveSegment.Channel.force(false);
+        for (Segment sCur : Segments.values())
+            sCur.Channel.close();
+    }
+
+    protected static int checksum(byte[] baData, int iOffset, int iLength) {
+        CRC32 cCrc = new CRC32();
+        cCrc.update(baData, iOffset, iLength);
+        return (int)cCrc.getValue();
+    }
+
+    public static void readFully(FileChannel fcIn, ByteBuffer bbData, long lPos)
+            throws IOException {
+        while (bbData.hasRemaining()) {
+            int iRead = fcIn.read(bbData, lPos);
+            if (iRead < 0)
+                throw new IOException("Unexpected end of file.");
+            lPos += iRead;
+        }
+    }
+
+    public static void writeFully(FileChannel fcOut, ByteBuffer bbData, long lPos)
+            throws IOException {
+        while (bbData.hasRemaining())
+            lPos += fcOut.write(bbData, lPos);
+    }
+
+    /** Handles the records read by {@link SegmentedLog#scan(Segment, long, RecordHandler)}. */
+    public interface RecordHandler {
+        /** Handles a record.
+         *@param lRecord The location of the record.
+         *@param baBody The body of the record.
+         *@throws IOException If the record cannot be handled.
+         */
+        void handleRecord(Location lRecord, byte[] baBody) throws IOException;
+    }
+
+    /** The position of a record in the log. */
+    public static class Location {
+        public final int Segment;
+        public final long Offset;
+        /** The length of the record, including its header. */
+        public final int Length;
+
+        public Location(int iSegment, long lOffset, int iLength) {
+            Segment = iSegment;
+            Offset = lOffset;
+            Length = iLength;
+        }
+    }
+
+    /** A segment file of the log. */
+    public static class Segment {
+        protected final int Id;
+        protected final File SegmentFile;
+        protected final FileChannel Channel;
+        /** The size of the valid data of the segment. Changed while holding the
+         * lock of the log. */
+        protected volatile long Size;
+
+        protected Segment(int iId, File fFile) throws IOException {
+            Id = iId;
+            SegmentFile = fFile;
+            Channel = FileChannel.open(fFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Size = Channel.size();
+        }
+
+        public int getId() {
+            return Id;
+        }
+
+        public File getFile() {
+            return SegmentFile;
+        }
+
+        /** Returns the size of the valid data of the segment. */
+        public long getSize() {
+            return Size;
+        }
+    }
+}
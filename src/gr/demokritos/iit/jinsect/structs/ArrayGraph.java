@@ -7,11 +7,9 @@ package gr.demokritos.iit.jinsect.structs;
 
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author pckid
@@ -41,7 +39,7 @@ public class ArrayGraph {
         gRes.setLocator(eclLocator);
 
         // queue for threads in order to be executed
-        ExecutorService tqThreads = Executors.newCachedThreadPool();
+        TaskGroup tqThreads = new TaskGroup();
         
         // OBSOLETE
         //ThreadQueue tqThreads = new ThreadQueue();
@@ -57,7 +55,7 @@ public class ArrayGraph {
             // Runnable is an interface only to run
             // that's why (interface)
 //            while (!
-            tqThreads.submit(new Runnable() {
+            tqThreads.execute(new Runnable() {
                 @Override
                 public void run() {
                     for (int iYCnt = 0; iYCnt < iHeightArg; iYCnt++) {
@@ -117,8 +115,7 @@ public class ArrayGraph {
 
         try {
             // maybe there are threads that have not finished, so wait for them
-            tqThreads.shutdown();
-            tqThreads.awaitTermination(1000, TimeUnit.DAYS);
+            tqThreads.waitUntilCompletion();
         }
         catch (InterruptedException ie) {
             // Ignore
@@ -0,0 +1,423 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import java.util.Iterator;
+import salvo.jesus.graph.Vertex;
+import salvo.jesus.graph.VertexImpl;
+import salvo.jesus.graph.WeightedEdge;
+
+/** A compact, directed, weighted graph of unique vertices, meant to hold a single
+ * n-gram level of a document graph. Vertices are represented by the ids a
+ * {@link NGramLabelDictionary} assigns to their labels and edges by a long key
+ * (head id in the upper 32 bits, tail id in the lower 32 bits) kept in an
+ * open-addressing table, next to a parallel array of weights. No object is
+ * created per vertex or edge.
+ *<p>
+ * Slots are addressed directly through {@link #getCapacity()},
+ * {@link #isSlotUsed(int)}, {@link #getKeyAt(int)} and {@link #getWeightAt(int)}.
+ * Removing edges may move entries between slots, so slot iteration should not
+ * be combined with removal.
+ *
+ * @author ggianna
+ */
+public class CompactNGramGraph implements Cloneable {
+    /** The key of an unused edge slot. No valid edge maps to it, since ids are
+     * non-negative. */
+    public static final long EMPTY_KEY = -1L;
+    /** The id of an unused vertex slot. */
+    protected static final int EMPTY_VERTEX = -1;
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    protected NGramLabelDictionary Dictionary;
+    protected long[] EdgeKeys;
+    protected double[] EdgeWeights;
+    protected int EdgeCount = 0;
+    protected int[] VertexIds;
+    protected int VertexCount = 0;
+
+    /** Creates an empty graph, using the default label dictionary. */
+    public CompactNGramGraph() {
+        this(NGramLabelDictionary.getDefault(), DEFAULT_CAPACITY);
+    }
+
+    /** Creates an empty graph.
+     *@param dDictionary The dictionary of vertex labels to use.
+     */
+    public CompactNGramGraph(NGramLabelDictionary dDictionary) {
+        this(dDictionary, DEFAULT_CAPACITY);
+    }
+
+    /** Creates an empty graph.
+     *@param dDictionary The dictionary of vertex labels to use.
+     *@param iExpectedEdges The expected number of edges.
+     */
+    public CompactNGramGraph(NGramLabelDictionary dDictionary, int iExpectedEdges) {
+        Dictionary = dDictionary;
+        int iCapacity = tableSizeFor(iExpectedEdges);
+        EdgeKeys = new long[iCapacity];
+        java.util.Arrays.fill(EdgeKeys, EMPTY_KEY);
+        EdgeWeights = new double[iCapacity];
+        VertexIds = new int[tableSizeFor(iExpectedEdges / 2)];
+        java.util.Arrays.fill(VertexIds, EMPTY_VERTEX);
+    }
+
+    /** Returns the key of the edge connecting two vertices.
+     *@param iHead The id of the head vertex.
+     *@param iTail The id of the tail vertex.
+     *@return The edge key.
+     */
+    public static long edgeKey(int iHead, int iTail) {
+        return ((long)iHead << 32) | (iTail & 0xffffffffL);
+    }
+
+    /** Returns the head vertex id of an edge key. */
+    public static int headOf(long lKey) {
+        return (int)(lKey >>> 32);
+    }
+
+    /** Returns the tail vertex id of an edge key. */
+    public static int tailOf(long lKey) {
+        return (int)lKey;
+    }
+
+    /** Returns the key of the edge with the same vertices and opposite direction. */
+    public static long reverseKey(long lKey) {
+        return edgeKey(tailOf(lKey), headOf(lKey));
+    }
+
+    /** Returns the dictionary of vertex labels this graph uses. */
+    public NGramLabelDictionary getDictionary() {
+        return Dictionary;
+    }
+
+    public int getEdgesCount() {
+        return EdgeCount;
+    }
+
+    public int getVerticesCount() {
+        return VertexCount;
+    }
+
+    /** Returns the key of the edge connecting two labelled vertices, assigning
+     * ids to the labels if required.
+     *@param sHead The label of the head vertex.
+     *@param sTail The label of the tail vertex.
+     *@return The edge key.
+     */
+    public long edgeKey(String sHead, String sTail) {
+        return edgeKey(Dictionary.getId(sHead), Dictionary.getId(sTail));
+    }
+
+    /** Adds a vertex to the graph, if it does not already exist.
+     *@param iId The id of the vertex.
+     *@return True if the vertex was added, false if it already existed.
+     */
+    public boolean addVertex(int iId) {
+        if ((VertexCount + 1) * 3 > VertexIds.length * 2)
+            resizeVertices(VertexIds.length << 1);
+        int iMask = VertexIds.length - 1;
+        int iSlot = mix(iId) & iMask;
+        while (VertexIds[iSlot] != EMPTY_VERTEX) {
+            if (VertexIds[iSlot] == iId)
+                return false;
+            iSlot = (iSlot + 1) & iMask;
+        }
+        VertexIds[iSlot] = iId;
+        VertexCount++;
+        return true;
+    }
+
+    /** Adds a labelled vertex to the graph, if it does not already exist.
+     *@param sLabel The label of the vertex.
+     *@return The id of the vertex.
+     */
+    public int addVertex(String sLabel) {
+        int iId = Dictionary.getId(sLabel);
+        addVertex(iId);
+        return iId;
+    }
+
+    /** Checks whether a vertex exists in the graph.
+     *@param iId The id of the vertex.
+     *@return True if the vertex exists, otherwise false.
+     */
+    public boolean containsVertex(int iId) {
+        int iMask = VertexIds.length - 1;
+        int iSlot = mix(iId) & iMask;
+        while (VertexIds[iSlot] != EMPTY_VERTEX) {
+            if (VertexIds[iSlot] == iId)
+                return true;
+            iSlot = (iSlot + 1) & iMask;
+        }
+        return false;
+    }
+
+    /** Looks up the slot of an edge.
+     *@param lKey The key of the edge.
+     *@return The slot of the edge, or -1 if the edge does not exist.
+     */
+    public int indexOf(long lKey) {
+        int iMask = EdgeKeys.length - 1;
+        int iSlot = mix(lKey) & iMask;
+        long lCur;
+        while ((lCur = EdgeKeys[iSlot]) != EMPTY_KEY) {
+            if (lCur == lKey)
+                return iSlot;
+            iSlot = (iSlot + 1) & iMask;
+        }
+        return -1;
+    }
+
+    public boolean containsEdge(long lKey) {
+        return indexOf(lKey) >= 0;
+    }
+
+    /** Returns the weight of an edge.
+     *@param lKey The key of the edge.
+     *@param dDefault The value to return if the edge does not exist.
+     *@return The weight of the edge, or <code>dDefault</code>.
+     */
+    public double getWeight(long lKey, double dDefault) {
+        int iSlot = indexOf(lKey);
+        return (iSlot < 0) ? dDefault : EdgeWeights[iSlot];
+    }
+
+    /** Sets the weight of an edge, adding the edge (and its vertices) if required.
+     *@param lKey The key of the edge.
+     *@param dWeight The new weight.
+     */
+    public void setWeight(long lKey, double dWeight) {
+        // Locate first, since inserting may resize the arrays
+        int iSlot = slotFor(lKey);
+        EdgeWeights[iSlot] = dWeight;
+    }
+
+    /** Increases the weight of an edge, or adds the edge with a start weight if
+     * it does not exist.
+     *@param lKey The key of the edge.
+     *@param dStartWeight The weight of the edge, if it is a new one.
+     *@param dIncrease The increase of the weight, if the edge exists.
+     *@return The new weight of the edge.
+     */
+    public double increaseWeight(long lKey, double dStartWeight, double dIncrease) {
+        int iBefore = EdgeCount;
+        int iSlot = slotFor(lKey);
+        if (EdgeCount != iBefore)
+            return EdgeWeights[iSlot] = dStartWeight;
+        return EdgeWeights[iSlot] += dIncrease;
+    }
+
+    /** Removes an edge from the graph. Its vertices are kept.
+     *@param lKey The key of the edge.
+     *@return True if the edge existed, otherwise false.
+     */
+    public boolean removeEdge(long lKey) {
+        int iSlot = indexOf(lKey);
+        if (iSlot < 0)
+            return false;
+
+        // Backward-shift deletion, to keep probe sequences unbroken
+        int iMask = EdgeKeys.length - 1;
+        int iNext = iSlot;
+        while (true) {
+            iNext = (iNext + 1) & iMask;
+            long lNextKey = EdgeKeys[iNext];
+            if (lNextKey == EMPTY_KEY)
+                break;
+            int iHome = mix(lNextKey) & iMask;
+            // If the entry's home lies cyclically within (iSlot, iNext], leave it
+            if ((iSlot <= iNext) ? ((iSlot < iHome) && (iHome <= iNext))
+                    : ((iSlot < iHome) || (iHome <= iNext)))
+                continue;
+            EdgeKeys[iSlot] = lNextKey;
+            EdgeWeights[iSlot] = EdgeWeights[iNext];
+            iSlot = iNext;
+        }
+        EdgeKeys[iSlot] = EMPTY_KEY;
+        EdgeWeights[iSlot] = 0.0;
+        EdgeCount--;
+        return true;
+    }
+
+    /** Returns the number of edge slots, used or not. */
+    public int getCapacity() {
+        return EdgeKeys.length;
+    }
+
+    public boolean isSlotUsed(int iSlot) {
+        return EdgeKeys[iSlot] != EMPTY_KEY;
+    }
+
+    public long getKeyAt(int iSlot) {
+        return EdgeKeys[iSlot];
+    }
+
+    public double getWeightAt(int iSlot) {
+        return EdgeWeights[iSlot];
+    }
+
+    public void setWeightAt(int iSlot, double dWeight) {
+        EdgeWeights[iSlot] = dWeight;
+    }
+
+    /** Returns the keys of all edges, in no specific order.
+     *@return A new array of edge keys.
+     */
+    public long[] getEdgeKeys() {
+        long[] laRes = new long[EdgeCount];
+        int iCnt = 0;
+        for (int iSlot = 0; iSlot < EdgeKeys.length; iSlot++)
+            if (EdgeKeys[iSlot] != EMPTY_KEY)
+                laRes[iCnt++] = EdgeKeys[iSlot];
+        return laRes;
+    }
+
+    /** Returns the ids of all vertices, in no specific order.
+     *@return A new array of vertex ids.
+     */
+    public int[] getVertexIds() {
+        int[] iaRes = new int[VertexCount];
+        int iCnt = 0;
+        for (int iSlot = 0; iSlot < VertexIds.length; iSlot++)
+            if (VertexIds[iSlot] != EMPTY_VERTEX)
+                iaRes[iCnt++] = VertexIds[iSlot];
+        return iaRes;
+    }
+
+    /** Creates a {@link UniqueVertexGraph} with the same vertices, edges and weights
+     * as this graph.
+     *@return The new graph.
+     */
+    public UniqueVertexGraph toUniqueVertexGraph() {
+        UniqueVertexGraph gRes = new UniqueVertexGraph();
+        try {
+            for (int iId : getVertexIds())
+                gRes.add(new VertexImpl(Dictionary.getLabel(iId)));
+            for (int iSlot = 0; iSlot < EdgeKeys.length; iSlot++) {
+                long lKey = EdgeKeys[iSlot];
+                if (lKey == EMPTY_KEY)
+                    continue;
+                gRes.addEdge(gRes.locateVertex(Dictionary.getLabel(headOf(lKey))),
+                        gRes.locateVertex(Dictionary.getLabel(tailOf(lKey))),
+                        EdgeWeights[iSlot]);
+            }
+        }
+        catch (Exception e) {
+            // Vertices are unique by construction, so this should not happen
+            throw new IllegalStateException(e);
+        }
+        return gRes;
+    }
+
+    /** Creates a compact graph with the same vertices, edges and weights as a given
+     * {@link UniqueVertexGraph}.
+     *@param gGraph The graph to copy.
+     *@param dDictionary The dictionary of vertex labels to use.
+     *@return The new compact graph.
+     */
+    public static CompactNGramGraph fromUniqueVertexGraph(UniqueVertexGraph gGraph,
+            NGramLabelDictionary dDictionary) {
+        CompactNGramGraph gRes = new CompactNGramGraph(dDictionary,
+                gGraph.getEdgesCount());
+        Iterator iIter = gGraph.getVerticesIterator();
+        while (iIter.hasNext())
+            gRes.addVertex(((Vertex)iIter.next()).getLabel());
+        iIter = gGraph.getEdgeSet().iterator();
+        while (iIter.hasNext()) {
+            WeightedEdge weCur = (WeightedEdge)iIter.next();
+            gRes.setWeight(gRes.edgeKey(weCur.getVertexA().getLabel(),
+                    weCur.getVertexB().getLabel()), weCur.getWeight());
+        }
+        return gRes;
+    }
+
+    @Override
+    public Object clone() {
+        try {
+            CompactNGramGraph gRes = (CompactNGramGraph)super.clone();
+            gRes.EdgeKeys = EdgeKeys.clone();
+            gRes.EdgeWeights = EdgeWeights.clone();
+            gRes.VertexIds = VertexIds.clone();
+            return gRes;
+        } catch (CloneNotSupportedException ex) {
+            throw new InternalError(ex.toString());
+        }
+    }
+
+    /** Returns the slot of an edge, inserting it (and its vertices) if it does
+     * not exist. */
+    protected int slotFor(long lKey) {
+        int iSlot = indexOf(lKey);
+        if (iSlot >= 0)
+            return iSlot;
+
+        addVertex(headOf(lKey));
+        addVertex(tailOf(lKey));
+        if ((EdgeCount + 1) * 3 > EdgeKeys.length * 2)
+            resizeEdges(EdgeKeys.length << 1);
+        int iMask = EdgeKeys.length - 1;
+        iSlot = mix(lKey) & iMask;
+        while (EdgeKeys[iSlot] != EMPTY_KEY)
+            iSlot = (iSlot + 1) & iMask;
+        EdgeKeys[iSlot] = lKey;
+        EdgeWeights[iSlot] = 0.0;
+        EdgeCount++;
+        return iSlot;
+    }
+
+    protected void resizeEdges(int iNewCapacity) {
+        long[] laOldKeys = EdgeKeys;
+        double[] daOldWeights = EdgeWeights;
+        EdgeKeys = new long[iNewCapacity];
+        java.util.Arrays.fill(EdgeKeys, EMPTY_KEY);
+        EdgeWeights = new double[iNewCapacity];
+        int iMask = iNewCapacity - 1;
+        for (int iOld = 0; iOld < laOldKeys.length; iOld++) {
+            if (laOldKeys[iOld] == EMPTY_KEY)
+                continue;
+            int iSlot = mix(laOldKeys[iOld]) & iMask;
+            while (EdgeKeys[iSlot] != EMPTY_KEY)
+                iSlot = (iSlot + 1) & iMask;
+            EdgeKeys[iSlot] = laOldKeys[iOld];
+            EdgeWeights[iSlot] = daOldWeights[iOld];
+        }
+    }
+
+    protected void resizeVertices(int iNewCapacity) {
+        int[] iaOld = VertexIds;
+        VertexIds = new int[iNewCapacity];
+        java.util.Arrays.fill(VertexIds, EMPTY_VERTEX);
+        int iMask = iNewCapacity - 1;
+        for (int iOld = 0; iOld < iaOld.length; iOld++) {
+            if (iaOld[iOld] == EMPTY_VERTEX)
+                continue;
+            int iSlot = mix(iaOld[iOld]) & iMask;
+            while (VertexIds[iSlot] != EMPTY_VERTEX)
+                iSlot = (iSlot + 1) & iMask;
+            VertexIds[iSlot] = iaOld[iOld];
+        }
+    }
+
+    /** Returns the smallest power of two table size that holds a given number of
+     * entries below the maximum load factor. */
+    public static int tableSizeFor(int iEntries) {
+        int iSize = DEFAULT_CAPACITY;
+        while (iSize * 2 < iEntries * 3)
+            iSize <<= 1;
+        return iSize;
+    }
+
+    /** Spreads the bits of a key, so that linear probing works on sequential ids. */
+    public static int mix(long lKey) {
+        lKey ^= lKey >>> 33;
+        lKey *= 0xff51afd7ed558ccdL;
+        lKey ^= lKey >>> 33;
+        lKey *= 0xc4ceb9fe1a85ec53L;
+        lKey ^= lKey >>> 33;
+        return (int)lKey;
+    }
+}
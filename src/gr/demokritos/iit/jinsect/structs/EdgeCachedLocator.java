@@ -10,52 +10,102 @@ package gr.demokritos.iit.jinsect.structs;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import salvo.jesus.graph.Edge;
 import salvo.jesus.graph.Vertex;
 
-/**
+/** Locates edges of a graph by the labels of their vertices, caching the outgoing
+ * edges of the most recently used vertices. The cache is split into a number of
+ * segments, each one an access-ordered LRU map guarded by its own lock, so that
+ * every lookup costs constant time and a single locator may be shared by threads
+ * looking up edges of the same graph.
+ *<p>
+ * Every cached vertex is bound to the graph it was read from; a lookup in a
+ * different graph is a miss and replaces the cached entry. Changes to a graph
+ * must be reported through {@link #addedEdge(UniqueVertexGraph, Edge)} and
+ * {@link #removedEdge(UniqueVertexGraph, Edge)}, or the cache must be reset.
  *
  * @author ggianna
  */
 public class EdgeCachedLocator implements Serializable {
+    /** The maximum number of segments of the cache. */
+    protected static final int MAX_SEGMENTS = 16;
+    /** The cache size used by a deserialized locator. */
+    protected static final int DEFAULT_CACHE_SIZE = 100;
+
     protected int CacheMaxSize;
-    protected HashMap Cache;
-    protected TreeMap CacheAccess;
-    protected HashMap ElementAccessTime;
-    protected long TimeCnt = Long.MIN_VALUE;
-    protected long lHits = 0, lMisses = 0;
-    
-    /** The locator should NOT hold any cache data and thus this method is 
-     * overriden by an empty method.
+    protected transient CacheSegment[] Segments;
+    protected transient AtomicLong Hits, Misses;
+
+    /** The locator should NOT hold any cache data and thus this method only
+     * recreates an empty cache of the default size.
      */
     private void readObject(java.io.ObjectInputStream in)
       throws IOException, ClassNotFoundException {
-
+        CacheMaxSize = DEFAULT_CACHE_SIZE;
+        initCache();
     }
-    
-    /** The locator should NOT hold any cache data and thus this method is 
+
+    /** The locator should NOT hold any cache data and thus this method is
      * overriden by an empty method.
      */
     private void writeObject(java.io.ObjectOutputStream out)
       throws IOException {
     }
-    
+
     /** Creates a new instance of EdgeCachedLocator, concerning a specific graph.
-     *@param iCacheMaxSize The maximum number of edges to cache.
+     *@param iCacheMaxSize The maximum number of vertices whose outgoing edges are
+     * cached.
      */
     public EdgeCachedLocator(int iCacheMaxSize) {
         CacheMaxSize = iCacheMaxSize;
-        
-        Cache = new HashMap();
-        CacheAccess = new TreeMap();
-        ElementAccessTime = new HashMap();
+        initCache();
+    }
+
+    /** Creates the (empty) segments and counters of the cache. */
+    protected void initCache() {
+        int iSegments = 1;
+        while ((iSegments < MAX_SEGMENTS) && (iSegments < CacheMaxSize))
+            iSegments <<= 1;
+        // Round up, so that the total size is at least the requested one
+        int iSegmentSize = Math.max(1, (CacheMaxSize + iSegments - 1) / iSegments);
+        Segments = new CacheSegment[iSegments];
+        for (int iCnt = 0; iCnt < iSegments; iCnt++)
+            Segments[iCnt] = new CacheSegment(iSegmentSize);
+        Hits = new AtomicLong();
+        Misses = new AtomicLong();
     }
-    
-    /** Looks up a given directed edge in a selected graph. 
+
+    /** Returns the segment responsible for a given vertex label. */
+    protected final CacheSegment segmentFor(String sLabel) {
+        int iHash = sLabel.hashCode();
+        iHash ^= (iHash >>> 16);
+        return Segments[iHash & (Segments.length - 1)];
+    }
+
+    /** Returns the (cached) outgoing edges of a vertex, keyed by the label of their
+     * tail. Must be called while holding the lock of the segment.
+     */
+    protected final Map<String, Edge> getCachedOutgoing(CacheSegment csSegment,
+            UniqueVertexGraph gGraph, Vertex vHead) {
+        CachedVertex cvEntry = csSegment.get(vHead.getLabel());
+        if ((cvEntry != null) && (cvEntry.Graph == gGraph)) {
+            Hits.incrementAndGet();
+            return cvEntry.OutEdges;
+        }
+
+        Misses.incrementAndGet();
+        cvEntry = new CachedVertex(gGraph);
+        for (Object oEdge : getOutgoingEdgesUncached(gGraph, vHead))
+            cvEntry.OutEdges.put(((Edge)oEdge).getVertexB().getLabel(), (Edge)oEdge);
+        csSegment.put(vHead.getLabel(), cvEntry);
+        return cvEntry.OutEdges;
+    }
+
+    /** Looks up a given directed edge in a selected graph.
      * The edge is described based on the label of its
      *vertices.
      *@param gGraph The graph to use.
@@ -64,81 +114,19 @@ public class EdgeCachedLocator implements Serializable {
      *@return The edge, if found, otherwise null.
      */
     public final Edge locateDirectedEdgeInGraph(UniqueVertexGraph gGraph, Vertex vHead, Vertex vTail) {
-        Edge eRes = null;
-        try {
-            vHead = locateVertexInGraph(gGraph, vHead);
-            if (vHead == null)
-                return null;
-            vTail = locateVertexInGraph(gGraph, vTail);
-            if (vTail == null)
-                return null;
-            
-            // Check cache
-            TreeMap hOutVertices = (TreeMap)Cache.get(vHead.getLabel());
-            List lEdges;
-            if (hOutVertices == null) { // If not found
-                lMisses++;
-                lEdges = getOutgoingEdgesUncached(gGraph, vHead);
-                // TODO: REMOVE
-                // lEdges = getOutgoingEdgesUncached(gGraph, vHead);
-                ///////////////
-                // Check if time has reached max value
-                if (TimeCnt == Long.MAX_VALUE) {
-                    // if so, cache must be reset
-                    resetCache();
-                }
-                
-                hOutVertices = new TreeMap();
-                for (Object elem : lEdges) {
-                    hOutVertices.put(((Edge)elem).getVertexB().getLabel(), elem);
-                    if (((Edge)elem).getVertexB().getLabel().equals(vTail.getLabel()))
-                        eRes = (Edge)elem;
-                }
-                
-                // Update cache
-                Cache.put(vHead.getLabel(), hOutVertices);
-                ElementAccessTime.put(vHead.getLabel(), ++TimeCnt);
-            }
-            else {
-                lHits++;
-                ElementAccessTime.put(vHead.getLabel(), ++TimeCnt);
-            }
-            
-            // Update Access time
-            CacheAccess.put(TimeCnt, vHead.getLabel());
-            
-            // Remove oldest to keep max size
-            if (Cache.size() > CacheMaxSize) {
-                // Keep doing the following
-                while (true) {
-                    // Check if the oldest element has been reused
-                    String sVertexLabel = (String)CacheAccess.get(CacheAccess.firstKey());
-                    if ((Long)ElementAccessTime.get(sVertexLabel) > (Long)CacheAccess.firstKey())
-                    {
-                        // If it has, remove the older time reference
-                        CacheAccess.remove(CacheAccess.firstKey());
-                    }
-                    else
-                    {
-                        // else remove the object from cache
-                        Cache.remove(sVertexLabel);
-                        CacheAccess.remove(CacheAccess.firstKey());
-                        ElementAccessTime.remove(sVertexLabel);
-                        // and break
-                        break;
-                    }
-                }
-            }
-            else // If already cached
-            {
-                return (Edge)(hOutVertices.get(vTail.getLabel()));
-            }
-            
-            return eRes;
-        }
-        catch (NullPointerException e) {
+        if ((gGraph == null) || (vHead == null) || (vTail == null))
+            return null;
+        vHead = locateVertexInGraph(gGraph, vHead);
+        if (vHead == null)
             return null;
-        }        
+        vTail = locateVertexInGraph(gGraph, vTail);
+        if (vTail == null)
+            return null;
+
+        CacheSegment csSegment = segmentFor(vHead.getLabel());
+        synchronized (csSegment) {
+            return getCachedOutgoing(csSegment, gGraph, vHead).get(vTail.getLabel());
+        }
     }
 
     /** Looks up a vertex in a given graph.
@@ -149,8 +137,8 @@ public class EdgeCachedLocator implements Serializable {
     public final Vertex locateVertexInGraph(UniqueVertexGraph gGraph, Vertex vToFind) {
         return gGraph.locateVertex(vToFind);
     }
-    
-    /** Looks up a given (undirected) edge in a selected graph. 
+
+    /** Looks up a given (undirected) edge in a selected graph.
      * The edge is described based on the label of its
      *vertices.
      *@param gGraph The graph to use.
@@ -162,7 +150,7 @@ public class EdgeCachedLocator implements Serializable {
         Edge eRes = locateDirectedEdgeInGraph(gGraph, vHead, vTail);
         return eRes == null ? locateDirectedEdgeInGraph(gGraph, vTail, vHead) : eRes;
     }
-    
+
     /** Gets the outgoing edges of a given vertex in a directed graph.
      *@param gGraph The graph to use.
      *@param vHead A vertex with the desired label for the head of the edge.
@@ -171,52 +159,97 @@ public class EdgeCachedLocator implements Serializable {
      */
     public final List getOutgoingEdges(UniqueVertexGraph gGraph, Vertex vHead) {
         Vertex vNode = gr.demokritos.iit.jinsect.utils.locateVertexInGraph(gGraph, vHead.toString());
-        ArrayList lRes = new ArrayList();
-        if (vNode != null) {
-            List neighbours = gGraph.getAdjacentVertices(vNode);
-            Iterator iIter = neighbours.iterator();
-            while (iIter.hasNext()) {
-                Vertex vCandidateParent = (Vertex)iIter.next();
-                // Add only child neighbours
-                Edge eCur = locateDirectedEdgeInGraph(gGraph, vNode, vCandidateParent);
-                if (eCur != null)
-                    lRes.add(eCur);
-            }
-            
-            return lRes;
+        if (vNode == null)
+            return new ArrayList();
+
+        CacheSegment csSegment = segmentFor(vNode.getLabel());
+        synchronized (csSegment) {
+            return new ArrayList(getCachedOutgoing(csSegment, gGraph, vNode).values());
         }
-        
-        return new ArrayList();
-    }    
-    
+    }
+
     /** Clears the cache. */
     public void resetCache() {
-        Cache.clear();
-        ElementAccessTime.clear();
-        CacheAccess.clear();
-
-        TimeCnt = Long.MIN_VALUE;
+        for (CacheSegment csSegment : Segments)
+            synchronized (csSegment) {
+                csSegment.clear();
+            }
     }
-    
+
     /**Updates cache as needed, if the edges of any vertex already contained within the cache are changed.
+     *@param gGraph The graph the edge was added to.
      *@param e The new edge.
      */
+    public void addedEdge(UniqueVertexGraph gGraph, Edge e) {
+        if (e == null)
+            return;
+        String sHead = e.getVertexA().getLabel();
+        CacheSegment csSegment = segmentFor(sHead);
+        synchronized (csSegment) {
+            CachedVertex cvEntry = csSegment.get(sHead);
+            if ((cvEntry != null) && (cvEntry.Graph == gGraph))
+                cvEntry.OutEdges.put(e.getVertexB().getLabel(), e);
+        }
+    }
+
+    /**Updates cache as needed, if the edges of any vertex already contained within
+     * the cache are changed. The edge is considered to belong to whichever graph
+     * the head vertex was cached from.
+     *@param e The new edge.
+     *@see #addedEdge(UniqueVertexGraph, Edge)
+     */
     public void addedEdge(Edge e) {
-            // Check cache
-            TreeMap hOutVertices = (TreeMap)Cache.get(e.getVertexA().getLabel());
-            if (hOutVertices == null)
-                return; // Not cached
-            else
-                hOutVertices.put(e.getVertexB().getLabel(), e); // Update cache
-    }
-    
+        if (e == null)
+            return;
+        String sHead = e.getVertexA().getLabel();
+        CacheSegment csSegment = segmentFor(sHead);
+        synchronized (csSegment) {
+            CachedVertex cvEntry = csSegment.get(sHead);
+            if (cvEntry != null)
+                cvEntry.OutEdges.put(e.getVertexB().getLabel(), e);
+        }
+    }
+
+    /**Updates cache as needed, if an edge of any vertex already contained within the
+     * cache has been removed.
+     *@param gGraph The graph the edge was removed from.
+     *@param e The removed edge.
+     */
+    public void removedEdge(UniqueVertexGraph gGraph, Edge e) {
+        if (e == null)
+            return;
+        String sHead = e.getVertexA().getLabel();
+        CacheSegment csSegment = segmentFor(sHead);
+        synchronized (csSegment) {
+            CachedVertex cvEntry = csSegment.get(sHead);
+            if ((cvEntry != null) && (cvEntry.Graph == gGraph))
+                cvEntry.OutEdges.remove(e.getVertexB().getLabel());
+        }
+    }
+
     /** Returns the success ratio of the cache.
      *@return The ratio of hits (number of hits / number of total cache accesses) of the cache.
      */
     public double getSuccessRatio() {
-        return (double)lHits / (lHits + lMisses);
+        long lHits = Hits.get();
+        return (double)lHits / (lHits + Misses.get());
+    }
+
+    /** Returns the number of lookups served by the cache.
+     *@return The hit count.
+     */
+    public long getHits() {
+        return Hits.get();
     }
-    
+
+    /** Returns the number of lookups that had to read the outgoing edges of a vertex
+     * from the graph.
+     *@return The miss count.
+     */
+    public long getMisses() {
+        return Misses.get();
+    }
+
     /** Uncached outgoing edge lookup.
      *@param gGraph The graph to use.
      *@param vHead A vertex with the desired label for the head of the edge.
@@ -228,11 +261,39 @@ public class EdgeCachedLocator implements Serializable {
         if (vNode == null)
             return null;
         ArrayList lRes = new ArrayList();
-        
-        for (Edge lCand : (List<Edge>)gGraph.getEdges(vHead)) {
-            if (lCand.getVertexA().equals(vHead))
+
+        for (Edge lCand : (List<Edge>)gGraph.getEdges(vNode)) {
+            if (lCand.getVertexA().equals(vNode))
                 lRes.add(lCand);
         }
         return lRes;
-    }    
+    }
+
+    /** The outgoing edges of a cached vertex, keyed by the label of their tail. */
+    protected static class CachedVertex {
+        protected final UniqueVertexGraph Graph;
+        protected final LinkedHashMap<String, Edge> OutEdges;
+
+        protected CachedVertex(UniqueVertexGraph gGraph) {
+            Graph = gGraph;
+            OutEdges = new LinkedHashMap<String, Edge>();
+        }
+    }
+
+    /** An access-ordered map of vertex labels to cached vertices, evicting the
+     * least recently used vertex when full. Instances are used as their own lock.
+     */
+    protected static class CacheSegment extends LinkedHashMap<String, CachedVertex> {
+        protected final int MaxSize;
+
+        protected CacheSegment(int iMaxSize) {
+            super(16, 0.75f, true);
+            MaxSize = iMaxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedVertex> eEldest) {
+            return size() > MaxSize;
+        }
+    }
 }
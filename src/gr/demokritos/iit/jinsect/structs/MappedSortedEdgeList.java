@@ -0,0 +1,154 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/** A read-only {@link SortedEdgeList} whose data are read in place from (memory
+ * mapped) buffers. The buffers hold the edges sorted by a key built from
+ * file-local label ids (see {@link LabelIdMap}); keys are translated from and to
+ * the ids of the {@link NGramLabelDictionary} on every access, so that the list
+ * can be compared with lists of the same dictionary. Since the translated keys
+ * are not in ascending order, the list does not support merging (see
+ * {@link #isSortedByKey()}), but edge lookups are binary searches in the buffer.
+ *
+ * @author ggianna
+ */
+public class MappedSortedEdgeList extends SortedEdgeList {
+    protected final LongBuffer MappedKeys;
+    protected final DoubleBuffer MappedWeights;
+    /** The degradation degrees of the edges, or null if no edge is degraded. */
+    protected final DoubleBuffer MappedDegradations;
+    protected final LabelIdMap IdMap;
+
+    /** Creates a list over given buffers, which are used as-is.
+     *@param lbKeys The local edge keys, in ascending order.
+     *@param dbWeights The weights of the edges.
+     *@param dbDegradations The degradation degrees of the edges, or null if no
+     * edge is degraded.
+     *@param lmIdMap The map between local and dictionary label ids.
+     */
+    public MappedSortedEdgeList(LongBuffer lbKeys, DoubleBuffer dbWeights,
+            DoubleBuffer dbDegradations, LabelIdMap lmIdMap) {
+        super(null, null, null);
+        MappedKeys = lbKeys;
+        MappedWeights = dbWeights;
+        MappedDegradations = dbDegradations;
+        IdMap = lmIdMap;
+    }
+
+    @Override
+    public int size() {
+        return MappedKeys.limit();
+    }
+
+    @Override
+    public boolean isSortedByKey() {
+        return false;
+    }
+
+    @Override
+    public long getKeyAt(int iIndex) {
+        long lLocalKey = MappedKeys.get(iIndex);
+        return CompactNGramGraph.edgeKey(
+                IdMap.toGlobal(CompactNGramGraph.headOf(lLocalKey)),
+                IdMap.toGlobal(CompactNGramGraph.tailOf(lLocalKey)));
+    }
+
+    @Override
+    public double getWeightAt(int iIndex) {
+        return MappedWeights.get(iIndex);
+    }
+
+    @Override
+    public double getDegradationAt(int iIndex) {
+        return (MappedDegradations == null) ? 0.0 : MappedDegradations.get(iIndex);
+    }
+
+    @Override
+    public boolean hasDegradations() {
+        return MappedDegradations != null;
+    }
+
+    @Override
+    public int indexOf(long lKey) {
+        int iHead = IdMap.toLocal(CompactNGramGraph.headOf(lKey));
+        if (iHead < 0)
+            return -1;
+        int iTail = IdMap.toLocal(CompactNGramGraph.tailOf(lKey));
+        if (iTail < 0)
+            return -1;
+        long lLocalKey = CompactNGramGraph.edgeKey(iHead, iTail);
+
+        int iLow = 0, iHigh = MappedKeys.limit() - 1;
+        while (iLow <= iHigh) {
+            int iMid = (iLow + iHigh) >>> 1;
+            long lMid = MappedKeys.get(iMid);
+            if (lMid < lLocalKey)
+                iLow = iMid + 1;
+            else if (lMid > lLocalKey)
+                iHigh = iMid - 1;
+            else
+                return iMid;
+        }
+        return -1;
+    }
+
+    /** Not supported, since the keys are not in ascending order.
+     *@throws UnsupportedOperationException Always.
+     */
+    @Override
+    public int ceilingIndex(long lKey) {
+        throw new UnsupportedOperationException("Mapped edge lists are not sorted " +
+                "by dictionary key.");
+    }
+
+    /** A map between the label ids local to a stored graph and the ids of an
+     * {@link NGramLabelDictionary}.
+     */
+    public static class LabelIdMap {
+        /** The dictionary id of every local id. */
+        protected final int[] GlobalIds;
+        /** The dictionary ids in ascending order, with the local id of each. */
+        protected final int[] SortedGlobalIds, SortedLocalIds;
+
+        /** Creates a map from the dictionary ids of the local labels.
+         *@param iaGlobalIds The dictionary id of every local id, used as-is.
+         */
+        public LabelIdMap(int[] iaGlobalIds) {
+            GlobalIds = iaGlobalIds;
+            long[] laPairs = new long[iaGlobalIds.length];
+            for (int iCnt = 0; iCnt < iaGlobalIds.length; iCnt++)
+                laPairs[iCnt] = ((long)iaGlobalIds[iCnt] << 32) | iCnt;
+            Arrays.sort(laPairs);
+            SortedGlobalIds = new int[laPairs.length];
+            SortedLocalIds = new int[laPairs.length];
+            for (int iCnt = 0; iCnt < laPairs.length; iCnt++) {
+                SortedGlobalIds[iCnt] = (int)(laPairs[iCnt] >>> 32);
+                SortedLocalIds[iCnt] = (int)laPairs[iCnt];
+            }
+        }
+
+        public int toGlobal(int iLocalId) {
+            return GlobalIds[iLocalId];
+        }
+
+        /** Returns the local id of a dictionary id.
+         *@param iGlobalId The dictionary id.
+         *@return The local id, or -1 if the label is not used locally.
+         */
+        public int toLocal(int iGlobalId) {
+            int iRes = Arrays.binarySearch(SortedGlobalIds, iGlobalId);
+            return (iRes < 0) ? -1 : SortedLocalIds[iRes];
+        }
+
+        public int size() {
+            return GlobalIds.length;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A dictionary that maps n-gram (vertex) labels to dense integer ids. The ids
+ * are only meaningful within the running JVM and are shared by all the
+ * {@link CompactNGramGraph} instances that use the same dictionary, so that edge
+ * keys of different graphs can be compared directly.
+ * <p>
+ * A dictionary never forgets a label. Long-running services that see unbounded
+ * text (e.g. a server training on a message stream, or an index of many
+ * documents) should give their graphs a dictionary of their own, and drop it
+ * along with them, instead of the default one.
+ *
+ * @author ggianna
+ */
+public class NGramLabelDictionary {
+    /** The dictionary shared by all graphs that do not specify their own. */
+    protected static final NGramLabelDictionary DefaultDictionary =
+            new NGramLabelDictionary();
+
+    /** The map of labels to ids. */
+    protected final ConcurrentHashMap<String, Integer> LabelIds;
+    /** The labels, indexed by id. */
+    protected volatile String[] Labels;
+    /** The number of labels assigned an id. */
+    protected int Count = 0;
+
+    /** Creates a new, empty dictionary. */
+    public NGramLabelDictionary() {
+        LabelIds = new ConcurrentHashMap<String, Integer>(1024);
+        Labels = new String[1024];
+    }
+
+    /** Returns the dictionary shared by default among all compact graphs. It
+     * lives as long as the JVM and only grows: every label interned by a graph
+     * that uses it stays in memory, even after the graph is gone.
+     *@return The shared dictionary.
+     */
+    public static NGramLabelDictionary getDefault() {
+        return DefaultDictionary;
+    }
+
+    /** Returns the id of a given label, assigning a new id if the label has not
+     * been seen before.
+     *@param sLabel The label to look up.
+     *@return The id of the label.
+     */
+    public int getId(String sLabel) {
+        Integer iId = LabelIds.get(sLabel);
+        if (iId != null)
+            return iId;
+
+        synchronized (this) {
+            // Check again, now that we hold the lock
+            iId = LabelIds.get(sLabel);
+            if (iId != null)
+                return iId;
+
+            if (Count == Labels.length) {
+                String[] saNew = new String[Labels.length << 1];
+                System.arraycopy(Labels, 0, saNew, 0, Count);
+                Labels = saNew;
+            }
+            Labels[Count] = sLabel;
+            LabelIds.put(sLabel, Count);
+            return Count++;
+        }
+    }
+
+    /** Returns the id of a given label, without assigning a new one.
+     *@param sLabel The label to look up.
+     *@return The id of the label, or -1 if the label is unknown.
+     */
+    public int lookupId(String sLabel) {
+        Integer iId = LabelIds.get(sLabel);
+        return (iId == null) ? -1 : iId;
+    }
+
+    /** Returns the label corresponding to a given id.
+     *@param iId The id of the label.
+     *@return The label.
+     */
+    public String getLabel(int iId) {
+        return Labels[iId];
+    }
+
+    /** Returns the number of labels in the dictionary.
+     *@return The label count.
+     */
+    public synchronized int size() {
+        return Count;
+    }
+}
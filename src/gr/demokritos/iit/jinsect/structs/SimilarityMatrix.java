@@ -0,0 +1,436 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/** The similarities between all pairs of a list of objects. Similarities are
+ * symmetric, so every pair is compared once, and the comparisons are scheduled in
+ * square tiles of pairs, run in parallel: a tile only involves a few objects, so
+ * that they stay in the processor caches while they are compared to each other.
+ * <p>
+ * The matrix can be kept in memory, or in a memory-mapped file. In the latter
+ * case the similarities need not fit in memory, and every completed tile is
+ * marked in the file, so that an interrupted calculation resumes from the tiles
+ * left when the matrix is opened again on the same file, with the same objects
+ * in the same order. The objects of a file are identified by their names, so
+ * they must be named or be character sequences.
+ * <p>
+ * Example:
+ * <pre>
+ * SimilarityMatrix smMatrix = new SimilarityMatrix(lGraphs, new File("sims.bin"));
+ * smMatrix.compute(sclComparator);
+ * int[] iaNearest = smMatrix.getTopK(0, 10);
+ * smMatrix.close();
+ * </pre>
+ *
+ * @author ggianna
+ */
+public class SimilarityMatrix implements Closeable {
+    /** The default number of objects per tile side. */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /** The first bytes of matrix files. */
+    private static final int MAGIC = 0x4A4E534D; // "JNSM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    /** The number of similarities per storage segment, so that every segment
+     * can be mapped at once. */
+    private static final int SEGMENT_SIZE = 1 << 24;
+
+    /** The compared objects. */
+    protected final Object[] Objects;
+    /** The number of objects per tile side. */
+    protected final int TileSize;
+    /** The number of tiles per matrix side. */
+    protected final int Tiles;
+    /** The similarities of the pairs, in the order of
+     * {@link #getPairIndex(int, int, int)}, split into segments. */
+    protected final DoubleBuffer[] Segments;
+    /** One byte per tile of the upper triangle, non-zero if the tile is
+     * complete. */
+    protected final ByteBuffer Completed;
+
+    private RandomAccessFile Store = null;
+    private final MappedByteBuffer[] Mappings;
+
+    /** Initializes a matrix in memory, with the default tile size.
+     *@param lObjects The objects to compare.
+     */
+    public SimilarityMatrix(List<?> lObjects) {
+        Objects = lObjects.toArray();
+        TileSize = DEFAULT_TILE_SIZE;
+        Tiles = getTilesPerSide();
+        long lPairs = getPairCount();
+        Segments = new DoubleBuffer[(int)((lPairs + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int iCnt = 0; iCnt < Segments.length; iCnt++)
+            Segments[iCnt] = DoubleBuffer.allocate(
+                    (int)Math.min(SEGMENT_SIZE, lPairs - (long)iCnt * SEGMENT_SIZE));
+        Completed = ByteBuffer.allocate(getTileCount());
+        Mappings = new MappedByteBuffer[0];
+    }
+
+    /** Initializes a matrix in a file, with the default tile size. If the file
+     * already holds a matrix of the same objects, its completed tiles are kept.
+     *@param lObjects The objects to compare.
+     *@param fStore The file of the matrix.
+     *@throws IOException If the file cannot be mapped, or holds a matrix of
+     * other objects.
+     *@throws IllegalArgumentException If an object is neither {@link INamed},
+     * with a name, nor a character sequence, so that the objects of the file
+     * cannot be identified.
+     */
+    public SimilarityMatrix(List<?> lObjects, File fStore) throws IOException {
+        this(lObjects, fStore, DEFAULT_TILE_SIZE);
+    }
+
+    /** Initializes a matrix in a file. If the file already holds a matrix of the
+     * same objects and tile size, its completed tiles are kept.
+     *@param lObjects The objects to compare.
+     *@param fStore The file of the matrix.
+     *@param iTileSize The number of objects per tile side.
+     *@throws IOException If the file cannot be mapped, or holds a different
+     * matrix.
+     *@throws IllegalArgumentException If an object is neither {@link INamed},
+     * with a name, nor a character sequence, so that the objects of the file
+     * cannot be identified.
+     */
+    public SimilarityMatrix(List<?> lObjects, File fStore, int iTileSize)
+            throws IOException {
+        if (iTileSize < 1)
+            throw new IllegalArgumentException("Invalid tile size: " + iTileSize);
+        Objects = lObjects.toArray();
+        TileSize = iTileSize;
+        Tiles = getTilesPerSide();
+        long lPairs = getPairCount();
+        // Keep the similarities aligned to their size
+        long lValuesStart = (HEADER_SIZE + getTileCount() + 7) & ~7L;
+        long lLength = lValuesStart + lPairs * 8;
+        long lFingerprint = getFingerprint();
+
+        boolean bExisting = fStore.exists() && (fStore.length() > 0);
+        Store = new RandomAccessFile(fStore, "rw");
+        try {
+            if (bExisting) {
+                if ((Store.length() != lLength) || (Store.readInt() != MAGIC) ||
+                        (Store.readInt() != VERSION) ||
+                        (Store.readInt() != Objects.length) ||
+                        (Store.readInt() != TileSize) ||
+                        (Store.readLong() != lFingerprint))
+                    throw new IOException("File " + fStore.getPath() +
+                            " does not hold a similarity matrix of these objects");
+            }
+            else {
+                Store.setLength(lLength);
+                Store.writeInt(MAGIC);
+                Store.writeInt(VERSION);
+                Store.writeInt(Objects.length);
+                Store.writeInt(TileSize);
+                Store.writeLong(lFingerprint);
+            }
+            FileChannel fcStore = Store.getChannel();
+            Mappings = new MappedByteBuffer[(int)((lPairs + SEGMENT_SIZE - 1) /
+                    SEGMENT_SIZE) + 1];
+            Mappings[0] = fcStore.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE,
+                    getTileCount());
+            Completed = Mappings[0];
+            Segments = new DoubleBuffer[Mappings.length - 1];
+            for (int iCnt = 0; iCnt < Segments.length; iCnt++) {
+                long lSize = Math.min(SEGMENT_SIZE, lPairs - (long)iCnt * SEGMENT_SIZE);
+                Mappings[iCnt + 1] = fcStore.map(FileChannel.MapMode.READ_WRITE,
+                        lValuesStart + (long)iCnt * SEGMENT_SIZE * 8, lSize * 8);
+                Segments[iCnt] = Mappings[iCnt + 1].asDoubleBuffer();
+            }
+        }
+        catch (IOException ioe) {
+            Store.close();
+            throw ioe;
+        }
+    }
+
+    /** Calculates the similarities of all pairs in tiles not yet completed, using
+     * all processors. Pairs that cannot be compared get a similarity of
+     * {@link Double#NaN}. The comparator is called concurrently, but never for
+     * the same object in two threads at the same time.
+     *@param sclComparator The calculator of similarity between objects.
+     *@throws InterruptedException If the calculation was interrupted. The tiles
+     * completed so far are kept.
+     */
+    public void compute(final SimilarityComparatorListener sclComparator)
+            throws InterruptedException {
+        TaskGroup tgTiles = new TaskGroup();
+        for (int iRowTile = 0; iRowTile < Tiles; iRowTile++)
+            for (int iColumnTile = iRowTile; iColumnTile < Tiles; iColumnTile++) {
+                final int iTile = getTileIndex(iRowTile, iColumnTile);
+                if (Completed.get(iTile) != 0)
+                    continue;
+                final int iRowTileArg = iRowTile;
+                final int iColumnTileArg = iColumnTile;
+                tgTiles.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        computeTile(iRowTileArg, iColumnTileArg, sclComparator);
+                        Completed.put(iTile, (byte)1);
+                    }
+                });
+            }
+        tgTiles.waitUntilCompletion();
+    }
+
+    /** Calculates the similarities of the pairs of a tile.
+     *@param iRowTile The tile row.
+     *@param iColumnTile The tile column, not less than the row.
+     *@param sclComparator The calculator of similarity between objects.
+     */
+    protected void computeTile(int iRowTile, int iColumnTile,
+            SimilarityComparatorListener sclComparator) {
+        int iRowEnd = Math.min((iRowTile + 1) * TileSize, Objects.length);
+        int iColumnEnd = Math.min((iColumnTile + 1) * TileSize, Objects.length);
+        for (int iFirst = iRowTile * TileSize; iFirst < iRowEnd; iFirst++) {
+            Object oFirst = Objects[iFirst];
+            for (int iSecond = Math.max(iColumnTile * TileSize, iFirst + 1);
+                    iSecond < iColumnEnd; iSecond++) {
+                Object oSecond = Objects[iSecond];
+                double dSimilarity;
+                try {
+                    // Always lock in the same order, to avoid deadlocks
+                    synchronized (oFirst) {
+                        synchronized (oSecond) {
+                            dSimilarity = sclComparator.getSimilarityBetween(oFirst,
+                                    oSecond).getOverallSimilarity();
+                        }
+                    }
+                } catch (InvalidClassException ex) {
+                    System.err.println("Cannot compare " + oFirst.toString() +
+                            " to " + oSecond.toString() + ". Cause:");
+                    ex.printStackTrace(System.err);
+                    dSimilarity = Double.NaN;
+                }
+                set(getPairIndex(iFirst, iSecond, Objects.length), dSimilarity);
+            }
+        }
+    }
+
+    /** Returns the number of compared objects. */
+    public int size() {
+        return Objects.length;
+    }
+
+    /** Returns an object of the matrix.
+     *@param iIndex The index of the object, in the given list.
+     *@return The object.
+     */
+    public Object getObject(int iIndex) {
+        return Objects[iIndex];
+    }
+
+    /** Returns the similarity between two objects.
+     *@param iFirst The index of the first object.
+     *@param iSecond The index of the second object.
+     *@return The similarity, or {@link Double#NaN} if the objects could not be
+     * compared, or are the same object.
+     */
+    public double getSimilarity(int iFirst, int iSecond) {
+        if (iFirst == iSecond)
+            return Double.NaN;
+        return get(getPairIndex(iFirst, iSecond, Objects.length));
+    }
+
+    /** Changes the similarity between two objects, e.g. to update the matrix in
+     * place while clustering. Tiles are not marked as complete by this method.
+     *@param iFirst The index of the first object.
+     *@param iSecond The index of the second object, different from the first.
+     *@param dSimilarity The similarity.
+     */
+    public void setSimilarity(int iFirst, int iSecond, double dSimilarity) {
+        if (iFirst == iSecond)
+            throw new IllegalArgumentException("An object has no pair similarity to itself");
+        set(getPairIndex(iFirst, iSecond, Objects.length), dSimilarity);
+    }
+
+    /** Returns the similarities of an object to all objects.
+     *@param iRow The index of the object.
+     *@return The similarities, indexed by object. The similarity of the object to
+     * itself is {@link Double#NaN}.
+     */
+    public double[] getRow(int iRow) {
+        double[] daRes = new double[Objects.length];
+        for (int iCnt = 0; iCnt < daRes.length; iCnt++)
+            daRes[iCnt] = getSimilarity(iRow, iCnt);
+        return daRes;
+    }
+
+    /** Returns the similarities of all objects to an object. Since similarities
+     * are symmetric, this is the row of the object.
+     *@param iColumn The index of the object.
+     *@return The similarities, indexed by object.
+     *@see #getRow(int)
+     */
+    public double[] getColumn(int iColumn) {
+        return getRow(iColumn);
+    }
+
+    /** Returns the objects most similar to an object.
+     *@param iRow The index of the object.
+     *@param iK The maximum number of objects to return.
+     *@return The indices of up to iK other objects, from the most similar down.
+     * Objects that could not be compared are not returned.
+     */
+    public int[] getTopK(int iRow, int iK) {
+        int[] iaTop = new int[Math.max(0, Math.min(iK, Objects.length - 1))];
+        double[] daTop = new double[iaTop.length];
+        int iFound = 0;
+        for (int iCnt = 0; (iCnt < Objects.length) && (iaTop.length > 0); iCnt++) {
+            double dCur = getSimilarity(iRow, iCnt);
+            if (Double.isNaN(dCur) ||
+                    ((iFound == iaTop.length) && (dCur <= daTop[iFound - 1])))
+                continue;
+            // Insert in order, dropping the last one if full
+            int iPos = (iFound < iaTop.length) ? iFound++ : iFound - 1;
+            while ((iPos > 0) && (daTop[iPos - 1] < dCur)) {
+                daTop[iPos] = daTop[iPos - 1];
+                iaTop[iPos] = iaTop[iPos - 1];
+                iPos--;
+            }
+            daTop[iPos] = dCur;
+            iaTop[iPos] = iCnt;
+        }
+        return (iFound == iaTop.length) ? iaTop : Arrays.copyOf(iaTop, iFound);
+    }
+
+    /** Returns the similarities of all pairs, in the order of
+     * {@link #getPairIndex(int, int, int)}.
+     *@return A copy of the similarities.
+     *@throws IllegalStateException If the pairs are too many for an array.
+     */
+    public double[] toArray() {
+        long lPairs = getPairCount();
+        if (lPairs > Integer.MAX_VALUE)
+            throw new IllegalStateException("Too many pairs for an array: " + lPairs);
+        double[] daRes = new double[(int)lPairs];
+        for (int iCnt = 0; iCnt < Segments.length; iCnt++) {
+            DoubleBuffer dbCur = Segments[iCnt].duplicate();
+            dbCur.clear();
+            dbCur.get(daRes, iCnt * SEGMENT_SIZE, dbCur.remaining());
+        }
+        return daRes;
+    }
+
+    /** Checks whether all similarities have been calculated. */
+    public boolean isComplete() {
+        return getCompletedTileCount() == getTileCount();
+    }
+
+    /** Returns the number of tiles of the matrix, counting only one of every two
+     * symmetric tiles. */
+    public int getTileCount() {
+        return (int)((long)Tiles * (Tiles + 1) / 2);
+    }
+
+    /** Returns the number of completed tiles. */
+    public int getCompletedTileCount() {
+        int iRes = 0;
+        for (int iCnt = 0; iCnt < getTileCount(); iCnt++)
+            if (Completed.get(iCnt) != 0)
+                iRes++;
+        return iRes;
+    }
+
+    public int getTileSize() {
+        return TileSize;
+    }
+
+    /** Writes the calculated similarities to the file of the matrix, if any. */
+    public void flush() {
+        for (MappedByteBuffer mbbCur : Mappings)
+            mbbCur.force();
+    }
+
+    /** Writes the calculated similarities to the file of the matrix, if any, and
+     * closes the file. The matrix cannot be used afterwards.
+     *@throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (Store == null)
+            return;
+        flush();
+        Store.close();
+        Store = null;
+    }
+
+    /** Returns the position of the similarity of a pair of objects, among the
+     * similarities of all pairs. The pairs are ordered by their first, then by
+     * their second object.
+     *@param iFirst The index of the first object.
+     *@param iSecond The index of the second object, different from the first.
+     *@param iCount The number of objects.
+     *@return The position of the pair similarity.
+     */
+    public static long getPairIndex(int iFirst, int iSecond, int iCount) {
+        if (iFirst > iSecond) {
+            int iTmp = iFirst;
+            iFirst = iSecond;
+            iSecond = iTmp;
+        }
+        return (long)iFirst * iCount - (long)iFirst * (iFirst + 1) / 2 +
+                (iSecond - iFirst - 1);
+    }
+
+    private double get(long lIndex) {
+        return Segments[(int)(lIndex / SEGMENT_SIZE)].get((int)(lIndex % SEGMENT_SIZE));
+    }
+
+    private void set(long lIndex, double dValue) {
+        Segments[(int)(lIndex / SEGMENT_SIZE)].put((int)(lIndex % SEGMENT_SIZE), dValue);
+    }
+
+    private long getPairCount() {
+        return (long)Objects.length * (Objects.length - 1) / 2;
+    }
+
+    private int getTilesPerSide() {
+        return (Objects.length + TileSize - 1) / TileSize;
+    }
+
+    private int getTileIndex(int iRowTile, int iColumnTile) {
+        return (int)((long)iRowTile * Tiles - (long)iRowTile * (iRowTile - 1) / 2 +
+                (iColumnTile - iRowTile));
+    }
+
+    /** Identifies the list of objects by their names, so that files of other
+     * lists are not resumed.
+     *@throws IllegalArgumentException If an object has no name, and so could not
+     * be told apart from other objects.
+     */
+    private long getFingerprint() {
+        long lRes = Objects.length;
+        for (Object oCur : Objects) {
+            String sId = null;
+            if (oCur instanceof INamed)
+                sId = ((INamed)oCur).getName();
+            else if (oCur instanceof CharSequence)
+                sId = oCur.toString();
+            if (sId == null)
+                throw new IllegalArgumentException("Objects of a matrix file must " +
+                        "be named (INamed) or be character sequences: " + oCur);
+            lRes = lRes * 31 + sId.hashCode();
+        }
+        return lRes;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+/** An estimate of the similarity of two graphs, calculated from their sketches,
+ * together with a bound of its error. With the confidence of the estimate, the
+ * actual (level weighted) Jaccard similarity of the edge sets lies within
+ * {@link #ErrorBound} of the estimate, so pairs whose upper bound is below a
+ * threshold can be safely dismissed without a full comparison. The actual
+ * containment similarity lies, with the same confidence, between
+ * {@link #ContainmentLowerBound} and {@link #ContainmentUpperBound}.
+ *
+ * @author ggianna
+ */
+public class SketchSimilarity implements ISimilarity {
+    /** The estimated Jaccard similarity of the edge sets. */
+    public double Jaccard;
+    /** The estimated containment similarity (shared edges over the edges of the
+     * smaller graph). */
+    public double ContainmentSimilarity;
+    /** The size similarity, which is exact. */
+    public double SizeSimilarity;
+    /** The maximum error of the Jaccard similarity, at the given confidence. */
+    public double ErrorBound;
+    /** The lowest containment similarity the graphs may have, at the given
+     * confidence. */
+    public double ContainmentLowerBound;
+    /** The highest containment similarity the graphs may have, at the given
+     * confidence. */
+    public double ContainmentUpperBound;
+    /** The probability that the errors are within the bounds. */
+    public double Confidence;
+
+    /** Creates a zero similarity. */
+    public SketchSimilarity() {
+        Jaccard = ContainmentSimilarity = SizeSimilarity = ErrorBound = 0.0;
+        ContainmentLowerBound = ContainmentUpperBound = 0.0;
+        Confidence = 1.0;
+    }
+
+    /** Returns the estimated Jaccard similarity. */
+    @Override
+    public double getOverallSimilarity() {
+        return Jaccard;
+    }
+
+    /** Returns the lowest Jaccard similarity the graphs may have, at the given
+     * confidence. */
+    public double getLowerBound() {
+        return Math.max(0.0, Jaccard - ErrorBound);
+    }
+
+    /** Returns the highest Jaccard similarity the graphs may have, at the given
+     * confidence. */
+    public double getUpperBound() {
+        return Math.min(1.0, Jaccard + ErrorBound);
+    }
+
+    public double getContainmentLowerBound() {
+        return ContainmentLowerBound;
+    }
+
+    public double getContainmentUpperBound() {
+        return ContainmentUpperBound;
+    }
+
+    @Override
+    public double asDistance() {
+        return (Jaccard == 0.0) ? Double.POSITIVE_INFINITY : 1.0 / Jaccard;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Jaccard: %5.2f%% (+/- %5.2f%% at %4.1f%%) " +
+                "Containment: %5.2f%% (%5.2f%% - %5.2f%%) Size: %5.2f%%",
+                Jaccard * 100.0, ErrorBound * 100.0, Confidence * 100.0,
+                ContainmentSimilarity * 100.0, ContainmentLowerBound * 100.0,
+                ContainmentUpperBound * 100.0, SizeSimilarity * 100.0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import java.util.Arrays;
+
+/** A frozen, read-only list of the edges of an n-gram graph level, sorted by edge
+ * key (see {@link CompactNGramGraph#edgeKey(int, int)}), with the weight and the
+ * degradation degree of every edge in parallel arrays. Two lists built with
+ * the same {@link NGramLabelDictionary} can be compared with a single linear
+ * merge pass.
+ *
+ * @author ggianna
+ */
+public class SortedEdgeList {
+    protected final long[] Keys;
+    protected final double[] Weights;
+    /** The degradation degree of each edge, or null if no edge is degraded. */
+    protected final double[] Degradations;
+
+    /** Creates a list from already sorted arrays, which are used as-is.
+     *@param laKeys The edge keys, in ascending order.
+     *@param daWeights The weights of the edges.
+     *@param daDegradations The degradation degrees of the edges, or null if no
+     * edge is degraded.
+     */
+    public SortedEdgeList(long[] laKeys, double[] daWeights, double[] daDegradations) {
+        Keys = laKeys;
+        Weights = daWeights;
+        Degradations = daDegradations;
+    }
+
+    /** Creates a sorted list with the edges of a compact graph.
+     *@param gWeights The graph holding the edges and their weights.
+     *@param gDegradations A graph holding the degradation degree of degraded
+     * edges as their weight, or null if no edge is degraded.
+     *@return The sorted list.
+     */
+    public static SortedEdgeList fromCompactGraph(CompactNGramGraph gWeights,
+            CompactNGramGraph gDegradations) {
+        long[] laKeys = gWeights.getEdgeKeys();
+        Arrays.sort(laKeys);
+        double[] daWeights = new double[laKeys.length];
+        double[] daDegradations = null;
+        if ((gDegradations != null) && (gDegradations.getEdgesCount() > 0))
+            daDegradations = new double[laKeys.length];
+        for (int iCnt = 0; iCnt < laKeys.length; iCnt++) {
+            daWeights[iCnt] = gWeights.getWeight(laKeys[iCnt], 0.0);
+            if (daDegradations != null)
+                daDegradations[iCnt] = gDegradations.getWeight(laKeys[iCnt], 0.0);
+        }
+        return new SortedEdgeList(laKeys, daWeights, daDegradations);
+    }
+
+    public int size() {
+        return Keys.length;
+    }
+
+    /** Indicates whether {@link #getKeyAt(int)} returns the keys in ascending
+     * order, so that the list can be merged with other lists and
+     * {@link #ceilingIndex(long)} is supported. Lists that only support lookups
+     * through {@link #indexOf(long)} return false.
+     *@return True if the keys are in ascending order.
+     */
+    public boolean isSortedByKey() {
+        return true;
+    }
+
+    public long getKeyAt(int iIndex) {
+        return Keys[iIndex];
+    }
+
+    public double getWeightAt(int iIndex) {
+        return Weights[iIndex];
+    }
+
+    /** Returns the degradation degree of an edge.
+     *@param iIndex The index of the edge.
+     *@return The degradation degree, zero if the edge is not degraded.
+     */
+    public double getDegradationAt(int iIndex) {
+        return (Degradations == null) ? 0.0 : Degradations[iIndex];
+    }
+
+    public boolean hasDegradations() {
+        return Degradations != null;
+    }
+
+    /** Looks up an edge.
+     *@param lKey The key of the edge.
+     *@return The index of the edge, or a negative value if it does not exist.
+     */
+    public int indexOf(long lKey) {
+        int iRes = Arrays.binarySearch(Keys, lKey);
+        return (iRes < 0) ? -1 : iRes;
+    }
+
+    /** Returns the index of the first edge with a key not less than a given key.
+     *@param lKey The key to look for.
+     *@return The index of the edge, or the size of the list if all keys are less
+     * than the given one.
+     */
+    public int ceilingIndex(long lKey) {
+        int iRes = Arrays.binarySearch(Keys, lKey);
+        return (iRes < 0) ? -(iRes + 1) : iRes;
+    }
+
+    /** Looks up an edge, ignoring its direction. The edge with the given direction
+     * is preferred, if both exist.
+     *@param lKey The key of the edge.
+     *@return The index of the edge, or a negative value if it does not exist.
+     */
+    public int indexOfUndirected(long lKey) {
+        int iRes = indexOf(lKey);
+        return (iRes < 0) ? indexOf(CompactNGramGraph.reverseKey(lKey)) : iRes;
+    }
+}
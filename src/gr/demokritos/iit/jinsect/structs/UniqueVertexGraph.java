@@ -150,7 +150,7 @@ public class UniqueVertexGraph extends WeightedGraphImpl implements Serializable
         if (e == null) {
             e = super.addEdge(vH, vT);
             if (eclLocator != null)
-                eclLocator.addedEdge(e);
+                eclLocator.addedEdge(this, e);
         }
         
         // Return added edge, or null.
@@ -224,7 +224,7 @@ public class UniqueVertexGraph extends WeightedGraphImpl implements Serializable
                 e = eclLocator.locateDirectedEdgeInGraph(this, vH, vT);
             if (e == null) {
                 super.addEdge(edge);
-                eclLocator.addedEdge(edge);
+                eclLocator.addedEdge(this, edge);
                 return;
             }
             else
@@ -252,7 +252,13 @@ public class UniqueVertexGraph extends WeightedGraphImpl implements Serializable
 //        // Clear reference
 //        m.deleteObject("tmp", "tmp");
         UniqueVertexGraph res = new UniqueVertexGraph();
-        res.UniqueVertices = (HashMap<String, Vertex>) this.UniqueVertices.clone();
+        // Add the vertices through the graph, so that edges can connect them
+        for (Vertex vCur : this.UniqueVertices.values())
+            try {
+                res.add(vCur);
+            } catch (Exception ex) {
+                return null;
+            }
         
         for (WeightedEdgeImpl eCur: (Set<WeightedEdgeImpl>)this.getEdgeSet())
             try {
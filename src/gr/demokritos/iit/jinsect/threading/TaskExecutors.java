@@ -0,0 +1,137 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.threading;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Provides the executor shared by all {@link TaskGroup}s, unless they are given
+ * one of their own. By default it is a {@link ForkJoinPool}, with one daemon
+ * thread per processor. Tasks that block waiting for other tasks (e.g. through
+ * {@link TaskGroup#waitUntilCompletion()}) let the pool start spare threads, so
+ * nested parallel work cannot exhaust it.
+ * <p>
+ * On platforms that support virtual threads, the shared executor can instead
+ * start a virtual thread per task, either by calling
+ * {@link #setUseVirtualThreads(boolean)} or by setting the
+ * <code>jinsect.threading.virtual</code> system property to true.
+ *
+ * @author ggianna
+ */
+public final class TaskExecutors {
+    /** The system property enabling virtual threads. */
+    public static final String VIRTUAL_THREADS_PROPERTY = "jinsect.threading.virtual";
+
+    private static ExecutorService Shared = null;
+    private static boolean UseVirtualThreads =
+            Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+
+    private TaskExecutors() {
+    }
+
+    /** Returns the shared executor, creating it on first use.
+     *@return The shared executor.
+     */
+    public static synchronized ExecutorService getShared() {
+        if (Shared == null) {
+            if (UseVirtualThreads && isVirtualThreadsSupported())
+                Shared = newVirtualThreadExecutor();
+            else
+                Shared = newPool(Runtime.getRuntime().availableProcessors());
+        }
+        return Shared;
+    }
+
+    /** Sets the shared executor. Tasks already submitted to the previous one are
+     * not affected; it is up to the caller to shut it down.
+     *@param esShared The executor to share, or null to create the default one on
+     * next use.
+     */
+    public static synchronized void setShared(ExecutorService esShared) {
+        Shared = esShared;
+    }
+
+    /** Sets whether the shared executor runs every task in a new virtual thread.
+     * It takes effect on the next creation of the shared executor, so it should
+     * be called before any tasks are submitted.
+     *@param bUseVirtualThreads True to use virtual threads, if supported.
+     */
+    public static synchronized void setUseVirtualThreads(boolean bUseVirtualThreads) {
+        if (UseVirtualThreads != bUseVirtualThreads)
+            Shared = null;
+        UseVirtualThreads = bUseVirtualThreads;
+    }
+
+    public static synchronized boolean isUsingVirtualThreads() {
+        return UseVirtualThreads && isVirtualThreadsSupported();
+    }
+
+    /** Checks whether the platform supports virtual threads.
+     *@return True if virtual thread executors can be created.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    /** Creates a fork-join pool of daemon threads, for asynchronous tasks.
+     *@param iParallelism The number of threads of the pool.
+     *@return The pool.
+     */
+    public static ForkJoinPool newPool(int iParallelism) {
+        final AtomicInteger aiThreads = new AtomicInteger();
+        return new ForkJoinPool(Math.max(1, iParallelism),
+                new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool fjpPool) {
+                ForkJoinWorkerThread tRes =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(fjpPool);
+                tRes.setName("jinsect-worker-" + aiThreads.incrementAndGet());
+                tRes.setDaemon(true);
+                return tRes;
+            }
+        }, null, true);
+    }
+
+    /** Creates an executor that starts a new thread per task, for tasks that
+     * mostly block (e.g. serving a network connection). The threads are virtual
+     * if the platform supports them, otherwise they are daemon threads that are
+     * reused when idle.
+     *@return The executor. It is up to the caller to shut it down.
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        if (isVirtualThreadsSupported())
+            return newVirtualThreadExecutor();
+        final AtomicInteger aiThreads = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread tRes = new Thread(r, "jinsect-task-" + aiThreads.incrementAndGet());
+                tRes.setDaemon(true);
+                return tRes;
+            }
+        });
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.threading;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/** A group of tasks for parallel execution, run on a shared executor (see
+ * {@link TaskExecutors}). The group limits the number of its tasks that are
+ * queued or running at the same time: submitting a task beyond that limit blocks
+ * until an earlier task completes, so that producers cannot run far ahead of the
+ * executor. The group can be waited upon until all its tasks have completed, and
+ * reports the failures of its tasks to the waiting thread. A group can be reused
+ * after waiting upon it.
+ * <p>
+ * Example:
+ * <pre>
+ * TaskGroup tgTasks = new TaskGroup();
+ * for (...)
+ *     tgTasks.execute(new Runnable() { ... });
+ * tgTasks.waitUntilCompletion();
+ * </pre>
+ *
+ * @author ggianna
+ */
+public class TaskGroup implements Executor {
+    /** The maximum number of tasks queued or running at the same time. */
+    protected final int MaxTasks;
+    /** The executor of the tasks, or null for the shared executor. */
+    protected final Executor Target;
+    /** The permits to queue tasks. */
+    protected final Semaphore Slots;
+
+    /** The number of submitted tasks that have not completed. Guarded by the
+     * group itself. */
+    private int Pending = 0;
+    /** The first failure of a task, since the last wait. Guarded by the group
+     * itself. */
+    private Throwable Failure = null;
+
+    /** Initializes a group, allowing as many tasks at the same time as there are
+     * processors.
+     */
+    public TaskGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Initializes a group, with a given maximum of tasks at the same time.
+     *@param iMaxTasks The maximum number of tasks queued or running at the same
+     * time.
+     */
+    public TaskGroup(int iMaxTasks) {
+        this(iMaxTasks, null);
+    }
+
+    /** Initializes a group, with a given maximum of tasks at the same time, run
+     * on a given executor.
+     *@param iMaxTasks The maximum number of tasks queued or running at the same
+     * time.
+     *@param eTarget The executor of the tasks, or null for the shared executor.
+     */
+    public TaskGroup(int iMaxTasks, Executor eTarget) {
+        if (iMaxTasks < 1)
+            throw new IllegalArgumentException("At least one task must be allowed");
+        MaxTasks = iMaxTasks;
+        Target = eTarget;
+        Slots = new Semaphore(iMaxTasks);
+    }
+
+    /** Submits a task for execution, waiting for an earlier task to complete if
+     * the group is full. Unlike {@link #submit(Runnable)}, it can be used where an
+     * {@link Executor} is expected.
+     *@param r The task to execute.
+     *@throws RejectedExecutionException If the thread is interrupted while
+     * waiting, or the executor rejects the task. The interrupt status of the
+     * thread is kept.
+     */
+    @Override
+    public void execute(Runnable r) {
+        try {
+            submit(r);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to submit", ie);
+        }
+    }
+
+    /** Submits a task for execution, waiting for an earlier task to complete if
+     * the group is full.
+     *@param r The task to execute.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void submit(Runnable r) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                Slots.acquire();
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return Slots.tryAcquire();
+            }
+        });
+        dispatch(r);
+    }
+
+    /** Submits a task for execution, if the group is not full.
+     *@param r The task to execute.
+     *@return True if the task was submitted, false if the group was full.
+     */
+    public boolean trySubmit(Runnable r) {
+        if (!Slots.tryAcquire())
+            return false;
+        dispatch(r);
+        return true;
+    }
+
+    /** Submits a task for execution, waiting up to a given time for an earlier
+     * task to complete if the group is full.
+     *@param r The task to execute.
+     *@param lTimeout The maximum time to wait.
+     *@param tuUnit The unit of the time to wait.
+     *@return True if the task was submitted, false if the group remained full.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean trySubmit(Runnable r, long lTimeout, TimeUnit tuUnit)
+            throws InterruptedException {
+        if (!Slots.tryAcquire(lTimeout, tuUnit))
+            return false;
+        dispatch(r);
+        return true;
+    }
+
+    /** Waits until all submitted tasks have completed. If any of them failed, the
+     * first failure is thrown, with any later ones attached as suppressed
+     * exceptions, and the group is ready to be used again.
+     *@throws InterruptedException If the thread is interrupted while waiting.
+     *@throws CompletionException If a task failed, with the failure as its cause.
+     */
+    public void waitUntilCompletion() throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                synchronized (TaskGroup.this) {
+                    while (Pending > 0)
+                        TaskGroup.this.wait();
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                synchronized (TaskGroup.this) {
+                    return Pending == 0;
+                }
+            }
+        });
+        Throwable tFailure;
+        synchronized (this) {
+            tFailure = Failure;
+            Failure = null;
+        }
+        if (tFailure != null)
+            throw new CompletionException(tFailure);
+    }
+
+    /** Returns the number of submitted tasks that have not completed. */
+    public synchronized int getPendingCount() {
+        return Pending;
+    }
+
+    public int getMaxTasks() {
+        return MaxTasks;
+    }
+
+    /** Runs a task, for which a slot has been acquired, on the executor. */
+    protected void dispatch(final Runnable r) {
+        synchronized (this) {
+            Pending++;
+        }
+        Runnable rTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                }
+                catch (Throwable t) {
+                    fail(t);
+                }
+                finally {
+                    complete();
+                }
+            }
+        };
+        try {
+            (Target == null ? TaskExecutors.getShared() : Target).execute(rTask);
+        }
+        catch (RuntimeException re) {
+            complete();
+            throw re;
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        if (Failure == null)
+            Failure = t;
+        else if (Failure != t)
+            Failure.addSuppressed(t);
+    }
+
+    private void complete() {
+        Slots.release();
+        synchronized (this) {
+            if (--Pending == 0)
+                notifyAll();
+        }
+    }
+}
@@ -9,10 +9,8 @@
 
 package gr.demokritos.iit.jinsect.threading;
 
-import java.util.Iterator;
-
-/** A list of threads for parallel execution.
- * Should probably be replaced by {@link ThreadPoolExecutor}.
+/** A list of threads for parallel execution. It is kept for compatibility, as a
+ * facade of a {@link TaskGroup}, which should be preferred in new code.
  *
  * @author ggianna
  */
@@ -32,36 +30,4 @@ public class ThreadList extends ThreadQueue {
         super();
     }
             
-    /** Adds a {@link Runnable} object in the list for execution, if possible. There is no first-in,
-     *first-out logic, as opposed to {@link ThreadQueue}.
-     *@param r The runnable object to execute.
-     *@return True if the object was queued for execution, or false if the queue was full.
-     */
-    @Override
-    public boolean addThreadFor(Runnable r) {
-        if (qThreads.size() == Max) {
-            // Check all threads and dispose of dead threads
-            Iterator iAllThreads = super.qThreads.iterator();
-            boolean bRemoved=false;
-            while (iAllThreads.hasNext()) {
-                Thread tCur = (Thread)iAllThreads.next();
-                if (!tCur.isAlive())
-                {
-                    iAllThreads.remove();
-                    bRemoved=true;
-                }
-            }
-            
-            // Still full - Return false
-            if (!bRemoved)
-                return false;
-        }
-        
-        // Made space for new thread
-        Thread t = new Thread(r);
-        qThreads.add(t);
-        t.start();
-        return true;
-    }
-    
 }
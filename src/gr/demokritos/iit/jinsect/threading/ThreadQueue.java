@@ -9,28 +9,32 @@
 
 package gr.demokritos.iit.jinsect.threading;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
-/** A queue of threads for parallel execution.
- * Should probably be replaced by {@link ThreadPoolExecutor}.
+/** A queue of tasks for parallel execution. It is kept for compatibility, as a
+ * facade of a {@link TaskGroup}, which should be preferred in new code: tasks no
+ * longer get a thread of their own, but run on the shared executor of
+ * {@link TaskExecutors}.
  *
  * @author ggianna
  */
 public class ThreadQueue {
-    /** The queue of threads.
-     */
-    protected Queue qThreads;
+    /** The time {@link #addThreadFor(Runnable)} waits for a running task to
+     * complete, when the queue is full, in milliseconds. */
+    public static final long ADD_WAIT_MILLIS = 10;
+
     /** The maximum number of running threads.
      */
     protected int Max = Runtime.getRuntime().availableProcessors();
+    /** The group running the tasks of the queue.
+     */
+    protected TaskGroup Tasks;
     
     /** Initializes a thread queue, with the default maximum number of threads 
      * running at the same time.
      */    
     public ThreadQueue() {
-        qThreads = new LinkedList();
+        Tasks = new TaskGroup(Max);
     }
     
     /** Initializes a thread queue, with a given maximum of threads running at the same time.
@@ -38,37 +42,37 @@ public class ThreadQueue {
      */
     public ThreadQueue(int iMax) {
         Max = iMax;
-        qThreads = new LinkedList();
+        Tasks = new TaskGroup(iMax);
     }
     
-    /** Adds a {@link Runnable} object in the queue for execution, if possible. First-in,
-     *first-out logic is followed.
+    /** Adds a {@link Runnable} object in the queue for execution, if possible.
+     * If the queue is full, it waits up to {@link #ADD_WAIT_MILLIS} for a running
+     * task to complete, so that callers retrying in a loop do not keep a processor
+     * busy.
      *@param r The runnable object to execute.
      *@return True if the object was queued for execution, or false if the queue was full.
      */
     public boolean addThreadFor(Runnable r) {
-        if (qThreads.size() == Max) {
-            // Check head thread
-            if (((Thread)qThreads.peek()).isAlive())
-                return false;
-            else
-                qThreads.remove();
+        try {
+            return Tasks.trySubmit(r, ADD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return Tasks.trySubmit(r);
         }
-        
-        Thread t = new Thread(r);
-        qThreads.add(t);
-        t.start();
-        return true;
     }
     
     /** Waits until all running threads have been complete. 
+     *@throws java.util.concurrent.CompletionException If a task failed, with the
+     * failure as its cause.
      */
     public void waitUntilCompletion() throws InterruptedException {
-        Iterator iIter = qThreads.iterator();
-        while (iIter.hasNext()) {
-            Thread tCur = (Thread)iIter.next();
-            if (tCur.isAlive())
-                tCur.join();
-        }
+        Tasks.waitUntilCompletion();
+    }
+
+    /** Returns the group running the tasks of the queue.
+     */
+    public TaskGroup getTaskGroup() {
+        return Tasks;
     }
-}
\ No newline at end of file
+}
@@ -33,6 +33,9 @@ import gr.demokritos.iit.jinsect.algorithms.nlp.PorterStemmer;
 import gr.demokritos.iit.jinsect.structs.UniqueVertexGraph;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.TreeSet;
 import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.html.HTML.Tag;
@@ -1127,6 +1130,45 @@ public final class utils {
         return sbRes.toString();
     }
     
+    /** Creates a new, empty temporary file in the directory of a given file, to
+     * write a new version of the file to before replacing it with
+     * {@link #replaceFile(File, File)}. Concurrent writers of the same file get
+     * distinct temporary files.
+     *@param fTarget The file that is to be replaced.
+     *@return The temporary file.
+     *@throws IOException If the file cannot be created.
+     */
+    public static File createTempFileFor(File fTarget) throws IOException {
+        return File.createTempFile(fTarget.getName() + ".", ".tmp",
+                fTarget.getAbsoluteFile().getParentFile());
+    }
+
+    /** Replaces a file with another, e.g. a complete temporary file, through an
+     * atomic rename where the file system supports it, so that readers never see
+     * a partially written file. If the file cannot be replaced, the source file
+     * is deleted.
+     *@param fSource The file that replaces the target.
+     *@param fTarget The file to replace. It need not exist.
+     *@throws IOException If the file cannot be replaced.
+     */
+    public static void replaceFile(File fSource, File fTarget) throws IOException {
+        try {
+            try {
+                Files.move(fSource.toPath(), fTarget.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(fSource.toPath(), fTarget.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ioe) {
+            fSource.delete();
+            throw new IOException("Cannot replace " + fTarget + ": " + ioe.getMessage(),
+                    ioe);
+        }
+    }
+    
     /**Repeats a given string a specified number of times.
      *@param sStr The string to repeat.
      *@param iTimes The times to repeat the string.
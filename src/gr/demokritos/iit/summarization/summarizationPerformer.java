@@ -30,14 +30,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -280,15 +283,19 @@ public class summarizationPerformer {
                 if (sTrainDataDir.length() > 0) {
                     INSECTDB dbTrainingData = new INSECTFileDB("", sTrainDataDir);
 
-                    // Saving normality estimator
-                    System.err.print("Saving normality estimator...");
-                    dbTrainingData.saveObject(geEstimator, NORMALITY_MODEL_NAME,
-                            DATA_MODELS_CATEGORY);
-                    System.err.println("Done.");
-                    System.err.print("Saving grammar model...");
-                    dbTrainingData.saveObject(Grammar, GRAMMAR_MODEL_NAME,
-                            DATA_MODELS_CATEGORY);
-                    System.err.println("Done.");
+                    // Saving normality estimator and grammar model, in parallel
+                    System.err.print("Saving normality estimator and grammar model...");
+                    HashMap<String, Serializable> hmModels = new HashMap<String, Serializable>();
+                    hmModels.put(NORMALITY_MODEL_NAME, geEstimator);
+                    hmModels.put(GRAMMAR_MODEL_NAME, Grammar);
+                    try {
+                        dbTrainingData.saveAll(hmModels, DATA_MODELS_CATEGORY).join();
+                        System.err.println("Done.");
+                    }
+                    catch (CompletionException ce) {
+                        System.err.println("Saving failed. Cause:");
+                        ce.getCause().printStackTrace(System.err);
+                    }
                 }
             }
         }
@@ -16,7 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import gr.demokritos.iit.jinsect.events.NotificationListener;
-import gr.demokritos.iit.jinsect.threading.PooledThreadList;
+import gr.demokritos.iit.jinsect.threading.TaskGroup;
 
 /**
  * Estimate word assignements in leaf topics and topic assignements in super topics from 
@@ -128,7 +128,7 @@ public class HierLDAGibbs implements Serializable {
     
     public void performGibbs(int iIterations, int iBurnIn, int iThreads) {
         initModelState();
-        PooledThreadList t = new PooledThreadList(iThreads);
+        TaskGroup t = new TaskGroup(iThreads);
         
         for (int iCurIter=0; iCurIter < iIterations; iCurIter++) {
             // Update progress bar
@@ -163,7 +163,7 @@ public class HierLDAGibbs implements Serializable {
                         // For all other levels
                         for (int iCurLevel=numOfLevels-1; iCurLevel>0; iCurLevel--) {
                             final int iCurLevelArg = iCurLevel;
-                            while (!t.addThreadFor(new Runnable() {
+                            t.execute(new Runnable() {
                                 public void run() {
                                         // For all topics of the level
                                         for (int iCurTopic=0; iCurTopic < iCurLevelArg; iCurTopic++) {
@@ -185,8 +185,7 @@ public class HierLDAGibbs implements Serializable {
                                         }
 
                                 }
-                            }))
-                                Thread.yield();
+                            });
                         }
                     }
                     
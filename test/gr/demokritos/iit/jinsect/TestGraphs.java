@@ -0,0 +1,44 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.structs.CompactNGramGraph;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import static org.junit.Assert.*;
+
+/** Assertions on the edges of graphs, shared by the tests.
+ *
+ * @author ggianna
+ */
+public class TestGraphs {
+    /** Asserts that two graphs have the same levels, with the same edges and
+     * weights. Edges are matched by their labels, so the graphs may keep their
+     * levels compact or expanded, and in different label dictionaries.
+     *@param dgExpected The expected graph.
+     *@param dgActual The graph to check.
+     *@param dDelta The maximum difference between the weights of an edge.
+     */
+    public static void assertSameWeights(DocumentNGramGraph dgExpected,
+            DocumentNGramGraph dgActual, double dDelta) {
+        assertEquals(dgExpected.getMinSize(), dgActual.getMinSize());
+        assertEquals(dgExpected.getMaxSize(), dgActual.getMaxSize());
+        for (int iLevel = 0; iLevel <= dgExpected.getMaxSize() -
+                dgExpected.getMinSize(); iLevel++) {
+            CompactNGramGraph cgExpected = dgExpected.getCompactGraphLevel(iLevel);
+            CompactNGramGraph cgActual = dgActual.getCompactGraphLevel(iLevel);
+            assertEquals(cgExpected.getEdgesCount(), cgActual.getEdgesCount());
+            NGramLabelDictionary dExpected = cgExpected.getDictionary();
+            for (long lKey : cgExpected.getEdgeKeys()) {
+                String sHead = dExpected.getLabel(CompactNGramGraph.headOf(lKey));
+                String sTail = dExpected.getLabel(CompactNGramGraph.tailOf(lKey));
+                assertEquals(sHead + "->" + sTail, cgExpected.getWeight(lKey, -1.0),
+                        cgActual.getWeight(cgActual.edgeKey(sHead, sTail), -1.0),
+                        dDelta);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect;
+
+import java.util.Random;
+
+/** Generates reproducible, word-like texts for the tests, so that no corpus is
+ * required to run them.
+ *
+ * @author ggianna
+ */
+public class TestTexts {
+    /** Creates a text of a given size, from a small vocabulary, so that texts of
+     * different seeds share many n-grams.
+     *@param iSize The number of characters of the text.
+     *@param lSeed The seed of the generator. Equal seeds give equal texts.
+     *@return The text.
+     */
+    public static String createText(int iSize, long lSeed) {
+        Random rVocabulary = new Random(42);
+        String[] saWords = new String[300];
+        for (int iCnt = 0; iCnt < saWords.length; iCnt++) {
+            int iWordLen = 2 + rVocabulary.nextInt(7);
+            StringBuilder sbWord = new StringBuilder(iWordLen);
+            for (int iChar = 0; iChar < iWordLen; iChar++)
+                sbWord.append((char)('a' + rVocabulary.nextInt(26)));
+            saWords[iCnt] = sbWord.toString();
+        }
+
+        Random rText = new Random(lSeed);
+        StringBuilder sbRes = new StringBuilder(iSize + 16);
+        while (sbRes.length() < iSize) {
+            // Low ranks are much more frequent
+            int iRank = (int)Math.floor(Math.pow(saWords.length + 1,
+                    rText.nextDouble())) - 1;
+            sbRes.append(saWords[Math.min(iRank, saWords.length - 1)]);
+            sbRes.append(rText.nextInt(12) == 0 ? ". " : " ");
+        }
+        sbRes.setLength(iSize);
+        return sbRes.toString();
+    }
+}
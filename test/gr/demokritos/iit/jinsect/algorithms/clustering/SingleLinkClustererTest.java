@@ -0,0 +1,165 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.algorithms.clustering;
+
+import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
+import gr.demokritos.iit.jinsect.structs.ISimilarity;
+import gr.demokritos.iit.jinsect.structs.SimpleSimilarity;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the nearest-neighbour chain clustering of {@link SingleLinkClusterer}
+ * and its subclasses against a naive agglomerative clustering.
+ *
+ * @author ggianna
+ */
+public class SingleLinkClustererTest {
+    protected static final int SINGLE = 0, COMPLETE = 1, AVERAGE = 2;
+
+    @Test
+    public void testSingleLinkMatchesNaiveClustering() {
+        assertMatchesNaiveClustering(SINGLE);
+    }
+
+    @Test
+    public void testCompleteLinkMatchesNaiveClustering() {
+        assertMatchesNaiveClustering(COMPLETE);
+    }
+
+    @Test
+    public void testAverageLinkMatchesNaiveClustering() {
+        assertMatchesNaiveClustering(AVERAGE);
+    }
+
+    @Test
+    public void testIncomparableClustersMergeLast() {
+        // Two groups, whose members cannot be compared across groups
+        final double[][] daSimilarities = {
+            {Double.NaN, 0.9, Double.NaN, Double.NaN},
+            {0.9, Double.NaN, Double.NaN, Double.NaN},
+            {Double.NaN, Double.NaN, Double.NaN, 0.8},
+            {Double.NaN, Double.NaN, 0.8, Double.NaN}};
+        for (int iLinkage = SINGLE; iLinkage <= AVERAGE; iLinkage++) {
+            List<Set> lMerges = cluster(iLinkage, daSimilarities);
+            assertEquals(3, lMerges.size());
+            assertEquals(setOf(0, 1), lMerges.get(0));
+            assertEquals(setOf(2, 3), lMerges.get(1));
+            assertEquals(setOf(0, 1, 2, 3), lMerges.get(2));
+        }
+    }
+
+    protected void assertMatchesNaiveClustering(int iLinkage) {
+        Random rValues = new Random(iLinkage);
+        for (int iRun = 0; iRun < 5; iRun++) {
+            int iCount = 5 + rValues.nextInt(30);
+            double[][] daSimilarities = new double[iCount][iCount];
+            for (int iFirst = 0; iFirst < iCount; iFirst++)
+                for (int iSecond = iFirst + 1; iSecond < iCount; iSecond++) {
+                    daSimilarities[iFirst][iSecond] = rValues.nextDouble();
+                    daSimilarities[iSecond][iFirst] = daSimilarities[iFirst][iSecond];
+                }
+            assertEquals(naiveMerges(iLinkage, daSimilarities),
+                    cluster(iLinkage, daSimilarities));
+        }
+    }
+
+    /** Clusters the objects 0..n-1 with a given linkage.
+     *@return The merged clusters, in the order they were added to the hierarchy.
+     */
+    protected static List<Set> cluster(int iLinkage, double[][] daSimilarities) {
+        List<Set> lRes = new ArrayList<Set>();
+        Set<Integer> sObjects = new LinkedHashSet<Integer>();
+        for (int iCnt = 0; iCnt < daSimilarities.length; iCnt++)
+            sObjects.add(iCnt);
+        createClusterer(iLinkage, lRes).calculateClusters(sObjects,
+                comparator(daSimilarities));
+        return lRes;
+    }
+
+    /** Creates a clusterer of a given linkage, adding its merges to a list. */
+    protected static SingleLinkClusterer createClusterer(int iLinkage,
+            final List<Set> lMerges) {
+        switch (iLinkage) {
+            case SINGLE:
+                return new SingleLinkClusterer() {
+                    @Override
+                    protected void addMergeToHierarchy(Set sFirst, Set sSecond, Set sMerged) {
+                        lMerges.add(sMerged);
+                    }
+                };
+            case COMPLETE:
+                return new CompleteLinkClusterer() {
+                    @Override
+                    protected void addMergeToHierarchy(Set sFirst, Set sSecond, Set sMerged) {
+                        lMerges.add(sMerged);
+                    }
+                };
+            default:
+                return new AverageLinkClusterer() {
+                    @Override
+                    protected void addMergeToHierarchy(Set sFirst, Set sSecond, Set sMerged) {
+                        lMerges.add(sMerged);
+                    }
+                };
+        }
+    }
+
+    protected static SimilarityComparatorListener comparator(
+            final double[][] daSimilarities) {
+        return new SimilarityComparatorListener() {
+            @Override
+            public ISimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
+                return new SimpleSimilarity(
+                        daSimilarities[(Integer)oFirst][(Integer)oSecond]);
+            }
+        };
+    }
+
+    /** Clusters the objects by merging the most similar pair of clusters at every
+     * step, calculating cluster similarities from all their object pairs with
+     * {@link SingleLinkClusterer#getSimilarityBetweenClusters(Set, Set,
+     * SimilarityComparatorListener)} of the linkage. */
+    protected static List<Set> naiveMerges(int iLinkage, double[][] daSimilarities) {
+        SingleLinkClusterer slcReference = createClusterer(iLinkage, null);
+        SimilarityComparatorListener sclComparator = comparator(daSimilarities);
+        List<Set<Integer>> lClusters = new ArrayList<Set<Integer>>();
+        for (int iCnt = 0; iCnt < daSimilarities.length; iCnt++)
+            lClusters.add(setOf(iCnt));
+        List<Set> lRes = new ArrayList<Set>();
+        while (lClusters.size() > 1) {
+            int iBestFirst = -1, iBestSecond = -1;
+            double dBest = Double.NEGATIVE_INFINITY;
+            for (int iFirst = 0; iFirst < lClusters.size(); iFirst++)
+                for (int iSecond = iFirst + 1; iSecond < lClusters.size(); iSecond++) {
+                    double dCur = slcReference.getSimilarityBetweenClusters(
+                            lClusters.get(iFirst), lClusters.get(iSecond), sclComparator);
+                    if (dCur > dBest) {
+                        dBest = dCur;
+                        iBestFirst = iFirst;
+                        iBestSecond = iSecond;
+                    }
+                }
+            Set<Integer> sMerged = new HashSet<Integer>(lClusters.get(iBestFirst));
+            sMerged.addAll(lClusters.remove(iBestSecond));
+            lClusters.set(iBestFirst, sMerged);
+            lRes.add(sMerged);
+        }
+        return lRes;
+    }
+
+    protected static Set<Integer> setOf(int... iaObjects) {
+        Set<Integer> sRes = new HashSet<Integer>();
+        for (int iCur : iaObjects)
+            sRes.add(iCur);
+        return sRes;
+    }
+}
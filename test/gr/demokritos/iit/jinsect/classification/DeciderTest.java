@@ -0,0 +1,90 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.classification;
+
+import gr.demokritos.iit.jinsect.TestGraphs;
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.indexing.NamedDocumentNGramGraph;
+import gr.demokritos.iit.jinsect.storage.INSECTDB;
+import gr.demokritos.iit.jinsect.storage.INSECTMemoryDB;
+import gr.demokritos.iit.jinsect.structs.Decision;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the batch classification and training of {@link Decider}.
+ *
+ * @author ggianna
+ */
+public class DeciderTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    @Test
+    public void testBatchMatchesSeparateGraphs() throws Exception {
+        Decider dDecider = new Decider(new INSECTMemoryDB());
+        for (int iCat = 0; iCat < 3; iCat++) {
+            NamedDocumentNGramGraph dgDoc = new NamedDocumentNGramGraph();
+            dgDoc.setDataString(TestTexts.createText(3000, 10 + iCat));
+            dDecider.addEvidence(dgDoc, "cat" + iCat);
+        }
+        List<String> lFiles = new ArrayList<String>();
+        for (int iDoc = 0; iDoc < 4; iDoc++) {
+            File fDoc = Folder.newFile("doc" + iDoc + ".txt");
+            FileWriter fwDoc = new FileWriter(fDoc);
+            fwDoc.write(TestTexts.createText(1000, 20 + iDoc));
+            fwDoc.close();
+            lFiles.add(fDoc.getPath());
+        }
+
+        int iDoc = 0;
+        for (Decision dCur : dDecider.suggestCategories(lFiles)) {
+            assertTrue(Decider.isPlainDocumentGraph((DocumentNGramGraph)dCur.Document));
+            // A graph of another class is not reused, so the category graphs
+            // are compared to newly built document graphs
+            DocumentNGramGraph dgSeparate = new DocumentNGramSymWinGraph();
+            dgSeparate.loadDataStringFromFile(lFiles.get(iDoc++));
+            assertFalse(Decider.isPlainDocumentGraph(dgSeparate));
+            Decision dExpected = dDecider.suggestCategory(dgSeparate,
+                    dDecider.getCategoryModels());
+            assertEquals(dExpected.FinalDecision, dCur.FinalDecision);
+            assertEquals(dExpected.DecisionEvidence, dCur.DecisionEvidence);
+        }
+        assertEquals(lFiles.size(), iDoc);
+    }
+
+    @Test
+    public void testBatchEvidenceMatchesSequentialEvidence() throws Exception {
+        INSECTMemoryDB dbSequential = new INSECTMemoryDB();
+        INSECTMemoryDB dbBatch = new INSECTMemoryDB();
+        Decider dSequential = new Decider(dbSequential);
+        Decider dBatch = new Decider(dbBatch);
+        List<DocumentNGramGraph> lDocs = new ArrayList<DocumentNGramGraph>();
+        for (int iDoc = 0; iDoc < 12; iDoc++) {
+            NamedDocumentNGramGraph dgDoc = new NamedDocumentNGramGraph();
+            dgDoc.setDataString(TestTexts.createText(800, 30 + iDoc));
+            lDocs.add(dgDoc);
+        }
+        // The first batch creates the category, the second updates it
+        for (DocumentNGramGraph dgDoc : lDocs)
+            dSequential.addEvidence(dgDoc, "cat");
+        dBatch.addEvidence(lDocs.subList(0, 5), "cat");
+        dBatch.addEvidence(lDocs.subList(5, lDocs.size()), "cat");
+        TestGraphs.assertSameWeights(
+                (DocumentNGramGraph)dbSequential.loadObject("cat", INSECTDB.CATEGORY_TYPE),
+                (DocumentNGramGraph)dbBatch.loadObject("cat", INSECTDB.CATEGORY_TYPE),
+                1e-12);
+        assertEquals(dSequential.CategoryEvidenceCount.getValue("cat"),
+                dBatch.CategoryEvidenceCount.getValue("cat"), 0.0);
+    }
+}
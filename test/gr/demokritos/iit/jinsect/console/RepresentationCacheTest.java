@@ -0,0 +1,144 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the building, sharing and storing of representations by
+ * {@link RepresentationCache}.
+ *
+ * @author ggianna
+ */
+public class RepresentationCacheTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    /** Represents a file by its name and length, counting the builds. */
+    protected static class LengthBuilder
+            implements RepresentationCache.RepresentationBuilder<String> {
+        protected final AtomicInteger Builds = new AtomicInteger();
+
+        @Override
+        public String build(String sFile) throws Exception {
+            Builds.incrementAndGet();
+            // Let concurrent lookups of the same file arrive while building
+            Thread.sleep(20);
+            return new File(sFile).getName() + ":" + new File(sFile).length();
+        }
+    }
+
+    protected String createFile(String sName, String sText) throws IOException {
+        File fRes = new File(Folder.getRoot(), sName);
+        FileWriter fwOut = new FileWriter(fRes);
+        fwOut.write(sText);
+        fwOut.close();
+        return fRes.getPath();
+    }
+
+    @Test
+    public void testBuildsOncePerRepresentation() throws Exception {
+        final String sFile = createFile("model.txt", "some text");
+        final RepresentationCache rcCache = new RepresentationCache();
+        final LengthBuilder lbBuilder = new LengthBuilder();
+        final CountDownLatch cdlStart = new CountDownLatch(1);
+        final List<String> lResults = new ArrayList<String>();
+        List<Thread> lThreads = new ArrayList<Thread>();
+        for (int iCnt = 0; iCnt < 8; iCnt++) {
+            Thread tCur = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cdlStart.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    String sRes = rcCache.get(sFile, "length", lbBuilder);
+                    synchronized (lResults) {
+                        lResults.add(sRes);
+                    }
+                }
+            });
+            tCur.start();
+            lThreads.add(tCur);
+        }
+        cdlStart.countDown();
+        for (Thread tCur : lThreads)
+            tCur.join();
+
+        assertEquals(8, lResults.size());
+        for (String sCur : lResults)
+            assertEquals("model.txt:9", sCur);
+        assertEquals(1, lbBuilder.Builds.get());
+        assertEquals(1, rcCache.getBuilds());
+        assertEquals(7, rcCache.getHits());
+        // Other representations of the file are built on their own
+        rcCache.get(sFile, "other", lbBuilder);
+        assertEquals(2, lbBuilder.Builds.get());
+        assertEquals(2, rcCache.size());
+        rcCache.remove(sFile);
+        assertEquals(0, rcCache.size());
+    }
+
+    @Test
+    public void testFailedBuildIsRetried() throws Exception {
+        String sFile = createFile("model.txt", "some text");
+        RepresentationCache rcCache = new RepresentationCache();
+        try {
+            rcCache.get(sFile, "length",
+                    new RepresentationCache.RepresentationBuilder<String>() {
+                @Override
+                public String build(String sPath) {
+                    throw new IllegalStateException("Cannot build");
+                }
+            });
+            fail("A failed build was not reported");
+        }
+        catch (IllegalStateException ise) {
+            // Expected
+        }
+        assertEquals(0, rcCache.size());
+        assertEquals("model.txt:9", rcCache.get(sFile, "length", new LengthBuilder()));
+    }
+
+    @Test
+    public void testStoredRepresentationsFollowTheirFiles() throws Exception {
+        String sFile = createFile("model.txt", "some text");
+        String sStore = new File(Folder.getRoot(), "store").getPath();
+        RepresentationCache rcFirst = new RepresentationCache();
+        rcFirst.setRepositoryDir(sStore);
+        rcFirst.get(sFile, "length", new LengthBuilder());
+        assertEquals(1, rcFirst.getBuilds());
+
+        // A later run loads the stored representation
+        RepresentationCache rcSecond = new RepresentationCache();
+        rcSecond.setRepositoryDir(sStore);
+        LengthBuilder lbBuilder = new LengthBuilder();
+        assertEquals("model.txt:9", rcSecond.get(sFile, "length", lbBuilder));
+        assertEquals(0, lbBuilder.Builds.get());
+        assertEquals(1, rcSecond.getLoads());
+        // ...but not one of other parameters
+        rcSecond.get(sFile, "other", lbBuilder);
+        assertEquals(1, lbBuilder.Builds.get());
+
+        // A changed file is rebuilt
+        createFile("model.txt", "some other text");
+        RepresentationCache rcThird = new RepresentationCache();
+        rcThird.setRepositoryDir(sStore);
+        assertEquals("model.txt:15", rcThird.get(sFile, "length", new LengthBuilder()));
+        assertEquals(1, rcThird.getBuilds());
+        assertEquals(0, rcThird.getLoads());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the publishing of training updates by {@link SpamFilterServer}.
+ *
+ * @author ggianna
+ */
+public class SpamFilterServerTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    /** A journal whose syncs fail while {@link #Failing} is set. */
+    protected static class FailingJournal extends TrainingJournal {
+        protected volatile boolean Failing = true;
+
+        public FailingJournal(String sBaseDir) throws IOException {
+            super("training", sBaseDir);
+        }
+
+        @Override
+        public void sync(long lSequence) throws IOException {
+            if (Failing)
+                throw new IOException("Cannot sync");
+            super.sync(lSequence);
+        }
+    }
+
+    protected static TrainingEvent queue(SpamFilterServer sfsServer,
+            FailingJournal fjJournal, String sText) throws IOException {
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph();
+        dgGraph.setDataString(sText);
+        TrainingEvent teRes = new TrainingEvent(dgGraph, SpamFilterServer.C_SPAM,
+                SpamFilterServer.C_HAM, fjJournal.append(SpamFilterServer.C_SPAM,
+                SpamFilterServer.C_HAM, sText));
+        sfsServer.PendingUpdates.add(teRes);
+        return teRes;
+    }
+
+    @Test
+    public void testUnsyncedUpdatesAreNotPublished() throws Exception {
+        SpamFilterServer sfsServer = new SpamFilterServer(0, 0);
+        FailingJournal fjJournal = new FailingJournal(Folder.getRoot().getPath());
+        sfsServer.Journal = fjJournal;
+        ModelSnapshot msBefore = sfsServer.Models;
+        TrainingEvent teFirst = queue(sfsServer, fjJournal, "first spam message");
+        TrainingEvent teSecond = queue(sfsServer, fjJournal, "second spam message");
+
+        assertFalse(sfsServer.publishUpdates());
+        assertSame(msBefore, sfsServer.Models);
+        // The batch is kept, ahead of the messages queued since
+        TrainingEvent teThird = queue(sfsServer, fjJournal, "third spam message");
+        List<TrainingEvent> lQueued = new ArrayList<TrainingEvent>(sfsServer.PendingUpdates);
+        assertEquals(3, lQueued.size());
+        assertSame(teFirst, lQueued.get(0));
+        assertSame(teSecond, lQueued.get(1));
+        assertSame(teThird, lQueued.get(2));
+
+        fjJournal.Failing = false;
+        assertTrue(sfsServer.publishUpdates());
+        assertTrue(sfsServer.PendingUpdates.isEmpty());
+        assertEquals(msBefore.getVersion() + 1, sfsServer.Models.getVersion());
+        assertEquals(3, sfsServer.Models.getSpamCount());
+        assertEquals(3, sfsServer.Models.getLastSequence());
+        fjJournal.close();
+    }
+}
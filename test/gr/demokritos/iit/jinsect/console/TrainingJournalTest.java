@@ -0,0 +1,136 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the crash recovery of {@link TrainingJournal}.
+ *
+ * @author ggianna
+ */
+public class TrainingJournalTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    protected TrainingJournal open() throws IOException {
+        return new TrainingJournal("training", Folder.getRoot().getPath());
+    }
+
+    @Test
+    public void testReplaysTextsAsJournaled() throws Exception {
+        // A text cut within a surrogate pair, as a length limit would cut it
+        String sCut = "spam \uD83D\uDE00 spam \uD83D";
+        TrainingJournal tjJournal = open();
+        tjJournal.append(SpamFilterServer.C_SPAM, SpamFilterServer.C_HAM, sCut);
+        tjJournal.append(null, SpamFilterServer.C_HAM, "ham\u0000ham");
+        tjJournal.append(SpamFilterServer.C_HAM, SpamFilterServer.C_HAM, "ham");
+        tjJournal.close();
+
+        TrainingJournal tjReopened = open();
+        assertEquals(3, tjReopened.getLastSequence());
+        List<TrainingJournal.Entry> lEntries = tjReopened.readAfter(1);
+        assertEquals(2, lEntries.size());
+        assertEquals(2, lEntries.get(0).Sequence);
+        assertNull(lEntries.get(0).Class);
+        assertEquals("ham\u0000ham", lEntries.get(0).Text);
+        TrainingJournal.Entry eCut = tjReopened.readAfter(0).get(0);
+        assertEquals(sCut, eCut.Text);
+        assertEquals(TrainingJournal.hash(eCut.Text), eCut.TextHash);
+        assertEquals(SpamFilterServer.C_SPAM, eCut.Class);
+        tjReopened.close();
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception {
+        TrainingJournal tjJournal = open();
+        tjJournal.append(SpamFilterServer.C_HAM, SpamFilterServer.C_HAM, "kept");
+        tjJournal.append(SpamFilterServer.C_SPAM, SpamFilterServer.C_HAM, "torn");
+        tjJournal.close();
+        // Cut the last record short, as a crash during a write would
+        File fSegment = segments().get(0);
+        RandomAccessFile rafSegment = new RandomAccessFile(fSegment, "rw");
+        rafSegment.setLength(fSegment.length() - 3);
+        rafSegment.close();
+
+        TrainingJournal tjReopened = open();
+        assertEquals(1, tjReopened.getLastSequence());
+        assertEquals(2, tjReopened.append(SpamFilterServer.C_SPAM,
+                SpamFilterServer.C_HAM, "again"));
+        tjReopened.close();
+        List<TrainingJournal.Entry> lEntries = open().readAfter(0);
+        assertEquals(2, lEntries.size());
+        assertEquals("kept", lEntries.get(0).Text);
+        assertEquals("again", lEntries.get(1).Text);
+    }
+
+    @Test
+    public void testCorruptEarlierSegmentFailsRecovery() throws Exception {
+        TrainingJournal tjJournal = open();
+        tjJournal.setMaxSegmentSize(128);
+        for (int iCnt = 0; iCnt < 10; iCnt++)
+            tjJournal.append(SpamFilterServer.C_SPAM, SpamFilterServer.C_HAM,
+                    "message number " + iCnt);
+        tjJournal.close();
+        List<File> lSegments = segments();
+        assertTrue(lSegments.size() > 2);
+        long lSizeBefore = lSegments.get(0).length();
+        // Flip a byte of a record that was synced when its segment was rolled
+        RandomAccessFile rafSegment = new RandomAccessFile(lSegments.get(0), "rw");
+        rafSegment.seek(lSizeBefore - 2);
+        int iByte = rafSegment.read();
+        rafSegment.seek(lSizeBefore - 2);
+        rafSegment.write(iByte ^ 0xFF);
+        rafSegment.close();
+
+        try {
+            open();
+            fail("A corrupt record in an earlier segment was truncated");
+        }
+        catch (IOException ioe) {
+            // Expected
+        }
+        assertEquals(lSizeBefore, lSegments.get(0).length());
+    }
+
+    @Test
+    public void testTruncateDeletesCoveredSegments() throws Exception {
+        TrainingJournal tjJournal = open();
+        tjJournal.setMaxSegmentSize(128);
+        for (int iCnt = 0; iCnt < 10; iCnt++)
+            tjJournal.append(SpamFilterServer.C_SPAM, SpamFilterServer.C_HAM,
+                    "message number " + iCnt);
+        int iSegments = segments().size();
+        tjJournal.truncate(5);
+        assertTrue(segments().size() < iSegments);
+        tjJournal.close();
+
+        TrainingJournal tjReopened = open();
+        assertEquals(10, tjReopened.getLastSequence());
+        List<TrainingJournal.Entry> lEntries = tjReopened.readAfter(5);
+        assertEquals(5, lEntries.size());
+        assertEquals("message number 5", lEntries.get(0).Text);
+        tjReopened.close();
+    }
+
+    protected List<File> segments() {
+        List<File> lRes = new ArrayList<File>();
+        for (File fCur : Folder.getRoot().listFiles())
+            if (fCur.getName().endsWith(TrainingJournal.SEGMENT_SUFFIX))
+                lRes.add(fCur);
+        File[] faRes = lRes.toArray(new File[lRes.size()]);
+        Arrays.sort(faRes);
+        return Arrays.asList(faRes);
+    }
+}
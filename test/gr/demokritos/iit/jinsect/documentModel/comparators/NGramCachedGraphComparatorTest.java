@@ -0,0 +1,90 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.comparators;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
+import gr.demokritos.iit.jinsect.structs.NGramLabelDictionary;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks that the sort-merge mode of {@link NGramCachedGraphComparator} gives
+ * the same similarity as looking up every edge.
+ *
+ * @author ggianna
+ */
+public class NGramCachedGraphComparatorTest {
+    @Test
+    public void testSortedMergeParity() {
+        for (int iSymmetric = 0; iSymmetric < 2; iSymmetric++) {
+            // Expanded levels are compared edge by edge by default
+            DocumentNGramGraph dgFirst = NGramGraphComparatorTest.expand(
+                    NGramGraphComparatorTest.createGraph(1000, 1, iSymmetric == 1));
+            DocumentNGramGraph dgSecond = NGramGraphComparatorTest.expand(
+                    NGramGraphComparatorTest.createGraph(4000, 2, iSymmetric == 1));
+            assertSortedMergeParity(dgFirst, dgSecond);
+            assertSortedMergeParity(dgSecond, dgFirst);
+        }
+    }
+
+    @Test
+    public void testSortedMergeParityWithDegradation() {
+        DocumentNGramGraph dgFirst = NGramGraphComparatorTest.expand(
+                NGramGraphComparatorTest.createGraph(1000, 1, true));
+        DocumentNGramGraph dgSecond = NGramGraphComparatorTest.expand(
+                NGramGraphComparatorTest.createGraph(4000, 2, true));
+        DocumentNGramGraph dgDegrading = NGramGraphComparatorTest.createGraph(500, 3,
+                true);
+        dgFirst.degrade(dgDegrading);
+        dgFirst.degrade(dgDegrading);
+        dgSecond.degrade(dgDegrading);
+        assertSortedMergeParity(dgFirst, dgSecond);
+        assertSortedMergeParity(dgSecond, dgFirst);
+    }
+
+    @Test
+    public void testSeparateDictionaries() {
+        DocumentNGramGraph dgFirst = NGramGraphComparatorTest.createGraph(1000, 1, true);
+        DocumentNGramGraph dgSecond = NGramGraphComparatorTest.createGraph(4000, 2, true);
+        GraphSimilarity gsExpected = new NGramCachedGraphComparator(
+                true).getSimilarityBetween(dgFirst, dgSecond);
+        // The same graphs, each keeping its labels in a dictionary of its own
+        DocumentNGramGraph dgFirstScoped = createGraph(1000, 1, new NGramLabelDictionary());
+        DocumentNGramGraph dgSecondScoped = createGraph(4000, 2, new NGramLabelDictionary());
+        NGramCachedGraphComparator ngcComparator = new NGramCachedGraphComparator(true);
+        NGramGraphComparatorTest.assertSameSimilarity(gsExpected,
+                ngcComparator.getSimilarityBetween(dgFirstScoped, dgSecondScoped));
+        NGramGraphComparatorTest.assertSameSimilarity(gsExpected,
+                ngcComparator.getSimilarityBetween(new FrozenNGramGraph(dgFirstScoped),
+                new FrozenNGramGraph(dgSecondScoped)));
+        // ...or only the first is scoped
+        NGramGraphComparatorTest.assertSameSimilarity(gsExpected,
+                ngcComparator.getSimilarityBetween(new FrozenNGramGraph(dgFirstScoped),
+                new FrozenNGramGraph(dgSecond)));
+    }
+
+    protected static DocumentNGramGraph createGraph(int iSize, long lSeed,
+            NGramLabelDictionary dDictionary) {
+        DocumentNGramGraph dgRes = new DocumentNGramSymWinGraph(3, 5, 3);
+        dgRes.setLabelDictionary(dDictionary);
+        dgRes.setDataString(TestTexts.createText(iSize, lSeed));
+        assertSame(dDictionary, dgRes.getCompactGraphLevel(0).getDictionary());
+        return dgRes;
+    }
+
+    protected static void assertSortedMergeParity(DocumentNGramGraph dgFirst,
+            DocumentNGramGraph dgSecond) {
+        GraphSimilarity gsLookup = new NGramCachedGraphComparator(
+                false).getSimilarityBetween(dgFirst, dgSecond);
+        GraphSimilarity gsMerge = new NGramCachedGraphComparator(
+                true).getSimilarityBetween(dgFirst, dgSecond);
+        assertTrue(gsLookup.ContainmentSimilarity > 0.0);
+        NGramGraphComparatorTest.assertSameSimilarity(gsLookup, gsMerge);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.comparators;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.structs.GraphSimilarity;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks that graphs give the same similarity whether their levels are compact
+ * or expanded.
+ *
+ * @author ggianna
+ */
+public class NGramGraphComparatorTest {
+    @Test
+    public void testCompactParity() {
+        assertCompactParity(new NGramGraphComparator(), false);
+        assertCompactParity(new NGramCachedGraphComparator(), false);
+        assertCompactParity(new NGramCachedGraphComparator(), true);
+    }
+
+    @Test
+    public void testParallelCompactParity() {
+        NGramCachedGraphComparator ngcComparator = new NGramCachedGraphComparator();
+        ngcComparator.setParallel(true);
+        ngcComparator.setPartitionSize(64);
+        assertCompactParity(ngcComparator, true);
+    }
+
+    @Test
+    public void testCompactLevelsStayCompact() {
+        DocumentNGramGraph dgFirst = createGraph(1000, 1, true);
+        DocumentNGramGraph dgSecond = createGraph(4000, 2, true);
+        new NGramCachedGraphComparator().getSimilarityBetween(dgFirst, dgSecond);
+        for (int iLevel = 0; iLevel <= 2; iLevel++) {
+            assertTrue(dgFirst.isLevelCompact(iLevel));
+            assertTrue(dgSecond.isLevelCompact(iLevel));
+        }
+    }
+
+    protected static void assertCompactParity(NGramGraphComparator ngcComparator,
+            boolean bSymmetric) {
+        DocumentNGramGraph dgFirst = createGraph(1000, 1, bSymmetric);
+        DocumentNGramGraph dgSecond = createGraph(4000, 2, bSymmetric);
+        GraphSimilarity gsCompact = ngcComparator.getSimilarityBetween(dgFirst,
+                dgSecond);
+        GraphSimilarity gsExpanded = ngcComparator.getSimilarityBetween(
+                expand(dgFirst), expand(dgSecond));
+        assertSameSimilarity(gsExpanded, gsCompact);
+        assertTrue(gsCompact.ContainmentSimilarity > 0.0);
+        // The similarity is symmetric in the order of the graphs
+        assertSameSimilarity(gsCompact, ngcComparator.getSimilarityBetween(dgSecond,
+                dgFirst));
+    }
+
+    protected static DocumentNGramGraph createGraph(int iSize, long lSeed,
+            boolean bSymmetric) {
+        DocumentNGramGraph dgRes = bSymmetric ? new DocumentNGramSymWinGraph(3, 5, 3)
+                : new DocumentNGramGraph(3, 5, 3);
+        dgRes.setDataString(TestTexts.createText(iSize, lSeed));
+        return dgRes;
+    }
+
+    /** Returns a copy of a graph, with all its levels expanded. */
+    protected static DocumentNGramGraph expand(DocumentNGramGraph dgGraph) {
+        DocumentNGramGraph dgRes = (DocumentNGramGraph)dgGraph.clone();
+        for (int iLevel = 0; iLevel <= dgRes.getMaxSize() - dgRes.getMinSize(); iLevel++) {
+            dgRes.getGraphLevel(iLevel);
+            assertFalse(dgRes.isLevelCompact(iLevel));
+        }
+        return dgRes;
+    }
+
+    protected static void assertSameSimilarity(GraphSimilarity gsExpected,
+            GraphSimilarity gsActual) {
+        assertEquals(gsExpected.ValueSimilarity, gsActual.ValueSimilarity, 1e-9);
+        assertEquals(gsExpected.ContainmentSimilarity, gsActual.ContainmentSimilarity,
+                1e-9);
+        assertEquals(gsExpected.SizeSimilarity, gsActual.SizeSimilarity, 1e-12);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.comparators;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramSymWinGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphSketch;
+import gr.demokritos.iit.jinsect.structs.SketchSimilarity;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import gr.demokritos.iit.jinsect.utils;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks the estimates and error bounds of {@link NGramGraphSketchComparator}
+ * against the exact similarities of the edge sets.
+ *
+ * @author ggianna
+ */
+public class NGramGraphSketchComparatorTest {
+    @Test
+    public void testBoundsHoldExactSimilarities() {
+        NGramGraphSketchComparator ngscComparator = new NGramGraphSketchComparator();
+        int iPairs = 0, iJaccardMisses = 0, iContainmentMisses = 0;
+        for (int iCnt = 0; iCnt < 40; iCnt++) {
+            // Overlapping texts of different sizes
+            String sText = TestTexts.createText(3000, iCnt);
+            FrozenNGramGraph fgFirst = createGraph(sText.substring(0, 2000));
+            FrozenNGramGraph fgSecond = createGraph(sText.substring(500 + iCnt * 10) +
+                    TestTexts.createText(300 + iCnt * 20, 100 + iCnt));
+            SketchSimilarity sSimil = ngscComparator.getSimilarityBetween(
+                    new NGramGraphSketch(fgFirst, NGramGraphSketch.DEFAULT_HASH_COUNT),
+                    new NGramGraphSketch(fgSecond, NGramGraphSketch.DEFAULT_HASH_COUNT));
+            double[] daExact = getExactSimilarities(fgFirst, fgSecond);
+            assertTrue(sSimil.getLowerBound() <= sSimil.getUpperBound());
+            assertTrue(sSimil.getContainmentLowerBound() <= sSimil.ContainmentSimilarity);
+            assertTrue(sSimil.ContainmentSimilarity <= sSimil.getContainmentUpperBound());
+            iPairs++;
+            if ((daExact[0] < sSimil.getLowerBound()) ||
+                    (daExact[0] > sSimil.getUpperBound()))
+                iJaccardMisses++;
+            if ((daExact[1] < sSimil.getContainmentLowerBound()) ||
+                    (daExact[1] > sSimil.getContainmentUpperBound()))
+                iContainmentMisses++;
+        }
+        // The bounds hold at 95% confidence
+        assertTrue(iJaccardMisses <= iPairs / 10);
+        assertTrue(iContainmentMisses <= iPairs / 10);
+    }
+
+    @Test
+    public void testIdenticalGraphs() throws Exception {
+        DocumentNGramGraph dgGraph = new DocumentNGramSymWinGraph();
+        dgGraph.setDataString(TestTexts.createText(2000, 1));
+        SketchSimilarity sSimil = new NGramGraphSketchComparator().getSimilarityBetween(
+                (Object)dgGraph, (Object)dgGraph);
+        assertEquals(1.0, sSimil.getOverallSimilarity(), 0.0);
+        assertEquals(1.0, sSimil.ContainmentSimilarity, 1e-9);
+        assertEquals(1.0, sSimil.getContainmentUpperBound(), 1e-9);
+        assertTrue(sSimil.getContainmentLowerBound() < 1.0);
+    }
+
+    protected static FrozenNGramGraph createGraph(String sText) {
+        DocumentNGramGraph dgGraph = new DocumentNGramSymWinGraph();
+        dgGraph.setDataString(sText);
+        return new FrozenNGramGraph(dgGraph);
+    }
+
+    /** Returns the level weighted Jaccard and containment similarities of the edge
+     * sets of two graphs, weighting levels as the comparator does. */
+    protected static double[] getExactSimilarities(FrozenNGramGraph fgFirst,
+            FrozenNGramGraph fgSecond) {
+        int iMinSize = fgFirst.getMinSize(), iMaxSize = fgFirst.getMaxSize();
+        int iOverallImportance = 0;
+        for (int iCnt = iMinSize; iCnt <= iMaxSize; iCnt++)
+            iOverallImportance += utils.sumFromTo(iMinSize, iCnt);
+        double[] daRes = new double[2];
+        for (int iLvl = iMinSize; iLvl <= iMaxSize; iLvl++) {
+            Set<Long> sFirst = getKeys(fgFirst.getLevelByNGramSize(iLvl));
+            Set<Long> sSecond = getKeys(fgSecond.getLevelByNGramSize(iLvl));
+            Set<Long> sShared = new HashSet<Long>(sFirst);
+            sShared.retainAll(sSecond);
+            double dWeight = (double)utils.sumFromTo(iMinSize, iLvl) / iOverallImportance;
+            daRes[0] += dWeight * sShared.size() /
+                    (sFirst.size() + sSecond.size() - sShared.size());
+            daRes[1] += dWeight * sShared.size() /
+                    Math.min(sFirst.size(), sSecond.size());
+        }
+        return daRes;
+    }
+
+    protected static Set<Long> getKeys(SortedEdgeList selLevel) {
+        Set<Long> sRes = new HashSet<Long>();
+        for (int iCnt = 0; iCnt < selLevel.size(); iCnt++)
+            sRes.add(selLevel.getKeyAt(iCnt));
+        return sRes;
+    }
+}
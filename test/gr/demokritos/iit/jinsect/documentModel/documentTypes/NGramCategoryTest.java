@@ -0,0 +1,44 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.documentTypes;
+
+import gr.demokritos.iit.jinsect.TestGraphs;
+import gr.demokritos.iit.jinsect.TestTexts;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the merging of documents into an {@link NGramCategory}.
+ *
+ * @author ggianna
+ */
+public class NGramCategoryTest {
+    @Test
+    public void testMergeWithAllMatchesSequentialMerging() {
+        List<NGramDocument> lDocs = new ArrayList<NGramDocument>();
+        for (int iDoc = 0; iDoc < 20; iDoc++) {
+            NGramDocument ndDoc = new NGramDocument();
+            ndDoc.setDataString(TestTexts.createText(500, 40 + iDoc));
+            lDocs.add(ndDoc);
+        }
+        NGramCategory ncSequential = new NGramCategory("cat");
+        ncSequential.setDataString(TestTexts.createText(1000, 39));
+        NGramCategory ncBatch = new NGramCategory("cat");
+        ncBatch.setDataString(TestTexts.createText(1000, 39));
+        for (NGramDocument ndDoc : lDocs)
+            ncSequential.mergeWith(ndDoc);
+        ncBatch.mergeWithAll(lDocs);
+
+        TestGraphs.assertSameWeights(ncSequential.getDocumentGraph(),
+                ncBatch.getDocumentGraph(), 1e-12);
+        assertEquals(ncSequential.getDocumentHistogram().NGramHistogram,
+                ncBatch.getDocumentHistogram().NGramHistogram);
+        assertEquals(ncSequential.DocumentCount, ncBatch.DocumentCount);
+        String sWord = TestTexts.createText(500, 45).substring(0, 3);
+        assertEquals(ncSequential.evaluateWord(sWord), ncBatch.evaluateWord(sWord));
+    }
+}
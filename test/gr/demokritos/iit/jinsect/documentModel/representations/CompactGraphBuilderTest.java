@@ -0,0 +1,85 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.TestGraphs;
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.events.WordEvaluatorListener;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Checks that the levels built by {@link CompactGraphBuilder} are the same as
+ * those of the previous, edge by edge, <code>createGraphs</code> code path.
+ * Anonymous subclasses do not opt in to the compact construction, so they use
+ * the previous code path.
+ *
+ * @author ggianna
+ */
+public class CompactGraphBuilderTest {
+    @Test
+    public void testNonSymmetricParity() {
+        for (int iWindow = 1; iWindow <= 5; iWindow += 2) {
+            String sText = TestTexts.createText(3000, iWindow);
+            DocumentNGramGraph dgCompact = new DocumentNGramGraph(2, 5, iWindow);
+            dgCompact.setDataString(sText);
+            DocumentNGramGraph dgLegacy = new DocumentNGramGraph(2, 5, iWindow) {};
+            dgLegacy.setDataString(sText);
+            assertSameLevels(dgLegacy, dgCompact);
+        }
+    }
+
+    @Test
+    public void testSymmetricParity() {
+        for (int iWindow = 1; iWindow <= 5; iWindow += 2) {
+            String sText = TestTexts.createText(3000, iWindow + 10);
+            DocumentNGramSymWinGraph dgCompact = new DocumentNGramSymWinGraph(2, 5,
+                    iWindow);
+            dgCompact.setDataString(sText);
+            DocumentNGramSymWinGraph dgLegacy = new DocumentNGramSymWinGraph(2, 5,
+                    iWindow) {};
+            dgLegacy.setDataString(sText);
+            assertSameLevels(dgLegacy, dgCompact);
+        }
+    }
+
+    @Test
+    public void testWordEvaluatorParity() {
+        WordEvaluatorListener welNoDots = new WordEvaluatorListener() {
+            public boolean evaluateWord(String sWord) {
+                return sWord.indexOf('.') < 0;
+            }
+        };
+        String sText = TestTexts.createText(3000, 5);
+        DocumentNGramSymWinGraph dgCompact = new DocumentNGramSymWinGraph(3, 4, 3);
+        dgCompact.WordEvaluator = welNoDots;
+        dgCompact.setDataString(sText);
+        DocumentNGramSymWinGraph dgLegacy = new DocumentNGramSymWinGraph(3, 4, 3) {};
+        dgLegacy.WordEvaluator = welNoDots;
+        dgLegacy.setDataString(sText);
+        assertSameLevels(dgLegacy, dgCompact);
+    }
+
+    @Test
+    public void testShortText() {
+        DocumentNGramGraph dgCompact = new DocumentNGramGraph(3, 5, 3);
+        dgCompact.setDataString("abcd");
+        DocumentNGramGraph dgLegacy = new DocumentNGramGraph(3, 5, 3) {};
+        dgLegacy.setDataString("abcd");
+        assertSameLevels(dgLegacy, dgCompact);
+    }
+
+    /** Checks that the (expanded) levels of a graph are the same as the compact
+     * levels of another. */
+    protected static void assertSameLevels(DocumentNGramGraph dgExpected,
+            DocumentNGramGraph dgCompact) {
+        for (int iLevel = 0; iLevel <= dgExpected.getMaxSize() -
+                dgExpected.getMinSize(); iLevel++) {
+            assertTrue(dgCompact.isLevelCompact(iLevel));
+            assertFalse(dgExpected.isLevelCompact(iLevel));
+        }
+        TestGraphs.assertSameWeights(dgExpected, dgCompact, 1e-12);
+    }
+}
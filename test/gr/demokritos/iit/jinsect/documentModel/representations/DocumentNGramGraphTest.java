@@ -0,0 +1,152 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.TestGraphs;
+import gr.demokritos.iit.jinsect.TestTexts;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the compact levels and the merging of {@link DocumentNGramGraph}.
+ *
+ * @author ggianna
+ */
+public class DocumentNGramGraphTest {
+    @Test
+    public void testNewGraphsAreCompact() {
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph(2, 4, 3);
+        dgGraph.setDataString(TestTexts.createText(2000, 1));
+        for (int iLevel = 0; iLevel < 3; iLevel++) {
+            assertTrue(dgGraph.isLevelCompact(iLevel));
+            int iEdges = dgGraph.getEdgesCount(iLevel);
+            assertTrue(iEdges > 0);
+            // Expanding keeps the edges
+            assertEquals(iEdges, dgGraph.getGraphLevel(iLevel).getEdgesCount());
+            assertFalse(dgGraph.isLevelCompact(iLevel));
+        }
+        assertTrue(dgGraph.compactGraphs());
+        assertTrue(dgGraph.isLevelCompact(0));
+    }
+
+    @Test
+    public void testLengthWhileExpanding() throws Exception {
+        for (int iRun = 0; iRun < 50; iRun++) {
+            final DocumentNGramGraph dgGraph = new DocumentNGramGraph(3, 5, 3);
+            dgGraph.setDataString(TestTexts.createText(1000, iRun));
+            final int iLength = dgGraph.length();
+            final CountDownLatch cdlStart = new CountDownLatch(1);
+            final List<Throwable> lErrors = new ArrayList<Throwable>();
+            List<Thread> lThreads = new ArrayList<Thread>();
+            for (int iThread = 0; iThread < 4; iThread++) {
+                final boolean bExpand = (iThread % 2 == 0);
+                lThreads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            cdlStart.await();
+                            for (int iLevel = 0; iLevel < 3; iLevel++) {
+                                if (bExpand)
+                                    dgGraph.getGraphLevel(iLevel);
+                                assertEquals(iLength, dgGraph.length());
+                                assertNotNull(dgGraph.getCompactGraphLevel(iLevel));
+                            }
+                        } catch (Throwable t) {
+                            synchronized (lErrors) {
+                                lErrors.add(t);
+                            }
+                        }
+                    }
+                });
+            }
+            for (Thread tCur : lThreads)
+                tCur.start();
+            cdlStart.countDown();
+            for (Thread tCur : lThreads)
+                tCur.join();
+            assertTrue(lErrors.toString(), lErrors.isEmpty());
+        }
+    }
+
+    @Test
+    public void testCloneKeepsCompactLevelsApart() {
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph();
+        dgGraph.setDataString(TestTexts.createText(500, 2));
+        DocumentNGramGraph dgClone = (DocumentNGramGraph)dgGraph.clone();
+        assertEquals(dgGraph.length(), dgClone.length());
+        DocumentNGramGraph dgOther = new DocumentNGramGraph();
+        dgOther.setDataString(TestTexts.createText(500, 3));
+        dgClone.mergeGraph(dgOther, 0.5);
+        assertTrue(dgClone.length() > dgGraph.length());
+    }
+
+    @Test
+    public void testMergeExpandedMatchesCompact() {
+        DocumentNGramGraph dgCompact = new DocumentNGramGraph(2, 4, 3);
+        dgCompact.setDataString(TestTexts.createText(2000, 4));
+        DocumentNGramGraph dgExpanded = (DocumentNGramGraph)dgCompact.clone();
+        for (int iSeed = 5; iSeed < 8; iSeed++) {
+            DocumentNGramGraph dgOther = new DocumentNGramGraph(2, 4, 3);
+            dgOther.setDataString(TestTexts.createText(1000, iSeed));
+            DocumentNGramGraph dgOtherExpanded = (DocumentNGramGraph)dgOther.clone();
+            for (int iLevel = 0; iLevel < 3; iLevel++) {
+                dgExpanded.getGraphLevel(iLevel);
+                dgOtherExpanded.getGraphLevel(iLevel);
+            }
+            dgCompact.mergeGraph(dgOther, 0.3);
+            dgExpanded.mergeGraph(dgOtherExpanded, 0.3);
+        }
+        CompactGraphBuilderTest.assertSameLevels(dgExpanded, dgCompact);
+    }
+
+    @Test
+    public void testMergeAllMatchesSequentialMerging() {
+        List<DocumentNGramGraph> lGraphs = new ArrayList<DocumentNGramGraph>();
+        for (int iCnt = 0; iCnt < 300; iCnt++) {
+            DocumentNGramGraph dgCur = new DocumentNGramGraph(2, 4, 3);
+            dgCur.setDataString(TestTexts.createText(300 + iCnt % 7 * 50, 100 + iCnt));
+            // Every third graph has expanded levels
+            if (iCnt % 3 == 0)
+                for (int iLevel = 0; iLevel < 3; iLevel++)
+                    dgCur.getGraphLevel(iLevel);
+            lGraphs.add(dgCur);
+        }
+        DocumentNGramGraph dgBase = new DocumentNGramGraph(2, 4, 3);
+        dgBase.setDataString(TestTexts.createText(1000, 9));
+        DocumentNGramGraph dgExpandedBase = (DocumentNGramGraph)dgBase.clone();
+        for (int iLevel = 0; iLevel < 3; iLevel++)
+            dgExpandedBase.getGraphLevel(iLevel);
+
+        // The running average, on a compact and on an expanded graph
+        for (DocumentNGramGraph dgTarget : new DocumentNGramGraph[] {dgBase,
+                dgExpandedBase}) {
+            DocumentNGramGraph dgSequential = (DocumentNGramGraph)dgTarget.clone();
+            for (int iCnt = 0; iCnt < lGraphs.size(); iCnt++)
+                dgSequential.mergeGraph(lGraphs.get(iCnt), 1.0 / (iCnt + 2));
+            DocumentNGramGraph dgAll = (DocumentNGramGraph)dgTarget.clone();
+            dgAll.mergeAll(lGraphs);
+            TestGraphs.assertSameWeights(dgSequential, dgAll, 1e-12);
+        }
+
+        // A shared weight percent, and one per graph
+        double[] daRates = new double[lGraphs.size()];
+        DocumentNGramGraph dgSharedSequential = (DocumentNGramGraph)dgBase.clone();
+        DocumentNGramGraph dgRatesSequential = (DocumentNGramGraph)dgBase.clone();
+        for (int iCnt = 0; iCnt < lGraphs.size(); iCnt++) {
+            daRates[iCnt] = 0.1 + 0.2 * (iCnt % 5);
+            dgSharedSequential.mergeGraph(lGraphs.get(iCnt), 0.3);
+            dgRatesSequential.mergeGraph(lGraphs.get(iCnt), daRates[iCnt]);
+        }
+        DocumentNGramGraph dgShared = (DocumentNGramGraph)dgBase.clone();
+        dgShared.mergeAll(lGraphs, 0.3);
+        TestGraphs.assertSameWeights(dgSharedSequential, dgShared, 1e-12);
+        DocumentNGramGraph dgRates = (DocumentNGramGraph)dgBase.clone();
+        dgRates.mergeAll(lGraphs, daRates);
+        TestGraphs.assertSameWeights(dgRatesSequential, dgRates, 1e-12);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.structs.SortedEdgeList;
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests writing and mapping {@link MappedNGramGraph} files.
+ *
+ * @author ggianna
+ */
+public class MappedNGramGraphTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph(2, 4, 3);
+        dgGraph.setDataString(TestTexts.createText(3000, 1));
+        FrozenNGramGraph fgGraph = new FrozenNGramGraph(dgGraph);
+        File fFile = new File(Folder.getRoot(), "graph.map");
+        MappedNGramGraph.write(fgGraph, fFile);
+        assertSameLevels(fgGraph, MappedNGramGraph.open(fFile));
+    }
+
+    @Test
+    public void testSupplementaryCharacters() throws Exception {
+        // N-grams split the surrogate pairs, and some surrogates are unpaired
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph(1, 3, 3);
+        dgGraph.setDataString("a\uD83D\uDE00b \uD83D\uDE01\uD83D\uDE02 x\uD800y\uDC00z " +
+                "\u00E9\u4E2D\u0000 a\uD83D\uDE00b");
+        FrozenNGramGraph fgGraph = new FrozenNGramGraph(dgGraph);
+        File fFile = new File(Folder.getRoot(), "graph.map");
+        MappedNGramGraph.write(fgGraph, fFile);
+        assertSameLevels(fgGraph, MappedNGramGraph.open(fFile));
+    }
+
+    @Test
+    public void testReplaceLeavesNoTemporaryFiles() throws Exception {
+        File fFile = new File(Folder.getRoot(), "graph.map");
+        // A stale file with the name of older temporary files is not touched
+        File fStale = new File(Folder.getRoot(), "graph.map.tmp");
+        assertTrue(fStale.createNewFile());
+        for (int iSeed = 0; iSeed < 3; iSeed++) {
+            DocumentNGramGraph dgGraph = new DocumentNGramGraph();
+            dgGraph.setDataString(TestTexts.createText(1000, iSeed));
+            FrozenNGramGraph fgGraph = new FrozenNGramGraph(dgGraph);
+            MappedNGramGraph.write(fgGraph, fFile);
+            assertSameLevels(fgGraph, MappedNGramGraph.open(fFile));
+        }
+        assertEquals(0, fStale.length());
+        assertEquals(2, Folder.getRoot().list().length);
+    }
+
+    /** Checks that a mapped graph has the same edges as a frozen graph. */
+    protected static void assertSameLevels(FrozenNGramGraph fgExpected,
+            MappedNGramGraph mgActual) {
+        assertEquals(fgExpected.getMinSize(), mgActual.getMinSize());
+        assertEquals(fgExpected.getMaxSize(), mgActual.getMaxSize());
+        for (int iSize = fgExpected.getMinSize(); iSize <= fgExpected.getMaxSize();
+                iSize++) {
+            SortedEdgeList selExpected = fgExpected.getLevelByNGramSize(iSize);
+            SortedEdgeList selActual = mgActual.getLevelByNGramSize(iSize);
+            assertEquals(selExpected.size(), selActual.size());
+            for (int iCnt = 0; iCnt < selExpected.size(); iCnt++) {
+                int iIndex = selActual.indexOf(selExpected.getKeyAt(iCnt));
+                assertTrue(iIndex >= 0);
+                assertEquals(selExpected.getWeightAt(iCnt),
+                        selActual.getWeightAt(iIndex), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.documentModel.representations;
+
+import gr.demokritos.iit.jinsect.TestGraphs;
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.indexing.NamedDocumentNGramGraph;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the round trip of graphs through {@link NGramGraphBinaryFormat}.
+ *
+ * @author ggianna
+ */
+public class NGramGraphBinaryFormatTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        NamedDocumentNGramGraph dgGraph = new NamedDocumentNGramGraph();
+        dgGraph.setName("round trip");
+        dgGraph.setDataString(TestTexts.createText(3000, 1));
+        assertSameGraph(dgGraph, roundTrip(dgGraph));
+    }
+
+    @Test
+    public void testSupplementaryCharacters() throws Exception {
+        // N-grams split the surrogate pairs, and some surrogates are unpaired
+        String sText = "a\uD83D\uDE00b \uD83D\uDE01\uD83D\uDE02 x\uD800y\uDC00z " +
+                "\u00E9\u4E2D\u0000 a\uD83D\uDE00b";
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph(1, 4, 3);
+        dgGraph.setDataString(sText);
+        DocumentNGramGraph dgRead = roundTrip(dgGraph);
+        assertEquals(sText, dgRead.getDataString());
+        assertSameGraph(dgGraph, dgRead);
+    }
+
+    @Test
+    public void testModifiedUTF8() throws Exception {
+        String sText = "ascii \u0000\u00E9\u4E2D\uD83D\uDE00\uDC00\uD800";
+        byte[] baEncoded = NGramGraphBinaryFormat.encodeString(sText);
+        ByteArrayOutputStream bosOut = new ByteArrayOutputStream();
+        new DataOutputStream(bosOut).writeUTF(sText);
+        byte[] baExpected = bosOut.toByteArray();
+        // Skip the length written by writeUTF
+        assertArrayEquals(Arrays.copyOfRange(baExpected, 2, baExpected.length),
+                baEncoded);
+        assertEquals(sText, NGramGraphBinaryFormat.decodeString(baEncoded, 0,
+                baEncoded.length));
+    }
+
+    protected static DocumentNGramGraph roundTrip(DocumentNGramGraph dgGraph)
+            throws Exception {
+        ByteArrayOutputStream bosOut = new ByteArrayOutputStream();
+        NGramGraphBinaryFormat.write(dgGraph, Channels.newChannel(bosOut));
+        return NGramGraphBinaryFormat.read(Channels.newChannel(
+                new ByteArrayInputStream(bosOut.toByteArray())));
+    }
+
+    /** Checks that two graphs have the same class, parameters and edges. */
+    protected static void assertSameGraph(DocumentNGramGraph dgExpected,
+            DocumentNGramGraph dgActual) {
+        assertEquals(dgExpected.getClass(), dgActual.getClass());
+        assertEquals(dgExpected.getMinSize(), dgActual.getMinSize());
+        assertEquals(dgExpected.getMaxSize(), dgActual.getMaxSize());
+        assertEquals(dgExpected.getWindowSize(), dgActual.getWindowSize());
+        assertEquals(dgExpected.getDataString(), dgActual.getDataString());
+        if (dgExpected instanceof NamedDocumentNGramGraph)
+            assertEquals(((NamedDocumentNGramGraph)dgExpected).getName(),
+                    ((NamedDocumentNGramGraph)dgActual).getName());
+        TestGraphs.assertSameWeights(dgExpected, dgActual, 0.0);
+    }
+}
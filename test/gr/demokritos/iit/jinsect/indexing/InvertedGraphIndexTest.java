@@ -0,0 +1,124 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.indexing;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.comparators.NGramCachedGraphComparator;
+import gr.demokritos.iit.jinsect.documentModel.representations.FrozenNGramGraph;
+import gr.demokritos.iit.jinsect.structs.Pair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the queries of {@link InvertedGraphIndex} against a brute-force scan of
+ * the indexed graphs.
+ *
+ * @author ggianna
+ */
+public class InvertedGraphIndexTest {
+    protected static final int TOPICS = 10, DOCUMENTS = 120, K = 5;
+
+    /** Creates documents on a few topics, as random parts of the topic text with
+     * some unrelated text appended. */
+    protected static List<FrozenNGramGraph> createGraphs(int iCount, long lSeed) {
+        Random rParts = new Random(lSeed);
+        List<FrozenNGramGraph> lRes = new ArrayList<FrozenNGramGraph>();
+        for (int iCnt = 0; iCnt < iCount; iCnt++) {
+            String sTopic = TestTexts.createText(3000, rParts.nextInt(TOPICS));
+            int iStart = rParts.nextInt(1500);
+            NamedDocumentNGramGraph ngDoc = new NamedDocumentNGramGraph();
+            ngDoc.setDataString(sTopic.substring(iStart, iStart + 1000) +
+                    TestTexts.createText(200, 1000 + lSeed * iCount + iCnt));
+            lRes.add(new FrozenNGramGraph(ngDoc));
+        }
+        return lRes;
+    }
+
+    protected static InvertedGraphIndex createIndex(List<FrozenNGramGraph> lGraphs) {
+        InvertedGraphIndex igiRes = new InvertedGraphIndex();
+        for (int iCnt = 0; iCnt < lGraphs.size(); iCnt++)
+            igiRes.addDocument(String.valueOf(iCnt), lGraphs.get(iCnt));
+        return igiRes;
+    }
+
+    /** Returns the k best similarities of a query to a list of graphs, from the
+     * best down. */
+    protected static double[] bruteForceTopK(FrozenNGramGraph fgQuery,
+            List<FrozenNGramGraph> lGraphs, int iK) {
+        NGramCachedGraphComparator ngcComparator = new NGramCachedGraphComparator();
+        double[] daScores = new double[lGraphs.size()];
+        for (int iCnt = 0; iCnt < lGraphs.size(); iCnt++)
+            daScores[iCnt] = -ngcComparator.getSimilarityBetween(fgQuery,
+                    lGraphs.get(iCnt)).getOverallSimilarity();
+        Arrays.sort(daScores);
+        double[] daRes = new double[Math.min(iK, daScores.length)];
+        for (int iCnt = 0; iCnt < daRes.length; iCnt++)
+            daRes[iCnt] = -daScores[iCnt];
+        return daRes;
+    }
+
+    protected static double[] scoresOf(List<Pair<String, Double>> lResults) {
+        double[] daRes = new double[lResults.size()];
+        for (int iCnt = 0; iCnt < daRes.length; iCnt++)
+            daRes[iCnt] = lResults.get(iCnt).getSecond();
+        return daRes;
+    }
+
+    @Test
+    public void testTopKMatchesBruteForce() {
+        List<FrozenNGramGraph> lGraphs = createGraphs(DOCUMENTS, 1);
+        InvertedGraphIndex igiIndex = createIndex(lGraphs);
+        assertEquals(DOCUMENTS, igiIndex.size());
+        for (FrozenNGramGraph fgQuery : createGraphs(20, 2))
+            assertArrayEquals(bruteForceTopK(fgQuery, lGraphs, K),
+                    scoresOf(igiIndex.getTopK(fgQuery, K)), 1e-9);
+    }
+
+    @Test
+    public void testIndexedGraphIsFoundFirst() {
+        List<FrozenNGramGraph> lGraphs = createGraphs(DOCUMENTS, 3);
+        InvertedGraphIndex igiIndex = createIndex(lGraphs);
+        for (int iCnt = 0; iCnt < DOCUMENTS; iCnt += 7) {
+            List<Pair<String, Double>> lRes = igiIndex.getTopK(lGraphs.get(iCnt), K);
+            assertEquals(String.valueOf(iCnt), lRes.get(0).getFirst());
+            assertEquals(1.0, lRes.get(0).getSecond(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testCommonEdgesFindEnoughGraphs() {
+        // Every edge is common, so the candidates come from the common lists
+        List<FrozenNGramGraph> lGraphs = new ArrayList<FrozenNGramGraph>();
+        for (int iCnt = 0; iCnt < 8; iCnt++) {
+            NamedDocumentNGramGraph ngDoc = new NamedDocumentNGramGraph();
+            ngDoc.setDataString(TestTexts.createText(500, 5));
+            lGraphs.add(new FrozenNGramGraph(ngDoc));
+        }
+        InvertedGraphIndex igiIndex = createIndex(lGraphs);
+        assertEquals(K, igiIndex.getTopK(lGraphs.get(0), K).size());
+    }
+
+    @Test
+    public void testPostingTableStoresAnyKey() {
+        InvertedGraphIndex.PostingTable ptTable = new InvertedGraphIndex.PostingTable();
+        long[] laKeys = new long[1000];
+        Random rKeys = new Random(6);
+        for (int iCnt = 0; iCnt < laKeys.length; iCnt++)
+            laKeys[iCnt] = (iCnt < 3) ? iCnt - 1 : rKeys.nextLong();
+        for (int iCnt = 0; iCnt < laKeys.length; iCnt++)
+            ptTable.getOrAdd(laKeys[iCnt]).add(iCnt);
+        assertEquals(laKeys.length, ptTable.Size);
+        for (int iCnt = 0; iCnt < laKeys.length; iCnt++) {
+            InvertedGraphIndex.PostingList plCur = ptTable.get(laKeys[iCnt]);
+            assertEquals(1, plCur.Size);
+            assertEquals(iCnt, plCur.Documents[0]);
+        }
+        assertNull(ptTable.get(rKeys.nextLong()));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.indexing;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.NGramGraphSketch;
+import gr.demokritos.iit.jinsect.storage.INSECTMemoryDB;
+import gr.demokritos.iit.jinsect.structs.Pair;
+import gr.demokritos.iit.jinsect.structs.SketchSimilarity;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the near-duplicate search and the storage of {@link LSHGraphIndex}.
+ *
+ * @author ggianna
+ */
+public class LSHGraphIndexTest {
+    protected static NamedDocumentNGramGraph createGraph(String sName, String sText) {
+        NamedDocumentNGramGraph ngRes = new NamedDocumentNGramGraph();
+        ngRes.setName(sName);
+        ngRes.setDataString(sText);
+        return ngRes;
+    }
+
+    /** Creates pairs of near-duplicates "i" and "i'", which differ in a few
+     * characters, and unrelated graphs "u.i". */
+    protected static List<NamedDocumentNGramGraph> createGraphs() {
+        List<NamedDocumentNGramGraph> lRes = new ArrayList<NamedDocumentNGramGraph>();
+        for (int iCnt = 0; iCnt < 10; iCnt++) {
+            String sText = TestTexts.createText(2000, iCnt);
+            lRes.add(createGraph(String.valueOf(iCnt), sText));
+            lRes.add(createGraph(iCnt + "'", sText.substring(0, 1000) + "x" +
+                    sText.substring(1001)));
+            lRes.add(createGraph("u." + iCnt, TestTexts.createText(2000, 100 + iCnt)));
+        }
+        return lRes;
+    }
+
+    protected static Set<String> pairsOf(
+            List<Pair<Pair<String, String>, SketchSimilarity>> lPairs) {
+        Set<String> sRes = new HashSet<String>();
+        for (Pair<Pair<String, String>, SketchSimilarity> pCur : lPairs)
+            sRes.add(pCur.getFirst().getFirst() + "-" + pCur.getFirst().getSecond());
+        return sRes;
+    }
+
+    @Test
+    public void testFindsNearDuplicates() {
+        LSHGraphIndex lgiIndex = new LSHGraphIndex(createGraphs(), 16, 8);
+        lgiIndex.createIndex();
+        Set<String> sPairs = pairsOf(lgiIndex.findNearDuplicates(0.8));
+        assertEquals(10, sPairs.size());
+        for (int iCnt = 0; iCnt < 10; iCnt++)
+            assertTrue(sPairs.contains(iCnt + "-" + iCnt + "'"));
+
+        Set<String> sFound = lgiIndex.locateSimilarDocuments(
+                createGraph("q", TestTexts.createText(2000, 3)));
+        assertTrue(sFound.contains("3"));
+        assertTrue(sFound.contains("3'"));
+        assertFalse(sFound.contains("u.3"));
+    }
+
+    @Test
+    public void testEmptyLevelsAreNotBanded() {
+        List<NamedDocumentNGramGraph> lGraphs = new ArrayList<NamedDocumentNGramGraph>();
+        for (int iCnt = 0; iCnt < 50; iCnt++)
+            lGraphs.add(createGraph("short." + iCnt, "ab"));
+        lGraphs.add(createGraph("long", TestTexts.createText(2000, 1)));
+        LSHGraphIndex lgiIndex = new LSHGraphIndex(lGraphs, 16, 8);
+        lgiIndex.createIndex();
+        assertEquals(51, lgiIndex.size());
+        assertTrue(lgiIndex.findNearDuplicates(0.0).isEmpty());
+        assertTrue(lgiIndex.getSimilar(new NGramGraphSketch(lGraphs.get(0)), 0.0)
+                .isEmpty());
+    }
+
+    @Test
+    public void testCapsBuckets() {
+        List<NamedDocumentNGramGraph> lGraphs = new ArrayList<NamedDocumentNGramGraph>();
+        String sText = TestTexts.createText(1000, 1);
+        for (int iCnt = 0; iCnt < 20; iCnt++)
+            lGraphs.add(createGraph("copy." + iCnt, sText));
+        LSHGraphIndex lgiIndex = new LSHGraphIndex(lGraphs, 16, 8);
+        lgiIndex.createIndex();
+        assertEquals(20 * 19 / 2, lgiIndex.findNearDuplicates(0.9).size());
+        lgiIndex.setMaxBucketSize(5);
+        assertEquals(5 * 4 / 2, lgiIndex.findNearDuplicates(0.9).size());
+    }
+
+    @Test
+    public void testStoresSketchesWithGraphs() {
+        INSECTMemoryDB<Serializable> dbStorage = new INSECTMemoryDB<Serializable>();
+        List<NamedDocumentNGramGraph> lGraphs = createGraphs();
+        LSHGraphIndex lgiIndex = new LSHGraphIndex(lGraphs, 16, 8, dbStorage);
+        lgiIndex.createIndex();
+        for (NamedDocumentNGramGraph ngCur : lGraphs) {
+            assertTrue(dbStorage.existsObject(ngCur.getName(),
+                    NGramGraphSketch.SKETCH_CATEGORY));
+            assertEquals(ngCur.getDataString(),
+                    lgiIndex.loadGraph(ngCur.getName()).getDataString());
+        }
+        // A graph stored without its sketch is sketched on indexing
+        dbStorage.deleteObject("0", NGramGraphSketch.SKETCH_CATEGORY);
+
+        LSHGraphIndex lgiLoaded = new LSHGraphIndex(
+                new ArrayList<NamedDocumentNGramGraph>(), 16, 8, dbStorage);
+        for (NamedDocumentNGramGraph ngCur : lGraphs)
+            lgiLoaded.addStoredDocument(ngCur.getName());
+        assertTrue(dbStorage.existsObject("0", NGramGraphSketch.SKETCH_CATEGORY));
+        assertEquals(pairsOf(lgiIndex.findNearDuplicates(0.8)),
+                pairsOf(lgiLoaded.findNearDuplicates(0.8)));
+        try {
+            lgiLoaded.addStoredDocument("missing");
+            fail("A missing graph was indexed");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+}
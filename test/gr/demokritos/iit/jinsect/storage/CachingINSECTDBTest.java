@@ -0,0 +1,153 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the invalidation and eviction of {@link CachingINSECTDB}.
+ *
+ * @author ggianna
+ */
+public class CachingINSECTDBTest {
+    protected final ExecutorService Loader = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        Loader.shutdownNow();
+    }
+
+    @Test
+    public void testFailedSaveIsNotCached() throws Exception {
+        BlockingDB dbBase = new BlockingDB();
+        CachingINSECTDB<String> dbCache = new CachingINSECTDB<String>(dbBase);
+        dbCache.saveObject("saved", "a", "cat");
+        dbBase.FailSaves = true;
+        dbCache.saveObject("failed", "a", "cat");
+        assertEquals(0, dbCache.size());
+        assertEquals("saved", dbCache.loadObject("a", "cat"));
+        try {
+            dbCache.saveObjectChecked("failed", "a", "cat");
+            fail("The failure was not reported");
+        }
+        catch (IOException ioe) {
+            // Expected
+        }
+        assertEquals("saved", dbCache.loadObject("a", "cat"));
+    }
+
+    @Test
+    public void testChangeOfOtherObjectDoesNotOutdateLoad() throws Exception {
+        BlockingDB dbBase = new BlockingDB();
+        final CachingINSECTDB<String> dbCache = new CachingINSECTDB<String>(dbBase);
+        dbBase.saveObject("loaded", "a", "cat");
+        Future<String> fLoad = startLoad(dbBase, dbCache);
+        dbCache.saveObject("other", "b", "cat");
+        dbCache.deleteObject("c", "cat");
+        dbBase.Release.countDown();
+        assertEquals("loaded", fLoad.get());
+
+        dbCache.resetStatistics();
+        assertEquals("loaded", dbCache.loadObject("a", "cat"));
+        assertEquals(1, dbCache.getHits());
+    }
+
+    @Test
+    public void testChangeOfSameObjectOutdatesLoad() throws Exception {
+        BlockingDB dbBase = new BlockingDB();
+        final CachingINSECTDB<String> dbCache = new CachingINSECTDB<String>(dbBase);
+        dbBase.saveObject("old", "a", "cat");
+        Future<String> fLoad = startLoad(dbBase, dbCache);
+        // The base is only changed after the load read the previous version
+        dbCache.invalidate("a", "cat");
+        dbBase.saveObject("new", "a", "cat");
+        dbBase.Release.countDown();
+        assertEquals("old", fLoad.get());
+        assertEquals(0, dbCache.size());
+        assertEquals("new", dbCache.loadObject("a", "cat"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        CachingINSECTDB<String> dbCache = new CachingINSECTDB<String>(
+                new INSECTMemoryDB<String>(),
+                3 * CachingINSECTDB.DEFAULT_OBJECT_WEIGHT);
+        for (int iCnt = 0; iCnt < 5; iCnt++)
+            dbCache.saveObject("value" + iCnt, "obj" + iCnt, "cat");
+        assertEquals(3, dbCache.size());
+        assertEquals(2, dbCache.getEvictions());
+        dbCache.resetStatistics();
+        assertEquals("value0", dbCache.loadObject("obj0", "cat"));
+        assertEquals("value4", dbCache.loadObject("obj4", "cat"));
+        assertEquals(1, dbCache.getHits());
+        assertEquals(1, dbCache.getMisses());
+    }
+
+    /** Starts loading object "a" and waits until the base has read it. */
+    protected Future<String> startLoad(BlockingDB dbBase,
+            final CachingINSECTDB<String> dbCache) throws InterruptedException {
+        dbBase.Block = true;
+        Future<String> fRes = Loader.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return dbCache.loadObject("a", "cat");
+            }
+        });
+        dbBase.Loaded.await();
+        return fRes;
+    }
+
+    /** A memory database whose saves can fail, and whose loads can wait until
+     * released after reading the object. */
+    protected static class BlockingDB extends INSECTMemoryDB<String> {
+        protected volatile boolean FailSaves = false;
+        protected volatile boolean Block = false;
+        protected final CountDownLatch Loaded = new CountDownLatch(1);
+        protected final CountDownLatch Release = new CountDownLatch(1);
+
+        @Override
+        public void saveObject(Serializable oObj, String sObjectName,
+                String sObjectCategory) {
+            try {
+                saveObjectChecked(oObj, sObjectName, sObjectCategory);
+            }
+            catch (IOException ioe) {
+                // Failures are silent, as in most databases
+            }
+        }
+
+        @Override
+        protected void saveObjectChecked(Serializable oObj, String sObjectName,
+                String sObjectCategory) throws IOException {
+            if (FailSaves)
+                throw new IOException("Cannot save " + sObjectName);
+            super.saveObject(oObj, sObjectName, sObjectCategory);
+        }
+
+        @Override
+        public String loadObject(String sObjectName, String sObjectCategory) {
+            String sRes = super.loadObject(sObjectName, sObjectCategory);
+            if (Block) {
+                Block = false;
+                Loaded.countDown();
+                try {
+                    Release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return sRes;
+        }
+    }
+}
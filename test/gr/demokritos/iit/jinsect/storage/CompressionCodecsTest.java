@@ -0,0 +1,109 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import gr.demokritos.iit.jinsect.TestTexts;
+import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the {@link ICompressionCodec}s and the recompression of files by
+ * {@link INSECTFileDBConverter}.
+ *
+ * @author ggianna
+ */
+public class CompressionCodecsTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] baData = TestTexts.createText(20000, 1).getBytes("UTF-8");
+        for (String sCodec : new String[] {"none", "lz", "deflate", "deflate:1",
+                "deflate:9", "deflate-v1"}) {
+            ICompressionCodec cCodec = CompressionCodecs.forName(sCodec);
+            byte[] baCompressed = compress(baData, cCodec);
+            assertTrue(sCodec, CompressionCodecs.isCompressedWith(baCompressed,
+                    baCompressed.length, cCodec));
+            assertArrayEquals(sCodec, baData, decompress(baCompressed));
+        }
+    }
+
+    @Test
+    public void testHeaderlessData() throws Exception {
+        byte[] baData = TestTexts.createText(1000, 2).getBytes("UTF-8");
+        assertArrayEquals(baData, decompress(baData));
+        ByteArrayOutputStream bosOut = new ByteArrayOutputStream();
+        GZIPOutputStream gzOut = new GZIPOutputStream(bosOut);
+        gzOut.write(baData);
+        gzOut.close();
+        assertArrayEquals(baData, decompress(bosOut.toByteArray()));
+    }
+
+    @Test
+    public void testDeflateLevels() throws Exception {
+        byte[] baData = TestTexts.createText(1000, 3).getBytes("UTF-8");
+        byte[] baCompressed = compress(baData, CompressionCodecs.deflate(1));
+        assertTrue(CompressionCodecs.isCompressedWith(baCompressed, baCompressed.length,
+                CompressionCodecs.deflate(1)));
+        assertFalse(CompressionCodecs.isCompressedWith(baCompressed,
+                baCompressed.length, CompressionCodecs.deflate(9)));
+        assertFalse(CompressionCodecs.isCompressedWith(baCompressed,
+                baCompressed.length, CompressionCodecs.DEFLATE));
+        assertFalse(CompressionCodecs.isCompressedWith(baCompressed,
+                baCompressed.length, CompressionCodecs.LZ));
+    }
+
+    @Test
+    public void testConvertChangesDeflateLevel() throws Exception {
+        DocumentNGramGraph dgGraph = new DocumentNGramGraph();
+        dgGraph.setDataString(TestTexts.createText(3000, 4));
+        File fFile = new File(Folder.getRoot(), "graph." + INSECTDB.CATEGORY_TYPE);
+        INSECTFileDB.writeCompressedFile(fFile, dgGraph, CompressionCodecs.deflate(1),
+                true);
+        long lFastSize = fFile.length();
+
+        assertFalse(INSECTFileDBConverter.convertFile(fFile,
+                CompressionCodecs.deflate(1)));
+        assertTrue(INSECTFileDBConverter.convertFile(fFile,
+                CompressionCodecs.deflate(9)));
+        assertTrue(fFile.length() < lFastSize);
+        assertFalse(INSECTFileDBConverter.convertFile(fFile,
+                CompressionCodecs.deflate(9)));
+        DocumentNGramGraph dgRead = (DocumentNGramGraph)INSECTFileDB.readFile(fFile);
+        assertEquals(dgGraph.getDataString(), dgRead.getDataString());
+        assertEquals(1, Folder.getRoot().list().length);
+    }
+
+    protected static byte[] compress(byte[] baData, ICompressionCodec cCodec)
+            throws Exception {
+        ByteArrayOutputStream bosOut = new ByteArrayOutputStream();
+        OutputStream osOut = CompressionCodecs.compress(bosOut, cCodec);
+        osOut.write(baData);
+        osOut.close();
+        return bosOut.toByteArray();
+    }
+
+    protected static byte[] decompress(byte[] baCompressed) throws Exception {
+        InputStream isIn = CompressionCodecs.decompress(
+                new ByteArrayInputStream(baCompressed));
+        ByteArrayOutputStream bosOut = new ByteArrayOutputStream();
+        byte[] baBuffer = new byte[4096];
+        int iRead;
+        while ((iRead = isIn.read(baBuffer)) >= 0)
+            bosOut.write(baBuffer, 0, iRead);
+        isIn.close();
+        return bosOut.toByteArray();
+    }
+}
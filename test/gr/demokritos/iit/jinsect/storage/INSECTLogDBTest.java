@@ -0,0 +1,117 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the recovery and compaction of {@link INSECTLogDB}.
+ *
+ * @author ggianna
+ */
+public class INSECTLogDBTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    protected INSECTLogDB<String> open() throws IOException {
+        return new INSECTLogDB<String>("db", Folder.getRoot().getPath());
+    }
+
+    @Test
+    public void testReopenWithoutCheckpoint() throws Exception {
+        INSECTLogDB<String> dbLog = open();
+        dbLog.saveObject("first", "a", "cat");
+        dbLog.saveObject("second", "b", "cat");
+        dbLog.saveObject("replaced", "a", "cat");
+        dbLog.deleteObject("b", "cat");
+        dbLog.sync();
+        // Reopen without a checkpoint, as after a crash
+        INSECTLogDB<String> dbReopened = open();
+        assertEquals("replaced", dbReopened.loadObject("a", "cat"));
+        assertFalse(dbReopened.existsObject("b", "cat"));
+        dbReopened.finalizeDB();
+        dbLog.finalizeDB();
+    }
+
+    @Test
+    public void testReopenAfterCheckpoint() throws Exception {
+        INSECTLogDB<String> dbLog = open();
+        dbLog.saveObject("before", "a", "cat");
+        dbLog.checkpoint();
+        dbLog.saveObject("after", "b", "cat");
+        dbLog.finalizeDB();
+
+        INSECTLogDB<String> dbReopened = open();
+        assertEquals("before", dbReopened.loadObject("a", "cat"));
+        assertEquals("after", dbReopened.loadObject("b", "cat"));
+        dbReopened.finalizeDB();
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws Exception {
+        INSECTLogDB<String> dbLog = open();
+        dbLog.saveObject("kept", "a", "cat");
+        dbLog.saveObject("torn", "b", "cat");
+        dbLog.finalizeDB();
+        // Cut the last record short, as a crash during a write would
+        File fSegment = onlySegment();
+        long lSize = fSegment.length();
+        RandomAccessFile rafSegment = new RandomAccessFile(fSegment, "rw");
+        rafSegment.setLength(lSize - 3);
+        rafSegment.close();
+        new File(Folder.getRoot(), "db" + INSECTLogDB.INDEX_SUFFIX).delete();
+
+        INSECTLogDB<String> dbReopened = open();
+        assertEquals("kept", dbReopened.loadObject("a", "cat"));
+        assertFalse(dbReopened.existsObject("b", "cat"));
+        // New records follow the last complete one
+        dbReopened.saveObject("again", "b", "cat");
+        dbReopened.finalizeDB();
+        INSECTLogDB<String> dbAgain = open();
+        assertEquals("again", dbAgain.loadObject("b", "cat"));
+        dbAgain.finalizeDB();
+    }
+
+    @Test
+    public void testCompactKeepsLiveObjects() throws Exception {
+        INSECTLogDB<String> dbLog = open();
+        dbLog.setMaxSegmentSize(256);
+        for (int iCnt = 0; iCnt < 50; iCnt++)
+            dbLog.saveObject("value" + iCnt, "obj" + (iCnt % 5), "cat");
+        dbLog.deleteObject("obj0", "cat");
+        assertTrue(dbLog.getGarbageRatio() > 0.5);
+        dbLog.compact();
+        assertEquals(0.0, dbLog.getGarbageRatio(), 0.0);
+        dbLog.finalizeDB();
+
+        INSECTLogDB<String> dbReopened = open();
+        String[] saNames = dbReopened.getObjectList("cat");
+        Arrays.sort(saNames);
+        assertArrayEquals(new String[] {"obj1", "obj2", "obj3", "obj4"}, saNames);
+        for (int iObj = 1; iObj < 5; iObj++)
+            assertEquals("value" + (45 + iObj), dbReopened.loadObject("obj" + iObj, "cat"));
+        dbReopened.finalizeDB();
+    }
+
+    protected File onlySegment() {
+        File[] faSegments = Folder.getRoot().listFiles();
+        File fRes = null;
+        for (File fCur : faSegments) {
+            if (fCur.getName().endsWith(INSECTLogDB.SEGMENT_SUFFIX)) {
+                assertNull(fRes);
+                fRes = fCur;
+            }
+        }
+        assertNotNull(fRes);
+        return fRes;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests {@link CompactNGramGraph}.
+ *
+ * @author ggianna
+ */
+public class CompactNGramGraphTest {
+    @Test
+    public void testSetWeightAcrossResizes() {
+        // Start small, so that many insertions resize the table
+        CompactNGramGraph cgGraph = new CompactNGramGraph(new NGramLabelDictionary(), 1);
+        for (int iCnt = 0; iCnt < 1000; iCnt++)
+            cgGraph.setWeight(CompactNGramGraph.edgeKey(iCnt, iCnt + 1), iCnt + 0.5);
+        assertEquals(1000, cgGraph.getEdgesCount());
+        for (int iCnt = 0; iCnt < 1000; iCnt++)
+            assertEquals(iCnt + 0.5, cgGraph.getWeight(
+                    CompactNGramGraph.edgeKey(iCnt, iCnt + 1), -1.0), 0.0);
+    }
+
+    @Test
+    public void testIncreaseWeight() {
+        CompactNGramGraph cgGraph = new CompactNGramGraph(new NGramLabelDictionary(), 1);
+        long lKey = CompactNGramGraph.edgeKey(3, 7);
+        assertEquals(1.0, cgGraph.increaseWeight(lKey, 1.0, 2.0), 0.0);
+        assertEquals(3.0, cgGraph.increaseWeight(lKey, 1.0, 2.0), 0.0);
+        assertTrue(cgGraph.containsVertex(3));
+        assertTrue(cgGraph.containsVertex(7));
+        assertEquals(2, cgGraph.getVerticesCount());
+    }
+
+    @Test
+    public void testRemoveKeepsOtherEdges() {
+        Random rKeys = new Random(1);
+        CompactNGramGraph cgGraph = new CompactNGramGraph(new NGramLabelDictionary(), 16);
+        Map<Long, Double> mExpected = new HashMap<Long, Double>();
+        for (int iCnt = 0; iCnt < 5000; iCnt++) {
+            long lKey = CompactNGramGraph.edgeKey(rKeys.nextInt(200), rKeys.nextInt(200));
+            if (rKeys.nextInt(3) == 0) {
+                assertEquals(mExpected.remove(lKey) != null, cgGraph.removeEdge(lKey));
+            }
+            else {
+                cgGraph.setWeight(lKey, iCnt);
+                mExpected.put(lKey, (double)iCnt);
+            }
+        }
+        assertEquals(mExpected.size(), cgGraph.getEdgesCount());
+        for (Map.Entry<Long, Double> eCur : mExpected.entrySet())
+            assertEquals(eCur.getValue(), cgGraph.getWeight(eCur.getKey(), -1.0), 0.0);
+    }
+
+    @Test
+    public void testUniqueVertexGraphRoundTrip() {
+        NGramLabelDictionary dDictionary = new NGramLabelDictionary();
+        CompactNGramGraph cgGraph = new CompactNGramGraph(dDictionary, 4);
+        cgGraph.setWeight(cgGraph.edgeKey("abc", "bcd"), 2.0);
+        cgGraph.setWeight(cgGraph.edgeKey("bcd", "abc"), 1.0);
+        cgGraph.setWeight(cgGraph.edgeKey("bcd", "cde"), 3.5);
+        cgGraph.addVertex("xyz");
+
+        UniqueVertexGraph gGraph = cgGraph.toUniqueVertexGraph();
+        assertEquals(3, gGraph.getEdgesCount());
+        CompactNGramGraph cgCopy = CompactNGramGraph.fromUniqueVertexGraph(gGraph,
+                dDictionary);
+        assertEquals(cgGraph.getEdgesCount(), cgCopy.getEdgesCount());
+        assertEquals(cgGraph.getVerticesCount(), cgCopy.getVerticesCount());
+        for (long lKey : cgGraph.getEdgeKeys())
+            assertEquals(cgGraph.getWeight(lKey, -1.0), cgCopy.getWeight(lKey, -2.0), 0.0);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.structs;
+
+import gr.demokritos.iit.jinsect.events.SimilarityComparatorListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/** Tests the calculation, queries and resumption of {@link SimilarityMatrix}.
+ *
+ * @author ggianna
+ */
+public class SimilarityMatrixTest {
+    @Rule
+    public TemporaryFolder Folder = new TemporaryFolder();
+
+    /** Compares strings by the difference of their lengths, counting comparisons. */
+    protected static class LengthComparator implements SimilarityComparatorListener {
+        protected final AtomicInteger Comparisons = new AtomicInteger();
+
+        @Override
+        public ISimilarity getSimilarityBetween(Object oFirst, Object oSecond) {
+            Comparisons.incrementAndGet();
+            return new SimpleSimilarity(1.0 / (1 + Math.abs(
+                    oFirst.toString().length() - oSecond.toString().length())));
+        }
+    }
+
+    protected static List<String> createObjects(int iCount) {
+        List<String> lRes = new ArrayList<String>();
+        StringBuilder sbCur = new StringBuilder();
+        for (int iCnt = 0; iCnt < iCount; iCnt++) {
+            sbCur.append((char)('a' + iCnt % 26));
+            lRes.add(sbCur.toString());
+        }
+        return lRes;
+    }
+
+    @Test
+    public void testComputesEveryPairOnce() throws Exception {
+        List<String> lObjects = createObjects(100);
+        LengthComparator lcComparator = new LengthComparator();
+        SimilarityMatrix smMatrix = new SimilarityMatrix(lObjects);
+        smMatrix.compute(lcComparator);
+        assertEquals(100 * 99 / 2, lcComparator.Comparisons.get());
+        assertTrue(smMatrix.isComplete());
+        for (int iFirst = 0; iFirst < lObjects.size(); iFirst++)
+            for (int iSecond = 0; iSecond < lObjects.size(); iSecond++) {
+                double dExpected = (iFirst == iSecond) ? Double.NaN :
+                        1.0 / (1 + Math.abs(iFirst - iSecond));
+                assertEquals(dExpected, smMatrix.getSimilarity(iFirst, iSecond), 0.0);
+            }
+        int[] iaTop = smMatrix.getTopK(10, 3);
+        assertEquals(3, iaTop.length);
+        assertEquals(0.5, smMatrix.getSimilarity(10, iaTop[1]), 0.0);
+        assertEquals(1.0 / 3, smMatrix.getSimilarity(10, iaTop[2]), 0.0);
+        smMatrix.setSimilarity(3, 7, 2.0);
+        assertEquals(2.0, smMatrix.getSimilarity(7, 3), 0.0);
+        assertEquals(7, smMatrix.getTopK(3, 1)[0]);
+    }
+
+    @Test
+    public void testResumesFile() throws Exception {
+        List<String> lObjects = createObjects(50);
+        File fStore = new File(Folder.getRoot(), "matrix.bin");
+        SimilarityMatrix smMatrix = new SimilarityMatrix(lObjects, fStore, 8);
+        smMatrix.compute(new LengthComparator());
+        smMatrix.close();
+
+        LengthComparator lcComparator = new LengthComparator();
+        SimilarityMatrix smResumed = new SimilarityMatrix(lObjects, fStore, 8);
+        assertTrue(smResumed.isComplete());
+        smResumed.compute(lcComparator);
+        assertEquals(0, lcComparator.Comparisons.get());
+        assertEquals(0.5, smResumed.getSimilarity(20, 21), 0.0);
+        smResumed.close();
+    }
+
+    @Test
+    public void testRejectsFileOfOtherObjects() throws Exception {
+        List<String> lObjects = createObjects(20);
+        File fStore = new File(Folder.getRoot(), "matrix.bin");
+        new SimilarityMatrix(lObjects, fStore).close();
+        List<String> lOther = new ArrayList<String>(lObjects);
+        lOther.set(5, "other");
+        try {
+            new SimilarityMatrix(lOther, fStore);
+            fail("A file of other objects was resumed");
+        }
+        catch (IOException ioe) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRejectsUnnamedObjectsInFile() throws Exception {
+        List<Object> lObjects = new ArrayList<Object>();
+        for (int iCnt = 0; iCnt < 5; iCnt++)
+            lObjects.add(new Object());
+        File fStore = new File(Folder.getRoot(), "matrix.bin");
+        try {
+            new SimilarityMatrix(lObjects, fStore);
+            fail("Unnamed objects were accepted");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+        assertFalse(fStore.exists());
+        // Matrices in memory need no names
+        new SimilarityMatrix(lObjects).compute(new LengthComparator());
+    }
+}
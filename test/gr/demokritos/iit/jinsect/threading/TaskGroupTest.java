@@ -0,0 +1,141 @@
+/*
+ * Under LGPL
+ * by George Giannakopoulos
+ */
+
+package gr.demokritos.iit.jinsect.threading;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests the bounds, completion and failure reporting of {@link TaskGroup}.
+ *
+ * @author ggianna
+ */
+public class TaskGroupTest {
+    @Test(timeout = 10000)
+    public void testRunsAllTasks() throws Exception {
+        final AtomicInteger aiRun = new AtomicInteger();
+        TaskGroup tgTasks = new TaskGroup(3);
+        for (int iCnt = 0; iCnt < 100; iCnt++)
+            tgTasks.execute(new Runnable() {
+                @Override
+                public void run() {
+                    aiRun.incrementAndGet();
+                }
+            });
+        tgTasks.waitUntilCompletion();
+        assertEquals(100, aiRun.get());
+        assertEquals(0, tgTasks.getPendingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testBoundsTasksInFlight() throws Exception {
+        final CountDownLatch cdlRelease = new CountDownLatch(1);
+        ForkJoinPool fjpPool = TaskExecutors.newPool(4);
+        TaskGroup tgTasks = new TaskGroup(2, fjpPool);
+        Runnable rBlocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cdlRelease.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        assertTrue(tgTasks.trySubmit(rBlocked));
+        assertTrue(tgTasks.trySubmit(rBlocked));
+        assertFalse(tgTasks.trySubmit(rBlocked));
+        assertFalse(tgTasks.trySubmit(rBlocked, 20, TimeUnit.MILLISECONDS));
+        assertEquals(2, tgTasks.getPendingCount());
+
+        cdlRelease.countDown();
+        tgTasks.waitUntilCompletion();
+        assertTrue(tgTasks.trySubmit(rBlocked));
+        tgTasks.waitUntilCompletion();
+        fjpPool.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testReportsFailures() throws Exception {
+        TaskGroup tgTasks = new TaskGroup(2);
+        for (int iCnt = 0; iCnt < 3; iCnt++) {
+            final int iTask = iCnt;
+            tgTasks.execute(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("Task " + iTask);
+                }
+            });
+        }
+        try {
+            tgTasks.waitUntilCompletion();
+            fail("The failures were not reported");
+        }
+        catch (CompletionException ce) {
+            assertTrue(ce.getCause() instanceof IllegalStateException);
+            assertEquals(2, ce.getCause().getSuppressed().length);
+        }
+        // The group is reusable, and the failures are only reported once
+        tgTasks.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        tgTasks.waitUntilCompletion();
+    }
+
+    @Test(timeout = 10000)
+    public void testNestedGroupsOnOneThread() throws Exception {
+        // Outer tasks wait for inner groups on the same single-thread pool
+        final ForkJoinPool fjpPool = TaskExecutors.newPool(1);
+        final AtomicInteger aiRun = new AtomicInteger();
+        TaskGroup tgOuter = new TaskGroup(4, fjpPool);
+        for (int iOuter = 0; iOuter < 4; iOuter++)
+            tgOuter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TaskGroup tgInner = new TaskGroup(2, fjpPool);
+                    for (int iInner = 0; iInner < 5; iInner++)
+                        tgInner.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                aiRun.incrementAndGet();
+                            }
+                        });
+                    try {
+                        tgInner.waitUntilCompletion();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        tgOuter.waitUntilCompletion();
+        assertEquals(20, aiRun.get());
+        fjpPool.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadQueueFacade() throws Exception {
+        final AtomicInteger aiRun = new AtomicInteger();
+        ThreadQueue tqQueue = new ThreadQueue(2);
+        int iAdded = 0;
+        while (iAdded < 50) {
+            if (tqQueue.addThreadFor(new Runnable() {
+                @Override
+                public void run() {
+                    aiRun.incrementAndGet();
+                }
+            }))
+                iAdded++;
+        }
+        tqQueue.waitUntilCompletion();
+        assertEquals(50, aiRun.get());
+    }
+}